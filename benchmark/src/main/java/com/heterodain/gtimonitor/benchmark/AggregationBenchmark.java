@@ -0,0 +1,120 @@
+package com.heterodain.gtimonitor.benchmark;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heterodain.gtimonitor.config.ControlConfig.Filter;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.control.OutlierFilter;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.service.AmbientService.ReadData;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+import com.heterodain.gtimonitor.util.QuantileSketch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 集計処理のベンチマーク (外れ値除外/sendAmbient1/controlPower/sendAmbient2)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+    /** 照度計測データ(3秒値 x 3分) */
+    private List<Double> lightDatas;
+    /** GTI計測データ(30秒値 x 3分) */
+    private List<Double> gtiDatas;
+    /** 計測データ(3分値 x 15分) */
+    private List<MeasureData> threeMinDatas;
+    /** 1日分のAmbientデータ */
+    private List<ReadData> dayDatas;
+    /** 照度の外れ値除外 */
+    private OutlierFilter lightFilter;
+    /** 照度のサンプル番号 */
+    private int lightIndex;
+
+    @Setup
+    public void setup() throws Exception {
+        var random = new Random(1);
+        lightDatas = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            lightDatas.add(random.nextDouble() * 100000D);
+        }
+        gtiDatas = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            gtiDatas.add(random.nextDouble() * 900D);
+        }
+        threeMinDatas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            var data = new MeasureData();
+            data.setLight(random.nextDouble() * 100000D);
+            data.setPower(random.nextDouble() * 900D);
+            var sketch = new QuantileSketch();
+            for (int j = 0; j < 60; j++) {
+                sketch.add(random.nextDouble() * 100000D);
+            }
+            data.setSketches(Map.of("light", sketch));
+            threeMinDatas.add(data);
+        }
+
+        lightFilter = new OutlierFilter(new Filter().getLightSensor());
+
+        dayDatas = new ObjectMapper().readValue(Fixtures.load("ambient-day.json"),
+                new TypeReference<List<ReadData>>() {
+                });
+    }
+
+    @Benchmark
+    public boolean filterLight() {
+        lightIndex = (lightIndex + 1) % lightDatas.size();
+        return lightFilter.accept(lightDatas.get(lightIndex));
+    }
+
+    @Benchmark
+    public double averageLight() {
+        return MeasureUtils.average(lightDatas);
+    }
+
+    @Benchmark
+    public double averageGti() {
+        return MeasureUtils.average(gtiDatas);
+    }
+
+    @Benchmark
+    public double averageControlSource() {
+        return MeasureUtils.average(threeMinDatas, Source.GTI).orElse(0D);
+    }
+
+    @Benchmark
+    public Double percentile15Min() {
+        return MeasureUtils.mergeSketches(threeMinDatas).get("light").quantile(0.9D);
+    }
+
+    @Benchmark
+    public double dailyPower() {
+        return MeasureUtils.dailyPower(dayDatas, ZoneId.of("Asia/Tokyo"));
+    }
+
+    @Benchmark
+    public double averageHash() {
+        return MeasureUtils.averageHash(dayDatas);
+    }
+}
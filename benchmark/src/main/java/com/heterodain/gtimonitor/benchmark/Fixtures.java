@@ -0,0 +1,30 @@
+package com.heterodain.gtimonitor.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 記録済みペイロード(src/main/resources/fixtures)の読み込み
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * フィクスチャ読み込み
+     * 
+     * @param name ファイル名
+     * @return ファイル内容
+     */
+    public static byte[] load(String name) {
+        try (var is = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (is == null) {
+                throw new IllegalArgumentException("フィクスチャ[" + name + "]が見つかりません");
+            }
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
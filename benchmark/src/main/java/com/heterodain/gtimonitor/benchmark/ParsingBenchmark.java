@@ -0,0 +1,72 @@
+package com.heterodain.gtimonitor.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heterodain.gtimonitor.service.AmbientService.ReadData;
+import com.heterodain.gtimonitor.service.HiveService;
+import com.heterodain.gtimonitor.service.HiveService.OcProfile;
+import com.heterodain.gtimonitor.service.HiveService.WorkerInfo;
+import com.heterodain.gtimonitor.service.OpenWeatherService;
+import com.heterodain.gtimonitor.service.OpenWeatherService.CurrentWeather;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * レスポンス解析のベンチマーク (HiveService/OpenWeatherService/AmbientService.read)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+    private ObjectMapper om;
+    private byte[] hiveWorker;
+    private byte[] hiveOc;
+    private byte[] openWeatherCurrent;
+    private byte[] ambientDay;
+
+    @Setup
+    public void setup() {
+        om = new ObjectMapper();
+        hiveWorker = Fixtures.load("hive-worker.json");
+        hiveOc = Fixtures.load("hive-oc.json");
+        openWeatherCurrent = Fixtures.load("openweather-current.json");
+        ambientDay = Fixtures.load("ambient-day.json");
+    }
+
+    @Benchmark
+    public WorkerInfo hiveWorkerInfo() throws Exception {
+        return HiveService.parseWorkerInfo(om.readTree(hiveWorker));
+    }
+
+    @Benchmark
+    public Map<String, OcProfile> hiveOcProfiles() throws Exception {
+        return HiveService.parseOcProfiles(om.readTree(hiveOc));
+    }
+
+    @Benchmark
+    public CurrentWeather openWeatherCurrent() throws Exception {
+        return OpenWeatherService.parseCurrentWeather(om.readTree(openWeatherCurrent));
+    }
+
+    @Benchmark
+    public List<ReadData> ambientDay() throws Exception {
+        return om.readValue(ambientDay, new TypeReference<List<ReadData>>() {
+        });
+    }
+}
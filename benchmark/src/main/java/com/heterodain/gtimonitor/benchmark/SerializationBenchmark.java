@@ -0,0 +1,66 @@
+package com.heterodain.gtimonitor.benchmark;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import com.heterodain.gtimonitor.config.AppConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
+import com.heterodain.gtimonitor.service.AmbientService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Ambient送信JSON構築のベンチマーク (AmbientService.send)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private AnnotationConfigApplicationContext context;
+    private AmbientService ambientService;
+    private AmbientApi config;
+    private ZonedDateTime ts;
+    private Double[] datas;
+
+    @Setup
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(AppConfig.class, AmbientService.class);
+        ambientService = context.getBean(AmbientService.class);
+
+        config = new AmbientApi();
+        config.setChannelId(99999);
+        config.setWriteKey("0123456789abcdef");
+        ts = ZonedDateTime.of(2022, 6, 1, 12, 3, 0, 0, ZoneId.of("Asia/Tokyo"));
+        datas = new Double[] { 54321.5D, 612.3D, 24.3D, 75D, 68D, 9D, 301.25D };
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String buildPayload() throws Exception {
+        return ambientService.buildPayload(config, ts, "曇りがち", datas);
+    }
+
+    @Benchmark
+    public String buildPayloadWithoutComment() throws Exception {
+        return ambientService.buildPayload(config, ts, null, datas);
+    }
+}
@@ -0,0 +1,258 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heterodain.gtimonitor.api.ApiServer;
+import com.heterodain.gtimonitor.api.LiveStore;
+import com.heterodain.gtimonitor.config.ApiConfig;
+import com.heterodain.gtimonitor.model.Sample;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 組み込みHTTP APIのシミュレーション
+ *
+ * <p>
+ * HTTP APIを起動してサンプルを流し、多数のライブ配信(SSE)の接続と、最新のサンプル・履歴の取得を同時に行う。
+ * 全ての接続に全てのサンプルが届くこと、配信の遅延・取得の応答時間、サンプルの追加(パイプラインの段の処理)が待たされないこと、
+ * 読まない接続があっても他の接続が止まらないことを確認する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.ApiSimulation \
+ *     --seconds=10 --rate=50 --viewers=100 --pollers=4
+ * </pre>
+ */
+@Slf4j
+public class ApiSimulation {
+    /** 計測時間(秒) */
+    private int seconds = 10;
+    /** 1秒あたりのサンプル数 (照度・発電電力の合計) */
+    private int rate = 50;
+    /** ライブ配信の接続数 */
+    private int viewers = 100;
+    /** 最新のサンプル・履歴を取得し続けるクライアント数 */
+    private int pollers = 4;
+    /** 読まないライブ配信の接続数 */
+    private int stalled = 1;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new ApiSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "seconds":
+                    simulation.seconds = Integer.parseInt(kv[1]);
+                    break;
+                case "rate":
+                    simulation.rate = Integer.parseInt(kv[1]);
+                    break;
+                case "viewers":
+                    simulation.viewers = Integer.parseInt(kv[1]);
+                    break;
+                case "pollers":
+                    simulation.pollers = Integer.parseInt(kv[1]);
+                    break;
+                case "stalled":
+                    simulation.stalled = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var config = new ApiConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(0);
+        config.setMaxStreams(viewers + stalled);
+        var liveStore = new LiveStore(config);
+        var server = new ApiServer(config, liveStore, new ObjectMapper(), Clock.systemDefaultZone());
+        server.start();
+        var baseUrl = "http://127.0.0.1:" + server.getPort() + "/api";
+
+        var httpClient = HttpClient.newHttpClient();
+        var stalledSockets = new ArrayList<Socket>();
+        try {
+            // ライブ配信の接続
+            var viewerList = new ArrayList<Viewer>();
+            for (int i = 0; i < viewers; i++) {
+                var viewer = new Viewer();
+                viewerList.add(viewer);
+                httpClient.sendAsync(HttpRequest.newBuilder(URI.create(baseUrl + "/stream")).build(),
+                        BodyHandlers.fromLineSubscriber(viewer));
+            }
+            for (int i = 0; i < stalled; i++) {
+                var socket = new Socket();
+                socket.setReceiveBufferSize(1024);
+                socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+                socket.getOutputStream().write(("GET /api/stream HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                stalledSockets.add(socket);
+            }
+            while (server.getStream().getClients() < viewers + stalled) {
+                Thread.sleep(10);
+            }
+
+            // 最新のサンプル・履歴の取得
+            var running = new AtomicBoolean(true);
+            var pollerLatencies = new ArrayList<List<Long>>();
+            var pollerFutures = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < pollers; i++) {
+                var latencies = new ArrayList<Long>();
+                pollerLatencies.add(latencies);
+                var path = i % 2 == 0 ? "/latest" : "/history?metric=power";
+                pollerFutures.add(CompletableFuture.runAsync(() -> {
+                    var request = HttpRequest.newBuilder(URI.create(baseUrl + path)).build();
+                    while (running.get()) {
+                        var start = System.nanoTime();
+                        try {
+                            httpClient.send(request, BodyHandlers.ofByteArray());
+                        } catch (Exception e) {
+                            return;
+                        }
+                        latencies.add(System.nanoTime() - start);
+                    }
+                }));
+            }
+
+            // サンプルの追加 (パイプラインの段に相当)
+            long samples = 0;
+            var addNanos = new ArrayList<Long>();
+            var intervalNanos = 1_000_000_000L / rate;
+            var start = System.nanoTime();
+            var end = start + seconds * 1_000_000_000L;
+            while (System.nanoTime() < end) {
+                var metric = samples % 10 == 0 ? "power" : "light";
+                var addStart = System.nanoTime();
+                liveStore.onSample(Sample.of(metric, System.currentTimeMillis(), samples));
+                addNanos.add(System.nanoTime() - addStart);
+                samples++;
+
+                var waitNanos = start + samples * intervalNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+            Thread.sleep(1000);
+            running.set(false);
+            CompletableFuture.allOf(pollerFutures.toArray(new CompletableFuture[0])).join();
+
+            var received = viewerList.stream().mapToLong(v -> v.received.get()).sorted().toArray();
+            var delays = new ArrayList<Long>();
+            viewerList.forEach(v -> delays.addAll(v.delays));
+            var polls = new ArrayList<Long>();
+            pollerLatencies.forEach(polls::addAll);
+
+            log.info("サンプル: {}件, 1件の追加時間 p99={}ms 最大={}ms", samples, nanosPercentile(addNanos, 0.99),
+                    nanosPercentile(addNanos, 1));
+            log.info("ライブ配信: 接続={}, 受信件数 最小={} 最大={}, 配信の遅延 p50={}ms p99={}ms 最大={}ms", viewers,
+                    received[0], received[received.length - 1], percentile(delays, 0.5), percentile(delays, 0.99),
+                    percentile(delays, 1));
+            // 切断した読まない接続は、書き込み中でもサーバー側で閉じていること
+            var closedStalled = 0;
+            for (var socket : stalledSockets) {
+                if (closedByServer(socket)) {
+                    closedStalled++;
+                }
+            }
+            log.info("ライブ配信: 読まない接続={}, 遅いために切断={}, サーバーが閉じた読まない接続={}, 送信イベント={}", stalled,
+                    server.getStream().getEvicted(), closedStalled, server.getStream().getSent());
+            log.info("取得: {}回, 応答時間 p50={}ms p99={}ms", polls.size(), nanosPercentile(polls, 0.5),
+                    nanosPercentile(polls, 0.99));
+        } finally {
+            for (var socket : stalledSockets) {
+                socket.close();
+            }
+            server.close();
+        }
+    }
+
+    /**
+     * サーバー側で接続が閉じられたかどうか (溜まっているデータを読み捨てて、終端まで読めるか)
+     */
+    private static boolean closedByServer(Socket socket) throws IOException {
+        socket.setSoTimeout(2000);
+        var in = socket.getInputStream();
+        var buffer = new byte[65536];
+        try {
+            while (in.read(buffer) >= 0) {
+                // 読み捨てる
+            }
+            return true;
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+    }
+
+    private static long percentile(List<Long> values, double p) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        var sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+    }
+
+    private static String nanosPercentile(List<Long> values, double p) {
+        return String.format("%.2f", percentile(values, p) / 1_000_000D);
+    }
+
+    /**
+     * ライブ配信の接続 (data行の時刻から配信の遅延を計測)
+     */
+    private static class Viewer implements Flow.Subscriber<String> {
+        private final AtomicLong received = new AtomicLong();
+        private final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith("data: ")) {
+                return;
+            }
+            var time = line.indexOf("\"time\":");
+            if (time < 0) {
+                return;
+            }
+            var millis = Long.parseLong(line.substring(time + 7, line.indexOf(',', time)));
+            delays.add(System.currentTimeMillis() - millis);
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.sink.BatchingSink;
+import com.heterodain.gtimonitor.sink.TelemetrySink;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 送信先のバッファの再送間隔の確認
+ *
+ * <p>
+ * 1回に送信する最大件数より多い計測データを溜めた状態で送信先を失敗させ続け、送信の試行が再送間隔毎に
+ * 抑えられること(バッファが一杯でも再送間隔を待つこと)と、復旧後に全件が送信されることを確認する。
+ * 条件を満たさない場合はAssertionErrorで終了する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.BatchingSinkCheck --seconds=2 --retry=200
+ * </pre>
+ */
+@Slf4j
+public class BatchingSinkCheck {
+    /** 失敗させる時間(秒) */
+    private int seconds = 2;
+    /** 再送間隔(ミリ秒) */
+    private int retryInterval = 200;
+    /** 溜める件数 */
+    private int samples = 100;
+
+    public static void main(String[] args) throws Exception {
+        var check = new BatchingSinkCheck();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "seconds":
+                    check.seconds = Integer.parseInt(kv[1]);
+                    break;
+                case "retry":
+                    check.retryInterval = Integer.parseInt(kv[1]);
+                    break;
+                case "samples":
+                    check.samples = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        check.run();
+    }
+
+    /**
+     * 確認の実行
+     */
+    public void run() throws Exception {
+        var failing = new AtomicBoolean(true);
+        var attempts = new AtomicInteger();
+        var written = new AtomicInteger();
+        var sink = new TelemetrySink() {
+            @Override
+            public String getName() {
+                return "check";
+            }
+
+            @Override
+            public void write(List<Sample> batch) throws IOException {
+                attempts.incrementAndGet();
+                if (failing.get()) {
+                    throw new IOException("模擬の送信エラー");
+                }
+                written.addAndGet(batch.size());
+            }
+        };
+
+        var config = new SinkConfig.Sink();
+        config.setBatchSize(10);
+        config.setBufferSize(samples * 2);
+        config.setFlushInterval(50);
+        config.setRetryInterval(retryInterval);
+
+        try (var batching = new BatchingSink(sink, config)) {
+            var millis = System.currentTimeMillis();
+            for (int i = 0; i < samples; i++) {
+                batching.offer(Sample.of("power", millis + i, i));
+            }
+
+            Thread.sleep(seconds * 1000L);
+            var failedAttempts = attempts.get();
+            // 最初の試行 + 再送間隔毎の試行 (タイマーの誤差を1回分見込む)
+            var maxAttempts = seconds * 1000 / retryInterval + 2;
+            log.info("失敗中の送信の試行: {}回 (上限{}回)", failedAttempts, maxAttempts);
+            check(failedAttempts >= 2, "失敗中に再送されていません: " + failedAttempts + "回");
+            check(failedAttempts <= maxAttempts, "再送間隔を待たずに再送しています: " + failedAttempts + "回");
+
+            failing.set(false);
+            var deadline = System.currentTimeMillis() + retryInterval + 5000L;
+            while (written.get() < samples && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            log.info("復旧後: 送信={}件, 未送信={}件, 破棄={}件", written.get(), batching.getPending(),
+                    batching.getDropped());
+            check(written.get() == samples, "復旧後に全件が送信されていません: " + written.get() + "件");
+            check(batching.getDropped() == 0, "計測データが捨てられています: " + batching.getDropped() + "件");
+        }
+        log.info("OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
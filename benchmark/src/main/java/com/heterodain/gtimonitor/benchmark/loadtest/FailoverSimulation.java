@@ -0,0 +1,298 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.heterodain.gtimonitor.config.HaConfig;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 冗長構成の切り替えのシミュレーション
+ *
+ * <p>
+ * 共有のリースファイルで稼働系を選出するインスタンスを別プロセスで起動し、稼働系の強制終了(SIGKILL)・
+ * 一時停止(SIGSTOP、GCやスワップで止まった状態)・通常の終了を繰り返して、待機系が引き継ぐまでの時間と、
+ * 2つのインスタンスが同時に稼働系として振る舞った期間(重複)が無いことを確認する。
+ * 一時停止したインスタンスは、待機系が引き継いだ後に再開して、稼働系として振る舞わずに待機系に戻ることを確認する。
+ * シグナルを送るためLinux・macOSのみ。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.FailoverSimulation --rounds=3 --ttl=3000 --renew=500
+ * </pre>
+ */
+@Slf4j
+public class FailoverSimulation {
+    /** インスタンスの出力の接頭辞 (ログと区別する) */
+    private static final String PREFIX = "@@ ";
+
+    /** 障害の種類毎の繰り返し回数 */
+    private int rounds = 3;
+    /** リースの有効期間(ミリ秒) */
+    private int ttl = 3000;
+    /** リースの更新間隔(ミリ秒) */
+    private int renew = 500;
+
+    /** 起動したインスタンス */
+    private final List<Node> nodes = new ArrayList<>();
+    /** 稼働系として振る舞った期間 */
+    private final List<long[]> leaderPeriods = new CopyOnWriteArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--node")) {
+            runNode(args[1], args[2], Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+
+        var simulation = new FailoverSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "rounds":
+                    simulation.rounds = Integer.parseInt(kv[1]);
+                    break;
+                case "ttl":
+                    simulation.ttl = Integer.parseInt(kv[1]);
+                    break;
+                case "renew":
+                    simulation.renew = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var file = Files.createTempFile("gti-monitor", ".lease");
+        var results = new ArrayList<String>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                nodes.add(start(file, "node" + nodes.size()));
+            }
+            var leader = awaitLeader(null, 10_000L);
+            log.info("{}が稼働系になりました。", leader.id);
+
+            for (var fault : List.of("kill", "pause", "stop")) {
+                for (int round = 1; round <= rounds; round++) {
+                    // 待機系がリースを監視し始めるまで待つ
+                    Thread.sleep(renew * 3L);
+                    var faultAt = System.currentTimeMillis();
+                    switch (fault) {
+                        case "kill":
+                            leader.process.destroyForcibly().waitFor();
+                            leader.close(faultAt);
+                            break;
+                        case "pause":
+                            signal(leader, "STOP");
+                            break;
+                        default:
+                            leader.process.destroy();
+                            break;
+                    }
+
+                    var next = awaitLeader(leader, ttl * 4L);
+                    var failover = next == null ? -1L : next.leaderSince - faultAt;
+                    results.add(String.format("%6s %5d %12s %12s", fault, round, failover,
+                            next == null ? "-" : next.id));
+
+                    if (fault.equals("pause")) {
+                        // 再開したインスタンスは待機系に戻る
+                        signal(leader, "CONT");
+                        Thread.sleep(renew * 3L);
+                        if (leader.leaderSince > 0) {
+                            log.error("{}が再開後も稼働系のままです。", leader.id);
+                        }
+                    } else {
+                        leader.process.waitFor();
+                        nodes.remove(leader);
+                        nodes.add(start(file, "node" + (nodes.size() + results.size())));
+                    }
+                    if (next == null) {
+                        log.error("待機系が引き継ぎませんでした。");
+                        return;
+                    }
+                    leader = next;
+                }
+            }
+        } finally {
+            for (var node : nodes) {
+                node.process.destroyForcibly().waitFor();
+            }
+            Files.deleteIfExists(file);
+        }
+
+        log.info("リースの有効期間={}ms, 更新間隔={}ms", ttl, renew);
+        log.info(String.format("%6s %5s %12s %12s", "fault", "round", "failover(ms)", "new leader"));
+        results.forEach(log::info);
+        log.info("重複して稼働系だった期間={}回", overlaps());
+    }
+
+    /**
+     * 稼働系として振る舞った期間の重複を数える
+     */
+    private int overlaps() {
+        var overlaps = 0;
+        for (int i = 0; i < leaderPeriods.size(); i++) {
+            for (int j = i + 1; j < leaderPeriods.size(); j++) {
+                var a = leaderPeriods.get(i);
+                var b = leaderPeriods.get(j);
+                if (a[0] < b[1] && b[0] < a[1]) {
+                    log.error("稼働系の期間が重複しています。{}-{} と {}-{}", a[0], a[1], b[0], b[1]);
+                    overlaps++;
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    /**
+     * 前の稼働系以外のインスタンスが稼働系になるまで待つ
+     */
+    private Node awaitLeader(Node previous, long timeoutMillis) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            for (var node : nodes) {
+                if (node != previous && node.leaderSince > 0) {
+                    return node;
+                }
+            }
+            Thread.sleep(5L);
+        }
+        return null;
+    }
+
+    private Node start(Path file, String id) throws IOException {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FailoverSimulation.class.getName(), "--node", file.toString(), id, String.valueOf(ttl),
+                String.valueOf(renew)).redirectErrorStream(true).start();
+        var node = new Node(id, process);
+        var reader = new Thread(node::read, "read-" + id);
+        reader.setDaemon(true);
+        reader.start();
+        return node;
+    }
+
+    private static void signal(Node node, String signal) throws Exception {
+        new ProcessBuilder("kill", "-" + signal, String.valueOf(node.process.pid())).inheritIO().start().waitFor();
+    }
+
+    /**
+     * 起動したインスタンス
+     */
+    private class Node {
+        private final String id;
+        private final Process process;
+        /** 稼働系になった時刻(ミリ秒、待機系の場合は0) */
+        private volatile long leaderSince;
+
+        Node(String id, Process process) {
+            this.id = id;
+            this.process = process;
+        }
+
+        /**
+         * インスタンスの出力を読み込む ("LEADER 時刻" / "STANDBY 最後に稼働系だった時刻")
+         */
+        void read() {
+            try (var reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith(PREFIX)) {
+                        continue;
+                    }
+                    var fields = line.substring(PREFIX.length()).split(" ");
+                    var millis = Long.parseLong(fields[1]);
+                    if (fields[0].equals("LEADER")) {
+                        leaderSince = millis;
+                    } else {
+                        close(millis);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("{}の出力を読み込めませんでした。", id, e);
+            }
+        }
+
+        /**
+         * 稼働系の期間を終える
+         *
+         * @param millis 最後に稼働系だった時刻(ミリ秒)
+         */
+        synchronized void close(long millis) {
+            if (leaderSince > 0) {
+                leaderPeriods.add(new long[] { leaderSince, millis });
+                leaderSince = 0;
+            }
+        }
+    }
+
+    /**
+     * インスタンス (5ミリ秒毎に稼働系かどうかを確認し、切り替わった時刻を出力)
+     */
+    private static void runNode(String file, String id, int ttl, int renew) throws Exception {
+        var config = new HaConfig();
+        config.setEnabled(true);
+        config.setFile(file);
+        config.setNodeId(id);
+        config.setLeaseTtl(ttl);
+        config.setRenewInterval(renew);
+
+        var context = new AnnotationConfigApplicationContext();
+        context.registerBean(HaConfig.class, () -> config);
+        context.register(LeaderElection.class);
+        context.refresh();
+        var election = context.getBean(LeaderElection.class);
+
+        // 終了する時は、リースを解放する前に稼働系としての処理を止める
+        var stopping = new AtomicBoolean();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (stopping) {
+                stopping.set(true);
+                System.out.println(PREFIX + "STANDBY " + System.currentTimeMillis());
+            }
+            context.close();
+        }));
+
+        var leader = false;
+        var lastLeaderMillis = 0L;
+        while (true) {
+            synchronized (stopping) {
+                if (stopping.get()) {
+                    return;
+                }
+                var now = System.currentTimeMillis();
+                var current = election.isLeader();
+                if (current && !leader) {
+                    System.out.println(PREFIX + "LEADER " + now);
+                } else if (!current && leader) {
+                    System.out.println(PREFIX + "STANDBY " + lastLeaderMillis);
+                }
+                if (current) {
+                    lastLeaderMillis = now;
+                }
+                leader = current;
+            }
+            Thread.sleep(5L);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ghgande.j2mod.modbus.ModbusException;
+import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+import com.ghgande.j2mod.modbus.slave.ModbusSlave;
+import com.ghgande.j2mod.modbus.slave.ModbusSlaveFactory;
+
+import lombok.Getter;
+
+/**
+ * 模擬GTI (Modbus TCPスレーブ)
+ * 
+ * <p>
+ * GridTieInverterDeviceが読み込むレジスタ(86番: 発電電力x10)を模擬発電電力カーブで応答する。
+ * 出力制限のレジスタ(W x 10)を指定した場合は、書き込まれた出力制限で発電電力を頭打ちにする。
+ * </p>
+ */
+public class FakeGtiSlave implements AutoCloseable {
+    /** 発電電力のレジスタアドレス */
+    private static final int POWER_REGISTER = 86;
+
+    private final ModbusSlave slave;
+    /** 待ち受けポート */
+    @Getter
+    private final int port;
+    /** 最後にレジスタを読まれた時刻(ナノ秒) */
+    @Getter
+    private volatile long lastReadNanos;
+    /** レジスタ読み込み回数 */
+    @Getter
+    private final AtomicLong readCount = new AtomicLong();
+    /** 出力制限のレジスタ (指定なしの場合はnull) */
+    private final SimpleRegister limit;
+    /** 1リクエストの応答時間(ミリ秒) */
+    private final long latencyMillis;
+
+    /**
+     * 起動
+     * 
+     * @param port   待ち受けポート
+     * @param unitId ユニットID
+     * @param curve  発電電力カーブ
+     * @throws ModbusException
+     */
+    public FakeGtiSlave(int port, int unitId, PowerCurve curve) throws ModbusException {
+        this(port, unitId, curve, null);
+    }
+
+    /**
+     * 起動 (出力制限のレジスタあり)
+     * 
+     * @param port          待ち受けポート
+     * @param unitId        ユニットID
+     * @param curve         発電電力カーブ
+     * @param limitRegister 出力制限のレジスタアドレス(86番以外、指定なしの場合はnull)
+     * @throws ModbusException
+     */
+    public FakeGtiSlave(int port, int unitId, PowerCurve curve, Integer limitRegister) throws ModbusException {
+        this(port, new int[] { unitId }, curve, limitRegister, 0L, false);
+    }
+
+    /**
+     * 起動 (RS-485ゲートウェイの模擬)
+     * 
+     * @param port          待ち受けポート
+     * @param unitIds       ゲートウェイ配下のユニットID (全ユニットが同じ発電電力を応答)
+     * @param curve         発電電力カーブ
+     * @param limitRegister 出力制限のレジスタアドレス(86番以外、指定なしの場合はnull)
+     * @param latencyMillis 1リクエストの応答時間(ミリ秒、RS-485の伝送時間の模擬)
+     * @param rtuOverTcp    RTU over TCPで応答するかどうか
+     * @throws ModbusException
+     */
+    public FakeGtiSlave(int port, int[] unitIds, PowerCurve curve, Integer limitRegister, long latencyMillis,
+            boolean rtuOverTcp) throws ModbusException {
+        this.port = port;
+        this.limit = limitRegister == null ? null : new SimpleRegister(0xFFFF);
+        this.latencyMillis = latencyMillis;
+
+        var image = new SimpleProcessImage(unitIds[0]);
+        var registers = Math.max(POWER_REGISTER, limitRegister == null ? 0 : limitRegister) + 1;
+        for (int i = 0; i < registers; i++) {
+            if (limitRegister != null && i == limitRegister) {
+                image.addRegister(limit);
+            } else if (i == POWER_REGISTER) {
+                image.addRegister(powerRegister(curve));
+            } else {
+                image.addRegister(new SimpleRegister(0));
+            }
+        }
+
+        slave = ModbusSlaveFactory.createTCPSlave(port, 2, rtuOverTcp);
+        for (var unitId : unitIds) {
+            slave.addProcessImage(unitId, image);
+        }
+        slave.open();
+    }
+
+    /**
+     * 現在の出力制限
+     * 
+     * @return 出力制限(W、出力制限のレジスタなしの場合はnull)
+     */
+    public Double currentLimit() {
+        return limit == null ? null : limit.getValue() / 10D;
+    }
+
+    /**
+     * 発電電力のレジスタ
+     */
+    private SimpleRegister powerRegister(PowerCurve curve) {
+        return new SimpleRegister(0) {
+            @Override
+            public synchronized int getValue() {
+                if (latencyMillis > 0) {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                lastReadNanos = System.nanoTime();
+                readCount.incrementAndGet();
+                var power = curve.currentPower();
+                if (limit != null) {
+                    power = Math.min(power, limit.getValue() / 10D);
+                }
+                return (int) Math.round(power * 10D);
+            }
+
+            @Override
+            public synchronized byte[] toBytes() {
+                var value = getValue();
+                return new byte[] { (byte) (value >> 8), (byte) value };
+            }
+        };
+    }
+
+    /**
+     * 同じゲートウェイ配下に別のユニットを追加 (スマートメーターなど)
+     * 
+     * @param unitId ユニットID
+     * @param image  ユニットのレジスタ
+     */
+    public void addUnit(int unitId, ProcessImage image) {
+        slave.addProcessImage(unitId, image);
+    }
+
+    @Override
+    public void close() {
+        ModbusSlaveFactory.close(slave);
+    }
+}
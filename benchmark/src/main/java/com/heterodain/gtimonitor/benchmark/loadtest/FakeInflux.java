@@ -0,0 +1,103 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 模擬InfluxDB (ラインプロトコルの書き込みAPIのみ)
+ *
+ * <pre>
+ * /api/v2/write?org=..&amp;bucket=..&amp;precision=ms (POST)
+ * /write?db=..&amp;precision=ms                    (POST)
+ * </pre>
+ */
+public class FakeInflux implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /** 応答遅延(ミリ秒) */
+    @Setter
+    private volatile long latencyMillis;
+    /** エラー応答(HTTP 503)を返すかどうか */
+    @Setter
+    private volatile boolean failing;
+
+    /** 受信リクエスト数 */
+    @Getter
+    private final AtomicLong requestCount = new AtomicLong();
+    /** 受信した行数 */
+    @Getter
+    private final AtomicLong lineCount = new AtomicLong();
+    /** 受信したフィールド数 */
+    @Getter
+    private final AtomicLong fieldCount = new AtomicLong();
+    /** 最後に受信した行 */
+    @Getter
+    private volatile String lastLine;
+
+    /**
+     * 起動
+     *
+     * @throws IOException
+     */
+    public FakeInflux() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(2);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * ベースURL取得
+     *
+     * @return ベースURL
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requestCount.incrementAndGet();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failing) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        for (var line : body.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            lineCount.incrementAndGet();
+            // 測定名・タグ, フィールド, 時刻 (エスケープの無い行のみ数える)
+            var parts = line.split(" ");
+            fieldCount.addAndGet(parts.length < 2 ? 0 : parts[1].split(",").length);
+            lastLine = line;
+        }
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 模擬照度センサー (Arduino + BH1750FVI のシリアル応答をTCPで模擬)
+ * 
+ * <p>
+ * "GET" を受信する度に、発電電力カーブに応じた照度を1行で応答する。
+ * </p>
+ */
+@Slf4j
+public class FakeLightSensor implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    /** 発電電力カーブ */
+    private final PowerCurve curve;
+    /** 最後に照度を応答した時刻(ナノ秒) */
+    @Getter
+    private volatile long lastReadNanos;
+    /** 応答回数 */
+    @Getter
+    private final AtomicLong readCount = new AtomicLong();
+    /** 接続中のソケット */
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    /** 応答を止めるかどうか (USB-シリアル変換器の応答停止の模擬) */
+    @Setter
+    private volatile boolean stalled;
+
+    /**
+     * 起動
+     * 
+     * @param curve 発電電力カーブ
+     * @throws IOException
+     */
+    public FakeLightSensor(PowerCurve curve) throws IOException {
+        this(curve, 0);
+    }
+
+    /**
+     * 起動 (待ち受けポートを指定、再起動の模擬)
+     * 
+     * @param curve 発電電力カーブ
+     * @param port  待ち受けポート(0の場合は空きポート)
+     * @throws IOException
+     */
+    public FakeLightSensor(PowerCurve curve, int port) throws IOException {
+        this.curve = curve;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+        executor.submit(this::accept);
+    }
+
+    /**
+     * 待ち受けポート取得
+     * 
+     * @return ポート
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                executor.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("模擬照度センサーの接続受付に失敗しました。", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        sockets.add(socket);
+        try (socket) {
+            var in = socket.getInputStream();
+            var out = socket.getOutputStream();
+            var command = new byte[3];
+            while (in.readNBytes(command, 0, 3) == 3) {
+                if (stalled) {
+                    continue;
+                }
+                out.write(String.format("%.1f\r\n", curve.currentLux()).getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                lastReadNanos = System.nanoTime();
+                readCount.incrementAndGet();
+            }
+        } catch (IOException e) {
+            log.debug("模擬照度センサーの接続が切れました。", e);
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (var socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,91 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.ghgande.j2mod.modbus.procimg.ProcessImage;
+import com.ghgande.j2mod.modbus.procimg.SimpleInputRegister;
+import com.ghgande.j2mod.modbus.procimg.SimpleProcessImage;
+
+import lombok.Getter;
+
+/**
+ * 模擬スマートメーター (Eastron SDM630互換の入力レジスタ)
+ *
+ * <p>
+ * 家の負荷から模擬発電電力を引いた正味の電力(買電が正)を、32ビット浮動小数点数で応答する。
+ * 電圧・周波数・積算電力量は固定値。模擬GTIと同じゲートウェイ配下のユニットとして追加する。
+ * </p>
+ */
+public class FakeMeter {
+    /** 正味の電力のレジスタアドレス */
+    private static final int POWER_REGISTER = 0x0034;
+    /** 入力レジスタ数 (積算売電電力量まで) */
+    private static final int REGISTERS = 0x004C;
+
+    /** ユニットのレジスタ */
+    @Getter
+    private final ProcessImage image;
+    /** 最後に応答した正味の電力(W) */
+    @Getter
+    private volatile float lastPower;
+    /** 正味の電力の読み込み回数 */
+    @Getter
+    private final AtomicLong readCount = new AtomicLong();
+
+    /**
+     * コンストラクタ
+     *
+     * @param unitId ユニットID
+     * @param curve  発電電力カーブ
+     * @param load   家の負荷(W)
+     */
+    public FakeMeter(int unitId, PowerCurve curve, double load) {
+        var image = new SimpleProcessImage(unitId);
+        for (int i = 0; i < REGISTERS; i++) {
+            if (i == POWER_REGISTER) {
+                image.addInputRegister(new FloatHalf(true, () -> {
+                    readCount.incrementAndGet();
+                    lastPower = (float) (load - curve.currentPower());
+                    return lastPower;
+                }));
+            } else if (i == POWER_REGISTER + 1) {
+                image.addInputRegister(new FloatHalf(false, () -> lastPower));
+            } else if (i == 0x0000 || i == 0x0046) {
+                var value = i == 0 ? 230F : 50F;
+                image.addInputRegister(new FloatHalf(true, () -> value));
+                image.addInputRegister(new FloatHalf(false, () -> value));
+                i++;
+            } else {
+                image.addInputRegister(new SimpleInputRegister(0));
+            }
+        }
+        this.image = image;
+    }
+
+    /**
+     * 32ビット浮動小数点数の上位・下位ワード
+     */
+    private static class FloatHalf extends SimpleInputRegister {
+        private final boolean high;
+        private final Supplier<Float> value;
+
+        FloatHalf(boolean high, Supplier<Float> value) {
+            super(0);
+            this.high = high;
+            this.value = value;
+        }
+
+        @Override
+        public synchronized int getValue() {
+            var bits = Float.floatToIntBits(value.get());
+            return high ? (bits >>> 16) : (bits & 0xFFFF);
+        }
+
+        @Override
+        public synchronized byte[] toBytes() {
+            var word = getValue();
+            return new byte[] { (byte) (word >> 8), (byte) word };
+        }
+    }
+}
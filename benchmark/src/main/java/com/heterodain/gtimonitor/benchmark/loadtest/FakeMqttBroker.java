@@ -0,0 +1,138 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 模擬MQTTブローカー (MQTT 3.1.1のCONNECT・PUBLISH(QoS 0)・PINGREQ・DISCONNECTのみ)
+ *
+ * <p>
+ * 受信したメッセージは数えるだけで配信しない。
+ * </p>
+ */
+@Slf4j
+public class FakeMqttBroker implements AutoCloseable {
+    private final ServerSocket server;
+    private final Thread acceptThread;
+
+    /** PINGRESPを返す前の遅延(ミリ秒) */
+    @Setter
+    private volatile long latencyMillis;
+
+    /** 接続数 */
+    @Getter
+    private final AtomicLong connectCount = new AtomicLong();
+    /** 受信したメッセージ数 */
+    @Getter
+    private final AtomicLong publishCount = new AtomicLong();
+    /** 最後に受信したトピック */
+    @Getter
+    private volatile String lastTopic;
+    /** 最後に受信したメッセージ */
+    @Getter
+    private volatile String lastPayload;
+
+    /**
+     * 起動
+     *
+     * @throws IOException
+     */
+    public FakeMqttBroker() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    var socket = server.accept();
+                    var thread = new Thread(() -> serve(socket), "fake-mqtt-" + socket.getPort());
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "fake-mqtt-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * ポート取得
+     *
+     * @return ポート
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            var in = new DataInputStream(socket.getInputStream());
+            var out = socket.getOutputStream();
+            while (true) {
+                var type = in.read();
+                if (type < 0) {
+                    return;
+                }
+                int length = 0;
+                int shift = 0;
+                int digit;
+                do {
+                    digit = in.readUnsignedByte();
+                    length |= (digit & 0x7F) << shift;
+                    shift += 7;
+                } while ((digit & 0x80) != 0);
+                var body = new byte[length];
+                in.readFully(body);
+
+                switch (type & 0xF0) {
+                    case 0x10: // CONNECT
+                        connectCount.incrementAndGet();
+                        write(out, 0x20, 2, 0, 0);
+                        break;
+                    case 0x30: // PUBLISH
+                        var topicLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                        lastTopic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+                        lastPayload = new String(body, 2 + topicLength, body.length - 2 - topicLength,
+                                StandardCharsets.UTF_8);
+                        publishCount.incrementAndGet();
+                        break;
+                    case 0xC0: // PINGREQ
+                        Thread.sleep(latencyMillis);
+                        write(out, 0xD0, 0);
+                        break;
+                    case 0xE0: // DISCONNECT
+                        return;
+                    default:
+                        log.warn("未対応のパケットを受信しました: 0x{}", Integer.toHexString(type));
+                        return;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("模擬MQTTブローカーの接続が切断されました。", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(OutputStream out, int... bytes) throws IOException {
+        for (var b : bytes) {
+            out.write(b);
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
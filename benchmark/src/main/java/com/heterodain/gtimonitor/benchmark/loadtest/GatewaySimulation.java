@@ -0,0 +1,133 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.config.DeviceConfig.Transport;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 複数ゲートウェイのGTI読み込みのシミュレーション
+ *
+ * <p>
+ * Ethernet-RS485ゲートウェイを模擬GTI(Modbus TCP・RTU over TCPスレーブ)で模擬し、ゲートウェイ毎に
+ * 複数のユニットIDのGTIを置く。ゲートウェイ数を増やしながら、GridTieInverterDeviceで全GTIの発電電力を
+ * 読み込む1周期の所要時間を計測する。同じバスのGTIは順に読み込むため、ゲートウェイ1台の周期が下限となる。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.GatewaySimulation \
+ *     --gateways=1,2,4,8 --units=4 --latency=20 --cycles=20 --transport=RTU_OVER_TCP
+ * </pre>
+ */
+@Slf4j
+public class GatewaySimulation {
+    /** ゲートウェイ数 */
+    private int[] gateways = { 1, 2, 4, 8 };
+    /** ゲートウェイ毎のGTI数 */
+    private int units = 4;
+    /** 1リクエストの応答時間(ミリ秒) */
+    private long latencyMillis = 20;
+    /** 計測する周期数 */
+    private int cycles = 20;
+    /** 接続方式 */
+    private Transport transport = Transport.TCP;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new GatewaySimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "gateways":
+                    simulation.gateways = Arrays.stream(kv[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "units":
+                    simulation.units = Integer.parseInt(kv[1]);
+                    break;
+                case "latency":
+                    simulation.latencyMillis = Long.parseLong(kv[1]);
+                    break;
+                case "cycles":
+                    simulation.cycles = Integer.parseInt(kv[1]);
+                    break;
+                case "transport":
+                    simulation.transport = Transport.valueOf(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        if (transport == Transport.SERIAL) {
+            throw new IllegalArgumentException("シリアル通信は模擬できません。");
+        }
+        Double baseMillis = null;
+        for (var gatewayCount : gateways) {
+            var cycleMillis = measure(gatewayCount);
+            if (baseMillis == null) {
+                baseMillis = cycleMillis / gatewayCount;
+            }
+            log.info("{} ゲートウェイ={}台, GTI={}台, 1周期={}ms (直列に読み込んだ場合の{}%)", transport, gatewayCount,
+                    gatewayCount * units, String.format("%.1f", cycleMillis),
+                    String.format("%.1f", cycleMillis * 100D / (baseMillis * gatewayCount)));
+        }
+    }
+
+    /**
+     * 1周期の平均所要時間を計測
+     *
+     * @param gatewayCount ゲートウェイ数
+     * @return 平均所要時間(ミリ秒)
+     */
+    private double measure(int gatewayCount) throws Exception {
+        var unitIds = IntStream.rangeClosed(1, units).toArray();
+        var slaves = new ArrayList<FakeGtiSlave>();
+        try (var device = new GridTieInverterDevice()) {
+            var configs = new ArrayList<DeviceConfig.Gti>();
+            for (int g = 0; g < gatewayCount; g++) {
+                var slave = new FakeGtiSlave(freePort(), unitIds, new PowerCurve(300D, 60_000L, g), null,
+                        latencyMillis, transport == Transport.RTU_OVER_TCP);
+                slaves.add(slave);
+                for (var unitId : unitIds) {
+                    var config = new DeviceConfig.Gti();
+                    config.setTransport(transport);
+                    config.setHost("127.0.0.1");
+                    config.setPort(slave.getPort());
+                    config.setUnitId(unitId);
+                    configs.add(config);
+                }
+            }
+            var reconnect = new DeviceConfig.Reconnect();
+            reconnect.setAsyncStart(false);
+            device.connect(configs, reconnect);
+
+            // 接続直後の1周期は計測しない
+            device.getCurrentPower();
+            var start = System.nanoTime();
+            for (int i = 0; i < cycles; i++) {
+                device.getCurrentPower();
+            }
+            return (System.nanoTime() - start) / 1_000_000D / cycles;
+        } finally {
+            slaves.forEach(FakeGtiSlave::close);
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.control.LocalController;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * GTI出力制限によるローカル制御のシミュレーション
+ *
+ * <p>
+ * 出力制限レジスタを持つ模擬GTI(Modbus TCPスレーブ)に対して、GridTieInverterDeviceと
+ * LocalControllerで出力制限を調整し、書き込み(読み込み確認込み)の所要時間と、
+ * 目標出力を超えた発電電力(余剰)を計測する。模擬発電電力カーブは計測時間で1日分を進める。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.GtiLimitSimulation \
+ *     --duration=60 --interval=500 --target=60 --peak=150
+ * </pre>
+ */
+@Slf4j
+public class GtiLimitSimulation {
+    /** 模擬GTIの出力制限のレジスタアドレス */
+    private static final int LIMIT_REGISTER = 40;
+
+    /** 計測時間(秒) */
+    private int durationSeconds = 60;
+    /** サンプリング間隔(ミリ秒) */
+    private long intervalMillis = 500;
+    /** 目標出力(W) */
+    private double target = 60D;
+    /** 最大発電電力(W) */
+    private double peakPower = 150D;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new GtiLimitSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "duration":
+                    simulation.durationSeconds = Integer.parseInt(kv[1]);
+                    break;
+                case "interval":
+                    simulation.intervalMillis = Long.parseLong(kv[1]);
+                    break;
+                case "target":
+                    simulation.target = Double.parseDouble(kv[1]);
+                    break;
+                case "peak":
+                    simulation.peakPower = Double.parseDouble(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var curve = new PowerCurve(peakPower, durationSeconds * 1000L, 1L);
+        try (var gti = new FakeGtiSlave(freePort(), 1, curve, LIMIT_REGISTER);
+                var device = new GridTieInverterDevice()) {
+
+            var gtiConfig = new DeviceConfig.Gti();
+            gtiConfig.setHost("127.0.0.1");
+            gtiConfig.setPort(gti.getPort());
+            gtiConfig.setUnitId(1);
+            gtiConfig.setLimitRegister(LIMIT_REGISTER);
+            gtiConfig.setLimitMax(peakPower);
+            device.connect(gtiConfig);
+
+            var powerConfig = new ControlConfig.Power();
+            powerConfig.setMode(ControlConfig.Power.Mode.LOCAL);
+            powerConfig.setLocalTarget(target);
+            var controller = new LocalController(powerConfig, gtiConfig);
+
+            Double currentLimit = device.getPowerLimit();
+            var writeMillis = new ArrayList<Double>();
+            var samples = 0;
+            var surplus = 0D;
+            var end = System.currentTimeMillis() + durationSeconds * 1000L;
+            while (System.currentTimeMillis() < end) {
+                var power = device.getCurrentPower();
+                samples++;
+                surplus += Math.max(0D, power - target);
+
+                var nextLimit = controller.onSample(System.currentTimeMillis(), power, currentLimit);
+                if (nextLimit != null) {
+                    var start = System.nanoTime();
+                    device.setPowerLimit(nextLimit);
+                    writeMillis.add((System.nanoTime() - start) / 1_000_000D);
+                    currentLimit = nextLimit;
+                    log.debug("出力制限={}W (発電電力={}W)", nextLimit, power);
+                }
+                Thread.sleep(intervalMillis);
+            }
+
+            Collections.sort(writeMillis);
+            log.info("サンプル数={}, 書き込み回数={}, 書き込み所要時間 p50={}ms max={}ms", samples, writeMillis.size(),
+                    writeMillis.isEmpty() ? null : String.format("%.2f", writeMillis.get(writeMillis.size() / 2)),
+                    writeMillis.isEmpty() ? null : String.format("%.2f", writeMillis.get(writeMillis.size() - 1)));
+            log.info("目標出力={}W, 目標を超えた発電電力の平均={}W, 最終の出力制限={}W", target,
+                    String.format("%.2f", surplus / samples), gti.currentLimit());
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
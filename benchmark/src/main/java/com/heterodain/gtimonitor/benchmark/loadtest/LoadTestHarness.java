@@ -0,0 +1,377 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.api.ApiServer;
+import com.heterodain.gtimonitor.api.LiveStore;
+import com.heterodain.gtimonitor.config.ApiConfig;
+import com.heterodain.gtimonitor.config.AppConfig;
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.config.CostConfig;
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.config.HaConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+import com.heterodain.gtimonitor.device.LightSensorDevice;
+import com.heterodain.gtimonitor.device.ModbusBusPool;
+import com.heterodain.gtimonitor.device.ModbusDeviceRegistry;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+import com.heterodain.gtimonitor.service.AmbientService;
+import com.heterodain.gtimonitor.service.HiveService;
+import com.heterodain.gtimonitor.service.OpenWeatherService;
+import com.heterodain.gtimonitor.sink.TelemetrySinks;
+import com.heterodain.gtimonitor.task.GridTieInverterTasks;
+import com.heterodain.gtimonitor.util.VirtualThreadTaskScheduler;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * エンドツーエンドの負荷試験ハーネス
+ *
+ * <p>
+ * 模擬GTI(Modbus TCPスレーブ)・模擬照度センサー・Ambient/Hive/OpenWeatherのスタブを起動し、
+ * N台分のGridTieInverterTasksを加速したスケジュールで動かして、
+ * サンプル取得からAmbientへの送信までの遅延・スループット・ヒープ使用量を計測する。
+ * 外部ネットワークやシリアルポートは使用しない。
+ * タスクはアプリケーションと同じスケジューラーで実行し、--virtual-threads=trueの場合は実行毎に仮想スレッドで実行する
+ * (Java 21以降)。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.LoadTestHarness \
+ *     --sizes=1,2,4,8,16 --duration=60 --speed=18 --latency=50 --error-rate=0.01 --threads=4 --virtual-threads=false
+ * </pre>
+ */
+@Slf4j
+public class LoadTestHarness {
+    /** 照度の取得間隔(ミリ秒、等速時) */
+    private static final long LIGHT_INTERVAL = 3 * 1000;
+    /** GTIの取得間隔(ミリ秒、等速時) */
+    private static final long GTI_INTERVAL = 30 * 1000;
+    /** Ambientへの送信間隔(ミリ秒、等速時) */
+    private static final long SEND_INTERVAL = 3 * 60 * 1000;
+    /** Power Limit制御の間隔(ミリ秒、等速時) */
+    private static final long CONTROL_INTERVAL = 15 * 60 * 1000;
+    /** Ambientのチャネル毎の最小送信間隔(ミリ秒) */
+    private static final long AMBIENT_MIN_INTERVAL = 6 * 1000;
+
+    /** 試験する台数 */
+    private List<Integer> sizes = List.of(1, 2, 4, 8);
+    /** 1ステップの計測時間(秒) */
+    private int durationSeconds = 60;
+    /** 加速倍率 */
+    private double speed = 18D;
+    /** スタブの応答遅延(ミリ秒) */
+    private long latencyMillis = 0;
+    /** スタブのエラー応答割合 */
+    private double errorRate = 0D;
+    /** タスクスケジューラのスレッド数 */
+    private int threads = 4;
+    /** タスクを仮想スレッドで実行するかどうか */
+    private boolean virtualThreads = false;
+    /** スタブの処理スレッド数 (省略時はタスクスケジューラのスレッド数×2) */
+    private Integer stubThreads;
+
+    /**
+     * 負荷試験の1サイト分
+     */
+    private static class Site {
+        int channelId;
+        FakeGtiSlave gti;
+        FakeLightSensor light;
+        AnnotationConfigApplicationContext context;
+        GridTieInverterTasks tasks;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var harness = new LoadTestHarness();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "sizes":
+                    harness.sizes = Arrays.stream(kv[1].split(",")).map(Integer::valueOf).collect(Collectors.toList());
+                    break;
+                case "duration":
+                    harness.durationSeconds = Integer.parseInt(kv[1]);
+                    break;
+                case "speed":
+                    harness.speed = Double.parseDouble(kv[1]);
+                    break;
+                case "latency":
+                    harness.latencyMillis = Long.parseLong(kv[1]);
+                    break;
+                case "error-rate":
+                    harness.errorRate = Double.parseDouble(kv[1]);
+                    break;
+                case "threads":
+                    harness.threads = Integer.parseInt(kv[1]);
+                    break;
+                case "virtual-threads":
+                    harness.virtualThreads = Boolean.parseBoolean(kv[1]);
+                    break;
+                case "stub-threads":
+                    harness.stubThreads = Integer.valueOf(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+        if (SEND_INTERVAL / harness.speed < AMBIENT_MIN_INTERVAL) {
+            throw new IllegalArgumentException("加速倍率が大きすぎます (Ambientの送信間隔が6秒未満になります)");
+        }
+
+        harness.run();
+    }
+
+    /**
+     * 全ステップ実行
+     */
+    public void run() throws Exception {
+        var results = new ArrayList<String>();
+        results.add(String.format("%5s %10s %10s %10s %10s %10s %8s %12s %12s %10s", "N", "samples/s", "posts/s",
+                "p50(ms)", "p95(ms)", "max(ms)", "errors", "heap(KB)", "heap/N(KB)", "threads/N"));
+
+        try (var stub = new StubHttpServer(stubThreads != null ? stubThreads : threads * 2)) {
+            stub.setLatencyMillis(latencyMillis);
+
+            // 全サイトで共有するコンポーネント (HTTPクライアント・各サービス・HTTP API)
+            try (var shared = new AnnotationConfigApplicationContext(AppConfig.class, AmbientService.class,
+                    HiveService.class, OpenWeatherService.class, ApiConfig.class, LiveStore.class, ApiServer.class,
+                    HaConfig.class, LeaderElection.class)) {
+                var baseHeap = usedHeap();
+                var baseThreads = Thread.activeCount();
+
+                for (var n : sizes) {
+                    results.add(runStep(n, stub, shared, baseHeap, baseThreads));
+                }
+            }
+        }
+
+        System.out.println(virtualThreads ? "仮想スレッドで実行 (プール" + threads + "スレッド)"
+                : "スレッドプールで実行 (" + threads + "スレッド)");
+        results.forEach(System.out::println);
+    }
+
+    /**
+     * N台で1ステップ実行
+     */
+    private String runStep(int n, StubHttpServer stub, AnnotationConfigApplicationContext shared, long baseHeap,
+            int baseThreads) throws Exception {
+        log.info("N={} の計測を開始します。", n);
+
+        // スタブのエラー注入は起動完了後に有効化
+        stub.setErrorRate(0D);
+
+        var latencies = Collections.synchronizedList(new ArrayList<Long>());
+        var posts = new AtomicLong();
+        var sites = new ArrayList<Site>();
+        var sitesByChannel = new HashMap<Integer, Site>();
+        var scheduler = newScheduler();
+        try {
+            for (int i = 0; i < n; i++) {
+                var site = startSite(i, stub, shared);
+                sites.add(site);
+                sitesByChannel.put(site.channelId, site);
+            }
+
+            stub.setAmbientPostListener(channelId -> {
+                var site = sitesByChannel.get(channelId);
+                if (site == null) {
+                    return;
+                }
+                var now = System.nanoTime();
+                var lastSample = Math.max(site.gti.getLastReadNanos(), site.light.getLastReadNanos());
+                latencies.add(now - lastSample);
+                posts.incrementAndGet();
+            });
+            stub.setErrorRate(errorRate);
+
+            var reads = totalReads(sites);
+            var errors = stub.getErrorCount().get();
+
+            for (var site : sites) {
+                schedule(scheduler, site.tasks::getLightData, LIGHT_INTERVAL);
+                schedule(scheduler, site.tasks::getGtiData, GTI_INTERVAL);
+                schedule(scheduler, () -> {
+                    try {
+                        site.tasks.sendAmbient1();
+                    } catch (Exception e) {
+                        log.warn("3分値の送信に失敗しました。: {}", e.getMessage());
+                    }
+                }, SEND_INTERVAL);
+                schedule(scheduler, () -> {
+                    try {
+                        site.tasks.controlPower();
+                    } catch (Exception e) {
+                        log.warn("Power Limit制御に失敗しました。: {}", e.getMessage());
+                    }
+                }, CONTROL_INTERVAL);
+            }
+
+            Thread.sleep(durationSeconds * 1000L);
+
+            var samples = totalReads(sites) - reads;
+            var heap = usedHeap() - baseHeap;
+            var threadsPerSite = (Thread.activeCount() - baseThreads - threads) / (double) n;
+
+            List<Long> sorted;
+            synchronized (latencies) {
+                sorted = new ArrayList<>(latencies);
+            }
+            Collections.sort(sorted);
+            return String.format("%5d %10.1f %10.2f %10.1f %10.1f %10.1f %8d %12d %12d %10.1f", n,
+                    samples / (double) durationSeconds, posts.get() / (double) durationSeconds,
+                    percentile(sorted, 0.50D), percentile(sorted, 0.95D), percentile(sorted, 1D),
+                    stub.getErrorCount().get() - errors, heap / 1024, heap / 1024 / n, threadsPerSite);
+
+        } finally {
+            scheduler.getScheduledThreadPoolExecutor().shutdownNow();
+            scheduler.getScheduledThreadPoolExecutor().awaitTermination(10, TimeUnit.SECONDS);
+            stub.setAmbientPostListener(channelId -> {
+            });
+            for (var site : sites) {
+                site.context.close();
+                site.gti.close();
+                site.light.close();
+            }
+        }
+    }
+
+    /**
+     * 1サイト分(模擬GTI・デバイス・タスク)を起動
+     */
+    private Site startSite(int index, StubHttpServer stub, AnnotationConfigApplicationContext shared)
+            throws Exception {
+        var site = new Site();
+        site.channelId = 10000 + index;
+
+        var curve = new PowerCurve(900D, (long) (24 * 60 * 60 * 1000 / speed), index);
+        site.gti = new FakeGtiSlave(freePort(), 1, curve);
+        site.light = new FakeLightSensor(curve);
+
+        var deviceConfig = new DeviceConfig();
+        var lightSensorConfig = new DeviceConfig.LightSensor();
+        lightSensorConfig.setHost("127.0.0.1");
+        lightSensorConfig.setPort(site.light.getPort());
+        deviceConfig.setLightSensor(lightSensorConfig);
+        var gtiConfig = new DeviceConfig.Gti();
+        gtiConfig.setHost("127.0.0.1");
+        gtiConfig.setPort(site.gti.getPort());
+        gtiConfig.setUnitId(1);
+        deviceConfig.setGti(gtiConfig);
+
+        var serviceConfig = new ServiceConfig();
+        var ambient = new ServiceConfig.AmbientChannel();
+        var current = new ServiceConfig.AmbientApi();
+        current.setBaseUrl(stub.baseUrl("ambient"));
+        current.setChannelId(site.channelId);
+        current.setReadKey("readkey");
+        current.setWriteKey("writekey");
+        ambient.setCurrent(current);
+        serviceConfig.setAmbient(ambient);
+        var openWeather = new ServiceConfig.OpenWeatherApi();
+        openWeather.setBaseUrl(stub.baseUrl("openweather"));
+        openWeather.setCityId("1848354");
+        openWeather.setApiKey("apikey");
+        serviceConfig.setOpenWeatherApi(openWeather);
+        var hive = new ServiceConfig.HiveApi();
+        hive.setBaseUrl(stub.baseUrl("hive"));
+        hive.setFarmId(9999999);
+        hive.setWorkerId(99999999);
+        hive.setPersonalToken("token");
+        serviceConfig.setHiveApi(hive);
+
+        var costConfig = new CostConfig();
+        costConfig.setKwh(33D);
+
+        var controlConfig = new ControlConfig();
+        var power = new ControlConfig.Power();
+        power.setHighProfileName("HIGH");
+        power.setLowProfileName("LOW");
+        power.setSource(Source.GTI);
+        power.setThreshold(110);
+        power.setHysteresis(15);
+        controlConfig.setPower(power);
+
+        var context = new AnnotationConfigApplicationContext();
+        context.setParent(shared);
+        context.registerBean(DeviceConfig.class, () -> deviceConfig);
+        context.registerBean(ServiceConfig.class, () -> serviceConfig);
+        context.registerBean(CostConfig.class, () -> costConfig);
+        context.registerBean(ControlConfig.class, () -> controlConfig);
+        context.registerBean(SinkConfig.class, SinkConfig::new);
+        context.register(ModbusBusPool.class, GridTieInverterDevice.class, LightSensorDevice.class,
+                ModbusDeviceRegistry.class, TelemetrySinks.class, LiveStore.class, GridTieInverterTasks.class);
+        context.refresh();
+
+        site.context = context;
+        site.tasks = context.getBean(GridTieInverterTasks.class);
+        return site;
+    }
+
+    private static long totalReads(List<Site> sites) {
+        return sites.stream().mapToLong(s -> s.gti.getReadCount().get() + s.light.getReadCount().get()).sum();
+    }
+
+    /**
+     * タスクスケジューラを生成 (仮想スレッドで実行する場合も、実行時刻の管理は同じスレッド数のプールで行う)
+     */
+    private ThreadPoolTaskScheduler newScheduler() {
+        ThreadPoolTaskScheduler scheduler;
+        if (virtualThreads) {
+            var factory = VirtualThreadTaskScheduler.virtualThreadFactory("task-");
+            if (factory == null) {
+                throw new IllegalStateException("仮想スレッドにはJava 21以降が必要です");
+            }
+            scheduler = new VirtualThreadTaskScheduler(factory);
+        } else {
+            scheduler = new ThreadPoolTaskScheduler();
+        }
+        scheduler.setPoolSize(threads);
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    private void schedule(ThreadPoolTaskScheduler scheduler, Runnable task, long interval) {
+        var scaled = Math.max(1L, (long) (interval / speed));
+        scheduler.scheduleWithFixedDelay(task, new Date(System.currentTimeMillis() + scaled), scaled);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        var index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1_000_000D;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static int freePort() throws Exception {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
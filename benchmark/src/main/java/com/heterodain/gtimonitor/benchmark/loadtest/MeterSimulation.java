@@ -0,0 +1,154 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.config.DeviceConfig.ModbusDeviceType;
+import com.heterodain.gtimonitor.config.DeviceConfig.Transport;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+import com.heterodain.gtimonitor.device.ModbusBusPool;
+import com.heterodain.gtimonitor.device.ModbusDeviceRegistry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * GTIとスマートメーターのバス共有のシミュレーション
+ *
+ * <p>
+ * 1台のゲートウェイ配下に模擬GTI(ユニット1)と模擬スマートメーター(ユニット2、SDM630互換)を置き、
+ * GridTieInverterDeviceとModbusDeviceRegistryを別々のスレッドから同時に読み込む。
+ * バスが1本だけ開かれること、同じバスのリクエストが混ざらずに読めること(売電電力がメーターの応答と一致すること)、
+ * 同じレジスタの計測値(power・export)が1回の読み込みで済むことを確認する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.MeterSimulation \
+ *     --seconds=5 --latency=5 --interval=50
+ * </pre>
+ */
+@Slf4j
+public class MeterSimulation {
+    /** 計測時間(秒) */
+    private int seconds = 5;
+    /** 1レジスタの応答時間(ミリ秒) */
+    private long latencyMillis = 5;
+    /** 読み込み間隔(ミリ秒) */
+    private long intervalMillis = 50;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new MeterSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "seconds":
+                    simulation.seconds = Integer.parseInt(kv[1]);
+                    break;
+                case "latency":
+                    simulation.latencyMillis = Long.parseLong(kv[1]);
+                    break;
+                case "interval":
+                    simulation.intervalMillis = Long.parseLong(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var port = freePort();
+        var curve = new PowerCurve(300D, 60_000L, 1L);
+        var meter = new FakeMeter(2, curve, 200D);
+        var gateway = new FakeGtiSlave(port, new int[] { 1 }, curve, null, latencyMillis, false);
+        gateway.addUnit(2, meter.getImage());
+
+        var busPool = new ModbusBusPool();
+        var reconnect = new DeviceConfig.Reconnect();
+        reconnect.setAsyncStart(false);
+        try (var gtiDevice = new GridTieInverterDevice(); var registry = new ModbusDeviceRegistry()) {
+            gtiDevice.setBusPool(busPool);
+            registry.setBusPool(busPool);
+
+            var gtiConfig = new DeviceConfig.Gti();
+            gtiConfig.setTransport(Transport.TCP);
+            gtiConfig.setHost("127.0.0.1");
+            gtiConfig.setPort(port);
+            gtiConfig.setUnitId(1);
+            gtiDevice.connect(List.of(gtiConfig), reconnect);
+
+            var meterConfig = new DeviceConfig.ModbusDevice();
+            meterConfig.setName("meter");
+            meterConfig.setType(ModbusDeviceType.SDM630);
+            meterConfig.setTransport(Transport.TCP);
+            meterConfig.setHost("127.0.0.1");
+            meterConfig.setPort(port);
+            meterConfig.setUnitId(2);
+            registry.connect(List.of(meterConfig), reconnect);
+
+            var shared = gtiDevice.getConnections().size() == 1 && registry.getConnections().size() == 1
+                    && gtiDevice.getConnections().get(0) == registry.getConnections().get(0);
+            log.info("バスの共有: {}", shared ? "1本のバスを共有" : "別々のバス");
+
+            // GTIは別スレッドで読み込み続ける
+            var gtiReads = new AtomicLong();
+            var gtiErrors = new AtomicLong();
+            var deadline = System.currentTimeMillis() + seconds * 1000L;
+            var gtiThread = new Thread(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    try {
+                        gtiDevice.getCurrentPower();
+                        gtiReads.incrementAndGet();
+                        Thread.sleep(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        gtiErrors.incrementAndGet();
+                    }
+                }
+            });
+            gtiThread.start();
+
+            long polls = 0;
+            long errors = 0;
+            long mismatches = 0;
+            double totalMillis = 0;
+            while (System.currentTimeMillis() < deadline) {
+                var start = System.nanoTime();
+                try {
+                    var values = registry.poll("meter");
+                    totalMillis += (System.nanoTime() - start) / 1_000_000D;
+                    polls++;
+                    if (values.get("meter.export") != -meter.getLastPower()
+                            || values.get("meter.power") != meter.getLastPower()
+                            || values.get("meter.frequency") != 50D) {
+                        mismatches++;
+                    }
+                } catch (Exception e) {
+                    errors++;
+                }
+                Thread.sleep(intervalMillis);
+            }
+            gtiThread.join();
+
+            log.info("GTI: 読み込み={}回, 失敗={}回", gtiReads.get(), gtiErrors.get());
+            log.info("メーター: 読み込み={}回, 失敗={}回, 値の不一致={}回, 1回の所要時間={}ms, 電力レジスタの読み込み={}回", polls,
+                    errors, mismatches, String.format("%.1f", polls == 0 ? 0D : totalMillis / polls),
+                    meter.getReadCount().get());
+        } finally {
+            gateway.close();
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.pipeline.MeasureWindow;
+import com.heterodain.gtimonitor.pipeline.Stage;
+import com.heterodain.gtimonitor.pipeline.Stage.Overflow;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 計測データのパイプラインのシミュレーション
+ *
+ * <p>
+ * GridTieInverterTasksと同じ構成(filter→window→store・ambient、filter→control)のパイプラインに、
+ * 実際のサンプリング(3秒毎)より遥かに短い間隔でサンプルと区切りを流し、ambient・controlの処理を遅くする。
+ * 遅い出力先があってもサンプリングのスレッドが待たされないこと(filterで捨てるサンプルが無く、サンプルの投入時間が短いこと)、
+ * 遅い段で捨てる要素がバッファの上限で抑えられることを確認する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.PipelineSimulation \
+ *     --samples=20000 --rate=2000 --window=100 --sink=50 --control=1
+ * </pre>
+ */
+@Slf4j
+public class PipelineSimulation {
+    /** 投入するサンプル数 */
+    private int samples = 20_000;
+    /** 1秒あたりのサンプル数 */
+    private int rate = 2000;
+    /** 区切りまでのサンプル数 */
+    private int window = 100;
+    /** ambientの1件の処理時間(ミリ秒) */
+    private long sinkMillis = 50;
+    /** controlの1件の処理時間(ミリ秒) */
+    private long controlMillis = 1;
+    /** サンプルのバッファの上限 */
+    private int sampleBuffer = 1024;
+    /** 制御のバッファの上限 */
+    private int controlBuffer = 64;
+    /** 出力先のバッファの上限 */
+    private int sinkBuffer = 16;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new PipelineSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "samples":
+                    simulation.samples = Integer.parseInt(kv[1]);
+                    break;
+                case "rate":
+                    simulation.rate = Integer.parseInt(kv[1]);
+                    break;
+                case "window":
+                    simulation.window = Integer.parseInt(kv[1]);
+                    break;
+                case "sink":
+                    simulation.sinkMillis = Long.parseLong(kv[1]);
+                    break;
+                case "control":
+                    simulation.controlMillis = Long.parseLong(kv[1]);
+                    break;
+                case "sample-buffer":
+                    simulation.sampleBuffer = Integer.parseInt(kv[1]);
+                    break;
+                case "control-buffer":
+                    simulation.controlBuffer = Integer.parseInt(kv[1]);
+                    break;
+                case "sink-buffer":
+                    simulation.sinkBuffer = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var stored = new AtomicLong();
+        var storedSamples = new AtomicLong();
+        var sent = new AtomicLong();
+
+        var filterStage = new Stage<Sample, Sample>("filter", sampleBuffer, Overflow.DROP_OLDEST, Sample::isClose,
+                true, (sample, emit) -> emit.accept(sample));
+        var windowStage = new Stage<>("window", sampleBuffer, Overflow.BACKPRESSURE, true, new MeasureWindow());
+        var controlStage = new Stage<Sample, Void>("control", controlBuffer, Overflow.DROP_OLDEST, true,
+                (sample, emit) -> Thread.sleep(controlMillis));
+        var storeStage = new Stage<MeasureData, Void>("store", sinkBuffer, Overflow.BACKPRESSURE, true,
+                (data, emit) -> {
+                    stored.incrementAndGet();
+                    storedSamples.addAndGet(data.getSketches().get("power").getCount());
+                });
+        var ambientStage = new Stage<MeasureData, Void>("ambient", sinkBuffer, Overflow.DROP_OLDEST, true,
+                (data, emit) -> {
+                    Thread.sleep(sinkMillis);
+                    sent.incrementAndGet();
+                });
+        filterStage.subscribe(windowStage);
+        filterStage.subscribe(controlStage);
+        windowStage.subscribe(storeStage);
+        windowStage.subscribe(ambientStage);
+        var stages = List.of(filterStage, windowStage, controlStage, storeStage, ambientStage);
+
+        // サンプリングのスレッド
+        long maxOfferNanos = 0;
+        var intervalNanos = 1_000_000_000L / rate;
+        var start = System.nanoTime();
+        for (int i = 1; i <= samples; i++) {
+            var waitNanos = start + i * intervalNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            var offerStart = System.nanoTime();
+            filterStage.offer(Sample.of("power", System.currentTimeMillis(), i % 500));
+            if (i % window == 0) {
+                filterStage.offer(Sample.close(System.currentTimeMillis(), new MeasureData()));
+            }
+            maxOfferNanos = Math.max(maxOfferNanos, System.nanoTime() - offerStart);
+        }
+        var offerMillis = (System.nanoTime() - start) / 1_000_000D;
+
+        // filter・window・storeのバッファが空になるまで待つ
+        var windows = samples / window;
+        var deadline = System.currentTimeMillis() + 10_000L;
+        while (filterStage.getProcessed() + filterStage.getDropped() < filterStage.getReceived()
+                || windowStage.getProcessed() < windowStage.getReceived()
+                || storeStage.getProcessed() < storeStage.getReceived()) {
+            if (System.currentTimeMillis() > deadline) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+
+        log.info("投入: サンプル={}件, 区切り={}件, 所要時間={}ms, 1件の最大投入時間={}ms", samples, windows,
+                String.format("%.1f", offerMillis), String.format("%.3f", maxOfferNanos / 1_000_000D));
+        log.info("3分値: 保存={}件(サンプル{}件), Ambient送信={}件", stored.get(), storedSamples.get(), sent.get());
+        for (var stage : stages) {
+            log.info("{}: 受信={}件, 処理={}件, 破棄={}件, バッファ最大={}/{}, 処理時間={}ms, 待ち時間={}ms", stage.getName(),
+                    stage.getReceived(), stage.getProcessed(), stage.getDropped(), stage.getMaxQueued(),
+                    stage.getCapacity(), stage.getBusyMillis(), stage.getWaitMillis());
+        }
+        stages.forEach(Stage::close);
+    }
+}
@@ -0,0 +1,57 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.util.Random;
+
+/**
+ * 模擬発電電力カーブ
+ * 
+ * <p>
+ * 晴天時の日射カーブ(正弦波)に、雲による減衰をランダムに加える。
+ * </p>
+ */
+public class PowerCurve {
+    /** 最大発電電力(W) */
+    private final double peakPower;
+    /** 1日の長さ(ミリ秒、加速時は短くする) */
+    private final long dayMillis;
+    /** 開始時刻 */
+    private final long startMillis;
+    /** 雲の乱数 */
+    private final Random random;
+
+    /**
+     * コンストラクタ
+     * 
+     * @param peakPower 最大発電電力(W)
+     * @param dayMillis 1日の長さ(ミリ秒)
+     * @param seed      乱数シード
+     */
+    public PowerCurve(double peakPower, long dayMillis, long seed) {
+        this.peakPower = peakPower;
+        this.dayMillis = dayMillis;
+        this.startMillis = System.currentTimeMillis();
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 現在の発電電力
+     * 
+     * @return 発電電力(W)
+     */
+    public synchronized double currentPower() {
+        // 1日の6時～18時に発電する
+        var phase = ((System.currentTimeMillis() - startMillis) % dayMillis) / (double) dayMillis;
+        var sun = Math.max(0D, Math.sin(Math.PI * (phase * 24D - 6D) / 12D));
+        var cloud = 0.6D + random.nextDouble() * 0.4D;
+        return peakPower * sun * cloud;
+    }
+
+    /**
+     * 現在の照度
+     * 
+     * @return 照度(Lux)
+     */
+    public double currentLux() {
+        return currentPower() / peakPower * 100000D;
+    }
+}
@@ -0,0 +1,179 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.device.ConnectionSupervisor;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+import com.heterodain.gtimonitor.device.LightSensorDevice;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * デバイスの再接続のシミュレーション
+ *
+ * <p>
+ * 模擬GTI・模擬照度センサーを一定間隔で読み込みながら、途中で模擬GTIの停止・再起動、模擬照度センサーの
+ * 応答停止・停止・再起動を起こし、読み込みの所要時間の最大値(期限を超えて待たないこと)と、
+ * デバイスの復旧から読み込みが再開するまでの時間を計測する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.ReconnectSimulation --interval=500
+ * </pre>
+ */
+@Slf4j
+public class ReconnectSimulation {
+    /** 読み込み間隔(ミリ秒) */
+    private long intervalMillis = 500;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new ReconnectSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "interval":
+                    simulation.intervalMillis = Long.parseLong(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var curve = new PowerCurve(300D, 3_600_000L, 1L);
+        var gtiPort = freePort();
+        var gti = new FakeGtiSlave(gtiPort, 1, curve);
+        var light = new FakeLightSensor(curve);
+        var lightPort = light.getPort();
+
+        var reconnect = new DeviceConfig.Reconnect();
+        reconnect.setMinInterval(200L);
+        reconnect.setMaxInterval(2000L);
+        reconnect.setAsyncStart(false);
+
+        try (var gtiDevice = new GridTieInverterDevice(); var lightDevice = new LightSensorDevice()) {
+            var gtiConfig = new DeviceConfig.Gti();
+            gtiConfig.setHost("127.0.0.1");
+            gtiConfig.setPort(gtiPort);
+            gtiConfig.setUnitId(1);
+            gtiConfig.setTimeout(1000);
+            gtiConfig.setDeadline(1500);
+            gtiDevice.connect(List.of(gtiConfig), reconnect);
+
+            var lightConfig = new DeviceConfig.LightSensor();
+            lightConfig.setHost("127.0.0.1");
+            lightConfig.setPort(lightPort);
+            lightConfig.setDeadline(1000);
+            lightDevice.connect(lightConfig, reconnect);
+
+            var gtiProbe = new Probe("GTI", gtiDevice::getCurrentPower);
+            var lightProbe = new Probe("照度センサー", lightDevice::readLux);
+
+            var start = System.currentTimeMillis();
+            var step = 0;
+            while (System.currentTimeMillis() - start < 20_000L) {
+                var elapsed = System.currentTimeMillis() - start;
+                // 障害の発生と復旧
+                if (step == 0 && elapsed >= 3_000L) {
+                    log.info("模擬GTIを停止します。");
+                    gti.close();
+                    step++;
+                } else if (step == 1 && elapsed >= 6_000L) {
+                    log.info("模擬GTIを再起動します。");
+                    gti = new FakeGtiSlave(gtiPort, 1, curve);
+                    gtiProbe.recovered();
+                    step++;
+                } else if (step == 2 && elapsed >= 8_000L) {
+                    log.info("模擬照度センサーの応答を止めます。");
+                    light.setStalled(true);
+                    step++;
+                } else if (step == 3 && elapsed >= 10_000L) {
+                    log.info("模擬照度センサーの応答を再開します。");
+                    light.setStalled(false);
+                    lightProbe.recovered();
+                    step++;
+                } else if (step == 4 && elapsed >= 12_000L) {
+                    log.info("模擬照度センサーを停止します。");
+                    light.close();
+                    step++;
+                } else if (step == 5 && elapsed >= 14_000L) {
+                    log.info("模擬照度センサーを再起動します。");
+                    light = new FakeLightSensor(curve, lightPort);
+                    lightProbe.recovered();
+                    step++;
+                }
+
+                gtiProbe.sample();
+                lightProbe.sample();
+                Thread.sleep(intervalMillis);
+            }
+
+            gtiProbe.report(gtiDevice.getConnections().get(0));
+            lightProbe.report(lightDevice.getConnection());
+        } finally {
+            gti.close();
+            light.close();
+        }
+    }
+
+    /**
+     * 読み込みの計測
+     */
+    private static class Probe {
+        private final String name;
+        private final Callable<Double> read;
+        private long ok;
+        private long failed;
+        private double maxMillis;
+        /** 復旧した時刻(ミリ秒、復旧待ちでない場合は0) */
+        private long recoveredAt;
+        /** 復旧から読み込み再開までの時間の最大値(ミリ秒) */
+        private long maxRecoveryMillis;
+
+        Probe(String name, Callable<Double> read) {
+            this.name = name;
+            this.read = read;
+        }
+
+        void recovered() {
+            recoveredAt = System.currentTimeMillis();
+        }
+
+        void sample() {
+            var start = System.nanoTime();
+            try {
+                read.call();
+                ok++;
+                if (recoveredAt > 0) {
+                    maxRecoveryMillis = Math.max(maxRecoveryMillis, System.currentTimeMillis() - recoveredAt);
+                    recoveredAt = 0;
+                }
+            } catch (Exception e) {
+                failed++;
+            }
+            maxMillis = Math.max(maxMillis, (System.nanoTime() - start) / 1_000_000D);
+        }
+
+        void report(ConnectionSupervisor connection) {
+            log.info("{}: 成功={}回, 失敗={}回, 読み込みの最大所要時間={}ms, 復旧から再開まで最大{}ms", name, ok, failed,
+                    String.format("%.1f", maxMillis), maxRecoveryMillis);
+            log.info("{}: 状態={}, 期限切れ={}回, 再接続={}回", name, connection.getState(), connection.getTimeouts(),
+                    connection.getReconnects());
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Random;
+
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.control.AdaptiveSampler;
+import com.heterodain.gtimonitor.control.AdaptiveSampler.Channel;
+import com.heterodain.gtimonitor.control.ClearSkyModel;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 可変サンプリング間隔のシミュレーション
+ *
+ * <p>
+ * 仮想時間で1日分、晴天時の日射モデルに雲の通過(ランダムな減衰)を加えた発電電力を、固定間隔と
+ * AdaptiveSamplerの可変間隔でサンプリングし、照度センサー・GTIの読み込み回数と3分値の送信回数
+ * (Hive・OpenWeather・Ambientへのアクセス)を比較する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.SamplingSimulation \
+ *     --date=2026-06-21 --latitude=35.69 --longitude=139.69 --cloudy=0.3
+ * </pre>
+ */
+@Slf4j
+public class SamplingSimulation {
+    /** 3分値の送信間隔(ミリ秒) */
+    private static final long SEND_INTERVAL = 3 * 60 * 1000L;
+
+    /** シミュレーションする日 */
+    private LocalDate date = LocalDate.of(2026, 6, 21);
+    /** タイムゾーン */
+    private ZoneId zone = ZoneId.of("Asia/Tokyo");
+    /** 緯度 */
+    private double latitude = 35.69D;
+    /** 経度 */
+    private double longitude = 139.69D;
+    /** 雲が通過している時間の割合(0～1) */
+    private double cloudy = 0.3D;
+    /** 乱数シード */
+    private long seed = 1L;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new SamplingSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "date":
+                    simulation.date = LocalDate.parse(kv[1]);
+                    break;
+                case "zone":
+                    simulation.zone = ZoneId.of(kv[1]);
+                    break;
+                case "latitude":
+                    simulation.latitude = Double.parseDouble(kv[1]);
+                    break;
+                case "longitude":
+                    simulation.longitude = Double.parseDouble(kv[1]);
+                    break;
+                case "cloudy":
+                    simulation.cloudy = Double.parseDouble(kv[1]);
+                    break;
+                case "seed":
+                    simulation.seed = Long.parseLong(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() {
+        var config = new ControlConfig.Sampling();
+        var fixed = simulate(config, null);
+        var sampler = new AdaptiveSampler(config, latitude, longitude);
+        var adaptive = simulate(config, sampler);
+
+        var sunTimes = sampler.getSunTimes(date.atTime(12, 0).atZone(zone).toInstant().toEpochMilli());
+        log.info("{} 日の出={} 日の入り={} 雲の割合={}", date, sunTimes.getLeft().atZone(zone).toLocalTime(),
+                sunTimes.getRight().atZone(zone).toLocalTime(), cloudy);
+        log.info("照度センサー: 固定={}回, 可変={}回 ({}%)", fixed[0], adaptive[0], percent(adaptive[0], fixed[0]));
+        log.info("GTI         : 固定={}回, 可変={}回 ({}%)", fixed[1], adaptive[1], percent(adaptive[1], fixed[1]));
+        log.info("3分値の送信 : 固定={}回, 可変={}回 ({}%)", fixed[2], adaptive[2], percent(adaptive[2], fixed[2]));
+        log.info("合計        : 固定={}回, 可変={}回 ({}%)", fixed[0] + fixed[1] + fixed[2],
+                adaptive[0] + adaptive[1] + adaptive[2],
+                percent(adaptive[0] + adaptive[1] + adaptive[2], fixed[0] + fixed[1] + fixed[2]));
+    }
+
+    /**
+     * 1日分のサンプリング
+     *
+     * @return [照度センサーの読み込み回数, GTIの読み込み回数, 3分値の送信回数]
+     */
+    private long[] simulate(ControlConfig.Sampling config, AdaptiveSampler sampler) {
+        var random = new Random(seed);
+        var start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        var end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        var counts = new long[3];
+        var next = new long[] { start, start };
+        var nextSend = start + SEND_INTERVAL;
+        var attenuation = 1D;
+        var cloudUntil = start;
+        for (var millis = start; millis < end; millis += 1000L) {
+            // 雲の通過 (数分単位で雲量が変わる)
+            if (millis >= cloudUntil) {
+                attenuation = random.nextDouble() < cloudy ? 0.2D + random.nextDouble() * 0.5D : 1D;
+                cloudUntil = millis + (60 + random.nextInt(600)) * 1000L;
+            }
+            var power = attenuation * ClearSkyModel.expectedPower(1000D, latitude, longitude,
+                    Instant.ofEpochMilli(millis), null, null);
+
+            for (var channel : Channel.values()) {
+                var index = channel.ordinal();
+                if (millis < next[index]) {
+                    continue;
+                }
+                counts[index]++;
+                var value = channel == Channel.LIGHT_SENSOR ? power * 100D : power;
+                long interval;
+                if (sampler != null) {
+                    sampler.onSample(channel, millis, value);
+                    interval = sampler.interval(channel, millis);
+                } else {
+                    interval = (channel == Channel.LIGHT_SENSOR ? config.getLightInterval()
+                            : config.getGtiInterval()) * 1000L;
+                }
+                next[index] = millis + interval;
+            }
+
+            if (millis >= nextSend) {
+                var time = Instant.ofEpochMilli(millis).atZone(zone);
+                if (sampler == null || !sampler.skipSend(millis, time.getHour() * 60 + time.getMinute())) {
+                    counts[2]++;
+                }
+                nextSend += SEND_INTERVAL;
+            }
+        }
+        return counts;
+    }
+
+    private static String percent(long value, long base) {
+        return String.format("%.1f", value * 100D / base);
+    }
+}
@@ -0,0 +1,144 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.sink.TelemetrySinks;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 追加の送信先(InfluxDB・MQTT)のシミュレーション
+ *
+ * <p>
+ * 模擬InfluxDBと模擬MQTTブローカーを起動し、サンプル毎の計測データを流す。
+ * 模擬InfluxDBは応答を遅くし、途中の一定時間はエラーを返す。
+ * InfluxDBの遅延・障害があってもMQTTへの送信とサンプルの投入が待たされないこと、
+ * 障害の間の計測データがバッファに残って復旧後に再送されること(送信先毎の受信件数と送信件数が一致すること)を確認する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.SinkSimulation \
+ *     --seconds=10 --rate=200 --latency=300 --outage=3
+ * </pre>
+ */
+@Slf4j
+public class SinkSimulation {
+    /** 計測時間(秒) */
+    private int seconds = 10;
+    /** 1秒あたりのサンプル数 */
+    private int rate = 200;
+    /** 模擬InfluxDBの応答時間(ミリ秒) */
+    private long latencyMillis = 300;
+    /** 模擬InfluxDBがエラーを返す時間(秒、計測開始の1秒後から) */
+    private int outageSeconds = 3;
+    /** 送信間隔(ミリ秒) */
+    private int flushInterval = 500;
+    /** 再送間隔(ミリ秒) */
+    private int retryInterval = 1000;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new SinkSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "seconds":
+                    simulation.seconds = Integer.parseInt(kv[1]);
+                    break;
+                case "rate":
+                    simulation.rate = Integer.parseInt(kv[1]);
+                    break;
+                case "latency":
+                    simulation.latencyMillis = Long.parseLong(kv[1]);
+                    break;
+                case "outage":
+                    simulation.outageSeconds = Integer.parseInt(kv[1]);
+                    break;
+                case "flush":
+                    simulation.flushInterval = Integer.parseInt(kv[1]);
+                    break;
+                case "retry":
+                    simulation.retryInterval = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        try (var influx = new FakeInflux(); var broker = new FakeMqttBroker()) {
+            influx.setLatencyMillis(latencyMillis);
+
+            var influxConfig = new SinkConfig.Influx();
+            influxConfig.setBaseUrl(influx.baseUrl());
+            influxConfig.setOrg("home");
+            influxConfig.setBucket("gti");
+            influxConfig.setTags(Map.of("site", "sim"));
+            influxConfig.setFlushInterval(flushInterval);
+            influxConfig.setRetryInterval(retryInterval);
+            var mqttConfig = new SinkConfig.Mqtt();
+            mqttConfig.setPort(broker.getPort());
+            mqttConfig.setFlushInterval(flushInterval);
+            mqttConfig.setRetryInterval(retryInterval);
+            var config = new SinkConfig();
+            config.setInflux(List.of(influxConfig));
+            config.setMqtt(List.of(mqttConfig));
+
+            var sinks = new TelemetrySinks();
+            sinks.connect(config);
+
+            long samples = 0;
+            long maxOfferNanos = 0;
+            var intervalNanos = 1_000_000_000L / rate;
+            var start = System.nanoTime();
+            var end = start + seconds * 1_000_000_000L;
+            var outageStart = start + 1_000_000_000L;
+            var outageEnd = outageStart + outageSeconds * 1_000_000_000L;
+            while (System.nanoTime() < end) {
+                var now = System.nanoTime();
+                influx.setFailing(now >= outageStart && now < outageEnd);
+
+                var millis = System.currentTimeMillis();
+                var offerStart = System.nanoTime();
+                sinks.onSample(Sample.of("power", millis, samples % 500));
+                sinks.onSample(Sample.of("light", millis, samples % 1000 * 100D));
+                maxOfferNanos = Math.max(maxOfferNanos, System.nanoTime() - offerStart);
+                samples += 2;
+
+                var waitNanos = start + (samples / 2) * intervalNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+            influx.setFailing(false);
+
+            var stats = sinks.getSinks();
+            log.info("投入: サンプル={}件, 1回の最大投入時間={}ms", samples, String.format("%.3f", maxOfferNanos / 1_000_000D));
+            for (var sink : stats) {
+                log.info("{}(終了前): 受信={}件, 送信={}件({}回), 失敗={}回, 未送信={}件, 送信時間={}ms", sink.getName(),
+                        sink.getReceived(), sink.getWritten(), sink.getBatches(), sink.getFailures(),
+                        sink.getPending(), sink.getWriteMillis());
+            }
+
+            // 未送信データを送信して閉じる
+            sinks.close();
+            for (var sink : stats) {
+                log.info("{}(終了後): 受信={}件, 送信={}件, 破棄={}件", sink.getName(), sink.getReceived(),
+                        sink.getWritten(), sink.getDropped());
+            }
+            log.info("模擬InfluxDB: リクエスト={}回, 行={}, フィールド={}, 最後の行={}", influx.getRequestCount().get(),
+                    influx.getLineCount().get(), influx.getFieldCount().get(), influx.getLastLine());
+            log.info("模擬MQTTブローカー: 接続={}回, メッセージ={}件, 最後のメッセージ={} {}", broker.getConnectCount().get(),
+                    broker.getPublishCount().get(), broker.getLastTopic(), broker.getLastPayload());
+        }
+    }
+}
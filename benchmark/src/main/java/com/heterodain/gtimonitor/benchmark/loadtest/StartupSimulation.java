@@ -0,0 +1,243 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 起動から最初のサンプルまでの時間のシミュレーション
+ *
+ * <p>
+ * 模擬GTI・模擬照度センサーと、接続に応答しない汎用のModbusデバイス(電源の入っていない電力量計の模擬)を用意して、
+ * アプリケーションのjarを別プロセスで起動し、Springの起動完了とデバイス毎の最初のサンプルまでの時間(JVMの起動から)を計測する。
+ * 最初の接続を順に待つ場合・バックグラウンドで並行して行う場合(device.reconnect.async-start)・Beanの遅延初期化・
+ * AppCDSのアーカイブを比較する。AppCDSは展開したjar(mvn -P appcds package)の場合のみ計測する。
+ * </p>
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.heterodain.gtimonitor.benchmark.loadtest.StartupSimulation --jar=../target/gti-monitor-1.4.jar --rounds=3 --cds=true
+ * </pre>
+ */
+@Slf4j
+public class StartupSimulation {
+    /** 最初のサンプルのログ */
+    private static final Pattern FIRST_SAMPLE = Pattern.compile(" - (.+)の最初のサンプルを取得しました。\\(起動から(\\d+)ms\\)");
+    /** Springの起動完了のログ */
+    private static final Pattern STARTED = Pattern.compile("Started App in [\\d.]+ seconds \\(JVM running for ([\\d.]+)\\)");
+    /** 最初のサンプルを計測するデバイス */
+    private static final List<String> DEVICES = List.of("GTI", "照度センサー");
+
+    /** アプリケーションのjar */
+    private String jar = "../target/gti-monitor-1.4.jar";
+    /** 条件毎の繰り返し回数 */
+    private int rounds = 3;
+    /** AppCDSのアーカイブを計測するかどうか */
+    private boolean cds = false;
+
+    public static void main(String[] args) throws Exception {
+        var simulation = new StartupSimulation();
+        for (var arg : args) {
+            var kv = arg.replaceFirst("^--", "").split("=", 2);
+            switch (kv[0]) {
+                case "jar":
+                    simulation.jar = kv[1];
+                    break;
+                case "rounds":
+                    simulation.rounds = Integer.parseInt(kv[1]);
+                    break;
+                case "cds":
+                    simulation.cds = Boolean.parseBoolean(kv[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+
+        simulation.run();
+    }
+
+    /**
+     * シミュレーション実行
+     */
+    public void run() throws Exception {
+        var curve = new PowerCurve(300D, 3_600_000L, 1L);
+        var work = Files.createTempDirectory("gti-monitor-startup");
+        var archive = work.resolve("app.jsa");
+        var results = new ArrayList<String>();
+        try (var gti = new FakeGtiSlave(freePort(), 1, curve);
+                var light = new FakeLightSensor(curve);
+                var meter = new Blackhole()) {
+            var devices = List.of("--device.gti.transport=TCP", "--device.gti.host=127.0.0.1",
+                    "--device.gti.port=" + gti.getPort(), "--device.gti.unit-id=1",
+                    "--device.light-sensor.host=127.0.0.1", "--device.light-sensor.port=" + light.getPort(),
+                    "--device.modbus-devices[0].name=meter", "--device.modbus-devices[0].type=SDM120",
+                    "--device.modbus-devices[0].transport=TCP", "--device.modbus-devices[0].host=127.0.0.1",
+                    "--device.modbus-devices[0].port=" + meter.getPort(), "--device.modbus-devices[0].unit-id=2");
+
+            var variants = new LinkedHashMap<String, List<String>>();
+            variants.put("sync", List.of("--device.reconnect.async-start=false"));
+            variants.put("async", List.of());
+            variants.put("async+lazy", List.of("--spring.main.lazy-initialization=true"));
+            if (cds) {
+                // 学習の実行で読み込んだクラスをアーカイブに保存する
+                log.info("AppCDSのアーカイブを作成します: {}", archive);
+                var args = new ArrayList<>(devices);
+                args.add("--spring.main.lazy-initialization=true");
+                launch(work, List.of("-XX:ArchiveClassesAtExit=" + archive), args, true);
+                variants.put("async+lazy+cds", List.of("--spring.main.lazy-initialization=true"));
+            }
+
+            for (var variant : variants.entrySet()) {
+                var jvmOptions = variant.getKey().endsWith("cds") ? List.of("-XX:SharedArchiveFile=" + archive)
+                        : List.<String>of();
+                var args = new ArrayList<>(devices);
+                args.addAll(variant.getValue());
+
+                var timings = new TreeMap<String, List<Long>>();
+                for (int round = 0; round < rounds; round++) {
+                    launch(work, jvmOptions, args, false)
+                            .forEach((k, v) -> timings.computeIfAbsent(k, key -> new ArrayList<>()).add(v));
+                }
+                results.add(String.format("%-16s %12s %12s %14s", variant.getKey(), median(timings.get("started")),
+                        median(timings.get("GTI")), median(timings.get("照度センサー"))));
+            }
+        } finally {
+            // アーカイブ・アプリケーションのログを削除
+            try (var files = Files.list(work)) {
+                for (var file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(work);
+        }
+
+        log.info("応答しないModbusデバイスを含めて起動、{}回の中央値 (JVMの起動からのミリ秒)", rounds);
+        log.info(String.format("%-16s %12s %12s %14s", "variant", "started", "GTI", "light sensor"));
+        results.forEach(log::info);
+    }
+
+    /**
+     * アプリケーションを起動して、最初のサンプルが揃うまでの時間を計測
+     *
+     * @param work       作業ディレクトリ
+     * @param jvmOptions JVMのオプション
+     * @param args       アプリケーションの引数
+     * @param training   AppCDSの学習の実行の場合はtrue (最初のサンプルが揃ってから正常に終了させる)
+     * @return 計測した時間 ("started"・デバイス名→JVMの起動からのミリ秒)
+     */
+    private Map<String, Long> launch(Path work, List<String> jvmOptions, List<String> args, boolean training)
+            throws Exception {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Dfile.encoding=UTF-8");
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(Path.of(jar).toAbsolutePath().toString());
+        command.addAll(args);
+        command.add("--logging.level.root=INFO");
+        if (training) {
+            command.add("--startup.exit-after=5000");
+        }
+        var process = new ProcessBuilder(command).directory(work.toFile()).redirectErrorStream(true).start();
+
+        var timings = new LinkedHashMap<String, Long>();
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var started = STARTED.matcher(line);
+                if (started.find()) {
+                    timings.put("started", Math.round(Double.parseDouble(started.group(1)) * 1000D));
+                }
+                var sample = FIRST_SAMPLE.matcher(line);
+                if (sample.find()) {
+                    timings.put(sample.group(1), Long.parseLong(sample.group(2)));
+                }
+                if (!training && timings.keySet().containsAll(DEVICES) && timings.containsKey("started")) {
+                    break;
+                }
+            }
+        } finally {
+            if (!training) {
+                process.destroy();
+            }
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+        if (timings.isEmpty()) {
+            log.warn("アプリケーションを起動できませんでした。(終了コード={}、jarはmvn clean packageで作成してください)",
+                    process.exitValue());
+        }
+        log.debug("{}: {}", jvmOptions, timings);
+        return timings;
+    }
+
+    private static String median(List<Long> values) {
+        if (values == null || values.isEmpty()) {
+            return "-";
+        }
+        var sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return String.valueOf(sorted.get(sorted.size() / 2));
+    }
+
+    private static int freePort() throws Exception {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 接続に応答しないポート (接続の待ち行列を埋めて、以降の接続要求を無視させる)
+     */
+    private static class Blackhole implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final List<Socket> fillers = new ArrayList<>();
+
+        Blackhole() throws IOException {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+            for (int i = 0; i < 10; i++) {
+                var socket = new Socket();
+                try {
+                    socket.connect(serverSocket.getLocalSocketAddress(), 200);
+                    fillers.add(socket);
+                } catch (SocketTimeoutException e) {
+                    socket.close();
+                    return;
+                }
+            }
+            throw new IOException("接続の待ち行列を埋められませんでした。");
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (var socket : fillers) {
+                socket.close();
+            }
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.heterodain.gtimonitor.benchmark.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+import com.heterodain.gtimonitor.benchmark.Fixtures;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ambient/Hive/OpenWeatherのスタブHTTPサーバー
+ * 
+ * <pre>
+ * /ambient/channels/{id}/dataarray  (POST)
+ * /ambient/channels/{id}/data       (GET)
+ * /hive/farms/{farmId}/oc           (GET)
+ * /hive/farms/{farmId}/workers      (GET)
+ * /hive/farms/{farmId}/workers/{id} (GET, PATCH)
+ * /openweather/weather              (GET)
+ * /openweather/forecast             (GET)
+ * </pre>
+ */
+@Slf4j
+public class StubHttpServer implements AutoCloseable {
+    private static final Pattern AMBIENT_POST = Pattern.compile("/ambient/channels/(\\d+)/dataarray");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final byte[] ambientDay = Fixtures.load("ambient-day.json");
+    private final byte[] hiveOc = Fixtures.load("hive-oc.json");
+    private final byte[] hiveWorker = Fixtures.load("hive-worker.json");
+    private final byte[] hiveWorkers = ("{\"data\":[" + new String(hiveWorker, StandardCharsets.UTF_8) + "]}")
+            .getBytes(StandardCharsets.UTF_8);
+    private final byte[] openWeatherCurrent = Fixtures.load("openweather-current.json");
+    private final byte[] openWeatherForecast = Fixtures.load("openweather-forecast.json");
+
+    /** 応答遅延(ミリ秒) */
+    @Setter
+    private volatile long latencyMillis;
+    /** エラー応答(HTTP 500)の割合(0～1) */
+    @Setter
+    private volatile double errorRate;
+    /** Ambientへのデータ受信時の通知先(チャネルID) */
+    @Setter
+    private volatile IntConsumer ambientPostListener = channelId -> {
+    };
+
+    /** 受信リクエスト数 */
+    @Getter
+    private final AtomicLong requestCount = new AtomicLong();
+    /** エラー応答数 */
+    @Getter
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /**
+     * 起動
+     * 
+     * @param threads 処理スレッド数
+     * @throws IOException
+     */
+    public StubHttpServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/ambient", this::handleAmbient);
+        server.createContext("/hive", this::handleHive);
+        server.createContext("/openweather", exchange -> respond(exchange,
+                exchange.getRequestURI().getPath().endsWith("/forecast") ? openWeatherForecast : openWeatherCurrent));
+        server.start();
+    }
+
+    /**
+     * ベースURL取得
+     * 
+     * @param service サービス名(ambient, hive, openweather)
+     * @return ベースURL
+     */
+    public String baseUrl(String service) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + service;
+    }
+
+    private void handleAmbient(HttpExchange exchange) throws IOException {
+        var matcher = AMBIENT_POST.matcher(exchange.getRequestURI().getPath());
+        if ("POST".equals(exchange.getRequestMethod()) && matcher.matches()) {
+            exchange.getRequestBody().readAllBytes();
+            if (respond(exchange, new byte[0])) {
+                ambientPostListener.accept(Integer.parseInt(matcher.group(1)));
+            }
+        } else {
+            respond(exchange, ambientDay);
+        }
+    }
+
+    private void handleHive(HttpExchange exchange) throws IOException {
+        var path = exchange.getRequestURI().getPath();
+        if ("PATCH".equals(exchange.getRequestMethod())) {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, "{}".getBytes());
+        } else if (path.endsWith("/oc")) {
+            respond(exchange, hiveOc);
+        } else if (path.endsWith("/workers")) {
+            respond(exchange, hiveWorkers);
+        } else {
+            respond(exchange, hiveWorker);
+        }
+    }
+
+    /**
+     * 遅延・エラーを注入して応答
+     * 
+     * @return 正常応答した場合はtrue
+     */
+    private boolean respond(HttpExchange exchange, byte[] body) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                exchange.sendResponseHeaders(500, -1);
+                return false;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                exchange.getResponseBody().write(body);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -2,14 +2,19 @@ package com.heterodain.gtimonitor;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableScheduling
 public class App {
 
-	public static void main(String[] args) {
-		SpringApplication.run(App.class, args);
+	public static void main(String[] args) throws InterruptedException {
+		var context = SpringApplication.run(App.class, args);
+
+		// AppCDSのアーカイブ作成時などは、起動してから指定時間(ミリ秒)後に終了する
+		var exitAfter = context.getEnvironment().getProperty("startup.exit-after", Long.class);
+		if (exitAfter != null) {
+			Thread.sleep(exitAfter);
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -0,0 +1,469 @@
+package com.heterodain.gtimonitor.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heterodain.gtimonitor.config.ApiConfig;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 組み込みHTTP API
+ *
+ * <pre>
+ * GET /api/latest                                 最新のサンプル (計測値名→{time, value})
+ * GET /api/status                                 OCプロファイル・GTIの出力制限・制御の状態
+ * GET /api/history?metric=power&amp;from=&amp;to=&amp;limit=  計測値の履歴 (from・toはミリ秒またはISO-8601、省略時は直近1時間)
+ * GET /api/windows?from=&amp;to=                      3分値の履歴 (省略時は直近1日)
+ * GET /api/stream?metrics=light,power             サンプル・3分値のライブ配信 (Server-Sent Events)
+ * </pre>
+ *
+ * <p>
+ * 全て{@link LiveStore}のスナップショットから応答し、デバイス・外部APIにはアクセスしない。
+ * 最新のサンプルの応答はサンプルが届くまで使い回す。
+ * </p>
+ *
+ * <p>
+ * 複数拠点モードでは、1つのHTTPサーバーで拠点毎のスナップショットを公開する。
+ * GET /api/sitesで拠点名の一覧を返し、各APIは/api/拠点名/latestのように拠点名を付けて呼び出す。
+ * </p>
+ */
+@Component
+@Slf4j
+public class ApiServer implements Closeable {
+    /** 履歴の既定の期間(ミリ秒) */
+    private static final long DEFAULT_HISTORY_MILLIS = 60 * 60 * 1000L;
+    /** 3分値の履歴の既定の期間(ミリ秒) */
+    private static final long DEFAULT_WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+    /** JDKのHTTPサーバーのTCP_NODELAYの設定 */
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    @Autowired
+    private ApiConfig apiConfig;
+    @Autowired
+    private LiveStore liveStore;
+    @Autowired
+    private ObjectMapper om;
+    @Autowired
+    private Clock clock;
+
+    /** HTTPサーバー (未起動の場合はnull) */
+    private HttpServer server;
+    /** リクエストを処理するスレッド */
+    private ExecutorService executor;
+    /** ライブ配信 */
+    private EventStream stream;
+    /** 拠点毎のスナップショット (複数拠点モードのみ、拠点名順) */
+    private final Map<String, LiveStore> sites = new ConcurrentSkipListMap<>();
+    /** 最新のサンプルの応答のキャッシュ (スナップショット毎) */
+    private final Map<LiveStore, CachedBody> latestCaches = new ConcurrentHashMap<>();
+
+    /**
+     * コンストラクタ (Springで生成)
+     */
+    public ApiServer() {
+    }
+
+    /**
+     * コンストラクタ (Springの管理外で生成する場合)
+     *
+     * @param apiConfig HTTP APIの設定
+     * @param liveStore スナップショット
+     * @param om        JSONパーサー
+     * @param clock     時計
+     */
+    public ApiServer(ApiConfig apiConfig, LiveStore liveStore, ObjectMapper om, Clock clock) {
+        this.apiConfig = apiConfig;
+        this.liveStore = liveStore;
+        this.om = om;
+        this.clock = clock;
+    }
+
+    /**
+     * 起動
+     *
+     * @throws IOException 待ち受けできない場合
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        stream = new EventStream(apiConfig.getMaxStreams(), apiConfig.getStreamBuffer(),
+                apiConfig.getStreamThreads(), apiConfig.getKeepAlive());
+        liveStore.addSampleListener(sample -> publishSample(null, sample));
+        liveStore.addWindowListener(window -> publishWindow(null, window));
+
+        // ヘッダーと本文を別々に書き込むため、Nagleと遅延ACKで応答が40ms程度待たされないようにする
+        // (JDKのHTTPサーバーが最初に生成される時に読み込まれる)
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        var counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(apiConfig.getThreads(), r -> {
+            var thread = new Thread(r, "api-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(apiConfig.getHost(), apiConfig.getPort()), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        server.start();
+        log.info("HTTP APIを起動しました。http://{}:{}/api/", apiConfig.getHost(), server.getAddress().getPort());
+    }
+
+    /**
+     * 起動しているかどうか
+     *
+     * @return 起動している場合はtrue
+     */
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * 拠点のスナップショットを公開 (複数拠点モード)
+     *
+     * @param name  拠点名
+     * @param store 拠点のスナップショット
+     */
+    public void addSite(String name, LiveStore store) {
+        if (sites.putIfAbsent(name, store) != null) {
+            throw new IllegalArgumentException("拠点名が重複しています: " + name);
+        }
+        store.addSampleListener(sample -> publishSample(name, sample));
+        store.addWindowListener(window -> publishWindow(name, window));
+    }
+
+    /**
+     * 拠点のスナップショットの公開を終了 (複数拠点モード)
+     *
+     * @param name 拠点名
+     */
+    public void removeSite(String name) {
+        var store = sites.remove(name);
+        if (store != null) {
+            latestCaches.remove(store);
+        }
+    }
+
+    /**
+     * 待ち受けポート (0を指定した場合は割り当てられたポート)
+     *
+     * @return ポート (未起動の場合はnull)
+     */
+    public synchronized Integer getPort() {
+        return server == null ? null : server.getAddress().getPort();
+    }
+
+    /**
+     * ライブ配信取得
+     *
+     * @return ライブ配信 (未起動の場合はnull)
+     */
+    public EventStream getStream() {
+        return stream;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, Map.of("error", "GETのみ対応しています"));
+                return;
+            }
+            var params = parseQuery(exchange.getRequestURI().getRawQuery());
+            var path = exchange.getRequestURI().getPath().substring("/api/".length());
+            var store = liveStore;
+            String site = null;
+            if (!sites.isEmpty()) {
+                // 複数拠点モードでは、先頭が拠点名
+                if (path.equals("sites")) {
+                    respond(exchange, 200, Map.of("sites", new ArrayList<>(sites.keySet())));
+                    return;
+                }
+                var separator = path.indexOf('/');
+                site = separator < 0 ? path : path.substring(0, separator);
+                store = sites.get(site);
+                if (store == null) {
+                    respond(exchange, 404, Map.of("error", "不明な拠点です: " + site));
+                    return;
+                }
+                path = separator < 0 ? "" : path.substring(separator + 1);
+            }
+            switch (path) {
+                case "latest":
+                    respond(exchange, 200, latestBody(store));
+                    break;
+                case "status":
+                    respond(exchange, 200, statusBody(store));
+                    break;
+                case "history":
+                    respond(exchange, 200, historyBody(store, params));
+                    break;
+                case "windows":
+                    respond(exchange, 200, windowsBody(store, params));
+                    break;
+                case "stream":
+                    openStream(exchange, site, store, params);
+                    break;
+                default:
+                    respond(exchange, 404, Map.of("error", "不明なパスです"));
+                    break;
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            log.debug("HTTP APIの応答に失敗しました。{}", exchange.getRequestURI(), e);
+            exchange.close();
+        } catch (Exception e) {
+            log.error("HTTP APIの処理に失敗しました。{}", exchange.getRequestURI(), e);
+            respond(exchange, 500, Map.of("error", "内部エラー"));
+        }
+    }
+
+    /**
+     * 最新のサンプル (サンプルが届くまでキャッシュを使い回す)
+     */
+    private byte[] latestBody(LiveStore store) throws JsonProcessingException {
+        var cache = latestCaches.get(store);
+        var version = store.getVersion();
+        if (cache == null || cache.version != version) {
+            cache = new CachedBody(version, om.writeValueAsBytes(toLatest(store.getLatest())));
+            latestCaches.put(store, cache);
+        }
+        return cache.body;
+    }
+
+    private static Map<String, Object> toLatest(Map<String, Sample> latest) {
+        var result = new LinkedHashMap<String, Object>();
+        latest.forEach((metric, sample) -> result.put(metric, toPoint(sample)));
+        return result;
+    }
+
+    private byte[] statusBody(LiveStore store) throws JsonProcessingException {
+        var status = new LinkedHashMap<String, Object>();
+        status.put("time", clock.millis());
+        status.putAll(store.getStatus());
+        status.put("history", store.getHistorySizes());
+        if (stream != null) {
+            status.put("streams", stream.getClients());
+        }
+        return om.writeValueAsBytes(status);
+    }
+
+    private byte[] historyBody(LiveStore store, Map<String, String> params) throws JsonProcessingException {
+        var metric = params.get("metric");
+        if (metric == null) {
+            throw new IllegalArgumentException("metricを指定してください");
+        }
+        var to = parseTime(params.get("to"), clock.millis() + 1);
+        var from = parseTime(params.get("from"), to - DEFAULT_HISTORY_MILLIS);
+        var limit = params.containsKey("limit") ? parseInt(params.get("limit"), "limit")
+                : apiConfig.getHistorySamples();
+
+        var samples = store.getHistory(metric, from, to, limit);
+        if (samples == null) {
+            throw new IllegalArgumentException("計測値がありません: " + metric);
+        }
+        var times = new long[samples.size()];
+        var values = new double[samples.size()];
+        for (int i = 0; i < samples.size(); i++) {
+            times[i] = samples.get(i).getMillis();
+            values[i] = samples.get(i).getValue();
+        }
+        var result = new LinkedHashMap<String, Object>();
+        result.put("metric", metric);
+        result.put("from", from);
+        result.put("to", to);
+        result.put("times", times);
+        result.put("values", values);
+        return om.writeValueAsBytes(result);
+    }
+
+    private byte[] windowsBody(LiveStore store, Map<String, String> params) throws JsonProcessingException {
+        var to = parseTime(params.get("to"), clock.millis() + 1);
+        var from = parseTime(params.get("from"), to - DEFAULT_WINDOW_MILLIS);
+        var windows = new ArrayList<Map<String, Object>>();
+        for (var window : store.getWindows(from, to)) {
+            windows.add(toWindow(window));
+        }
+        return om.writeValueAsBytes(windows);
+    }
+
+    private static Map<String, Object> toWindow(MeasureData window) {
+        var result = new LinkedHashMap<String, Object>();
+        result.put("time", window.getTime().toInstant().toEpochMilli());
+        result.put("light", window.getLight());
+        result.put("power", window.getPower());
+        result.put("fused", window.getFusedPower());
+        result.put("hash", window.getHash());
+        if (window.getMetrics() != null) {
+            result.put("metrics", window.getMetrics());
+        }
+        return result;
+    }
+
+    private static Map<String, Object> toPoint(Sample sample) {
+        var point = new LinkedHashMap<String, Object>();
+        point.put("time", sample.getMillis());
+        point.put("value", sample.getValue());
+        return point;
+    }
+
+    /**
+     * ライブ配信を開始 (最新のサンプルを初期イベントとして送信)
+     */
+    private void openStream(HttpExchange exchange, String site, LiveStore store, Map<String, String> params)
+            throws IOException {
+        var metrics = params.containsKey("metrics")
+                ? new LinkedHashSet<>(Arrays.asList(params.get("metrics").split(",")))
+                : null;
+        var initial = new ArrayList<byte[]>();
+        for (var sample : store.getLatest().values()) {
+            if (metrics == null || metrics.contains(sample.getMetric())) {
+                initial.add(EventStream.format("sample", toSampleEvent(sample)));
+            }
+        }
+        stream.open(exchange, site, metrics, initial);
+    }
+
+    /**
+     * サンプルを配信 (パイプラインの段のスレッドから呼び出す)
+     */
+    private void publishSample(String site, Sample sample) {
+        try {
+            stream.publish(site, sample.getMetric(), "sample", toSampleEvent(sample));
+        } catch (JsonProcessingException e) {
+            log.warn("ライブ配信のイベントの生成に失敗しました。", e);
+        }
+    }
+
+    /**
+     * 3分値を配信 (パイプラインの段のスレッドから呼び出す)
+     */
+    private void publishWindow(String site, MeasureData window) {
+        try {
+            stream.publish(site, null, "window", om.writeValueAsString(toWindow(window)));
+        } catch (JsonProcessingException e) {
+            log.warn("ライブ配信のイベントの生成に失敗しました。", e);
+        }
+    }
+
+    private String toSampleEvent(Sample sample) throws JsonProcessingException {
+        var event = new LinkedHashMap<String, Object>();
+        event.put("metric", sample.getMetric());
+        event.put("time", sample.getMillis());
+        event.put("value", sample.getValue());
+        return om.writeValueAsString(event);
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        var bytes = body instanceof byte[] ? (byte[]) body : om.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        var params = new HashMap<String, String>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (var pair : query.split("&")) {
+            var kv = pair.split("=", 2);
+            params.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                    kv.length < 2 ? "" : URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * 時刻のパラメーター (ミリ秒またはISO-8601)
+     */
+    private static long parseTime(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e2) {
+                throw new IllegalArgumentException("時刻はミリ秒またはISO-8601で指定してください: " + value);
+            }
+        }
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            var n = Integer.parseInt(value);
+            if (n < 1) {
+                throw new NumberFormatException();
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "は1以上の整数で指定してください: " + value);
+        }
+    }
+
+    /**
+     * 停止
+     */
+    @PreDestroy
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        stream.close();
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * 応答のキャッシュ
+     */
+    private static class CachedBody {
+        /** 作成時の版数 */
+        private final long version;
+        /** 応答 */
+        private final byte[] body;
+
+        CachedBody(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.heterodain.gtimonitor.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ライブ配信 (Server-Sent Events)
+ *
+ * <p>
+ * 接続を開いたままリクエストのスレッドを返し、イベントは共有の送信スレッドで接続毎に順に書き込む。
+ * イベントは1回だけ文字列にして全ての接続で共有し、溜まったイベントはまとめて書き込む。接続毎の未送信イベントが上限を超えた場合は、
+ * 遅いクライアントとして切断して他の接続・計測を待たせない。
+ * </p>
+ */
+@Slf4j
+public class EventStream implements Closeable {
+    /** キープアライブ (コメント行) */
+    private static final byte[] KEEP_ALIVE = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /** 接続数の上限 */
+    private final int maxClients;
+    /** 接続毎の未送信イベントの上限 */
+    private final int buffer;
+    /** 送信スレッド */
+    private final ExecutorService executor;
+    /** キープアライブのスレッド */
+    private final ScheduledExecutorService keepAliveExecutor;
+    /** 接続 */
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+
+    /** 送信したイベント数 */
+    private final AtomicLong sent = new AtomicLong();
+    /** 遅いために切断した接続数 */
+    private final AtomicLong evicted = new AtomicLong();
+    /** 接続した数 */
+    private final AtomicLong connected = new AtomicLong();
+
+    /**
+     * コンストラクタ
+     *
+     * @param maxClients       接続数の上限
+     * @param buffer           接続毎の未送信イベントの上限
+     * @param threads          送信スレッド数
+     * @param keepAliveSeconds キープアライブ間隔(秒)
+     */
+    public EventStream(int maxClients, int buffer, int threads, int keepAliveSeconds) {
+        this.maxClients = maxClients;
+        this.buffer = buffer;
+        var counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "api-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        keepAliveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "api-stream-keepalive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        keepAliveExecutor.scheduleWithFixedDelay(() -> clients.forEach(c -> c.enqueue(KEEP_ALIVE)),
+                keepAliveSeconds, keepAliveSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 接続を開始 (レスポンスヘッダーと初期イベントを送信して、接続を開いたまま返す)
+     *
+     * @param exchange HTTPのやり取り
+     * @param site     配信する拠点名 (複数拠点モード以外はnull)
+     * @param metrics  配信する計測値名 (nullの場合は全て)
+     * @param initial  初期イベント (最新のサンプルなど)
+     * @throws IOException
+     */
+    public void open(HttpExchange exchange, String site, Set<String> metrics, List<byte[]> initial)
+            throws IOException {
+        if (clients.size() >= maxClients) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        var client = new Client(exchange, exchange.getResponseBody(), site, metrics);
+        clients.add(client);
+        connected.incrementAndGet();
+        log.debug("ライブ配信を開始しました。{} (接続数={})", exchange.getRemoteAddress(), clients.size());
+
+        client.enqueue("retry: 3000\n\n".getBytes(StandardCharsets.UTF_8));
+        initial.forEach(client::enqueue);
+    }
+
+    /**
+     * イベントを配信 (待たない)
+     *
+     * @param site   拠点名 (複数拠点モード以外はnull)
+     * @param metric 計測値名 (配信する計測値名を指定した接続の絞り込み用、nullの場合は全ての接続)
+     * @param event  イベント名
+     * @param data   データ(JSON、1行)
+     */
+    public void publish(String site, String metric, String event, String data) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        var bytes = format(event, data);
+        for (var client : clients) {
+            if (!Objects.equals(site, client.site)) {
+                continue;
+            }
+            if (metric == null || client.metrics == null || client.metrics.contains(metric)) {
+                client.enqueue(bytes);
+            }
+        }
+    }
+
+    /**
+     * イベントの書式 (event行とdata行)
+     *
+     * @param event イベント名
+     * @param data  データ(JSON、1行)
+     * @return イベント
+     */
+    public static byte[] format(String event, String data) {
+        return ("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 接続数
+     *
+     * @return 接続数
+     */
+    public int getClients() {
+        return clients.size();
+    }
+
+    /**
+     * 接続した数
+     *
+     * @return 接続した数
+     */
+    public long getConnected() {
+        return connected.get();
+    }
+
+    /**
+     * 送信したイベント数 (接続毎)
+     *
+     * @return イベント数
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * 遅いために切断した接続数
+     *
+     * @return 接続数
+     */
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    /**
+     * 全ての接続を閉じる
+     */
+    @Override
+    public void close() {
+        keepAliveExecutor.shutdownNow();
+        clients.forEach(Client::close);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 接続
+     */
+    private class Client {
+        /** HTTPのやり取り */
+        private final HttpExchange exchange;
+        /** レスポンス */
+        private final OutputStream out;
+        /** 配信する拠点名 (複数拠点モード以外はnull) */
+        private final String site;
+        /** 配信する計測値名 (nullの場合は全て) */
+        private final Set<String> metrics;
+        /** 未送信イベント */
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+        /** 送信中かどうか (queueで排他) */
+        private boolean draining;
+        /** 送信中のスレッド (queueで排他) */
+        private Thread drainer;
+        /** 閉じたかどうか (queueで排他) */
+        private boolean closed;
+
+        Client(HttpExchange exchange, OutputStream out, String site, Set<String> metrics) {
+            this.exchange = exchange;
+            this.out = out;
+            this.site = site;
+            this.metrics = metrics;
+        }
+
+        /**
+         * 未送信イベントに追加して、送信中でなければ送信を開始
+         */
+        void enqueue(byte[] event) {
+            synchronized (queue) {
+                if (closed) {
+                    return;
+                }
+                if (queue.size() >= buffer) {
+                    log.info("ライブ配信の未送信イベントが上限を超えたため切断します。{}", exchange.getRemoteAddress());
+                    evicted.incrementAndGet();
+                    closed = true;
+                    queue.clear();
+                    // HttpServerには書き込みの期限が無いため、書き込み中のスレッドを割り込んでソケットを閉じる
+                    if (drainer != null) {
+                        drainer.interrupt();
+                    }
+                    executor.execute(this::abort);
+                    return;
+                }
+                queue.addLast(event);
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                close();
+            }
+        }
+
+        /**
+         * 未送信イベントを全て書き込む (溜まっている分をまとめて書き込み、最後に1回だけフラッシュ)
+         */
+        void drain() {
+            var batch = new ArrayList<byte[]>();
+            synchronized (queue) {
+                drainer = Thread.currentThread();
+            }
+            while (true) {
+                synchronized (queue) {
+                    if (!closed) {
+                        batch.addAll(queue);
+                    }
+                    queue.clear();
+                    if (batch.isEmpty()) {
+                        draining = false;
+                        drainer = null;
+                        if (closed) {
+                            break;
+                        }
+                        return;
+                    }
+                }
+                try {
+                    for (var event : batch) {
+                        out.write(event);
+                    }
+                    out.flush();
+                    sent.addAndGet(batch.size());
+                } catch (IOException e) {
+                    log.debug("ライブ配信の接続が切断されました。{}", exchange.getRemoteAddress());
+                    synchronized (queue) {
+                        draining = false;
+                        drainer = null;
+                    }
+                    break;
+                }
+                batch.clear();
+            }
+            // 切断(未送信イベントの上限超過)・書き込みの失敗のため、終端を書き込まずに閉じる
+            abort();
+        }
+
+        /**
+         * 接続を直ちに閉じる (レスポンスの終端を書き込まない)
+         *
+         * <p>
+         * 読まない接続は、レスポンスの終端の書き込みでも止まるため、割り込みを設定した状態で閉じて、
+         * 書き込みを待たずにソケットを閉じる。
+         * </p>
+         */
+        void abort() {
+            Thread.currentThread().interrupt();
+            try {
+                close();
+            } finally {
+                // 割り込みをスレッドプールの次のタスクに残さない
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * 接続を閉じる
+         */
+        void close() {
+            synchronized (queue) {
+                closed = true;
+                queue.clear();
+            }
+            if (clients.remove(this)) {
+                exchange.close();
+            }
+        }
+    }
+}
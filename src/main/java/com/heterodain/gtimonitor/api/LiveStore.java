@@ -0,0 +1,199 @@
+package com.heterodain.gtimonitor.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.heterodain.gtimonitor.config.ApiConfig;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * HTTP APIに公開する計測データ・制御状態のスナップショット
+ *
+ * <p>
+ * パイプラインから受け取った最新のサンプルと、計測値毎・3分値の直近の履歴をメモリに保持する。
+ * HTTP APIはここだけを参照し、デバイス・外部APIにはアクセスしない。
+ * </p>
+ */
+@Component
+public class LiveStore {
+    /** HTTP APIの設定 */
+    @Autowired
+    private ApiConfig apiConfig;
+
+    /** 最新のサンプル(計測値名→サンプル) */
+    private final Map<String, Sample> latest = new ConcurrentHashMap<>();
+    /** 計測値毎の履歴(計測値名→履歴) */
+    private final Map<String, SampleRing> histories = new ConcurrentHashMap<>();
+    /** 3分値の履歴 */
+    private final ArrayDeque<MeasureData> windows = new ArrayDeque<>();
+    /** サンプルを受け取る毎に増える版数 (スナップショットのキャッシュ用) */
+    private final AtomicLong version = new AtomicLong();
+    /** サンプルの通知先 */
+    private final List<Consumer<Sample>> sampleListeners = new CopyOnWriteArrayList<>();
+    /** 3分値の通知先 */
+    private final List<Consumer<MeasureData>> windowListeners = new CopyOnWriteArrayList<>();
+    /** 制御状態の取得 (制御側で登録) */
+    private volatile Supplier<Map<String, Object>> statusSupplier = Map::of;
+
+    /**
+     * コンストラクタ (Springで生成)
+     */
+    public LiveStore() {
+    }
+
+    /**
+     * コンストラクタ (Springの管理外で生成する場合)
+     *
+     * @param apiConfig HTTP APIの設定
+     */
+    public LiveStore(ApiConfig apiConfig) {
+        this.apiConfig = apiConfig;
+    }
+
+    /**
+     * サンプルを追加 (パイプラインの段から呼び出す)
+     *
+     * @param sample サンプル
+     */
+    public void onSample(Sample sample) {
+        if (sample.isClose()) {
+            return;
+        }
+        latest.put(sample.getMetric(), sample);
+        histories.computeIfAbsent(sample.getMetric(), m -> new SampleRing(apiConfig.getHistorySamples()))
+                .add(sample.getMillis(), sample.getValue());
+        version.incrementAndGet();
+        for (var listener : sampleListeners) {
+            listener.accept(sample);
+        }
+    }
+
+    /**
+     * 3分値を追加 (パイプラインの段から呼び出す)
+     *
+     * @param measureData 3分値
+     */
+    public void onWindow(MeasureData measureData) {
+        synchronized (windows) {
+            windows.addLast(measureData);
+            while (windows.size() > apiConfig.getHistoryWindows()) {
+                windows.pollFirst();
+            }
+        }
+        for (var listener : windowListeners) {
+            listener.accept(measureData);
+        }
+    }
+
+    /**
+     * 最新のサンプル
+     *
+     * @return 計測値名→サンプル (計測値名順)
+     */
+    public Map<String, Sample> getLatest() {
+        return new TreeMap<>(latest);
+    }
+
+    /**
+     * 期間のサンプル
+     *
+     * @param metric 計測値名
+     * @param from   開始時刻(ミリ秒、この時刻を含む)
+     * @param to     終了時刻(ミリ秒、この時刻を含まない)
+     * @param limit  最大件数 (超えた場合は新しい方から)
+     * @return サンプル (古い順、計測値が無い場合はnull)
+     */
+    public List<Sample> getHistory(String metric, long from, long to, int limit) {
+        var history = histories.get(metric);
+        return history == null ? null : history.range(metric, from, to, limit);
+    }
+
+    /**
+     * 期間の3分値
+     *
+     * @param from 開始時刻(ミリ秒、この時刻を含む)
+     * @param to   終了時刻(ミリ秒、この時刻を含まない)
+     * @return 3分値 (古い順)
+     */
+    public List<MeasureData> getWindows(long from, long to) {
+        var result = new ArrayList<MeasureData>();
+        synchronized (windows) {
+            for (var window : windows) {
+                var millis = window.getTime().toInstant().toEpochMilli();
+                if (millis >= from && millis < to) {
+                    result.add(window);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 計測値毎の履歴の件数
+     *
+     * @return 計測値名→件数 (計測値名順)
+     */
+    public Map<String, Integer> getHistorySizes() {
+        var sizes = new TreeMap<String, Integer>();
+        histories.forEach((metric, history) -> sizes.put(metric, history.size()));
+        return sizes;
+    }
+
+    /**
+     * 制御状態
+     *
+     * @return 項目名→値
+     */
+    public Map<String, Object> getStatus() {
+        return new LinkedHashMap<>(statusSupplier.get());
+    }
+
+    /**
+     * 制御状態の取得を登録
+     *
+     * @param statusSupplier 制御状態の取得 (メモリ上の状態のみ参照すること)
+     */
+    public void setStatusSupplier(Supplier<Map<String, Object>> statusSupplier) {
+        this.statusSupplier = statusSupplier;
+    }
+
+    /**
+     * サンプルを受け取る毎に増える版数
+     *
+     * @return 版数
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * サンプルの通知先を追加
+     *
+     * @param listener 通知先 (パイプラインの段のスレッドで呼び出すため、待たないこと)
+     */
+    public void addSampleListener(Consumer<Sample> listener) {
+        sampleListeners.add(listener);
+    }
+
+    /**
+     * 3分値の通知先を追加
+     *
+     * @param listener 通知先 (パイプラインの段のスレッドで呼び出すため、待たないこと)
+     */
+    public void addWindowListener(Consumer<MeasureData> listener) {
+        windowListeners.add(listener);
+    }
+}
@@ -0,0 +1,118 @@
+package com.heterodain.gtimonitor.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.heterodain.gtimonitor.model.Sample;
+
+/**
+ * 計測値の履歴 (上限付きのリングバッファ、古いものから上書き)
+ *
+ * <p>
+ * 計測時刻と計測値をプリミティブの配列で保持し、期間の検索は二分探索で行う。
+ * 計測時刻は追加順に増加する前提 (戻った場合は、それより新しい履歴を捨てる)。
+ * </p>
+ */
+public class SampleRing {
+    /** 計測時刻(ミリ秒) */
+    private final long[] times;
+    /** 計測値 */
+    private final double[] values;
+    /** 最も古い要素の位置 */
+    private int head;
+    /** 要素数 */
+    private int size;
+
+    /**
+     * コンストラクタ
+     *
+     * @param capacity 保持する要素数
+     */
+    public SampleRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("保持する要素数は1以上を指定してください: " + capacity);
+        }
+        times = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * 追加
+     *
+     * @param millis 計測時刻(ミリ秒)
+     * @param value  計測値
+     */
+    public synchronized void add(long millis, double value) {
+        // 時計が戻った場合は、それより新しい履歴を捨てる
+        while (size > 0 && times[index(size - 1)] > millis) {
+            size--;
+        }
+        if (size == times.length) {
+            head = (head + 1) % times.length;
+            size--;
+        }
+        var i = index(size);
+        times[i] = millis;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * 期間の計測値 (古い順)
+     *
+     * @param metric 計測値名
+     * @param from   開始時刻(ミリ秒、この時刻を含む)
+     * @param to     終了時刻(ミリ秒、この時刻を含まない)
+     * @param limit  最大件数 (超えた場合は新しい方から)
+     * @return 計測値
+     */
+    public synchronized List<Sample> range(String metric, long from, long to, int limit) {
+        var end = lowerBound(to);
+        var start = Math.max(lowerBound(from), end - limit);
+        var samples = new ArrayList<Sample>(Math.max(0, end - start));
+        for (int n = start; n < end; n++) {
+            var i = index(n);
+            samples.add(Sample.of(metric, times[i], values[i]));
+        }
+        return samples;
+    }
+
+    /**
+     * 要素数
+     *
+     * @return 要素数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 最も古い計測時刻
+     *
+     * @return 計測時刻(ミリ秒、空の場合はnull)
+     */
+    public synchronized Long oldest() {
+        return size == 0 ? null : times[head];
+    }
+
+    /**
+     * 時刻以上の最初の要素の番号 (古い方から)
+     */
+    private int lowerBound(long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (times[index(mid)] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int index(int n) {
+        return (head + n) % times.length;
+    }
+}
@@ -0,0 +1,179 @@
+package com.heterodain.gtimonitor.backtest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.heterodain.gtimonitor.backtest.Backtester.Params;
+import com.heterodain.gtimonitor.backtest.Backtester.Result;
+import com.heterodain.gtimonitor.config.BacktestConfig;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.replay.TraceReader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * バックテストモード
+ *
+ * <p>
+ * トレースファイルの計測データで、電力制御デバイス・平均化時間・閾値・調整感度の全ての組み合わせを
+ * Fork/Joinで並列に評価し、切り替え回数・買電量・自家消費量を出力する。
+ * </p>
+ *
+ * <pre>
+ * java -jar gti-monitor.jar --spring.profiles.active=backtest --backtest.file=trace.csv --backtest.output=result.csv
+ * </pre>
+ */
+@Component
+@Profile("backtest")
+@Slf4j
+public class BacktestRunner implements ApplicationRunner {
+    /** 1タスクで評価する組み合わせ数 */
+    private static final int BATCH_SIZE = 16;
+    /** ログに出力する上位件数 */
+    private static final int TOP_COUNT = 10;
+
+    @Autowired
+    private BacktestConfig config;
+
+    /**
+     * 組み合わせの範囲を分割して評価するタスク
+     */
+    private static class SweepTask extends RecursiveAction {
+        private final Backtester backtester;
+        private final List<Params> params;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+
+        SweepTask(Backtester backtester, List<Params> params, Result[] results, int from, int to) {
+            this.backtester = backtester;
+            this.params = params;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[i] = backtester.evaluate(params.get(i));
+                }
+                return;
+            }
+            var middle = (from + to) >>> 1;
+            invokeAll(new SweepTask(backtester, params, results, from, middle),
+                    new SweepTask(backtester, params, results, middle, to));
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (config.getFile() == null) {
+            throw new IllegalArgumentException("backtest.fileにトレースファイルを指定してください");
+        }
+
+        var records = TraceReader.read(Path.of(config.getFile()), ZoneId.systemDefault());
+        if (records.isEmpty()) {
+            log.warn("トレースファイルにデータがありません: {}", config.getFile());
+            return;
+        }
+        var series = new MinuteSeries(records);
+        if (!series.isHasPower()) {
+            log.warn("トレースに発電電力が無いため、買電量・自家消費量は0になります。");
+        }
+
+        var params = combinations();
+        var parallelism = config.getParallelism() == null ? Runtime.getRuntime().availableProcessors()
+                : config.getParallelism();
+        log.info("バックテストを開始します。{}日分 x {}通り (並列度{})", String.format("%.1f", series.getLength() / 1440D),
+                params.size(), parallelism);
+
+        var startNanos = System.nanoTime();
+        var backtester = new Backtester(series, config.getHighDraw(), config.getLowDraw());
+        var results = new Result[params.size()];
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SweepTask(backtester, params, results, 0, params.size()));
+        } finally {
+            pool.shutdown();
+        }
+        var elapsed = (System.nanoTime() - startNanos) / 1_000_000L;
+        log.info("バックテストが完了しました。({}ミリ秒)", elapsed);
+
+        // スコア(自家消費量 - 買電量)の高い順 → 切り替え回数の少ない順
+        var sorted = new ArrayList<>(Arrays.asList(results));
+        sorted.sort(Comparator.comparingDouble(Result::getScore).reversed()
+                .thenComparingDouble(Result::getSwitchesPerDay));
+        for (var result : sorted.subList(0, Math.min(TOP_COUNT, sorted.size()))) {
+            var p = result.getParams();
+            log.info("source={}, window={}分, threshold={}, hysteresis={} : 切り替え{}回/日, 買電{}Wh/日, 自家消費{}Wh/日 ({}%)",
+                    p.getSource(), p.getWindow(), p.getThreshold(), p.getHysteresis(),
+                    String.format("%.2f", result.getSwitchesPerDay()),
+                    String.format("%.1f", result.getGridImportPerDay()),
+                    String.format("%.1f", result.getSelfConsumptionPerDay()),
+                    String.format("%.1f", result.getSelfConsumptionRate() * 100D));
+        }
+
+        if (config.getOutput() != null) {
+            writeOutput(Path.of(config.getOutput()), sorted);
+        }
+    }
+
+    /**
+     * 評価する全ての組み合わせ
+     */
+    private List<Params> combinations() {
+        var params = new ArrayList<Params>();
+        for (var source : config.getSources()) {
+            if (source == Source.METRIC) {
+                throw new IllegalArgumentException("バックテストではMETRICは指定できません (トレースに計測値がありません)");
+            }
+            var thresholds = source != Source.LIGHT_SENSOR ? config.getGtiThreshold().values()
+                    : config.getLightThreshold().values();
+            var hysteresises = source != Source.LIGHT_SENSOR ? config.getGtiHysteresis().values()
+                    : config.getLightHysteresis().values();
+            for (var window : config.getWindows()) {
+                for (var threshold : thresholds) {
+                    for (var hysteresis : hysteresises) {
+                        params.add(new Params(source, window, threshold, hysteresis));
+                    }
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * 評価結果をCSV出力
+     */
+    private void writeOutput(Path path, List<Result> results) throws IOException {
+        try (var out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.println("source,window,threshold,hysteresis,score,switches_per_day,grid_import_wh_per_day,"
+                    + "self_consumption_wh_per_day,self_consumption_rate,high_ratio");
+            for (var result : results) {
+                var p = result.getParams();
+                out.printf("%s,%d,%s,%s,%.1f,%.3f,%.1f,%.1f,%.4f,%.4f%n", p.getSource(), p.getWindow(),
+                        p.getThreshold(), p.getHysteresis(), result.getScore(), result.getSwitchesPerDay(), result.getGridImportPerDay(),
+                        result.getSelfConsumptionPerDay(), result.getSelfConsumptionRate(), result.getHighRatio());
+            }
+        }
+        log.info("評価結果を出力しました: {}", path);
+    }
+}
@@ -0,0 +1,136 @@
+package com.heterodain.gtimonitor.backtest;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.control.PowerControlPolicy;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Power Limit制御のバックテスト
+ *
+ * <p>
+ * 平均化時間毎にPowerControlPolicyで切り替えを判定し、1分毎にリグの消費電力と発電電力から
+ * 系統からの買電量・自家消費量を積算する。
+ * </p>
+ */
+public class Backtester {
+    private static final String HIGH = "HIGH";
+    private static final String LOW = "LOW";
+    private static final double MINUTES_PER_DAY = 24D * 60D;
+
+    /** 計測データ */
+    private final MinuteSeries series;
+    /** 高電力設定時のリグ消費電力(W) */
+    private final double highDraw;
+    /** 低電力設定時のリグ消費電力(W) */
+    private final double lowDraw;
+
+    /**
+     * コンストラクタ
+     * 
+     * @param series   計測データ
+     * @param highDraw 高電力設定時のリグ消費電力(W)
+     * @param lowDraw  低電力設定時のリグ消費電力(W)
+     */
+    public Backtester(MinuteSeries series, double highDraw, double lowDraw) {
+        this.series = series;
+        this.highDraw = highDraw;
+        this.lowDraw = lowDraw;
+    }
+
+    /**
+     * 1つのパラメータで評価
+     * 
+     * @param params パラメータ
+     * @return 評価結果
+     */
+    public Result evaluate(Params params) {
+        String current = null;
+        var switches = 0;
+        var highMinutes = 0;
+        var gridImport = 0D;
+        var selfConsumption = 0D;
+        var generation = 0D;
+
+        var window = params.getWindow();
+        var startMinute = series.getStartMinute();
+        for (int i = 0; i < series.getLength(); i++) {
+            // 平均化時間の区切り毎に切り替え判定
+            if (i >= window && Math.floorMod(startMinute + i, window) == 0) {
+                var average = series.average(params.getSource(), i - window, i);
+                if (!Double.isNaN(average)) {
+                    var next = PowerControlPolicy.decide(average, current, HIGH, LOW, params.getThreshold(),
+                            params.getHysteresis());
+                    if (next != null) {
+                        current = next;
+                        switches++;
+                    }
+                }
+            }
+
+            var high = HIGH.equals(current);
+            if (high) {
+                highMinutes++;
+            }
+            var draw = high ? highDraw : lowDraw;
+            var power = series.power(i);
+            gridImport += Math.max(0D, draw - power) / 60D;
+            selfConsumption += Math.min(draw, power) / 60D;
+            generation += power / 60D;
+        }
+
+        var days = series.getLength() / MINUTES_PER_DAY;
+        return new Result(params, switches / days, gridImport / days, selfConsumption / days,
+                generation == 0D ? Double.NaN : selfConsumption / generation,
+                highMinutes / (double) series.getLength());
+    }
+
+    /**
+     * 評価するパラメータ
+     */
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static class Params {
+        /** 電力制御デバイス */
+        private Source source;
+        /** 平均化時間(分) */
+        private int window;
+        /** 切り替え閾値(W or LUX) */
+        private double threshold;
+        /** 調整感度(W or LUX) */
+        private double hysteresis;
+    }
+
+    /**
+     * 評価結果 (1日当たり)
+     */
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static class Result {
+        /** パラメータ */
+        private Params params;
+        /** 1日当たりの切り替え回数 */
+        private double switchesPerDay;
+        /** 1日当たりの買電量(Wh) */
+        private double gridImportPerDay;
+        /** 1日当たりの自家消費量(Wh) */
+        private double selfConsumptionPerDay;
+        /** 自家消費率(自家消費量/発電量) */
+        private double selfConsumptionRate;
+        /** 高電力設定の時間割合 */
+        private double highRatio;
+
+        /**
+         * スコア (太陽光で賄えた消費電力から買電量を差し引いた値)
+         * 
+         * @return 1日当たりのスコア(Wh)
+         */
+        public double getScore() {
+            return selfConsumptionPerDay - gridImportPerDay;
+        }
+    }
+}
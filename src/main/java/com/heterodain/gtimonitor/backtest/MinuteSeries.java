@@ -0,0 +1,122 @@
+package com.heterodain.gtimonitor.backtest;
+
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.replay.TraceRecord;
+
+import lombok.Getter;
+
+/**
+ * 1分単位に集約した計測データ
+ *
+ * <p>
+ * 任意区間の平均値をO(1)で求められるよう、累積和で保持する。全パラメータの評価で共有する(読み取り専用)。
+ * </p>
+ */
+public class MinuteSeries {
+    /** 発電電力の前方補完の上限(分) */
+    private static final int POWER_FILL_LIMIT = 5;
+
+    /** 先頭の時刻(エポック分) */
+    @Getter
+    private final long startMinute;
+    /** データの長さ(分) */
+    @Getter
+    private final int length;
+    /** 照度の累積和 */
+    private final double[] lightSum;
+    /** 照度のデータ数の累積和 */
+    private final int[] lightCount;
+    /** 発電電力の累積和 */
+    private final double[] powerSum;
+    /** 発電電力のデータ数の累積和 */
+    private final int[] powerCount;
+    /** 1分毎の発電電力(W、欠損は直前の値で補完) */
+    private final double[] power;
+    /** 発電電力のデータがあるかどうか */
+    @Getter
+    private final boolean hasPower;
+
+    /**
+     * トレースから作成
+     * 
+     * @param records 時刻順のトレース
+     */
+    public MinuteSeries(List<TraceRecord> records) {
+        startMinute = Math.floorDiv(records.get(0).getTimestamp().getEpochSecond(), 60L);
+        var endMinute = Math.floorDiv(records.get(records.size() - 1).getTimestamp().getEpochSecond(), 60L);
+        length = (int) (endMinute - startMinute + 1);
+
+        var lightMinuteSum = new double[length];
+        var lightMinuteCount = new int[length];
+        var powerMinuteSum = new double[length];
+        var powerMinuteCount = new int[length];
+        for (var record : records) {
+            var index = (int) (Math.floorDiv(record.getTimestamp().getEpochSecond(), 60L) - startMinute);
+            if (record.getLight() != null) {
+                lightMinuteSum[index] += record.getLight();
+                lightMinuteCount[index]++;
+            }
+            if (record.getPower() != null) {
+                powerMinuteSum[index] += record.getPower();
+                powerMinuteCount[index]++;
+            }
+        }
+
+        lightSum = new double[length + 1];
+        lightCount = new int[length + 1];
+        powerSum = new double[length + 1];
+        powerCount = new int[length + 1];
+        power = new double[length];
+        var anyPower = false;
+        var lastPower = 0D;
+        var lastPowerIndex = Integer.MIN_VALUE / 2;
+        for (int i = 0; i < length; i++) {
+            lightSum[i + 1] = lightSum[i] + lightMinuteSum[i];
+            lightCount[i + 1] = lightCount[i] + lightMinuteCount[i];
+            powerSum[i + 1] = powerSum[i] + powerMinuteSum[i];
+            powerCount[i + 1] = powerCount[i] + powerMinuteCount[i];
+
+            if (powerMinuteCount[i] > 0) {
+                anyPower = true;
+                lastPower = powerMinuteSum[i] / powerMinuteCount[i];
+                lastPowerIndex = i;
+            }
+            power[i] = i - lastPowerIndex <= POWER_FILL_LIMIT ? lastPower : 0D;
+        }
+        hasPower = anyPower;
+    }
+
+    /**
+     * 区間の平均値
+     * 
+     * @param source 電力制御デバイス
+     * @param from   開始インデックス(含む)
+     * @param to     終了インデックス(含まない)
+     * @return 平均値(データが無い場合はNaN)
+     */
+    public double average(Source source, int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(length, to);
+        if (from >= to) {
+            return Double.NaN;
+        }
+        if (source == Source.LIGHT_SENSOR) {
+            var count = lightCount[to] - lightCount[from];
+            return count == 0 ? Double.NaN : (lightSum[to] - lightSum[from]) / count;
+        }
+        var count = powerCount[to] - powerCount[from];
+        return count == 0 ? Double.NaN : (powerSum[to] - powerSum[from]) / count;
+    }
+
+    /**
+     * 1分間の発電電力
+     * 
+     * @param index インデックス
+     * @return 発電電力(W)
+     */
+    public double power(int index) {
+        return power[index];
+    }
+}
@@ -0,0 +1,35 @@
+package com.heterodain.gtimonitor.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 組み込みHTTP APIの設定
+ */
+@Component
+@ConfigurationProperties("api")
+@Data
+public class ApiConfig {
+    /** HTTP APIを起動するかどうか */
+    private Boolean enabled = false;
+    /** 待ち受けアドレス */
+    private String host = "0.0.0.0";
+    /** 待ち受けポート */
+    private Integer port = 8080;
+    /** リクエストを処理するスレッド数 */
+    private Integer threads = 2;
+    /** ライブ配信(SSE)の送信スレッド数 */
+    private Integer streamThreads = 2;
+    /** ライブ配信の接続数の上限 */
+    private Integer maxStreams = 100;
+    /** ライブ配信の接続毎の未送信イベントの上限 (超えた場合は遅いクライアントとして切断) */
+    private Integer streamBuffer = 256;
+    /** ライブ配信のキープアライブ間隔(秒) */
+    private Integer keepAlive = 15;
+    /** 計測値毎に保持するサンプル数 (3秒間隔で1日分) */
+    private Integer historySamples = 28800;
+    /** 保持する3分値の数 (1日分) */
+    private Integer historyWindows = 480;
+}
@@ -1,18 +1,25 @@
 package com.heterodain.gtimonitor.config;
 
 import java.net.http.HttpClient;
+import java.time.Clock;
 import java.time.Duration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heterodain.gtimonitor.util.VirtualThreadTaskScheduler;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * コンポーネント設定
  */
 @Configuration
+@Slf4j
 public class AppConfig {
     /** デフォルトのHTTPコネクションタイムアウト(秒) */
     private static final int DEFAULT_HTTP_CONNECTION_TIMEOUT = 15;
@@ -28,14 +35,45 @@ public class AppConfig {
     }
 
     /**
-     * タスクスケジューラのスレッドプール
+     * 時計 (リプレイモードでは仮想時計を使用)
      * 
+     * @return システム時計
+     */
+    @Bean
+    @Profile("!replay")
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+
+    /**
+     * タスクスケジューラのスレッドプール (複数拠点モードでは全ての拠点で共有)
+     * 
+     * <p>
+     * 仮想スレッドで実行する場合は、プールは実行時刻の管理のみに使い、タスクは実行毎に仮想スレッドで実行する。
+     * </p>
+     * 
+     * @param multiSiteConfig 複数拠点モードの設定 (無い場合は単一拠点)
+     * @param executionConfig タスクの実行方式の設定 (無い場合はスレッドプールで実行)
      * @return タスクスケジューラのスレッドプール
      */
     @Bean
-    public ThreadPoolTaskScheduler taskScheduler() {
+    public ThreadPoolTaskScheduler taskScheduler(ObjectProvider<MultiSiteConfig> multiSiteConfig,
+            ObjectProvider<ExecutionConfig> executionConfig) {
+        var execution = executionConfig.getIfAvailable(ExecutionConfig::new);
+        if (Boolean.TRUE.equals(execution.getVirtualThreads())) {
+            var virtualThreads = VirtualThreadTaskScheduler.virtualThreadFactory("task-");
+            if (virtualThreads != null) {
+                log.info("タスクを仮想スレッドで実行します。");
+                var taskScheduler = new VirtualThreadTaskScheduler(virtualThreads);
+                taskScheduler.setPoolSize(execution.getSchedulerThreads());
+                return taskScheduler;
+            }
+            log.warn("Java {}は仮想スレッドに対応していないため、タスクをスレッドプールで実行します。",
+                    Runtime.version().feature());
+        }
+
         var taskScheduler = new ThreadPoolTaskScheduler();
-        taskScheduler.setPoolSize(4);
+        taskScheduler.setPoolSize(multiSiteConfig.getIfAvailable(MultiSiteConfig::new).schedulerPoolSize());
         return taskScheduler;
     }
 
@@ -0,0 +1,77 @@
+package com.heterodain.gtimonitor.config;
+
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * バックテストモードの設定
+ */
+@Component
+@ConfigurationProperties("backtest")
+@Data
+public class BacktestConfig {
+    /** 計測データのトレースファイル(CSV) */
+    private String file;
+    /** 評価結果の出力先ファイル(CSV、省略時は出力しない) */
+    private String output;
+    /** 高電力設定時のリグ消費電力(W) */
+    private Double highDraw = 150D;
+    /** 低電力設定時のリグ消費電力(W) */
+    private Double lowDraw = 100D;
+    /** 評価する電力制御デバイス */
+    private List<Source> sources = List.of(Source.GTI, Source.LIGHT_SENSOR);
+    /** 評価する平均化時間(分) */
+    private List<Integer> windows = List.of(5, 10, 15, 30);
+    /** GTIを使う場合の閾値(W)の範囲 */
+    private Range gtiThreshold = new Range(50D, 300D, 10D);
+    /** GTIを使う場合の調整感度(W)の範囲 */
+    private Range gtiHysteresis = new Range(0D, 50D, 5D);
+    /** 照度センサーを使う場合の閾値(LUX)の範囲 */
+    private Range lightThreshold = new Range(5000D, 60000D, 2500D);
+    /** 照度センサーを使う場合の調整感度(LUX)の範囲 */
+    private Range lightHysteresis = new Range(0D, 5000D, 500D);
+    /** 並列度(省略時はCPUコア数) */
+    private Integer parallelism;
+
+    /**
+     * 評価する値の範囲
+     */
+    @Data
+    public static class Range {
+        /** 開始値 */
+        private Double from;
+        /** 終了値(含む) */
+        private Double to;
+        /** 刻み */
+        private Double step;
+
+        public Range() {
+        }
+
+        public Range(Double from, Double to, Double step) {
+            this.from = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        /**
+         * 範囲内の全ての値
+         * 
+         * @return 値の配列
+         */
+        public double[] values() {
+            var count = step <= 0 ? 1 : (int) Math.floor((to - from) / step + 1e-9) + 1;
+            var values = new double[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = from + step * i;
+            }
+            return values;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.heterodain.gtimonitor.config;
 
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * 制御の設定
@@ -14,6 +17,16 @@ import lombok.Data;
 public class ControlConfig {
     /** 電力制御の設置絵 */
     private Power power;
+    /** センサーフュージョンの設定 */
+    private Fusion fusion = new Fusion();
+    /** OCプロファイル計画の設定 */
+    private Plan plan = new Plan();
+    /** サンプリング間隔の設定 */
+    private Sampling sampling = new Sampling();
+    /** 外れ値除外の設定 */
+    private Filter filter = new Filter();
+    /** 計測データのパイプラインの設定 */
+    private Pipeline pipeline = new Pipeline();
 
     /**
      * 電力制御の設定
@@ -26,16 +39,208 @@ public class ControlConfig {
         private String lowProfileName;
         /** 電力制御に利用するデバイス */
         private Source source;
+        /** 電力制御に利用する計測値名 (METRICの場合、"デバイス名.レジスタ名") */
+        private String metric;
         /** Power Limit切り替え閾値(W) */
         private Integer threshold;
         /** 調整感度(W) */
         private Integer hysteresis;
+        /** 制御方式 */
+        private Mode mode = Mode.SCHEDULED;
+        /** [予測制御] 予測する時間(秒) */
+        private Integer forecastHorizon = 300;
+        /** [予測制御] 切り替え後の最小保持時間(秒) */
+        private Integer minDwell = 600;
+        /** [予測制御] 水準の平滑化係数(0～1) */
+        private Double smoothing = 0.2D;
+        /** [予測制御] トレンドの平滑化係数(0～1) */
+        private Double trendSmoothing = 0.1D;
+        /** [多段階制御] OCプロファイルの段 */
+        private List<Step> ladder;
+        /** [多段階制御] 最小切り替え間隔(秒) */
+        private Integer minSwitchInterval = 300;
+        /** [多段階制御] ファーム単位で制御する場合の余剰電力の割り当て方 */
+        private Allocation allocation = Allocation.EFFICIENCY;
+        /** 電力効率を集計する発電量の区分の幅(W or LUX) */
+        private Integer efficiencyBin = 50;
+        /** [GTI出力制限] GTIのサンプリング間隔(ミリ秒) */
+        private Long localInterval = 500L;
+        /** [GTI出力制限] 目標出力(W、リグの消費電力が不明な場合) */
+        private Double localTarget;
+        /** [GTI出力制限] リグの消費電力に上乗せする出力(W) */
+        private Double localMargin = 0D;
+        /** [GTI出力制限] 不感帯(W) */
+        private Double localDeadband = 5D;
+        /** [GTI出力制限] 1サンプルで上げる出力制限の上限(W) */
+        private Double localStep = 50D;
 
         /**
          * 電力制御デバイス
          */
         public static enum Source {
-            LIGHT_SENSOR, GTI;
+            LIGHT_SENSOR, GTI,
+            /** 照度から推定した発電電力(GTIの計測値で補正) */
+            FUSED,
+            /** 汎用のModbusデバイスの計測値 (スマートメーターの売電電力など) */
+            METRIC;
+        }
+
+        /**
+         * 制御方式
+         */
+        public static enum Mode {
+            /** 15分毎の平均値で制御 */
+            SCHEDULED,
+            /** サンプル毎に短期予測値で制御 */
+            PREDICTIVE,
+            /** 余剰電力に応じて多段階で制御 */
+            LADDER,
+            /** GTIの出力制限をリグの消費電力に合わせて制御 (OCプロファイルは変更しない) */
+            LOCAL,
+            /** 天気予報による計画に沿って制御し、計画から外れた場合のみ実測値で補正 */
+            PLANNED;
+        }
+
+        /**
+         * 余剰電力の割り当て方
+         */
+        public static enum Allocation {
+            /** 優先度の高いワーカーから */
+            PRIORITY,
+            /** 電力効率(ハッシュレート/消費電力)の高いワーカーから */
+            EFFICIENCY;
+        }
+
+        /**
+         * 多段階制御の段
+         */
+        @Data
+        public static class Step {
+            /** OCプロファイル名 */
+            private String profileName;
+            /** 想定消費電力(W) */
+            private Double draw;
+            /** 調整感度(W) */
+            private Double hysteresis;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * センサーフュージョンの設定
+     */
+    @Data
+    public static class Fusion {
+        /** 回帰の忘却係数(0～1、小さいほど直近の計測値を重視) */
+        private Double forgetting = 0.995D;
+        /** 照度とGTIの計測値を組にする時間差の上限(秒) */
+        private Integer pairWindow = 10;
+        /** 推定値を使う信頼度の下限(0～1) */
+        private Double minConfidence = 0.5D;
+        /** 天候(雲量・気温)を回帰に使うかどうか */
+        private Boolean useWeather = true;
+    }
+
+    /**
+     * OCプロファイル計画の設定
+     */
+    @Data
+    public static class Plan {
+        /** PVの定格出力(W) */
+        private Double peakPower;
+        /** 計画の間隔(分) */
+        private Integer interval = 15;
+        /** 先行時間(分、想定発電電力の変化に先立ってOCプロファイルを変更する) */
+        private Integer leadTime = 15;
+        /** 計画からの許容誤差(W、越えた場合は実測値で補正) */
+        private Double tolerance = 30D;
+        /** 設置場所の緯度 (指定なしの場合は天気予報の都市の座標) */
+        private Double latitude;
+        /** 設置場所の経度 (指定なしの場合は天気予報の都市の座標) */
+        private Double longitude;
+    }
+
+    /**
+     * サンプリング間隔の設定
+     */
+    @Data
+    public static class Sampling {
+        /** 日の出・日の入りと発電電力の変化に合わせてサンプリング間隔を変えるかどうか */
+        private Boolean adaptive = false;
+        /** 照度センサーのサンプリング間隔(秒) */
+        private Integer lightInterval = 3;
+        /** GTIのサンプリング間隔(秒) */
+        private Integer gtiInterval = 30;
+        /** [可変] 夜間のサンプリング間隔の倍率 */
+        private Integer nightFactor = 20;
+        /** [可変] 薄明(日の出後・日の入り前)のサンプリング間隔の倍率 */
+        private Integer twilightFactor = 2;
+        /** [可変] 薄明とみなす日の出後・日の入り前の時間(分) */
+        private Integer twilight = 30;
+        /** [可変] 変化が大きい場合にサンプリング間隔を短くする割合(1/n) */
+        private Integer fastFactor = 3;
+        /** [可変] 変化が大きいとみなす1サンプルあたりの変化率(0～1) */
+        private Double changeRatio = 0.2D;
+        /** [可変] 変化がほとんど無いとみなす1サンプルあたりの変化率(0～1) */
+        private Double steadyRatio = 0.02D;
+        /** [可変] 変化がほとんど無い場合のサンプリング間隔の倍率 */
+        private Integer steadyFactor = 2;
+        /** [可変] 変化を検出してから間隔を変えたままにする時間(秒) */
+        private Integer fastHold = 60;
+        /** [可変] 夜間のAmbient送信間隔(分、3の倍数) ※間の計測データはまとめて送信 */
+        private Integer nightSendInterval = 30;
+        /** [可変] 設置場所の緯度 (指定なしの場合はOCプロファイル計画の設定) */
+        private Double latitude;
+        /** [可変] 設置場所の経度 (指定なしの場合はOCプロファイル計画の設定) */
+        private Double longitude;
+    }
+
+    /**
+     * 外れ値除外の設定
+     */
+    @Data
+    public static class Filter {
+        /** 照度センサー */
+        private Metric lightSensor = new Metric(1000D);
+        /** GTI */
+        private Metric gti = new Metric(20D);
+
+        /**
+         * 計測値毎の外れ値除外の設定
+         */
+        @Data
+        @NoArgsConstructor
+        public static class Metric {
+            /** 外れ値を除外するかどうか (送信する計測値が変わるため、指定した場合のみ) */
+            private Boolean enabled = false;
+            /** 中央値を求めるウィンドウのサンプル数 */
+            private Integer window = 15;
+            /** 閾値(中央値からの偏差がMADの何倍を超えたら外れ値とするか) */
+            private Double threshold = 5D;
+            /** 偏差の尺度の下限(照度:Lux、GTI:W) ※値がほぼ一定の場合に小さな変化を除外しないため */
+            private Double floor;
+            /** 外れ値として除外する連続サンプル数の上限 ※超えた場合は水準の変化とみなす */
+            private Integer maxConsecutive = 2;
+            /** 有効な計測値の下限 */
+            private Double min = 0D;
+            /** 有効な計測値の上限 (指定なしの場合は上限なし) */
+            private Double max;
+
+            public Metric(Double floor) {
+                this.floor = floor;
+            }
+        }
+    }
+
+    /**
+     * 計測データのパイプラインの設定
+     */
+    @Data
+    public static class Pipeline {
+        /** サンプルのバッファの上限 (外れ値除外・3分値の集計、溢れた場合は古いサンプルを捨てる) */
+        private Integer sampleBuffer = 1024;
+        /** サンプル毎の制御のバッファの上限 (制御が遅い場合は古いサンプルを捨てる) */
+        private Integer controlBuffer = 64;
+        /** 3分値の出力先毎のバッファの上限 (Ambientへの送信が遅い場合は古い3分値を捨てる) */
+        private Integer sinkBuffer = 16;
+    }
+}
@@ -1,9 +1,13 @@
 package com.heterodain.gtimonitor.config;
 
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 /**
  * デバイスの設定
@@ -16,6 +20,12 @@ public class DeviceConfig {
     private LightSensor lightSensor;
     /* GTIの設定 */
     private Gti gti;
+    /* 追加のGTIの設定 (ゲートウェイ毎に並行して読み込み、発電電力を合計) */
+    private List<Gti> gtis = List.of();
+    /* 汎用のModbusデバイスの設定 (スマートメーターなど、GTIと同じバスの場合は接続を共有) */
+    private List<ModbusDevice> modbusDevices = List.of();
+    /* 切断時の再接続の設定 */
+    private Reconnect reconnect = new Reconnect();
 
     /**
      * 照度センサーの設定情報
@@ -24,16 +34,163 @@ public class DeviceConfig {
     public static class LightSensor {
         /* シリアル通信ポート名 */
         private String comPort;
+        /* TCP接続先ホスト (シリアル-TCP変換器経由の場合) */
+        private String host;
+        /* TCP接続先ポート */
+        private Integer port;
+        /* 1回の読み込みの期限(ミリ秒、超えた場合は再接続) */
+        private Integer deadline = 3000;
     }
 
     /**
-     * GTIの設定情報
+     * Modbusの接続設定情報 (GTI・汎用のModbusデバイス共通)
      */
     @Data
-    public static class Gti {
+    public static class Modbus {
+        /* 接続方式 (指定なしの場合、接続先ホストを指定していればTCP、それ以外はSERIAL) */
+        private Transport transport;
         /* シリアル通信ポート名 */
         private String comPort;
+        /* シリアル通信の速度 */
+        private Integer baudRate = 9600;
+        /* Modbus TCP・RTU over TCPの接続先ホスト (Ethernet-RS485ゲートウェイ) */
+        private String host;
+        /* Modbus TCP・RTU over TCPの接続先ポート */
+        private Integer port = 502;
+        /* 応答タイムアウト(ミリ秒) */
+        private Integer timeout = 3000;
+        /* 1回の読み書きの期限(ミリ秒、超えた場合は再接続) */
+        private Integer deadline = 5000;
         /* ModbusのユニットID */
         private Integer unitId;
     }
-}
\ No newline at end of file
+
+    /**
+     * GTIの設定情報
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    @ToString(callSuper = true)
+    public static class Gti extends Modbus {
+        /* 出力制限のレジスタアドレス (書き込みに対応したGTIのみ) */
+        private Integer limitRegister;
+        /* 出力制限のレジスタ値の倍率 (レジスタ値 = W x 倍率) */
+        private Double limitScale = 10D;
+        /* 出力制限の書き込み後に読み込んで確認するかどうか */
+        private Boolean limitVerify = true;
+        /* 出力制限の下限(W) */
+        private Double limitMin = 0D;
+        /* 出力制限の上限(W、GTIの定格出力) */
+        private Double limitMax;
+    }
+
+    /**
+     * 汎用のModbusデバイスの設定情報
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    @ToString(callSuper = true)
+    public static class ModbusDevice extends Modbus {
+        /* デバイス名 (計測値名は"デバイス名.レジスタ名") */
+        private String name;
+        /* デバイスの種類 (種類毎の既定のレジスタを読み込む、GENERICの場合はregistersのみ) */
+        private ModbusDeviceType type = ModbusDeviceType.GENERIC;
+        /* 読み込むレジスタ (既定のレジスタと同じ名前の場合は置き換え) */
+        private List<Register> registers = List.of();
+        /* 読み込み間隔(秒) */
+        private Integer interval = 5;
+    }
+
+    /**
+     * Modbusデバイスのレジスタの設定情報
+     */
+    @Data
+    public static class Register {
+        /* レジスタ名 */
+        private String name;
+        /* レジスタアドレス */
+        private Integer address;
+        /* レジスタの種類 */
+        private RegisterTable table = RegisterTable.HOLDING;
+        /* 値の形式 */
+        private RegisterFormat format = RegisterFormat.UINT16;
+        /* 32ビット値の下位ワードが先の場合はtrue */
+        private Boolean wordSwap = false;
+        /* 倍率 (計測値 = レジスタ値 x 倍率) */
+        private Double scale = 1D;
+    }
+
+    /**
+     * 切断時の再接続の設定情報
+     */
+    @Data
+    public static class Reconnect {
+        /* 再接続の間隔の初期値(ミリ秒、失敗する度に倍にする) */
+        private Long minInterval = 1000L;
+        /* 再接続の間隔の上限(ミリ秒) */
+        private Long maxInterval = 60000L;
+        /* 再接続する連続失敗回数 (ポートの消失・期限切れの場合は直ちに再接続) */
+        private Integer failureThreshold = 3;
+        /* 最初の接続もバックグラウンドで行う (falseの場合は起動時に順に接続して待つ) */
+        private Boolean asyncStart = true;
+    }
+
+    /**
+     * Modbusの接続方式
+     */
+    public enum Transport {
+        /* シリアル通信(RTU) */
+        SERIAL,
+        /* Modbus TCP */
+        TCP,
+        /* TCP上のRTUフレーム (透過型のEthernet-RS485ゲートウェイ) */
+        RTU_OVER_TCP
+    }
+
+    /**
+     * 汎用のModbusデバイスの種類
+     */
+    public enum ModbusDeviceType {
+        /* 既定のレジスタ無し (registersのみ読み込む) */
+        GENERIC,
+        /* Eastron SDM120 (単相電力量計) */
+        SDM120,
+        /* Eastron SDM630 (三相電力量計) */
+        SDM630
+    }
+
+    /**
+     * Modbusのレジスタの種類
+     */
+    public enum RegisterTable {
+        /* 保持レジスタ(ファンクションコード3) */
+        HOLDING,
+        /* 入力レジスタ(ファンクションコード4) */
+        INPUT
+    }
+
+    /**
+     * Modbusのレジスタ値の形式
+     */
+    public enum RegisterFormat {
+        /* 符号付き16ビット整数 */
+        INT16,
+        /* 符号なし16ビット整数 */
+        UINT16,
+        /* 符号付き32ビット整数 (2レジスタ) */
+        INT32,
+        /* 符号なし32ビット整数 (2レジスタ) */
+        UINT32,
+        /* 32ビット浮動小数点数 (2レジスタ) */
+        FLOAT32;
+
+        /**
+         * レジスタ数
+         *
+         * @return 値が占めるレジスタ数
+         */
+        public int words() {
+            return this == INT16 || this == UINT16 ? 1 : 2;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.heterodain.gtimonitor.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * タスクの実行方式の設定
+ */
+@Component
+@ConfigurationProperties("execution")
+@Data
+public class ExecutionConfig {
+    /** タスクを実行毎に仮想スレッドで実行するかどうか (Java 21以降、それ以前のJavaではスレッドプールで実行) */
+    private Boolean virtualThreads = false;
+    /** 仮想スレッドで実行する場合のスケジューラーのスレッド数 (実行時刻の管理のみ) */
+    private Integer schedulerThreads = 2;
+}
@@ -0,0 +1,35 @@
+package com.heterodain.gtimonitor.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 冗長構成(稼働系・待機系)の設定
+ */
+@Component
+@ConfigurationProperties("ha")
+@Data
+public class HaConfig {
+    /** 冗長構成にするかどうか */
+    private Boolean enabled = false;
+    /** リースの保存先 */
+    private Backend backend = Backend.FILE;
+    /** リースファイル (全てのインスタンスから参照できる共有ファイル) */
+    private String file = "gti-monitor.lease";
+    /** インスタンスのID (省略時はホスト名:プロセスID) */
+    private String nodeId;
+    /** リースの有効期間(ミリ秒、更新が途絶えてから待機系が引き継ぐまでの時間) */
+    private Integer leaseTtl = 5000;
+    /** リースの更新間隔(ミリ秒、有効期間の半分未満) */
+    private Integer renewInterval = 1000;
+
+    /**
+     * リースの保存先
+     */
+    public enum Backend {
+        /** 共有ファイル (ファイルロックで排他) */
+        FILE
+    }
+}
@@ -0,0 +1,72 @@
+package com.heterodain.gtimonitor.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 複数拠点モードの設定
+ *
+ * <p>
+ * 拠点を指定した場合は、1つのJVMで拠点毎のデバイス・3分値・制御・Ambientチャネルを動かす。
+ * 拠点毎の設定は、共通の設定(device・service・control・cost・sink)に拠点の設定を上書きしたもの。
+ * HTTPクライアント・スケジューラー・HTTP APIは全ての拠点で共有する。
+ * </p>
+ */
+@Component
+@ConfigurationProperties("multi-site")
+@Data
+public class MultiSiteConfig {
+    /** 拠点 (空の場合は単一拠点モード) */
+    private List<Site> sites = new ArrayList<>();
+    /** スケジューラーのスレッド数 (省略時は4+拠点数×2) */
+    private Integer schedulerThreads;
+
+    /**
+     * 拠点の設定情報
+     *
+     * <p>
+     * 拠点毎の設定はpropertiesの下に共通の設定と同じ形式で記述するか、fileに設定ファイル(YAML)を指定する。
+     * 両方を指定した場合はpropertiesを優先する。
+     * </p>
+     */
+    @Data
+    public static class Site {
+        /** 拠点名 (ログ出力・HTTP APIのパス・追加の送信先のタグに使用) */
+        private String name;
+        /** 拠点毎の設定ファイル(YAML) */
+        private String file;
+        /** 有効かどうか */
+        private Boolean enabled = true;
+    }
+
+    /**
+     * 複数拠点モードかどうか
+     *
+     * @return 拠点を指定した場合はtrue
+     */
+    public boolean isMultiSite() {
+        return !sites.isEmpty();
+    }
+
+    /**
+     * スケジューラーのスレッド数
+     *
+     * <p>
+     * 拠点毎のPower Limit制御・1日値送信は失敗時に待ってから再試行するため、
+     * 1拠点の障害で他の拠点のサンプリングが止まらないよう、拠点毎に2スレッドを確保する。
+     * </p>
+     *
+     * @return スレッド数
+     */
+    public int schedulerPoolSize() {
+        if (schedulerThreads != null) {
+            return schedulerThreads;
+        }
+        return 4 + sites.size() * 2;
+    }
+}
@@ -0,0 +1,19 @@
+package com.heterodain.gtimonitor.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * リプレイモードの設定
+ */
+@Component
+@ConfigurationProperties("replay")
+@Data
+public class ReplayConfig {
+    /** 計測データのトレースファイル(CSV) */
+    private String file;
+    /** Ambientへの送信内容の出力先ファイル(CSV、省略時は出力しない) */
+    private String output;
+}
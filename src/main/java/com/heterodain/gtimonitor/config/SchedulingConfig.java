@@ -0,0 +1,14 @@
+package com.heterodain.gtimonitor.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * スケジュール実行の設定 (リプレイ・バックテストモードでは無効)
+ */
+@Configuration
+@Profile("!replay & !backtest")
+@EnableScheduling
+public class SchedulingConfig {
+}
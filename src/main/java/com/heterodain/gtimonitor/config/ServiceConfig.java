@@ -1,5 +1,7 @@
 package com.heterodain.gtimonitor.config;
 
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
@@ -26,8 +28,33 @@ public class ServiceConfig {
     public static class AmbientChannel {
         /** 現在値 */
         private AmbientApi current;
+        /** 現在値の追加チャネル (9項目目以降を順に割り当て) */
+        private List<AmbientApi> currentShards = List.of();
+        /**
+         * 現在値のチャネルに割り当てるメトリクス (先頭からd1～d8、以降は追加チャネルへ)
+         * 
+         * <p>
+         * light, power, temperature, cloudness, humidity, oc, hash, fused, confidence, limit、
+         * 3分間の分位点(例: power:p90)、GPU毎の計測値(gpu:キー:temp|fan|power|hash)
+         * </p>
+         */
+        private List<String> currentMetrics = List.of("light", "power", "temperature", "cloudness", "humidity", "oc",
+                "hash", "fused");
         /** 集計値 */
         private AmbientApi summary;
+        /** 集計値の追加チャネル */
+        private List<AmbientApi> summaryShards = List.of();
+        /** 集計値のチャネルに割り当てるメトリクス (power, yen, hash、1日の分位点(例: power:p90)) */
+        private List<String> summaryMetrics = List.of("power", "yen", "hash");
+        /** 分位点 (3分値のスケッチを併合したウィンドウ毎) */
+        private AmbientApi percentile;
+        /** 分位点の追加チャネル */
+        private List<AmbientApi> percentileShards = List.of();
+        /** 分位点の送信間隔(分、3の倍数) */
+        private Integer percentileInterval = 15;
+        /** 分位点のチャネルに割り当てる計測値と分位 (例: power:p90、light:min) */
+        private List<String> percentileMetrics = List.of("power:p10", "power:p50", "power:p90", "power:min",
+                "power:max");
     }
 
     /**
@@ -35,6 +62,8 @@ public class ServiceConfig {
      */
     @Data
     public static class AmbientApi {
+        /** APIのベースURL */
+        private String baseUrl = "http://ambidata.io/api/v2";
         /** チャネルID */
         private Integer channelId;
         /** リードキー */
@@ -48,19 +77,43 @@ public class ServiceConfig {
      */
     @Data
     public static class OpenWeatherApi {
+        /** APIのベースURL */
+        private String baseUrl = "https://api.openweathermap.org/data/2.5";
         /** 都市ID */
         private String cityId;
         /** APIアクセスキー */
         private String apiKey;
     }
 
+    /**
+     * Hive APIの接続設定
+     */
     @Data
     public static class HiveApi {
+        /** APIのベースURL */
+        private String baseUrl = "https://api2.hiveos.farm/api/v2";
         /** ファームID */
         private Integer farmId;
         /** ワーカーID */
         private Integer workerId;
         /** パーソナルAPIトークン */
         private String personalToken;
+        /** ファームで制御するワーカー (指定した場合はworkerIdの代わりにファーム単位で制御) */
+        private List<Worker> workers;
+        /** OCプロファイル変更の同時リクエスト数 */
+        private Integer maxConcurrentRequests = 4;
+        /** OCプロファイル変更のリクエスト間隔(ミリ秒) */
+        private Long requestInterval = 200L;
+    }
+
+    /**
+     * ファームで制御するワーカー
+     */
+    @Data
+    public static class Worker {
+        /** ワーカーID */
+        private Integer id;
+        /** 優先度 (小さいほど優先して余剰電力を割り当てる) */
+        private Integer priority = 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.heterodain.gtimonitor.config;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * 計測データの追加の送信先の設定 (Ambient以外)
+ */
+@Component
+@ConfigurationProperties("sink")
+@Data
+public class SinkConfig {
+    /** InfluxDB(ラインプロトコル)の送信先 */
+    private List<Influx> influx = List.of();
+    /** MQTTブローカーの送信先 */
+    private List<Mqtt> mqtt = List.of();
+
+    /**
+     * 送信する計測データの粒度
+     */
+    public enum Resolution {
+        /** サンプル毎 (外れ値除外後の照度・発電電力・推定電力・汎用のModbusデバイスの計測値) */
+        SAMPLE,
+        /** 3分値 (平均値・ハッシュレート) */
+        WINDOW
+    }
+
+    /**
+     * 送信先の設定情報 (送信先共通)
+     */
+    @Data
+    public static class Sink {
+        /** 送信先の名前 (ログ出力用、省略時は種類と連番) */
+        private String name;
+        /** 送信する計測データの粒度 */
+        private Resolution resolution = Resolution.SAMPLE;
+        /** 1回に送信する最大件数 (溜まったら送信間隔を待たずに送信) */
+        private Integer batchSize = 500;
+        /** 送信間隔(ミリ秒) */
+        private Integer flushInterval = 10000;
+        /** 未送信データの上限件数 (超えた場合は古いものから破棄) */
+        private Integer bufferSize = 100000;
+        /** 送信失敗時の再送間隔(ミリ秒) */
+        private Integer retryInterval = 30000;
+    }
+
+    /**
+     * InfluxDBの送信先の設定情報
+     *
+     * <p>
+     * bucketを指定した場合はv2のAPI(/api/v2/write)、databaseを指定した場合はv1のAPI(/write)に送信する。
+     * </p>
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    @ToString(callSuper = true)
+    public static class Influx extends Sink {
+        /** APIのベースURL */
+        private String baseUrl = "http://localhost:8086";
+        /** 組織 (v2) */
+        private String org;
+        /** バケット (v2) */
+        private String bucket;
+        /** APIトークン (v2) */
+        @ToString.Exclude
+        private String token;
+        /** データベース (v1) */
+        private String database;
+        /** 測定名 */
+        private String measurement = "gti";
+        /** 全ての行に付けるタグ (タグ名→値) */
+        private Map<String, String> tags = Map.of();
+        /** HTTP読み込みタイムアウト(ミリ秒) */
+        private Integer timeout = 10000;
+    }
+
+    /**
+     * MQTTブローカーの送信先の設定情報 (MQTT 3.1.1、QoS 0)
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    @ToString(callSuper = true)
+    public static class Mqtt extends Sink {
+        /** ブローカーのホスト */
+        private String host = "localhost";
+        /** ブローカーのポート */
+        private Integer port = 1883;
+        /** クライアントID */
+        private String clientId = "gti-monitor";
+        /** ユーザー名 */
+        private String username;
+        /** パスワード */
+        @ToString.Exclude
+        private String password;
+        /** トピックの接頭辞 (計測値名を付けて"接頭辞/計測値名"に送信) */
+        private String topic = "gti-monitor";
+        /** キープアライブ(秒) */
+        private Integer keepAlive = 60;
+        /** 接続・応答タイムアウト(ミリ秒) */
+        private Integer timeout = 10000;
+    }
+}
@@ -0,0 +1,185 @@
+package com.heterodain.gtimonitor.control;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Sampling;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * 日の出・日の入りと発電電力の変化に合わせたサンプリング間隔
+ *
+ * <p>
+ * 設置場所の座標から日の出・日の入りを計算し、夜間はサンプリング間隔を長く(夜間の倍率)、
+ * 日の出後・日の入り前の薄明は少し長く(薄明の倍率)する。日中に1サンプルでの変化率が大きい
+ * (雲の通過など)場合は、一定時間サンプリング間隔を短く(1/n)し、変化がほとんど無い(快晴・曇天)
+ * 場合は長く(安定時の倍率)する。
+ * </p>
+ */
+public class AdaptiveSampler {
+    /** 変化率を求める際の計測値の下限 (照度:Lux、GTI:W) */
+    private static final double[] CHANGE_FLOORS = { 500D, 10D };
+
+    /**
+     * サンプリング対象
+     */
+    public static enum Channel {
+        LIGHT_SENSOR, GTI;
+    }
+
+    /**
+     * 時間帯
+     */
+    public static enum Phase {
+        NIGHT, TWILIGHT, DAY;
+    }
+
+    /** サンプリング間隔の設定 */
+    private final Sampling config;
+    /** 緯度 */
+    private final double latitude;
+    /** 経度 */
+    private final double longitude;
+    /** サンプリング対象毎の通常のサンプリング間隔(ミリ秒) */
+    private final long[] baseIntervals;
+
+    /** サンプリング対象毎の前回の計測値 */
+    private final Double[] lastValues = new Double[Channel.values().length];
+    /** サンプリング対象毎の前回のサンプル時刻(ミリ秒) */
+    private final long[] lastMillis = new long[Channel.values().length];
+    /** 短い間隔を続ける期限(ミリ秒) */
+    private long fastUntilMillis = Long.MIN_VALUE;
+    /** 通常の間隔を続ける期限(ミリ秒、過ぎると安定時の間隔) */
+    private long activeUntilMillis = Long.MIN_VALUE;
+    /** 日の出・日の入りを計算した日 */
+    private LocalDate sunDay;
+    /** 日の出・日の入りの時刻 */
+    private Pair<Instant, Instant> sunTimes;
+
+    /**
+     * コンストラクタ
+     *
+     * @param config    サンプリング間隔の設定
+     * @param latitude  緯度
+     * @param longitude 経度
+     */
+    public AdaptiveSampler(Sampling config, double latitude, double longitude) {
+        this.config = config;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.baseIntervals = new long[] { config.getLightInterval() * 1000L, config.getGtiInterval() * 1000L };
+    }
+
+    /**
+     * 時間帯を判定
+     *
+     * @param millis 時刻(ミリ秒)
+     * @return 時間帯
+     */
+    public synchronized Phase phase(long millis) {
+        var time = Instant.ofEpochMilli(millis);
+        // 地方太陽時の日付 (日付の境界を深夜にする)
+        var day = time.atOffset(ZoneOffset.ofTotalSeconds((int) Math.round(longitude * 240D))).toLocalDate();
+        if (!day.equals(sunDay)) {
+            sunDay = day;
+            sunTimes = ClearSkyModel.sunTimes(latitude, longitude, day);
+        }
+
+        var sunrise = sunTimes.getLeft();
+        var sunset = sunTimes.getRight();
+        if (time.isBefore(sunrise) || !time.isBefore(sunset)) {
+            return Phase.NIGHT;
+        }
+        var twilightSeconds = config.getTwilight() * 60L;
+        if (time.isBefore(sunrise.plusSeconds(twilightSeconds))
+                || !time.isBefore(sunset.minusSeconds(twilightSeconds))) {
+            return Phase.TWILIGHT;
+        }
+        return Phase.DAY;
+    }
+
+    /**
+     * 日の出・日の入りの時刻
+     *
+     * @param millis 時刻(ミリ秒)
+     * @return 日の出・日の入りの時刻
+     */
+    public synchronized Pair<Instant, Instant> getSunTimes(long millis) {
+        phase(millis);
+        return sunTimes;
+    }
+
+    /**
+     * 次のサンプルまでの間隔
+     *
+     * @param channel サンプリング対象
+     * @param millis  時刻(ミリ秒)
+     * @return サンプリング間隔(ミリ秒)
+     */
+    public synchronized long interval(Channel channel, long millis) {
+        var base = baseIntervals[channel.ordinal()];
+        switch (phase(millis)) {
+            case NIGHT:
+                return base * config.getNightFactor();
+            case TWILIGHT:
+                return millis < fastUntilMillis ? base : base * config.getTwilightFactor();
+            default:
+                if (millis < fastUntilMillis) {
+                    return Math.max(1000L, base / config.getFastFactor());
+                }
+                return millis < activeUntilMillis ? base : base * config.getSteadyFactor();
+        }
+    }
+
+    /**
+     * 夜間に、前回のサンプルから夜間のサンプリング間隔が経っていないかどうか
+     * (固定間隔でサンプリングする場合の間引き)
+     *
+     * @param channel サンプリング対象
+     * @param millis  時刻(ミリ秒)
+     * @return 間引く場合はtrue
+     */
+    public synchronized boolean skipAtNight(Channel channel, long millis) {
+        return phase(millis) == Phase.NIGHT && millis - lastMillis[channel.ordinal()] < interval(channel, millis);
+    }
+
+    /**
+     * サンプルを追加 (変化率に応じて、一定時間サンプリング間隔を変える)
+     *
+     * @param channel サンプリング対象
+     * @param millis  サンプル時刻(ミリ秒)
+     * @param value   計測値
+     */
+    public synchronized void onSample(Channel channel, long millis, double value) {
+        var index = channel.ordinal();
+        var last = lastValues[index];
+        lastValues[index] = value;
+        lastMillis[index] = millis;
+        if (last == null) {
+            return;
+        }
+
+        var scale = Math.max(CHANGE_FLOORS[index], Math.max(Math.abs(last), Math.abs(value)));
+        var ratio = Math.abs(value - last) / scale;
+        var holdMillis = config.getFastHold() * 1000L;
+        if (ratio >= config.getChangeRatio()) {
+            fastUntilMillis = millis + holdMillis;
+        }
+        if (ratio >= config.getSteadyRatio()) {
+            activeUntilMillis = Math.max(activeUntilMillis, millis + holdMillis);
+        }
+    }
+
+    /**
+     * 夜間に、3分値の送信を間引くかどうか (間の計測データは次の送信でまとめて平均)
+     *
+     * @param millis      送信時刻(ミリ秒)
+     * @param minuteOfDay 送信時刻の0時からの経過分
+     * @return 間引く場合はtrue
+     */
+    public boolean skipSend(long millis, int minuteOfDay) {
+        return phase(millis) == Phase.NIGHT && minuteOfDay % config.getNightSendInterval() != 0;
+    }
+}
@@ -0,0 +1,124 @@
+package com.heterodain.gtimonitor.control;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * 晴天時の日射モデル
+ *
+ * <p>
+ * 太陽高度は赤緯・均時差の近似式、晴天時の全天日射量はHaurwitzモデル、
+ * 雲による減衰はKasten-Czeplakの式で求める。
+ * </p>
+ */
+public final class ClearSkyModel {
+    /** 標準試験条件の日射量(W/m2) */
+    private static final double STC_IRRADIANCE = 1000D;
+    /** 出力の温度係数(/℃) */
+    private static final double TEMPERATURE_COEFFICIENT = 0.004D;
+    /** 日の出・日の入りの太陽高度(大気差と太陽の視半径を考慮) */
+    private static final double SUNRISE_ELEVATION = Math.toRadians(-0.833D);
+
+    private ClearSkyModel() {
+    }
+
+    /**
+     * 太陽高度の正弦(天頂角の余弦)
+     *
+     * @param latitude  緯度
+     * @param longitude 経度
+     * @param time      時刻
+     * @return 太陽高度の正弦(日没中は負)
+     */
+    public static double sinElevation(double latitude, double longitude, Instant time) {
+        var utc = time.atOffset(ZoneOffset.UTC);
+        var dayOfYear = utc.getDayOfYear();
+        var hours = utc.getHour() + utc.getMinute() / 60D + utc.getSecond() / 3600D;
+
+        var declination = declination(dayOfYear);
+        var solarTime = hours + longitude / 15D + equationOfTime(dayOfYear) / 60D;
+        var hourAngle = Math.toRadians(15D * (solarTime - 12D));
+
+        var phi = Math.toRadians(latitude);
+        return Math.sin(phi) * Math.sin(declination)
+                + Math.cos(phi) * Math.cos(declination) * Math.cos(hourAngle);
+    }
+
+    /**
+     * 日の出・日の入りの時刻
+     *
+     * @param latitude  緯度
+     * @param longitude 経度
+     * @param day       日付(地方太陽時)
+     * @return 日の出・日の入りの時刻 (白夜は正午±12時間、極夜は日の出・日の入りとも正午)
+     */
+    public static Pair<Instant, Instant> sunTimes(double latitude, double longitude, LocalDate day) {
+        var dayOfYear = day.getDayOfYear();
+        var declination = declination(dayOfYear);
+        var phi = Math.toRadians(latitude);
+        var cosHourAngle = (Math.sin(SUNRISE_ELEVATION) - Math.sin(phi) * Math.sin(declination))
+                / (Math.cos(phi) * Math.cos(declination));
+        var hourAngle = Math.toDegrees(Math.acos(Math.max(-1D, Math.min(1D, cosHourAngle))));
+
+        // 南中時刻(UTC、時)
+        var noon = 12D - longitude / 15D - equationOfTime(dayOfYear) / 60D;
+        var midnight = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        return Pair.of(midnight.plusSeconds(Math.round((noon - hourAngle / 15D) * 3600D)),
+                midnight.plusSeconds(Math.round((noon + hourAngle / 15D) * 3600D)));
+    }
+
+    /**
+     * 太陽の赤緯(ラジアン)
+     */
+    private static double declination(int dayOfYear) {
+        return Math.toRadians(23.44D) * Math.sin(2D * Math.PI * (284 + dayOfYear) / 365D);
+    }
+
+    /**
+     * 均時差(分)
+     */
+    private static double equationOfTime(int dayOfYear) {
+        var b = 2D * Math.PI * (dayOfYear - 81) / 364D;
+        return 9.87D * Math.sin(2D * b) - 7.53D * Math.cos(b) - 1.5D * Math.sin(b);
+    }
+
+    /**
+     * 晴天時の全天日射量
+     *
+     * @param sinElevation 太陽高度の正弦
+     * @return 全天日射量(W/m2)
+     */
+    public static double clearSkyIrradiance(double sinElevation) {
+        if (sinElevation <= 0D) {
+            return 0D;
+        }
+        return 1098D * sinElevation * Math.exp(-0.057D / sinElevation);
+    }
+
+    /**
+     * 想定発電電力
+     *
+     * @param peakPower   PVの定格出力(W)
+     * @param latitude    緯度
+     * @param longitude   経度
+     * @param time        時刻
+     * @param cloudness   雲量(%、不明な場合はnull)
+     * @param temperature 気温(℃、不明な場合はnull)
+     * @return 想定発電電力(W)
+     */
+    public static double expectedPower(double peakPower, double latitude, double longitude, Instant time,
+            Double cloudness, Double temperature) {
+        var irradiance = clearSkyIrradiance(sinElevation(latitude, longitude, time));
+        if (cloudness != null) {
+            irradiance *= 1D - 0.75D * Math.pow(cloudness / 100D, 3.4D);
+        }
+        var power = peakPower * irradiance / STC_IRRADIANCE;
+        if (temperature != null && temperature > 25D) {
+            power *= 1D - TEMPERATURE_COEFFICIENT * (temperature - 25D);
+        }
+        return power;
+    }
+}
@@ -0,0 +1,799 @@
+package com.heterodain.gtimonitor.control;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Mode;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.config.ServiceConfig.HiveApi;
+import com.heterodain.gtimonitor.control.DayAheadPlanner.DayPlan;
+import com.heterodain.gtimonitor.control.DayAheadPlanner.PlanEntry;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+import com.heterodain.gtimonitor.model.GpuSample;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.pipeline.Operator;
+import com.heterodain.gtimonitor.service.HiveService;
+import com.heterodain.gtimonitor.service.OpenWeatherService;
+import com.heterodain.gtimonitor.service.HiveService.OcProfile;
+import com.heterodain.gtimonitor.service.HiveService.WorkerInfo;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 制御モード毎のPower Limit制御・GTIの出力制限の振り分け (control段と15分毎の制御)
+ *
+ * <p>
+ * 予測制御・多段階制御・GTI出力制限モードはサンプル毎に、スケジュール制御・計画制御モードは15分毎の3分値の平均で
+ * OCプロファイル・出力制限を決めて変更する。現在のOCプロファイル・出力制限・リグの消費電力を保持し、
+ * 冗長構成では制御を判断する前に稼働系に合わせる。変更は稼働系のみ行う。
+ * </p>
+ */
+@Slf4j
+public class ControlDispatcher implements Operator<Sample, Void> {
+    /** 送受信リトライ回数 */
+    private static final int RETRY_COUNT = 5;
+    /** Hive更新リトライ間隔(ミリ秒) */
+    private static final long HIVE_RETRY_INTERVAL = 1 * 60 * 1000; // 1分
+    /** GTI出力制限のリトライ間隔(ミリ秒) */
+    private static final long GTI_RETRY_INTERVAL = 5 * 1000; // 5秒
+    /** 計画作成のリトライ間隔(ミリ秒) */
+    private static final long PLAN_RETRY_INTERVAL = 60 * 60 * 1000; // 1時間
+
+    private final ControlConfig controlConfig;
+    private final ServiceConfig serviceConfig;
+    private final HiveService hiveService;
+    private final OpenWeatherService openWeatherService;
+    private final GridTieInverterDevice gtiDevice;
+    private final LeaderElection leaderElection;
+    private final Clock clock;
+    /** 稼働系が公開するOCプロファイルのキー */
+    private final String ocProfileKey;
+
+    /** 現在のOCプロファイル */
+    private volatile OcProfile currentOcProfile;
+    /** 予測型のPower Limit制御 (予測制御モードのみ) */
+    private PredictiveController predictiveController;
+    /** 多段階のPower Limit制御 (多段階制御モードのみ) */
+    private LadderController ladderController;
+    /** ファーム単位のPower Limit制御 (ファームのワーカーを指定した場合のみ) */
+    private FarmController farmController;
+    /** GPU・OCプロファイル毎の電力効率 */
+    private final EfficiencyTracker efficiencyTracker;
+    /** GTIの出力制限によるローカル制御 (GTI出力制限モードのみ) */
+    private volatile LocalController localController;
+    /** 現在のGTIの出力制限(W、不明な場合はnull) */
+    private volatile Double currentLimit;
+    /** リグの消費電力(W、GPUの消費電力の合計、不明な場合はnull) */
+    private volatile Double rigDraw;
+    /** 天気予報によるOCプロファイル計画 (計画制御モードのみ) */
+    private DayAheadPlanner dayAheadPlanner;
+    /** 当日の計画 */
+    private volatile DayPlan currentPlan;
+    /** 翌日の計画 */
+    private volatile DayPlan nextPlan;
+    /** 計画作成を再試行する時刻(ミリ秒) */
+    private volatile long planRetryMillis;
+    /** 制御を開始した稼働系の期間 (冗長構成にしない場合は常に0) */
+    private long controlTerm;
+    /** 稼働系に合わせる処理の排他 (Hive・GTIの応答を待つため、仮想スレッドを固定しないロック) */
+    private final ReentrantLock controlLock = new ReentrantLock();
+
+    /**
+     * コンストラクタ
+     *
+     * @param controlConfig      制御の設定
+     * @param serviceConfig      外部サービスの設定
+     * @param hiveService        Hive API
+     * @param openWeatherService Open Weather API
+     * @param gtiDevice          グリッドタイインバーター
+     * @param leaderElection     冗長構成の稼働系の選出
+     * @param clock              時計
+     * @param ocProfileKey       稼働系が公開するOCプロファイルのキー
+     * @throws IllegalArgumentException 計画制御モードでOpen Weather APIの設定が無い場合
+     */
+    public ControlDispatcher(ControlConfig controlConfig, ServiceConfig serviceConfig, HiveService hiveService,
+            OpenWeatherService openWeatherService, GridTieInverterDevice gtiDevice, LeaderElection leaderElection,
+            Clock clock, String ocProfileKey) {
+        this.controlConfig = controlConfig;
+        this.serviceConfig = serviceConfig;
+        this.hiveService = hiveService;
+        this.openWeatherService = openWeatherService;
+        this.gtiDevice = gtiDevice;
+        this.leaderElection = leaderElection;
+        this.clock = clock;
+        this.ocProfileKey = ocProfileKey;
+
+        var powerConfig = controlConfig.getPower();
+        var hiveApiConfig = serviceConfig.getHiveApi();
+        efficiencyTracker = new EfficiencyTracker(powerConfig == null ? 50 : powerConfig.getEfficiencyBin());
+        if (powerConfig != null && hiveApiConfig != null && hiveApiConfig.getWorkers() != null
+                && !hiveApiConfig.getWorkers().isEmpty()) {
+            farmController = new FarmController(powerConfig, hiveApiConfig.getWorkers());
+        }
+        if (powerConfig != null && powerConfig.getMode() == Mode.PREDICTIVE) {
+            predictiveController = new PredictiveController(powerConfig);
+        }
+        if (powerConfig != null && powerConfig.getMode() == Mode.LADDER && farmController == null) {
+            ladderController = new LadderController(powerConfig);
+        }
+        if (powerConfig != null && powerConfig.getMode() == Mode.PLANNED) {
+            if (serviceConfig.getOpenWeatherApi() == null) {
+                throw new IllegalArgumentException("計画制御モードにはservice.open-weather-apiの設定が必要です");
+            }
+            dayAheadPlanner = new DayAheadPlanner(powerConfig, controlConfig.getPlan());
+        }
+    }
+
+    /**
+     * GTIの出力制限によるローカル制御を開始 (GTI出力制限モードのみ、デバイスに接続する場合に呼び出す)
+     *
+     * @param gtiConfig GTIの接続設定
+     */
+    public void startLocal(DeviceConfig.Gti gtiConfig) {
+        var powerConfig = controlConfig.getPower();
+        if (powerConfig != null && powerConfig.getMode() == Mode.LOCAL) {
+            localController = new LocalController(powerConfig, gtiConfig);
+        }
+    }
+
+    /**
+     * GTI出力制限モードかどうか
+     *
+     * @return ローカル制御を開始した場合はtrue
+     */
+    public boolean isLocal() {
+        return localController != null;
+    }
+
+    /**
+     * GTIの出力制限を取得 (GTI出力制限モードで、まだ取得していない場合のみ)
+     */
+    public void readPowerLimit() {
+        if (localController == null || currentLimit != null) {
+            return;
+        }
+        try {
+            currentLimit = gtiDevice.getPowerLimit();
+            log.info("GTIの出力制限={}W", currentLimit);
+        } catch (Exception e) {
+            log.warn("GTIの出力制限を取得できませんでした。", e);
+        }
+    }
+
+    /**
+     * サンプル毎のPower Limit制御・GTIの出力制限 (control段)
+     *
+     * @param sample サンプル
+     * @param emit   (出力なし)
+     */
+    @Override
+    public void process(Sample sample, Consumer<Void> emit) {
+        if (sample.isClose()) {
+            return;
+        }
+        followLeader();
+
+        var millis = sample.getMillis();
+        var value = sample.getValue();
+        switch (sample.getMetric()) {
+            case "light":
+                predictPower(Source.LIGHT_SENSOR, millis, value);
+                break;
+            case "power":
+                predictPower(Source.GTI, millis, value);
+                if (ladderSource() == Source.GTI) {
+                    ladderPower(millis, value);
+                }
+                localPower(millis, value);
+                break;
+            case "fused":
+                predictPower(Source.FUSED, millis, value);
+                if (ladderSource() == Source.FUSED) {
+                    ladderPower(millis, value);
+                }
+                break;
+            default:
+                var powerConfig = controlConfig.getPower();
+                if (powerConfig == null || powerConfig.getSource() != Source.METRIC
+                        || !sample.getMetric().equals(powerConfig.getMetric())) {
+                    return;
+                }
+                predictPower(Source.METRIC, millis, value);
+                // 多段階制御では、売電電力などの正味の電力にリグの消費電力を加えて発電電力相当として扱う
+                var draw = rigDraw;
+                ladderPower(millis, draw == null ? value : value + draw);
+                break;
+        }
+    }
+
+    /**
+     * 多段階制御に利用するデバイス (照度センサーの場合はGTI)
+     */
+    private Source ladderSource() {
+        var source = controlConfig.getPower() == null ? null : controlConfig.getPower().getSource();
+        return source == Source.FUSED || source == Source.METRIC ? source : Source.GTI;
+    }
+
+    /**
+     * サンプル毎に予測値でPower Limit制御 (予測制御モードのみ)
+     *
+     * @param source 計測したデバイス
+     * @param millis 計測時刻(ミリ秒)
+     * @param value  計測値
+     */
+    private void predictPower(Source source, long millis, double value) {
+        if (predictiveController == null || source != controlConfig.getPower().getSource()) {
+            return;
+        }
+        var hiveApiConfig = serviceConfig.getHiveApi();
+        if (hiveApiConfig == null) {
+            return;
+        }
+
+        var currentProfileName = currentOcProfile == null ? null : currentOcProfile.getName();
+        var nextProfileName = predictiveController.onSample(millis, value, currentProfileName);
+        if (nextProfileName == null || !leaderElection.isLeader()) {
+            return;
+        }
+
+        // 失敗時はサンプリングを止めないよう、待たずに一定時間後のサンプルで再試行
+        try {
+            log.debug("OCプロファイルを{}に変更します。(予測値={})", nextProfileName, predictiveController.forecast());
+            changeOcProfile(hiveApiConfig, nextProfileName);
+            predictiveController.switched(millis);
+        } catch (Exception e) {
+            log.error("OCプロファイルの変更に失敗しました。", e);
+            predictiveController.failed(millis, HIVE_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * サンプル毎に余剰電力で多段階のPower Limit制御 (多段階制御モードのみ)
+     *
+     * @param millis 計測時刻(ミリ秒)
+     * @param power  発電電力(W)
+     */
+    private void ladderPower(long millis, double power) {
+        var hiveApiConfig = serviceConfig.getHiveApi();
+        if (hiveApiConfig == null) {
+            return;
+        }
+        if (farmController != null) {
+            if (controlConfig.getPower().getMode() == Mode.LADDER) {
+                farmPower(hiveApiConfig, millis, power);
+            }
+            return;
+        }
+        if (ladderController == null) {
+            return;
+        }
+
+        var currentProfileName = currentOcProfile == null ? null : currentOcProfile.getName();
+        var nextProfileName = ladderController.onSample(millis, power, currentProfileName);
+        if (nextProfileName == null || !leaderElection.isLeader()) {
+            return;
+        }
+
+        // 失敗時はサンプリングを止めないよう、待たずに一定時間後のサンプルで再試行
+        try {
+            log.debug("OCプロファイルを{}に変更します。(発電電力={}W)", nextProfileName, power);
+            currentOcProfile = hiveService.changeWorkerOcProfile(hiveApiConfig, nextProfileName);
+            ladderController.switched(millis);
+        } catch (Exception e) {
+            log.error("OCプロファイルの変更に失敗しました。", e);
+            ladderController.failed(millis, HIVE_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * サンプル毎にGTIの出力制限を調整 (GTI出力制限モードのみ)
+     *
+     * @param millis 計測時刻(ミリ秒)
+     * @param power  発電電力(W)
+     */
+    private void localPower(long millis, double power) {
+        var localController = this.localController;
+        if (localController == null) {
+            return;
+        }
+
+        var nextLimit = localController.onSample(millis, power, currentLimit);
+        if (nextLimit == null || !leaderElection.isLeader()) {
+            return;
+        }
+
+        try {
+            log.debug("GTIの出力制限を{}Wに変更します。(発電電力={}W)", nextLimit, power);
+            gtiDevice.setPowerLimit(nextLimit);
+            currentLimit = nextLimit;
+        } catch (Exception e) {
+            log.error("GTIの出力制限の変更に失敗しました。", e);
+            localController.failed(millis, GTI_RETRY_INTERVAL);
+            currentLimit = null;
+        }
+    }
+
+    /**
+     * 余剰電力をワーカーに割り当てて多段階のPower Limit制御 (ファーム単位の多段階制御モードのみ)
+     *
+     * @param hiveApiConfig Hive API接続設定
+     * @param millis        計測時刻(ミリ秒)
+     * @param power         発電電力(W)
+     */
+    private void farmPower(HiveApi hiveApiConfig, long millis, double power) {
+        var changes = farmController.onSample(millis, power);
+        if (changes.isEmpty() || !leaderElection.isLeader()) {
+            return;
+        }
+
+        // 失敗時はサンプリングを止めないよう、待たずに一定時間後のサンプルで再試行
+        try {
+            log.debug("OCプロファイルを変更します。{} (発電電力={}W)", changes, power);
+            var results = hiveService.changeWorkerOcProfiles(hiveApiConfig, changes);
+            farmController.switched(millis, results);
+            if (results.size() < changes.size()) {
+                farmController.failed(millis, HIVE_RETRY_INTERVAL);
+            }
+        } catch (Exception e) {
+            log.error("OCプロファイルの変更に失敗しました。", e);
+            farmController.failed(millis, HIVE_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * 冗長構成で稼働系に合わせる (制御を判断する前に呼び出す)
+     *
+     * 待機系の間は稼働系が公開したOCプロファイルを引き継ぐ。稼働系になった直後は、前の稼働系が変更した
+     * OCプロファイル・GTIの出力制限をHive・GTIから取得し直し、同じ変更を繰り返さないようにする。
+     * 冗長構成にしない場合は何もしない。
+     */
+    private void followLeader() {
+        controlLock.lock();
+        try {
+            var term = leaderElection.term();
+            if (term == controlTerm) {
+                return;
+            }
+            var published = leaderElection.published(ocProfileKey);
+            if (term < 0) {
+                if (published != null && (currentOcProfile == null || !published.equals(currentOcProfile.getName()))) {
+                    currentOcProfile = new OcProfile(null, published, null);
+                }
+                return;
+            }
+            controlTerm = term;
+
+            syncOcProfile(published);
+            if (localController != null) {
+                try {
+                    currentLimit = gtiDevice.getPowerLimit();
+                } catch (Exception e) {
+                    log.warn("GTIの出力制限を取得できませんでした。", e);
+                    currentLimit = null;
+                }
+            }
+            log.info("稼働系として制御を開始します。OCプロファイル={}, 出力制限={}W", getOcProfileName(), currentLimit);
+        } finally {
+            controlLock.unlock();
+        }
+    }
+
+    /**
+     * 現在のOCプロファイルをHiveから取得 (ファーム単位の場合は全ワーカー)
+     *
+     * @param fallback 取得できない場合のOCプロファイル名 (無い場合はnull)
+     */
+    public void syncOcProfile(String fallback) {
+        controlLock.lock();
+        try {
+            var hiveApiConfig = serviceConfig.getHiveApi();
+            if (hiveApiConfig == null) {
+                return;
+            }
+            try {
+                if (farmController != null) {
+                    var workerInfos = hiveService.getFarmWorkers(hiveApiConfig);
+                    if (farmController.update(workerInfos)) {
+                        farmController.updateOcProfiles(hiveService.getOcProfiles(hiveApiConfig));
+                        farmController.update(workerInfos);
+                    }
+                } else {
+                    var ocId = hiveService.getWorkerInfo(hiveApiConfig).getOcId();
+                    currentOcProfile = hiveService.getOcProfiles(hiveApiConfig).values().stream()
+                            .filter(p -> p.getId().equals(ocId)).findFirst().orElse(currentOcProfile);
+                }
+            } catch (Exception e) {
+                if (fallback == null) {
+                    log.warn("現在のOCプロファイルを取得できませんでした。", e);
+                    return;
+                }
+                log.warn("現在のOCプロファイルを取得できませんでした。前の稼働系が公開した{}を使用します。", fallback, e);
+                currentOcProfile = new OcProfile(null, fallback, null);
+            }
+        } finally {
+            controlLock.unlock();
+        }
+    }
+
+    /**
+     * OCプロファイル変更 (ファーム単位の場合は全ワーカーを並行して変更)
+     *
+     * @param hiveApiConfig Hive API接続設定
+     * @param profileName   OCプロファイル名
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void changeOcProfile(HiveApi hiveApiConfig, String profileName) throws IOException, InterruptedException {
+        if (farmController == null) {
+            currentOcProfile = hiveService.changeWorkerOcProfile(hiveApiConfig, profileName);
+            return;
+        }
+
+        var changes = farmController.allTo(profileName);
+        var results = hiveService.changeWorkerOcProfiles(hiveApiConfig, changes);
+        farmController.switched(clock.millis(), results);
+        if (results.size() < changes.size()) {
+            throw new IOException(String.format("%d台中%d台のワーカーのOCプロファイル変更に失敗しました。", changes.size(),
+                    changes.size() - results.size()));
+        }
+        currentOcProfile = farmController.getOcProfile(profileName);
+    }
+
+    /**
+     * ワーカーのハッシュレート・GPU毎の計測値を取得して3分値に設定 (リグの消費電力も更新)
+     *
+     * @param measureData 3分値
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void updateWorkers(MeasureData measureData) throws IOException, InterruptedException {
+        var hiveConfig = serviceConfig.getHiveApi();
+        if (hiveConfig != null && farmController != null) {
+            // ファームの全ワーカーを1リクエストで取得
+            var workerInfos = hiveService.getFarmWorkers(hiveConfig);
+            log.trace("ワーカー情報={}", workerInfos);
+            if (farmController.update(workerInfos)) {
+                farmController.updateOcProfiles(hiveService.getOcProfiles(hiveConfig));
+                farmController.update(workerInfos);
+            }
+            measureData.setHash(farmController.totalHash());
+
+            // 制御対象のワーカーのGPUのみ
+            var profileNames = new HashMap<Integer, String>();
+            farmController.getWorkers().forEach(w -> profileNames.put(w.getId(), w.getProfileName()));
+            var gpuSamples = new ArrayList<GpuSample>();
+            for (var workerInfo : workerInfos) {
+                if (profileNames.containsKey(workerInfo.getId())) {
+                    gpuSamples.addAll(toGpuSamples(workerInfo, profileNames.get(workerInfo.getId()), true));
+                }
+            }
+            measureData.setGpus(gpuSamples);
+        } else if (hiveConfig != null) {
+            var workerInfo = hiveService.getWorkerInfo(hiveConfig);
+            log.trace("ワーカー情報={}", workerInfo);
+            measureData.setHash(workerInfo.getHash());
+            measureData.setGpus(toGpuSamples(workerInfo, getOcProfileName(), false));
+        }
+
+        // 消費電力を取得できないGPUは除いて合計
+        if (measureData.getGpus() == null || measureData.getGpus().isEmpty()) {
+            return;
+        }
+        var draw = measureData.getGpus().stream().filter(g -> g.getPower() != null).mapToDouble(GpuSample::getPower)
+                .sum();
+        rigDraw = draw;
+        if (ladderController != null) {
+            ladderController.updateRigDraw(draw);
+        }
+        if (localController != null) {
+            localController.updateRigDraw(draw);
+        }
+    }
+
+    /**
+     * 15分間の3分値の平均でPower Limit制御 (スケジュール制御・計画制御モードのみ、他のモードは電力効率の集計のみ)
+     *
+     * @param windowDatas 15分間の3分値
+     * @throws InterruptedException
+     */
+    public void controlWindow(List<MeasureData> windowDatas) throws InterruptedException {
+        var average = MeasureUtils.average(windowDatas, controlConfig.getPower().getSource(),
+                controlConfig.getPower().getMetric());
+        var powerAverage = MeasureUtils.average(windowDatas, Source.FUSED);
+        var gpuAverages = MeasureUtils.averageGpus(windowDatas);
+
+        // GPU毎の電力効率を集計 (計測値が無い場合は0Wとして記録しない)
+        if (average.isPresent()) {
+            for (var gpu : efficiencyTracker.record(average.getAsDouble(), gpuAverages)) {
+                log.warn("GPU {}({})の電力効率が低下しています。{}MH/J ({}℃, {}W)", gpu.getKey(), gpu.getName(),
+                        gpu.getEfficiency(), gpu.getTemp(), gpu.getPower());
+            }
+        } else {
+            log.warn("15分間の{}の計測値が無いため、電力効率の集計とOCプロファイルの判定を行いません。",
+                    controlConfig.getPower().getSource());
+        }
+
+        if (log.isDebugEnabled()) {
+            var sketch = MeasureUtils.mergeSketches(windowDatas).get(sourceMetric());
+            if (sketch != null) {
+                log.debug("15分間の分位点: p10={}, p50={}, p90={}, min={}, max={}", sketch.quantile(0.1D),
+                        sketch.quantile(0.5D), sketch.quantile(0.9D), sketch.quantile(0D), sketch.quantile(1D));
+            }
+        }
+
+        // 予測制御・多段階制御モードでは、サンプル毎に制御済み
+        var mode = controlConfig.getPower().getMode();
+        if (mode != Mode.SCHEDULED && mode != Mode.PLANNED) {
+            return;
+        }
+        followLeader();
+
+        // OCプロファイル変更
+        var hiveApiConfig = serviceConfig.getHiveApi();
+        if (hiveApiConfig == null) {
+            return;
+        }
+
+        // 計測値が無い場合は0Wとみなして低電力設定に切り替えないよう、判定しない
+        if (average.isEmpty()) {
+            return;
+        }
+        if (mode == Mode.PLANNED && powerAverage.isEmpty()) {
+            log.warn("15分間の推定発電電力が無いため、OCプロファイルの判定を行いません。");
+            return;
+        }
+
+        var currentProfileName = getOcProfileName();
+        var highProfileName = controlConfig.getPower().getHighProfileName();
+        var lowProfileName = controlConfig.getPower().getLowProfileName();
+        var threshold = controlConfig.getPower().getThreshold();
+        var hysteresis = controlConfig.getPower().getHysteresis();
+
+        String nextProfileName;
+        var planEntry = mode == Mode.PLANNED ? planEntry() : null;
+        if (planEntry != null && Math.abs(powerAverage.getAsDouble() - planEntry.getExpectedPower()) <= controlConfig
+                .getPlan().getTolerance()) {
+            // 計画どおりの場合は計画したOCプロファイル
+            log.debug("計画どおりです。想定={}W、実測={}W、計画={}", planEntry.getExpectedPower(), powerAverage.getAsDouble(),
+                    planEntry.getProfileName());
+            nextProfileName = planEntry.getProfileName().equals(currentProfileName) ? null
+                    : planEntry.getProfileName();
+        } else if (mode == Mode.PLANNED) {
+            // 計画から外れた(または計画が無い)場合は実測値で補正
+            log.debug("計画から外れたため補正します。想定={}W、実測={}W", planEntry == null ? null : planEntry.getExpectedPower(),
+                    powerAverage.getAsDouble());
+            nextProfileName = dayAheadPlanner.correct(powerAverage.getAsDouble(), currentProfileName);
+        } else {
+            nextProfileName = PowerControlPolicy.decide(average.getAsDouble(), currentProfileName, highProfileName,
+                    lowProfileName, threshold, hysteresis);
+        }
+        log.debug("平均値={}、最も電力効率の高いOCプロファイル={}", average.getAsDouble(),
+                efficiencyTracker.bestProfile(average.getAsDouble()));
+
+        // 待機系は変更しない (再試行を待つ間に待機系になった場合も止める)
+        for (int i = 0; i < RETRY_COUNT && leaderElection.isLeader(); i++) {
+            try {
+                if (nextProfileName != null) {
+                    log.debug("OCプロファイルを{}に変更します。", nextProfileName);
+                    changeOcProfile(hiveApiConfig, nextProfileName);
+                } else {
+                    log.trace("OCプロファイルの変更はありません。: {}", currentProfileName);
+                }
+                break;
+            } catch (Exception e) {
+                log.error("OCプロファイルの変更に失敗しました。", e);
+            }
+
+            // 送信失敗したら、しばらく待ってから再実行
+            Thread.sleep(HIVE_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * 当日の計画を準備 (計画制御モードのみ)
+     */
+    public void planToday() {
+        if (dayAheadPlanner != null) {
+            planEntry();
+        }
+    }
+
+    /**
+     * 天気予報から翌日のOCプロファイル計画を作成 (計画制御モードのみ)
+     */
+    public void planTomorrow() {
+        if (dayAheadPlanner == null) {
+            return;
+        }
+
+        try {
+            nextPlan = createPlan(LocalDate.now(clock).plusDays(1));
+        } catch (Exception e) {
+            log.error("翌日のOCプロファイル計画の作成に失敗しました。", e);
+        }
+    }
+
+    /**
+     * 現在の計画を取得 (当日の計画が無い場合は作成)
+     *
+     * @return 現在の計画(計画が無い場合はnull)
+     */
+    private PlanEntry planEntry() {
+        var now = ZonedDateTime.now(clock);
+        var today = now.toLocalDate();
+        if (currentPlan == null || !currentPlan.getDay().equals(today)) {
+            if (nextPlan != null && nextPlan.getDay().equals(today)) {
+                currentPlan = nextPlan;
+            } else if (clock.millis() >= planRetryMillis) {
+                try {
+                    currentPlan = createPlan(today);
+                } catch (Exception e) {
+                    log.error("当日のOCプロファイル計画の作成に失敗しました。", e);
+                    planRetryMillis = clock.millis() + PLAN_RETRY_INTERVAL;
+                }
+            }
+        }
+        return currentPlan == null || !currentPlan.getDay().equals(today) ? null : currentPlan.entryAt(now);
+    }
+
+    /**
+     * 天気予報からOCプロファイル計画を作成
+     *
+     * @param day 計画する日
+     * @return 計画(天気予報が無い場合はnull)
+     */
+    private DayPlan createPlan(LocalDate day) throws IOException, InterruptedException {
+        var forecast = openWeatherService.getForecast(serviceConfig.getOpenWeatherApi());
+        var plan = dayAheadPlanner.plan(forecast, day, clock.getZone());
+        if (plan == null) {
+            log.warn("天気予報が無いため、{}のOCプロファイル計画を作成できませんでした。", day);
+            return null;
+        }
+
+        String lastProfileName = null;
+        for (var entry : plan.getEntries()) {
+            if (!entry.getProfileName().equals(lastProfileName)) {
+                log.info("OCプロファイル計画: {} {} (想定{}W)", entry.getStart().toLocalDateTime(), entry.getProfileName(),
+                        Math.round(entry.getExpectedPower()));
+                lastProfileName = entry.getProfileName();
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * 現在のOCプロファイル名取得
+     *
+     * @return OCプロファイル名 (不明な場合はnull)
+     */
+    public String getOcProfileName() {
+        var ocProfile = currentOcProfile;
+        return ocProfile == null ? null : ocProfile.getName();
+    }
+
+    /**
+     * 高電力設定のOCプロファイルかどうか (多段階制御モードでは最も高い段)
+     *
+     * @param profileName OCプロファイル名
+     * @return 高電力設定の場合はtrue
+     */
+    public boolean isHighProfile(String profileName) {
+        if (ladderController != null) {
+            return ladderController.isTop(profileName);
+        }
+        return profileName.equals(controlConfig.getPower().getHighProfileName());
+    }
+
+    /**
+     * 現在のGTIの出力制限取得
+     *
+     * @return 出力制限(W、不明な場合はnull)
+     */
+    public Double getCurrentLimit() {
+        return currentLimit;
+    }
+
+    /**
+     * リグの消費電力取得
+     *
+     * @return GPUの消費電力の合計(W、不明な場合はnull)
+     */
+    public Double getRigDraw() {
+        return rigDraw;
+    }
+
+    /**
+     * 予測制御の予測値取得
+     *
+     * @return 予測値 (予測制御モードでない場合はnull)
+     */
+    public Double getForecast() {
+        return predictiveController == null ? null : predictiveController.forecast();
+    }
+
+    /**
+     * ファームのワーカー毎のOCプロファイル取得
+     *
+     * @return ワーカーID→OCプロファイル名 (ファーム単位でない場合はnull)
+     */
+    public Map<String, String> getWorkerProfiles() {
+        if (farmController == null) {
+            return null;
+        }
+        var workers = new LinkedHashMap<String, String>();
+        farmController.getWorkers().forEach(w -> workers.put(String.valueOf(w.getId()), w.getProfileName()));
+        return workers;
+    }
+
+    /**
+     * GPU・OCプロファイル毎の電力効率取得
+     *
+     * @return 電力効率の集計
+     */
+    public EfficiencyTracker getEfficiencyTracker() {
+        return efficiencyTracker;
+    }
+
+    /**
+     * 電力制御に利用するデバイスの計測値名 (分位点のスケッチ)
+     */
+    private String sourceMetric() {
+        switch (controlConfig.getPower().getSource()) {
+            case LIGHT_SENSOR:
+                return "light";
+            case FUSED:
+                return "fused";
+            case METRIC:
+                return controlConfig.getPower().getMetric();
+            default:
+                return "power";
+        }
+    }
+
+    /**
+     * ワーカー情報をGPU毎の計測データに変換
+     *
+     * @param workerInfo  ワーカー情報
+     * @param profileName 現在のOCプロファイル名
+     * @param farm        ファーム単位の場合はtrue (キーにワーカーIDを含める)
+     * @return GPU毎の計測データ
+     */
+    private static List<GpuSample> toGpuSamples(WorkerInfo workerInfo, String profileName, boolean farm) {
+        if (workerInfo.getGpus() == null) {
+            return List.of();
+        }
+        return workerInfo.getGpus().stream().map(gpu -> {
+            var sample = new GpuSample();
+            sample.setKey(farm ? workerInfo.getId() + "/" + gpu.getBusId() : gpu.getBusId());
+            sample.setWorkerId(workerInfo.getId());
+            sample.setBusId(gpu.getBusId());
+            sample.setName(gpu.getName());
+            sample.setProfileName(profileName);
+            sample.setTemp(gpu.getTemp());
+            sample.setFan(toDouble(gpu.getFan()));
+            sample.setPower(toDouble(gpu.getPower()));
+            sample.setHash(gpu.getHash());
+            return sample;
+        }).collect(Collectors.toList());
+    }
+
+    private static Double toDouble(Number value) {
+        return value == null ? null : value.doubleValue();
+    }
+}
@@ -0,0 +1,206 @@
+package com.heterodain.gtimonitor.control;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Plan;
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Step;
+import com.heterodain.gtimonitor.service.OpenWeatherService.Forecast;
+import com.heterodain.gtimonitor.service.OpenWeatherService.ForecastItem;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 天気予報による翌日のOCプロファイル計画
+ *
+ * <p>
+ * 3時間毎の天気予報(雲量・気温)を線形補間して晴天時の日射モデルに掛け、計画の間隔毎に想定発電電力を求める。
+ * 各間隔のOCプロファイルは、先行時間だけ先の想定発電電力で選ぶ(朝は余剰電力が来る前に上げ、夕方は下がる前に下げる)。
+ * </p>
+ */
+public class DayAheadPlanner {
+    /** 電力制御の設定 */
+    private final Power powerConfig;
+    /** 計画の設定 */
+    private final Plan planConfig;
+    /** 多段階制御の段(消費電力の低い順、未定義の場合はnull) */
+    private final List<Step> steps;
+
+    /**
+     * コンストラクタ
+     *
+     * @param powerConfig 電力制御の設定
+     * @param planConfig  計画の設定
+     */
+    public DayAheadPlanner(Power powerConfig, Plan planConfig) {
+        if (planConfig.getPeakPower() == null) {
+            throw new IllegalArgumentException("control.plan.peak-powerにPVの定格出力を指定してください");
+        }
+        this.powerConfig = powerConfig;
+        this.planConfig = planConfig;
+        this.steps = powerConfig.getLadder() == null || powerConfig.getLadder().isEmpty() ? null
+                : powerConfig.getLadder().stream()
+                        .sorted((a, b) -> Double.compare(a.getDraw(), b.getDraw()))
+                        .collect(Collectors.toList());
+    }
+
+    /**
+     * 1日分の計画を作成
+     *
+     * @param forecast 天気予報
+     * @param day      計画する日
+     * @param zone     タイムゾーン
+     * @return 計画(天気予報が無い場合はnull)
+     */
+    public DayPlan plan(Forecast forecast, LocalDate day, ZoneId zone) {
+        var items = forecast.getItems();
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        var latitude = planConfig.getLatitude() != null ? planConfig.getLatitude() : forecast.getLatitude();
+        var longitude = planConfig.getLongitude() != null ? planConfig.getLongitude() : forecast.getLongitude();
+        if (latitude == null || longitude == null) {
+            throw new IllegalArgumentException("control.plan.latitude/longitudeに設置場所の座標を指定してください");
+        }
+
+        var intervalSeconds = planConfig.getInterval() * 60L;
+        var leadSeconds = planConfig.getLeadTime() * 60L;
+        var entries = new ArrayList<PlanEntry>();
+        var start = day.atStartOfDay(zone);
+        var end = day.plusDays(1).atStartOfDay(zone);
+        for (var t = start; t.isBefore(end); t = t.plusSeconds(intervalSeconds)) {
+            var middle = t.toInstant().plusSeconds(intervalSeconds / 2);
+            var expected = expectedPower(items, latitude, longitude, middle);
+            var ahead = expectedPower(items, latitude, longitude, middle.plusSeconds(leadSeconds));
+            entries.add(new PlanEntry(t, expected, profileFor(ahead)));
+        }
+        return new DayPlan(day, intervalSeconds, entries);
+    }
+
+    /**
+     * 発電電力に見合うOCプロファイル (多段階制御の段が定義されている場合は収まる最も高い段)
+     *
+     * @param power 発電電力(W)
+     * @return OCプロファイル名
+     */
+    public String profileFor(double power) {
+        if (steps != null) {
+            var profileName = steps.get(0).getProfileName();
+            for (var step : steps) {
+                if (power >= step.getDraw()) {
+                    profileName = step.getProfileName();
+                }
+            }
+            return profileName;
+        }
+        return power >= powerConfig.getThreshold() ? powerConfig.getHighProfileName()
+                : powerConfig.getLowProfileName();
+    }
+
+    /**
+     * 計画から外れた場合の、実測値による補正
+     *
+     * @param power          発電電力の実測値(W)
+     * @param currentProfile 現在のOCプロファイル名
+     * @return 切り替え先のOCプロファイル名(変更しない場合はnull)
+     */
+    public String correct(double power, String currentProfile) {
+        if (steps != null) {
+            var profileName = profileFor(power);
+            return profileName.equals(currentProfile) ? null : profileName;
+        }
+        return PowerControlPolicy.decide(power, currentProfile, powerConfig.getHighProfileName(),
+                powerConfig.getLowProfileName(), powerConfig.getThreshold(), powerConfig.getHysteresis());
+    }
+
+    /**
+     * 天気予報を線形補間した想定発電電力
+     */
+    private double expectedPower(List<ForecastItem> items, double latitude, double longitude, Instant time) {
+        Double cloudness;
+        Double temperature;
+        var after = 0;
+        while (after < items.size() && items.get(after).getTime().isBefore(time)) {
+            after++;
+        }
+        if (after == 0 || after == items.size()) {
+            // 予報の範囲外は最も近い予報
+            var nearest = items.get(after == 0 ? 0 : items.size() - 1);
+            cloudness = toDouble(nearest.getCloudness());
+            temperature = nearest.getTemperature();
+        } else {
+            var a = items.get(after - 1);
+            var b = items.get(after);
+            var ratio = (double) (time.getEpochSecond() - a.getTime().getEpochSecond())
+                    / (b.getTime().getEpochSecond() - a.getTime().getEpochSecond());
+            cloudness = interpolate(toDouble(a.getCloudness()), toDouble(b.getCloudness()), ratio);
+            temperature = interpolate(a.getTemperature(), b.getTemperature(), ratio);
+        }
+        return ClearSkyModel.expectedPower(planConfig.getPeakPower(), latitude, longitude, time, cloudness,
+                temperature);
+    }
+
+    private static Double interpolate(Double a, Double b, double ratio) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+        return a + (b - a) * ratio;
+    }
+
+    private static Double toDouble(Number value) {
+        return value == null ? null : value.doubleValue();
+    }
+
+    /**
+     * 1日分の計画
+     */
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static class DayPlan {
+        /** 計画した日 */
+        private LocalDate day;
+        /** 計画の間隔(秒) */
+        private long intervalSeconds;
+        /** 間隔毎の計画 */
+        private List<PlanEntry> entries;
+
+        /**
+         * 指定時刻の計画
+         *
+         * @param time 時刻
+         * @return 計画(計画の範囲外の場合はnull)
+         */
+        public PlanEntry entryAt(ZonedDateTime time) {
+            for (var entry : entries) {
+                if (!time.isBefore(entry.getStart()) && time.isBefore(entry.getStart().plusSeconds(intervalSeconds))) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 間隔毎の計画
+     */
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static class PlanEntry {
+        /** 開始時刻 */
+        private ZonedDateTime start;
+        /** 想定発電電力(W) */
+        private double expectedPower;
+        /** 計画したOCプロファイル名 */
+        private String profileName;
+    }
+}
@@ -0,0 +1,186 @@
+package com.heterodain.gtimonitor.control;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.heterodain.gtimonitor.model.GpuSample;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * GPU・OCプロファイル毎の電力効率(MH/J)の集計
+ *
+ * <p>
+ * 集計期間毎のGPU平均値を、OCプロファイル × GPU と OCプロファイル × 発電量の区分で累計する。
+ * GPUの電力効率が同じOCプロファイルでの累計平均を大きく下回ったら、サーマルスロットリング等の
+ * 性能低下とみなす。
+ * </p>
+ */
+public class EfficiencyTracker {
+    /** 性能低下とみなす電力効率の割合 */
+    private static final double THROTTLE_RATIO = 0.8D;
+    /** 性能低下の判定に必要な集計数 */
+    private static final int MIN_SAMPLES = 4;
+
+    /** 発電量の区分の幅(W or LUX) */
+    private final double binWidth;
+
+    /** OCプロファイル × GPU毎の累計 */
+    private final Map<Pair<String, String>, Stats> gpuStats = new LinkedHashMap<>();
+    /** OCプロファイル × 発電量の区分毎の累計 */
+    private final Map<Pair<String, Integer>, Stats> levelStats = new LinkedHashMap<>();
+    /** GPU毎の最新の平均値 */
+    private final Map<String, GpuSample> latest = new LinkedHashMap<>();
+    /** 性能低下中のGPU */
+    private final Set<String> throttled = new HashSet<>();
+
+    /**
+     * コンストラクタ
+     *
+     * @param binWidth 発電量の区分の幅(W or LUX)
+     */
+    public EfficiencyTracker(double binWidth) {
+        this.binWidth = binWidth;
+    }
+
+    /**
+     * 集計期間のGPU平均値を記録
+     *
+     * @param level   集計期間の発電量(W or LUX)
+     * @param samples GPU毎の平均値
+     * @return 新たに性能低下とみなしたGPUの平均値
+     */
+    public synchronized List<GpuSample> record(double level, List<GpuSample> samples) {
+        var newlyThrottled = new ArrayList<GpuSample>();
+        var bin = (int) Math.floor(level / binWidth);
+        for (var sample : samples) {
+            latest.put(sample.getKey(), sample);
+            var efficiency = sample.getEfficiency();
+            if (efficiency == null || sample.getProfileName() == null) {
+                continue;
+            }
+
+            var stats = gpuStats.computeIfAbsent(Pair.of(sample.getProfileName(), sample.getKey()),
+                    k -> new Stats());
+            if (stats.count >= MIN_SAMPLES && efficiency < stats.efficiency() * THROTTLE_RATIO) {
+                if (throttled.add(sample.getKey())) {
+                    newlyThrottled.add(sample);
+                }
+            } else {
+                throttled.remove(sample.getKey());
+            }
+            stats.add(sample.getHash(), sample.getPower());
+
+            levelStats.computeIfAbsent(Pair.of(sample.getProfileName(), bin), k -> new Stats())
+                    .add(sample.getHash(), sample.getPower());
+        }
+        return newlyThrottled;
+    }
+
+    /**
+     * 発電量に対して最も電力効率の高いOCプロファイル
+     *
+     * @param level 発電量(W or LUX)
+     * @return OCプロファイル名(記録が無い場合はnull)
+     */
+    public synchronized String bestProfile(double level) {
+        var bin = (int) Math.floor(level / binWidth);
+        return levelStats.entrySet().stream().filter(e -> e.getKey().getValue() == bin)
+                .max(Comparator.comparingDouble(e -> e.getValue().efficiency()))
+                .map(e -> e.getKey().getKey()).orElse(null);
+    }
+
+    /**
+     * OCプロファイル × GPU毎の電力効率
+     *
+     * @return 電力効率
+     */
+    public synchronized List<Efficiency> getGpuEfficiencies() {
+        var results = new ArrayList<Efficiency>();
+        gpuStats.forEach((k, stats) -> {
+            var sample = latest.get(k.getValue());
+            results.add(new Efficiency(k.getKey(), k.getValue(), sample == null ? null : sample.getName(), null,
+                    stats.hashSum / stats.count, stats.powerSum / stats.count, stats.efficiency(), stats.count,
+                    throttled.contains(k.getValue())));
+        });
+        return results;
+    }
+
+    /**
+     * OCプロファイル × 発電量の区分毎の電力効率 (全GPU合計)
+     *
+     * @return 電力効率
+     */
+    public synchronized List<Efficiency> getLevelEfficiencies() {
+        var results = new ArrayList<Efficiency>();
+        levelStats.forEach((k, stats) -> results.add(new Efficiency(k.getKey(), null, null,
+                k.getValue() * binWidth, stats.hashSum / stats.count, stats.powerSum / stats.count,
+                stats.efficiency(), stats.count, false)));
+        results.sort(Comparator.comparingDouble(Efficiency::getLevel).thenComparing(Efficiency::getProfileName));
+        return results;
+    }
+
+    /**
+     * GPU毎の最新の平均値
+     *
+     * @return GPU毎の平均値
+     */
+    public synchronized List<GpuSample> getLatest() {
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * 累計値
+     */
+    private static class Stats {
+        private int count;
+        private double hashSum;
+        private double powerSum;
+
+        private void add(double hash, double power) {
+            count++;
+            hashSum += hash;
+            powerSum += power;
+        }
+
+        private double efficiency() {
+            return powerSum <= 0 ? 0D : hashSum / powerSum;
+        }
+    }
+
+    /**
+     * 電力効率
+     */
+    @AllArgsConstructor
+    @Getter
+    @ToString
+    public static class Efficiency {
+        /** OCプロファイル名 */
+        private String profileName;
+        /** GPUのキー(発電量の区分毎の場合はnull) */
+        private String key;
+        /** GPUの名称 */
+        private String name;
+        /** 発電量の区分の下限(GPU毎の場合はnull) */
+        private Double level;
+        /** 平均ハッシュレート(MH/s) */
+        private Double hash;
+        /** 平均消費電力(W) */
+        private Double power;
+        /** 電力効率(MH/J) */
+        private Double efficiency;
+        /** 集計数 */
+        private Integer samples;
+        /** 性能低下中かどうか */
+        private Boolean throttled;
+    }
+}
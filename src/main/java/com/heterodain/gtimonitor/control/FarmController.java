@@ -0,0 +1,314 @@
+package com.heterodain.gtimonitor.control;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Allocation;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Mode;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Step;
+import com.heterodain.gtimonitor.config.ServiceConfig.Worker;
+import com.heterodain.gtimonitor.service.HiveService.OcProfile;
+import com.heterodain.gtimonitor.service.HiveService.WorkerInfo;
+
+import lombok.Data;
+
+/**
+ * ファーム単位のPower Limit制御
+ *
+ * <p>
+ * ワーカー毎の状態(OCプロファイル・ハッシュレート・実測消費電力)を保持し、
+ * 多段階制御では発電電力を優先度または電力効率の順にワーカーへ割り当てる。
+ * 全ワーカーを最も低い段にした消費電力を除いた余剰電力の範囲で、順に段を上げていく。
+ * 段を上げるには増分 + その段の調整感度、現在の段を保つには増分 - その段の調整感度の余剰電力が必要。
+ * </p>
+ */
+public class FarmController {
+    /** 段の定義(消費電力の低い順、多段階制御モード以外はnull) */
+    private final List<Step> steps;
+    /** 余剰電力の割り当て方 */
+    private final Allocation allocation;
+    /** 最小切り替え間隔(ミリ秒) */
+    private final long minSwitchIntervalMillis;
+
+    /** ワーカー毎の状態 */
+    private final Map<Integer, WorkerState> workers = new LinkedHashMap<>();
+    /** OCプロファイル(ID毎) */
+    private final Map<Integer, OcProfile> ocProfiles = new HashMap<>();
+    /** 前回切り替えた時刻(ミリ秒) */
+    private long lastSwitchMillis = Long.MIN_VALUE / 2;
+    /** 切り替えの保留期間の終了時刻(ミリ秒、失敗時の再試行待ち) */
+    private long holdUntilMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * コンストラクタ
+     *
+     * @param config        電力制御の設定
+     * @param workerConfigs ファームで制御するワーカー
+     */
+    public FarmController(Power config, List<Worker> workerConfigs) {
+        if (config.getMode() == Mode.LADDER && (config.getLadder() == null || config.getLadder().isEmpty())) {
+            throw new IllegalArgumentException("control.power.ladderに段を定義してください");
+        }
+        this.steps = config.getLadder() == null ? null
+                : config.getLadder().stream()
+                        .sorted((a, b) -> Double.compare(a.getDraw(), b.getDraw()))
+                        .collect(Collectors.toList());
+        this.allocation = config.getAllocation();
+        this.minSwitchIntervalMillis = config.getMinSwitchInterval() * 1000L;
+        for (var workerConfig : workerConfigs) {
+            var state = new WorkerState();
+            state.setId(workerConfig.getId());
+            state.setPriority(workerConfig.getPriority() == null ? 0 : workerConfig.getPriority());
+            workers.put(workerConfig.getId(), state);
+        }
+    }
+
+    /**
+     * ワーカー一覧で状態を更新
+     *
+     * @param workerInfos ファームの全ワーカー情報
+     * @return OCプロファイルが不明なワーカーがある場合はtrue
+     */
+    public synchronized boolean update(List<WorkerInfo> workerInfos) {
+        var unknown = false;
+        for (var workerInfo : workerInfos) {
+            var state = workers.get(workerInfo.getId());
+            if (state == null) {
+                continue;
+            }
+            state.setName(workerInfo.getName());
+            state.setActive(Boolean.TRUE.equals(workerInfo.getActive()));
+            state.setHash(workerInfo.getHash());
+            if (workerInfo.getGpus() != null && !workerInfo.getGpus().isEmpty()) {
+                var draw = workerInfo.getGpus().stream().mapToDouble(g -> g.getPower()).sum();
+                state.setDraw(draw);
+                if (workerInfo.getHash() != null && draw > 0) {
+                    state.setEfficiency(workerInfo.getHash() / draw);
+                }
+            }
+            if (workerInfo.getOcId() != null) {
+                var ocProfile = ocProfiles.get(workerInfo.getOcId());
+                state.setProfileName(ocProfile == null ? null : ocProfile.getName());
+                unknown |= ocProfile == null;
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * OCプロファイル一覧を更新
+     *
+     * @param profiles 全OCプロファイル
+     */
+    public synchronized void updateOcProfiles(Map<String, OcProfile> profiles) {
+        ocProfiles.clear();
+        profiles.values().forEach(p -> ocProfiles.put(p.getId(), p));
+    }
+
+    /**
+     * OCプロファイル取得
+     *
+     * @param profileName OCプロファイル名
+     * @return OCプロファイル(不明な場合はnull)
+     */
+    public synchronized OcProfile getOcProfile(String profileName) {
+        return ocProfiles.values().stream().filter(p -> p.getName().equals(profileName)).findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * 全ワーカーのハッシュレート合計
+     *
+     * @return ハッシュレート(取得できていない場合はnull)
+     */
+    public synchronized Double totalHash() {
+        return workers.values().stream().filter(w -> w.getHash() != null).map(WorkerState::getHash)
+                .reduce(Double::sum).orElse(null);
+    }
+
+    /**
+     * 全ワーカーを同じOCプロファイルにする場合の変更内容
+     *
+     * @param profileName OCプロファイル名
+     * @return ワーカーID毎の変更後のOCプロファイル名 (既に同じワーカーは除く)
+     */
+    public synchronized Map<Integer, String> allTo(String profileName) {
+        var changes = new LinkedHashMap<Integer, String>();
+        workers.values().stream().filter(w -> !profileName.equals(w.getProfileName()))
+                .forEach(w -> changes.put(w.getId(), profileName));
+        return changes;
+    }
+
+    /**
+     * 発電電力から各ワーカーの切り替え先を判定 (多段階制御モードのみ)
+     *
+     * @param millis サンプル時刻(ミリ秒)
+     * @param power  発電電力(W)
+     * @return ワーカーID毎の切り替え先のOCプロファイル名 (変更しない場合は空)
+     */
+    public synchronized Map<Integer, String> onSample(long millis, double power) {
+        var changes = new LinkedHashMap<Integer, String>();
+        if (steps == null || millis < holdUntilMillis) {
+            return changes;
+        }
+        var allKnown = workers.values().stream().allMatch(w -> indexOf(w.getProfileName()) >= 0);
+        if (allKnown && millis - lastSwitchMillis < minSwitchIntervalMillis) {
+            return changes;
+        }
+
+        var candidates = workers.values().stream().filter(WorkerState::isActive).collect(Collectors.toList());
+
+        // 全ワーカーを最も低い段にした場合の余剰電力
+        var baseDraw = steps.get(0).getDraw();
+        var remaining = power;
+        for (var worker : candidates) {
+            remaining -= baseDraw + offset(worker);
+        }
+
+        // 優先順に、余剰電力に収まる最も高い段を割り当てる
+        candidates.sort(order());
+        for (var worker : candidates) {
+            var current = indexOf(worker.getProfileName());
+            var next = 0;
+            for (int i = steps.size() - 1; i > 0; i--) {
+                var required = steps.get(i).getDraw() - baseDraw;
+                if (i > current) {
+                    required += hysteresis(i);
+                } else if (i == current) {
+                    required -= hysteresis(i);
+                }
+                if (remaining >= required) {
+                    next = i;
+                    break;
+                }
+            }
+            remaining -= steps.get(next).getDraw() - baseDraw;
+
+            if (next != current) {
+                changes.put(worker.getId(), steps.get(next).getProfileName());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * 切り替えに成功した
+     *
+     * @param millis  切り替えた時刻(ミリ秒)
+     * @param results ワーカーID毎の変更後のOCプロファイル
+     */
+    public synchronized void switched(long millis, Map<Integer, OcProfile> results) {
+        if (!results.isEmpty()) {
+            lastSwitchMillis = millis;
+        }
+        for (var result : results.entrySet()) {
+            ocProfiles.put(result.getValue().getId(), result.getValue());
+            var state = workers.get(result.getKey());
+            state.setProfileName(result.getValue().getName());
+            // 切り替え前の実測値は使わない
+            state.setDraw(null);
+        }
+    }
+
+    /**
+     * 切り替えに失敗した (しばらく切り替えを保留する)
+     *
+     * @param millis      失敗した時刻(ミリ秒)
+     * @param retryMillis 再試行までの時間(ミリ秒)
+     */
+    public synchronized void failed(long millis, long retryMillis) {
+        holdUntilMillis = millis + retryMillis;
+    }
+
+    /**
+     * ワーカー毎の状態取得
+     *
+     * @return ワーカー毎の状態(コピー)
+     */
+    public synchronized List<WorkerState> getWorkers() {
+        return workers.values().stream().map(WorkerState::copy).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * 割り当て順
+     */
+    private Comparator<WorkerState> order() {
+        Comparator<WorkerState> byPriority = Comparator.comparingInt(WorkerState::getPriority);
+        if (allocation == Allocation.PRIORITY) {
+            return byPriority.thenComparing(WorkerState::getId);
+        }
+        // 効率が不明なワーカーは後回し
+        return Comparator.comparingDouble((WorkerState w) -> -w.getEfficiency()).thenComparing(byPriority)
+                .thenComparing(WorkerState::getId);
+    }
+
+    /**
+     * 実測消費電力と現在の段の想定消費電力の差(W)
+     */
+    private double offset(WorkerState worker) {
+        var current = indexOf(worker.getProfileName());
+        if (current < 0 || worker.getDraw() == null) {
+            return 0D;
+        }
+        return worker.getDraw() - steps.get(current).getDraw();
+    }
+
+    private int indexOf(String profileName) {
+        if (steps == null || profileName == null) {
+            return -1;
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.get(i).getProfileName().equals(profileName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private double hysteresis(int index) {
+        var hysteresis = steps.get(index).getHysteresis();
+        return hysteresis == null ? 0D : hysteresis;
+    }
+
+    /**
+     * ワーカーの状態
+     */
+    @Data
+    public static class WorkerState {
+        /** ワーカーID */
+        private Integer id;
+        /** 優先度 */
+        private int priority;
+        /** ワーカー名 */
+        private String name;
+        /** 稼働中かどうか */
+        private boolean active = true;
+        /** 現在のOCプロファイル名(不明な場合はnull) */
+        private String profileName;
+        /** ハッシュレート */
+        private Double hash;
+        /** 実測消費電力(W、不明な場合はnull) */
+        private Double draw;
+        /** 電力効率(ハッシュレート/消費電力、不明な場合は0) */
+        private double efficiency;
+
+        private WorkerState copy() {
+            var copy = new WorkerState();
+            copy.setId(id);
+            copy.setPriority(priority);
+            copy.setName(name);
+            copy.setActive(active);
+            copy.setProfileName(profileName);
+            copy.setHash(hash);
+            copy.setDraw(draw);
+            copy.setEfficiency(efficiency);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.heterodain.gtimonitor.control;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Fusion;
+
+/**
+ * 照度とGTIの発電電力のセンサーフュージョン
+ *
+ * <p>
+ * GTIの発電電力(30秒毎)と直近の照度(3秒毎)の組で、発電電力 = θ・[1, 照度, 照度×雲量, 照度×気温]
+ * の回帰係数を逐次最小二乗法(忘却係数付き)で更新し続け、照度のサンプル毎に発電電力を推定する。
+ * 推定の信頼度は、学習回数と直近の推定誤差から0～1で算出し、信頼度が低い場合や照度センサーが
+ * 無い場合は、GTIの最新の計測値をそのまま使う。
+ * 夜間や天候が不明な間は変化しない特徴量の共分散が忘却係数で増え続けるため、共分散行列のトレースに上限を設け、
+ * 上限に達した場合は忘却を止める。計算が発散した場合(非数・無限大)は学習をやり直す。
+ * </p>
+ */
+public class FusionEstimator {
+    /** 特徴量の数 */
+    private static final int FEATURES = 4;
+    /** 照度の尺度(Lux) */
+    private static final double LUX_SCALE = 10000D;
+    /** 信頼度が最大になる学習回数 */
+    private static final int MIN_UPDATES = 20;
+    /** 推定誤差の尺度の下限(W) */
+    private static final double ERROR_FLOOR = 10D;
+    /** 推定誤差の平滑化係数 */
+    private static final double ERROR_SMOOTHING = 0.1D;
+    /** 逆共分散行列の初期値(対角成分) */
+    private static final double INITIAL_COVARIANCE = 1000D;
+    /** 逆共分散行列のトレースの上限 */
+    private static final double MAX_TRACE = 100D * INITIAL_COVARIANCE;
+
+    /** 忘却係数 */
+    private final double forgetting;
+    /** 照度とGTIの計測値を組にする時間差の上限(ミリ秒) */
+    private final long pairWindowMillis;
+    /** 推定値を使う信頼度の下限 */
+    private final double minConfidence;
+    /** 天候(雲量・気温)を特徴量に使うかどうか */
+    private final boolean useWeather;
+
+    /** 回帰係数 */
+    private final double[] theta = new double[FEATURES];
+    /** 逆共分散行列 */
+    private final double[][] p = new double[FEATURES][FEATURES];
+    /** 学習回数 */
+    private int updates;
+    /** 推定誤差の二乗平均 */
+    private double errorVariance;
+
+    /** 最新の照度 */
+    private Double lastLux;
+    /** 最新の照度の時刻(ミリ秒) */
+    private long lastLuxMillis;
+    /** 最新の発電電力 */
+    private Double lastPower;
+    /** 雲量(0～1、不明な場合はnull) */
+    private Double cloud;
+    /** 気温(℃、不明な場合はnull) */
+    private Double temperature;
+    /** 最新の推定の信頼度 */
+    private double confidence;
+
+    /**
+     * コンストラクタ
+     *
+     * @param config センサーフュージョンの設定
+     */
+    public FusionEstimator(Fusion config) {
+        this.forgetting = config.getForgetting();
+        this.pairWindowMillis = config.getPairWindow() * 1000L;
+        this.minConfidence = config.getMinConfidence();
+        this.useWeather = Boolean.TRUE.equals(config.getUseWeather());
+        reset();
+    }
+
+    /**
+     * 学習を初期状態に戻す
+     */
+    private void reset() {
+        for (int i = 0; i < FEATURES; i++) {
+            theta[i] = 0D;
+            for (int j = 0; j < FEATURES; j++) {
+                p[i][j] = i == j ? INITIAL_COVARIANCE : 0D;
+            }
+        }
+        updates = 0;
+        errorVariance = 0D;
+    }
+
+    /**
+     * 天候を更新
+     *
+     * @param cloudness   雲量(%、不明な場合はnull)
+     * @param temperature 気温(℃、不明な場合はnull)
+     */
+    public synchronized void updateWeather(Integer cloudness, Double temperature) {
+        this.cloud = cloudness == null ? null : cloudness / 100D;
+        this.temperature = temperature;
+    }
+
+    /**
+     * 照度のサンプルを追加して、発電電力を推定
+     *
+     * @param millis サンプル時刻(ミリ秒)
+     * @param lux    照度(Lux)
+     * @return 発電電力の推定値(W、推定できない場合はnull)
+     */
+    public synchronized Double onLux(long millis, double lux) {
+        lastLux = lux;
+        lastLuxMillis = millis;
+
+        var x = features(lux);
+        var estimate = Math.max(0D, dot(theta, x));
+        if (!Double.isFinite(estimate)) {
+            return lastPower;
+        }
+        confidence = confidence(estimate);
+        if (confidence >= minConfidence) {
+            return estimate;
+        }
+        // 信頼度が低い場合は、GTIの最新の計測値
+        return lastPower;
+    }
+
+    /**
+     * GTIの発電電力のサンプルを追加 (直近の照度と組にして回帰係数を更新)
+     *
+     * @param millis サンプル時刻(ミリ秒)
+     * @param power  発電電力(W)
+     * @return 発電電力(W、計測値をそのまま返す)
+     */
+    public synchronized double onPower(long millis, double power) {
+        lastPower = power;
+        if (lastLux != null && Math.abs(millis - lastLuxMillis) <= pairWindowMillis && Double.isFinite(power)) {
+            update(features(lastLux), power);
+        }
+        confidence = lastLux == null ? 1D : confidence(power);
+        return power;
+    }
+
+    /**
+     * 最新の推定の信頼度
+     *
+     * @return 信頼度(0～1)
+     */
+    public synchronized double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * 学習回数
+     *
+     * @return 学習回数
+     */
+    public synchronized int getUpdates() {
+        return updates;
+    }
+
+    /**
+     * 逐次最小二乗法で回帰係数を更新 (発散した場合は学習をやり直す)
+     */
+    private void update(double[] x, double y) {
+        if (!Double.isFinite(dot(x, x))) {
+            return;
+        }
+        // 推定誤差(更新前の係数で評価)
+        var error = y - dot(theta, x);
+        errorVariance = updates == 0 ? error * error
+                : (1 - ERROR_SMOOTHING) * errorVariance + ERROR_SMOOTHING * error * error;
+
+        // ゲイン k = P x / (λ + x' P x)
+        var px = new double[FEATURES];
+        for (int i = 0; i < FEATURES; i++) {
+            px[i] = dot(p[i], x);
+        }
+        var denominator = forgetting + dot(x, px);
+        var k = new double[FEATURES];
+        for (int i = 0; i < FEATURES; i++) {
+            k[i] = px[i] / denominator;
+            theta[i] += k[i] * error;
+        }
+
+        // P = (P - k x' P) / λ (トレースが上限を超える場合は忘却しない)
+        var trace = 0D;
+        for (int i = 0; i < FEATURES; i++) {
+            for (int j = 0; j < FEATURES; j++) {
+                p[i][j] -= k[i] * px[j];
+            }
+            trace += p[i][i];
+        }
+        var divisor = trace / forgetting <= MAX_TRACE ? forgetting : 1D;
+        for (int i = 0; i < FEATURES; i++) {
+            for (int j = 0; j < FEATURES; j++) {
+                p[i][j] /= divisor;
+            }
+        }
+        updates++;
+
+        if (!Double.isFinite(trace) || !Double.isFinite(errorVariance) || !Double.isFinite(dot(theta, theta))) {
+            reset();
+        }
+    }
+
+    /**
+     * 特徴量 [1, 照度, 照度×雲量, 照度×気温]
+     */
+    private double[] features(double lux) {
+        var scaled = lux / LUX_SCALE;
+        var x = new double[FEATURES];
+        x[0] = 1D;
+        x[1] = scaled;
+        if (useWeather) {
+            x[2] = cloud == null ? 0D : scaled * cloud;
+            x[3] = temperature == null ? 0D : scaled * (temperature - 25D) / 10D;
+        }
+        return x;
+    }
+
+    /**
+     * 信頼度 = 学習の進み具合 × 推定値に対する推定誤差の小ささ
+     */
+    private double confidence(double estimate) {
+        if (updates == 0) {
+            return 0D;
+        }
+        var trained = Math.min(1D, updates / (double) MIN_UPDATES);
+        var scale = Math.max(ERROR_FLOOR, Math.abs(estimate));
+        return trained / (1D + Math.sqrt(errorVariance) / scale);
+    }
+
+    private static double dot(double[] a, double[] b) {
+        var sum = 0D;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,79 @@
+package com.heterodain.gtimonitor.control;
+
+/**
+ * Holtの線形トレンド法による短期予測 (不等間隔のサンプルに対応)
+ *
+ * <p>
+ * トレンドは1秒当たりの変化量として保持する。
+ * </p>
+ */
+public class HoltForecaster {
+    /** 水準の平滑化係数(0～1) */
+    private final double alpha;
+    /** トレンドの平滑化係数(0～1) */
+    private final double beta;
+
+    /** 水準 */
+    private double level = Double.NaN;
+    /** トレンド(1秒当たり) */
+    private double trend;
+    /** 前回のサンプル時刻(ミリ秒) */
+    private long lastMillis;
+
+    /**
+     * コンストラクタ
+     * 
+     * @param alpha 水準の平滑化係数(0～1)
+     * @param beta  トレンドの平滑化係数(0～1)
+     */
+    public HoltForecaster(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * サンプルを追加
+     * 
+     * @param millis サンプル時刻(ミリ秒)
+     * @param value  値
+     */
+    public synchronized void update(long millis, double value) {
+        if (Double.isNaN(level)) {
+            level = value;
+            trend = 0D;
+            lastMillis = millis;
+            return;
+        }
+
+        var dt = (millis - lastMillis) / 1000D;
+        if (dt <= 0D) {
+            // 同時刻のサンプルは水準のみ更新
+            level = alpha * value + (1D - alpha) * level;
+            return;
+        }
+
+        var previous = level;
+        level = alpha * value + (1D - alpha) * (level + trend * dt);
+        trend = beta * (level - previous) / dt + (1D - beta) * trend;
+        lastMillis = millis;
+    }
+
+    /**
+     * 予測値
+     * 
+     * @param horizonSeconds 予測する時間(秒)
+     * @return 予測値(サンプルが無い場合はNaN)
+     */
+    public synchronized double forecast(double horizonSeconds) {
+        return level + trend * horizonSeconds;
+    }
+
+    /**
+     * 現在の水準
+     * 
+     * @return 水準(サンプルが無い場合はNaN)
+     */
+    public synchronized double getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,160 @@
+package com.heterodain.gtimonitor.control;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Step;
+
+/**
+ * 多段階のPower Limit制御
+ *
+ * <p>
+ * 余剰電力(発電電力 - リグの実測消費電力)に収まる最も高い段を選ぶ。
+ * 段を上げるには、その段までの消費電力の増分 + その段の調整感度だけ余剰電力が必要で、
+ * 余剰電力が現在の段の調整感度を越えて不足したら、収まる段まで下げる。
+ * </p>
+ */
+public class LadderController {
+    /** 段の定義(消費電力の低い順) */
+    private final List<Step> steps;
+    /** 最小切り替え間隔(ミリ秒) */
+    private final long minSwitchIntervalMillis;
+
+    /** リグの実測消費電力(W、不明な場合はnull) */
+    private Double rigDraw;
+    /** 前回切り替えた時刻(ミリ秒) */
+    private long lastSwitchMillis = Long.MIN_VALUE / 2;
+    /** 切り替えの保留期間の終了時刻(ミリ秒、失敗時の再試行待ち) */
+    private long holdUntilMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * コンストラクタ
+     * 
+     * @param config 電力制御の設定
+     */
+    public LadderController(Power config) {
+        if (config.getLadder() == null || config.getLadder().isEmpty()) {
+            throw new IllegalArgumentException("control.power.ladderに段を定義してください");
+        }
+        this.steps = config.getLadder().stream()
+                .sorted((a, b) -> Double.compare(a.getDraw(), b.getDraw()))
+                .collect(Collectors.toList());
+        this.minSwitchIntervalMillis = config.getMinSwitchInterval() * 1000L;
+    }
+
+    /**
+     * リグの実測消費電力を更新
+     * 
+     * @param draw 消費電力(W)
+     */
+    public synchronized void updateRigDraw(double draw) {
+        rigDraw = draw;
+    }
+
+    /**
+     * 発電電力から切り替え先を判定
+     * 
+     * @param millis         サンプル時刻(ミリ秒)
+     * @param power          発電電力(W)
+     * @param currentProfile 現在のOCプロファイル名
+     * @return 切り替え先のOCプロファイル名(変更しない場合はnull)
+     */
+    public synchronized String onSample(long millis, double power, String currentProfile) {
+        if (millis < holdUntilMillis) {
+            return null;
+        }
+        var current = indexOf(currentProfile);
+        if (current >= 0 && millis - lastSwitchMillis < minSwitchIntervalMillis) {
+            return null;
+        }
+
+        var next = select(power, current);
+        return next == current ? null : steps.get(next).getProfileName();
+    }
+
+    /**
+     * 段の選択
+     * 
+     * @param power   発電電力(W)
+     * @param current 現在の段(不明な場合は-1)
+     * @return 選択した段
+     */
+    private int select(double power, int current) {
+        if (current < 0) {
+            // 現在の段が不明な場合は、発電電力に収まる最も高い段
+            for (int i = steps.size() - 1; i > 0; i--) {
+                if (power >= steps.get(i).getDraw() + hysteresis(i)) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        var currentDraw = steps.get(current).getDraw();
+        var surplus = power - (rigDraw == null ? currentDraw : rigDraw);
+
+        // 上の段に収まる場合は上げる
+        for (int i = steps.size() - 1; i > current; i--) {
+            if (surplus >= steps.get(i).getDraw() - currentDraw + hysteresis(i)) {
+                return i;
+            }
+        }
+
+        // 余剰電力が調整感度を越えて不足したら、収まる段まで下げる
+        if (surplus < -hysteresis(current)) {
+            for (int i = current - 1; i > 0; i--) {
+                if (surplus >= steps.get(i).getDraw() - currentDraw) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+        return current;
+    }
+
+    /**
+     * 切り替えに成功した
+     * 
+     * @param millis 切り替えた時刻(ミリ秒)
+     */
+    public synchronized void switched(long millis) {
+        lastSwitchMillis = millis;
+        // 切り替え前の実測値は使わない
+        rigDraw = null;
+    }
+
+    /**
+     * 切り替えに失敗した (しばらく切り替えを保留する)
+     * 
+     * @param millis      失敗した時刻(ミリ秒)
+     * @param retryMillis 再試行までの時間(ミリ秒)
+     */
+    public synchronized void failed(long millis, long retryMillis) {
+        holdUntilMillis = millis + retryMillis;
+    }
+
+    /**
+     * 最も高い段かどうか
+     * 
+     * @param profileName OCプロファイル名
+     * @return 最も高い段の場合はtrue
+     */
+    public boolean isTop(String profileName) {
+        return indexOf(profileName) == steps.size() - 1;
+    }
+
+    private int indexOf(String profileName) {
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.get(i).getProfileName().equals(profileName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private double hysteresis(int index) {
+        var hysteresis = steps.get(index).getHysteresis();
+        return hysteresis == null ? 0D : hysteresis;
+    }
+}
@@ -0,0 +1,113 @@
+package com.heterodain.gtimonitor.control;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+import com.heterodain.gtimonitor.config.DeviceConfig.Gti;
+
+/**
+ * GTIの出力制限によるローカル制御
+ *
+ * <p>
+ * GTIの出力制限を「リグの実測消費電力(不明な場合は目標出力) + 上乗せ分」に合わせる。
+ * Hive APIを経由しないため、サンプル毎(1秒未満)に調整できる。
+ * 出力制限は即座に下げるが、上げるのは発電電力が現在の出力制限に張り付いている(発電に余裕がある)
+ * 場合のみで、1サンプルでの変更幅を制限する。不感帯内の変化では書き込まない。
+ * </p>
+ */
+public class LocalController {
+    /** 目標出力(W、リグの消費電力が不明な場合) */
+    private final Double target;
+    /** リグの消費電力に上乗せする出力(W) */
+    private final double margin;
+    /** 不感帯(W) */
+    private final double deadband;
+    /** 1サンプルで上げる出力制限の上限(W) */
+    private final double step;
+    /** 出力制限の下限(W) */
+    private final double min;
+    /** 出力制限の上限(W、指定なしの場合はnull) */
+    private final Double max;
+
+    /** リグの実測消費電力(W、不明な場合はnull) */
+    private Double rigDraw;
+    /** 変更の保留期間の終了時刻(ミリ秒、失敗時の再試行待ち) */
+    private long holdUntilMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * コンストラクタ
+     *
+     * @param config    電力制御の設定
+     * @param gtiConfig GTIの設定
+     */
+    public LocalController(Power config, Gti gtiConfig) {
+        if (gtiConfig == null || gtiConfig.getLimitRegister() == null) {
+            throw new IllegalArgumentException("device.gti.limit-registerに出力制限のレジスタを指定してください");
+        }
+        this.target = config.getLocalTarget();
+        this.margin = config.getLocalMargin();
+        this.deadband = config.getLocalDeadband();
+        this.step = config.getLocalStep();
+        this.min = gtiConfig.getLimitMin() == null ? 0D : gtiConfig.getLimitMin();
+        this.max = gtiConfig.getLimitMax();
+    }
+
+    /**
+     * リグの実測消費電力を更新
+     *
+     * @param draw 消費電力(W)
+     */
+    public synchronized void updateRigDraw(double draw) {
+        rigDraw = draw;
+    }
+
+    /**
+     * 発電電力から出力制限を判定
+     *
+     * @param millis       サンプル時刻(ミリ秒)
+     * @param power        発電電力(W)
+     * @param currentLimit 現在の出力制限(W、不明な場合はnull)
+     * @return 変更後の出力制限(W、変更しない場合はnull)
+     */
+    public synchronized Double onSample(long millis, double power, Double currentLimit) {
+        if (millis < holdUntilMillis) {
+            return null;
+        }
+        var load = rigDraw != null ? rigDraw : target;
+        if (load == null) {
+            return null;
+        }
+
+        var desired = clamp(load + margin);
+        if (currentLimit == null) {
+            return desired;
+        }
+
+        var diff = desired - currentLimit;
+        if (Math.abs(diff) < deadband) {
+            return null;
+        }
+        // 下げる場合は即座に目標まで
+        if (diff < 0) {
+            return desired;
+        }
+        // 発電が出力制限に届いていない場合は、上げても変わらない
+        if (power < currentLimit - deadband) {
+            return null;
+        }
+        return clamp(currentLimit + Math.min(step, diff));
+    }
+
+    /**
+     * 変更に失敗した (しばらく変更を保留する)
+     *
+     * @param millis      失敗した時刻(ミリ秒)
+     * @param retryMillis 再試行までの時間(ミリ秒)
+     */
+    public synchronized void failed(long millis, long retryMillis) {
+        holdUntilMillis = millis + retryMillis;
+    }
+
+    private double clamp(double limit) {
+        var clamped = Math.max(min, limit);
+        return max == null ? clamped : Math.min(max, clamped);
+    }
+}
@@ -0,0 +1,140 @@
+package com.heterodain.gtimonitor.control;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Filter.Metric;
+
+/**
+ * 計測値の外れ値除外
+ *
+ * <p>
+ * 直近のウィンドウの中央値からの偏差が、偏差の中央値(MAD)の閾値倍を超えるサンプルを外れ値として除外する。
+ * 偏差は各サンプルの到着時の中央値に対して求め、偏差の中央値もスライディングウィンドウで保持する
+ * (どちらもO(log n)、サンプル毎のメモリ割り当て無し)。外れ値が連続上限を超えて続く場合は、
+ * 1サンプルのスパイクではなく水準の変化とみなして受け入れる。除外したサンプルもウィンドウには加えるため、
+ * 中央値は水準の変化に追従する。
+ * </p>
+ */
+public class OutlierFilter {
+    /** MADを正規分布の標準偏差に換算する係数 */
+    private static final double MAD_SCALE = 1.4826D;
+    /** 判定を始めるサンプル数の上限 */
+    private static final int MIN_SAMPLES = 5;
+
+    /** 計測値のウィンドウ */
+    private final SlidingMedian values;
+    /** 中央値からの偏差のウィンドウ */
+    private final SlidingMedian deviations;
+    /** 閾値(MADの倍数) */
+    private final double threshold;
+    /** 偏差の尺度の下限 */
+    private final double floor;
+    /** 外れ値として除外する連続サンプル数の上限 */
+    private final int maxConsecutive;
+    /** 有効な計測値の下限 */
+    private final Double min;
+    /** 有効な計測値の上限 */
+    private final Double max;
+    /** 判定を始めるサンプル数 */
+    private final int minSamples;
+
+    /** 連続して除外したサンプル数 */
+    private int consecutive;
+    /** 受け入れたサンプル数 */
+    private long accepted;
+    /** 外れ値として除外したサンプル数 */
+    private long rejected;
+    /** 範囲外・解析できないサンプル数 */
+    private long invalid;
+
+    /**
+     * コンストラクタ
+     *
+     * @param config 外れ値除外の設定
+     */
+    public OutlierFilter(Metric config) {
+        this.values = new SlidingMedian(config.getWindow());
+        this.deviations = new SlidingMedian(config.getWindow());
+        this.threshold = config.getThreshold();
+        this.floor = config.getFloor();
+        this.maxConsecutive = config.getMaxConsecutive();
+        this.min = config.getMin();
+        this.max = config.getMax();
+        this.minSamples = Math.min(MIN_SAMPLES, config.getWindow());
+    }
+
+    /**
+     * サンプルを判定
+     *
+     * @param value 計測値
+     * @return 受け入れる場合はtrue
+     */
+    public synchronized boolean accept(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || (min != null && value < min)
+                || (max != null && value > max)) {
+            invalid++;
+            return false;
+        }
+
+        var outlier = false;
+        if (values.size() > 0) {
+            var deviation = Math.abs(value - values.median());
+            if (values.size() >= minSamples) {
+                var scale = Math.max(floor, MAD_SCALE * deviations.median());
+                outlier = deviation > threshold * scale;
+            }
+            deviations.add(deviation);
+        }
+        values.add(value);
+
+        if (outlier && consecutive < maxConsecutive) {
+            consecutive++;
+            rejected++;
+            return false;
+        }
+        consecutive = 0;
+        accepted++;
+        return true;
+    }
+
+    /**
+     * 解析できないサンプルを記録
+     */
+    public synchronized void invalid() {
+        invalid++;
+    }
+
+    /**
+     * 直近のウィンドウの中央値
+     *
+     * @return 中央値(サンプルが無い場合はNaN)
+     */
+    public synchronized double median() {
+        return values.median();
+    }
+
+    /**
+     * 受け入れたサンプル数
+     *
+     * @return サンプル数
+     */
+    public synchronized long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * 外れ値として除外したサンプル数
+     *
+     * @return サンプル数
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * 範囲外・解析できないサンプル数
+     *
+     * @return サンプル数
+     */
+    public synchronized long getInvalid() {
+        return invalid;
+    }
+}
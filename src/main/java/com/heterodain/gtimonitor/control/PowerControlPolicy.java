@@ -0,0 +1,34 @@
+package com.heterodain.gtimonitor.control;
+
+/**
+ * Power Limit切り替えの判定 (閾値 ± 調整感度のヒステリシス制御)
+ */
+public final class PowerControlPolicy {
+
+    private PowerControlPolicy() {
+    }
+
+    /**
+     * 切り替え先のOCプロファイルを判定
+     * 
+     * @param average         (発電電力 or 照度)の平均値
+     * @param currentProfile  現在のOCプロファイル名(未設定の場合はnull)
+     * @param highProfileName 高電力設定プロファイル名
+     * @param lowProfileName  低電力設定プロファイル名
+     * @param threshold       切り替え閾値
+     * @param hysteresis      調整感度
+     * @return 切り替え先のOCプロファイル名(変更しない場合はnull)
+     */
+    public static String decide(double average, String currentProfile, String highProfileName,
+            String lowProfileName, double threshold, double hysteresis) {
+        // (発電電力 or 照度) > 閾値 の場合、Power Limitを上げる
+        if (average > (threshold + hysteresis) && !highProfileName.equals(currentProfile)) {
+            return highProfileName;
+        }
+        // (発電電力 or 照度) < 閾値 の場合、Power Limitを下げる
+        if (average < (threshold - hysteresis) && !lowProfileName.equals(currentProfile)) {
+            return lowProfileName;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,84 @@
+package com.heterodain.gtimonitor.control;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+
+/**
+ * 予測型のPower Limit制御
+ *
+ * <p>
+ * サンプル毎に(発電電力 or 照度)のトレンドを更新し、予測値が閾値 ± 調整感度を越えたら切り替える。
+ * 切り替え直後は最小保持時間が経過するまで再度切り替えない。
+ * </p>
+ */
+public class PredictiveController {
+    /** 電力制御の設定 */
+    private final Power config;
+    /** 予測器 */
+    private final HoltForecaster forecaster;
+
+    /** 前回切り替え(または切り替え試行)した時刻(ミリ秒) */
+    private long lastSwitchMillis = Long.MIN_VALUE / 2;
+    /** 切り替えの保留期間の終了時刻(ミリ秒、失敗時の再試行待ち) */
+    private long holdUntilMillis = Long.MIN_VALUE / 2;
+
+    /**
+     * コンストラクタ
+     * 
+     * @param config 電力制御の設定
+     */
+    public PredictiveController(Power config) {
+        this.config = config;
+        this.forecaster = new HoltForecaster(config.getSmoothing(), config.getTrendSmoothing());
+    }
+
+    /**
+     * サンプルを追加して、切り替え先を判定
+     * 
+     * @param millis         サンプル時刻(ミリ秒)
+     * @param value          (発電電力 or 照度)
+     * @param currentProfile 現在のOCプロファイル名
+     * @return 切り替え先のOCプロファイル名(変更しない場合はnull)
+     */
+    public synchronized String onSample(long millis, double value, String currentProfile) {
+        forecaster.update(millis, value);
+
+        if (millis < holdUntilMillis) {
+            return null;
+        }
+        if (currentProfile != null && millis - lastSwitchMillis < config.getMinDwell() * 1000L) {
+            return null;
+        }
+
+        var forecast = forecaster.forecast(config.getForecastHorizon());
+        return PowerControlPolicy.decide(forecast, currentProfile, config.getHighProfileName(),
+                config.getLowProfileName(), config.getThreshold(), config.getHysteresis());
+    }
+
+    /**
+     * 切り替えに成功した
+     * 
+     * @param millis 切り替えた時刻(ミリ秒)
+     */
+    public synchronized void switched(long millis) {
+        lastSwitchMillis = millis;
+    }
+
+    /**
+     * 切り替えに失敗した (しばらく切り替えを保留する)
+     * 
+     * @param millis      失敗した時刻(ミリ秒)
+     * @param retryMillis 再試行までの時間(ミリ秒)
+     */
+    public synchronized void failed(long millis, long retryMillis) {
+        holdUntilMillis = millis + retryMillis;
+    }
+
+    /**
+     * 現在の予測値
+     * 
+     * @return 予測値
+     */
+    public double forecast() {
+        return forecaster.forecast(config.getForecastHorizon());
+    }
+}
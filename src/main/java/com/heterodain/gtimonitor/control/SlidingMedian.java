@@ -0,0 +1,183 @@
+package com.heterodain.gtimonitor.control;
+
+/**
+ * スライディングウィンドウの中央値
+ *
+ * <p>
+ * ウィンドウ内の値を、中央値以下の最大ヒープと中央値以上の最小ヒープに分けて保持する。
+ * 各値のヒープ内の位置を記録しておくことで、最も古い値の削除もO(log n)で行う。
+ * 配列は生成時に確保し、サンプル毎のメモリ割り当ては行わない。
+ * </p>
+ */
+public class SlidingMedian {
+    /** 下側(最大ヒープ) */
+    private static final int LOW = 0;
+    /** 上側(最小ヒープ) */
+    private static final int HIGH = 1;
+
+    /** ウィンドウ(リングバッファ) */
+    private final double[] values;
+    /** スロット毎の所属ヒープ */
+    private final int[] heapOf;
+    /** スロット毎のヒープ内の位置 */
+    private final int[] positions;
+    /** ヒープ(スロット番号) */
+    private final int[][] heaps;
+    /** ヒープの要素数 */
+    private final int[] sizes = new int[2];
+
+    /** ウィンドウ内の値の数 */
+    private int count;
+    /** 次に書き込むスロット */
+    private int next;
+
+    /**
+     * コンストラクタ
+     *
+     * @param window ウィンドウの大きさ
+     */
+    public SlidingMedian(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("ウィンドウの大きさは1以上を指定してください: " + window);
+        }
+        values = new double[window];
+        heapOf = new int[window];
+        positions = new int[window];
+        heaps = new int[][] { new int[window], new int[window] };
+    }
+
+    /**
+     * 値を追加 (ウィンドウが一杯の場合は最も古い値を削除)
+     *
+     * @param value 値
+     */
+    public void add(double value) {
+        var slot = next;
+        if (count == values.length) {
+            remove(slot);
+        } else {
+            count++;
+        }
+        values[slot] = value;
+        next = (next + 1) % values.length;
+
+        if (sizes[LOW] == 0 || value <= values[heaps[LOW][0]]) {
+            push(LOW, slot);
+        } else {
+            push(HIGH, slot);
+        }
+        rebalance();
+    }
+
+    /**
+     * 中央値
+     *
+     * @return 中央値(値が無い場合はNaN)
+     */
+    public double median() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (sizes[LOW] > sizes[HIGH]) {
+            return values[heaps[LOW][0]];
+        }
+        return (values[heaps[LOW][0]] + values[heaps[HIGH][0]]) / 2D;
+    }
+
+    /**
+     * ウィンドウ内の値の数
+     *
+     * @return 値の数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 下側の要素数を上側と同じか1つ多く保つ
+     */
+    private void rebalance() {
+        if (sizes[LOW] > sizes[HIGH] + 1) {
+            var slot = heaps[LOW][0];
+            removeAt(LOW, 0);
+            push(HIGH, slot);
+        } else if (sizes[HIGH] > sizes[LOW]) {
+            var slot = heaps[HIGH][0];
+            removeAt(HIGH, 0);
+            push(LOW, slot);
+        }
+    }
+
+    /**
+     * スロットをヒープから削除
+     */
+    private void remove(int slot) {
+        removeAt(heapOf[slot], positions[slot]);
+        rebalance();
+    }
+
+    private void push(int heap, int slot) {
+        var position = sizes[heap]++;
+        place(heap, position, slot);
+        siftUp(heap, position);
+    }
+
+    private void removeAt(int heap, int position) {
+        var last = --sizes[heap];
+        if (position == last) {
+            return;
+        }
+        place(heap, position, heaps[heap][last]);
+        if (position > 0 && above(heap, heaps[heap][position], heaps[heap][(position - 1) / 2])) {
+            siftUp(heap, position);
+        } else {
+            siftDown(heap, position);
+        }
+    }
+
+    private void siftUp(int heap, int position) {
+        var slot = heaps[heap][position];
+        while (position > 0) {
+            var parent = (position - 1) / 2;
+            if (!above(heap, slot, heaps[heap][parent])) {
+                break;
+            }
+            place(heap, position, heaps[heap][parent]);
+            position = parent;
+        }
+        place(heap, position, slot);
+    }
+
+    private void siftDown(int heap, int position) {
+        var slot = heaps[heap][position];
+        var size = sizes[heap];
+        while (true) {
+            var child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && above(heap, heaps[heap][child + 1], heaps[heap][child])) {
+                child++;
+            }
+            if (!above(heap, heaps[heap][child], slot)) {
+                break;
+            }
+            place(heap, position, heaps[heap][child]);
+            position = child;
+        }
+        place(heap, position, slot);
+    }
+
+    private void place(int heap, int position, int slot) {
+        heaps[heap][position] = slot;
+        heapOf[slot] = heap;
+        positions[slot] = position;
+    }
+
+    /**
+     * ヒープの根に近い側に置くべきかどうか (下側は大きい方、上側は小さい方)
+     */
+    private boolean above(int heap, int a, int b) {
+        return heap == LOW ? values[a] > values[b] : values[a] < values[b];
+    }
+}
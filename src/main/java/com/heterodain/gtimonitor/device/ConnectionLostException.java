@@ -0,0 +1,19 @@
+package com.heterodain.gtimonitor.device;
+
+import java.io.IOException;
+
+/**
+ * デバイスとの接続が切れた (ポートの消失・接続の切断) ため、直ちに再接続が必要
+ */
+public class ConnectionLostException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * コンストラクタ
+     *
+     * @param message メッセージ
+     */
+    public ConnectionLostException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,438 @@
+package com.heterodain.gtimonitor.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.heterodain.gtimonitor.config.DeviceConfig.Reconnect;
+import com.heterodain.gtimonitor.util.LogContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * デバイス接続の監視
+ *
+ * <p>
+ * 読み書きは専用のスレッドで1件ずつ実行し、呼び出し元は期限まで待つ。期限を超えた場合は接続を閉じて
+ * 読み書きを打ち切り、スレッドも作り直す (USB-シリアル変換器のリセットなどで読み込みが戻らない場合)。
+ * 接続の消失・期限切れ、または連続して失敗回数の上限に達した場合は、バックグラウンドで間隔を倍々に
+ * 延ばしながら再接続する。再接続までの読み書きは直ちに失敗するため、サンプリングの間隔は保たれる。
+ * </p>
+ */
+@Slf4j
+public class ConnectionSupervisor implements Closeable {
+    /**
+     * 接続状態
+     */
+    public enum State {
+        /** 接続中 */
+        CONNECTED,
+        /** 切断中 (再接続待ち) */
+        DISCONNECTED,
+        /** 終了 */
+        CLOSED
+    }
+
+    /**
+     * 接続・切断処理
+     */
+    public interface Connector {
+        /**
+         * 接続
+         *
+         * @throws IOException
+         */
+        void open() throws IOException;
+
+        /**
+         * 切断 (読み書き中の場合は、読み書きを打ち切る)
+         */
+        void close();
+    }
+
+    /**
+     * 読み書き処理
+     *
+     * @param <T> 結果の型
+     */
+    @FunctionalInterface
+    public interface Transaction<T> {
+        /**
+         * 読み書き
+         *
+         * @return 結果
+         * @throws Exception
+         */
+        T execute() throws Exception;
+    }
+
+    /** 接続名 */
+    private final String name;
+    /** 接続・切断処理 */
+    private final Connector connector;
+    /** 1回の読み書きの期限(ミリ秒) */
+    private final long deadline;
+    /** 再接続の設定 */
+    private final Reconnect reconnect;
+
+    /** 読み書きのスレッド */
+    private volatile ExecutorService worker;
+    /** 再接続のスレッド */
+    private final ScheduledExecutorService reconnector;
+
+    /** 接続状態 */
+    private volatile State state = State.DISCONNECTED;
+    /** 連続して失敗した回数 */
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    /** 次の再接続までの間隔(ミリ秒) */
+    private long backoff;
+    /** 最後のエラー */
+    private volatile String lastError;
+    /** 接続した時の処理 */
+    private final List<Runnable> connectListeners = new CopyOnWriteArrayList<>();
+
+    /** 読み書きの回数 */
+    private final AtomicLong transactions = new AtomicLong();
+    /** 読み書きに失敗した回数 */
+    private final AtomicLong failures = new AtomicLong();
+    /** 期限を超えた回数 */
+    private final AtomicLong timeouts = new AtomicLong();
+    /** 再接続した回数 */
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * コンストラクタ
+     *
+     * @param name      接続名
+     * @param connector 接続・切断処理
+     * @param deadline  1回の読み書きの期限(ミリ秒)
+     * @param reconnect 再接続の設定
+     */
+    public ConnectionSupervisor(String name, Connector connector, long deadline, Reconnect reconnect) {
+        this.name = name;
+        this.connector = connector;
+        this.deadline = deadline;
+        this.reconnect = reconnect;
+        this.backoff = reconnect.getMinInterval();
+        this.worker = newWorker();
+        this.reconnector = Executors.newSingleThreadScheduledExecutor(daemon("reconnect-" + name));
+    }
+
+    /**
+     * 接続 (失敗した場合はバックグラウンドで再接続)
+     *
+     * <p>
+     * 再接続の設定で最初の接続もバックグラウンドで行う場合は、再接続のスレッドで接続して待たない
+     * (複数のデバイスに並行して接続し、接続できたデバイスから読み込みを始める)。
+     * </p>
+     *
+     * @return 接続できた場合はtrue (バックグラウンドで接続する場合はfalse)
+     */
+    public boolean start() {
+        if (Boolean.TRUE.equals(reconnect.getAsyncStart())) {
+            reconnector.execute(this::connect);
+            return false;
+        }
+        return connect();
+    }
+
+    /**
+     * 最初の接続 (接続した時の処理は、接続の排他の外で実行)
+     *
+     * @return 接続できた場合はtrue
+     */
+    private boolean connect() {
+        if (!tryConnect()) {
+            return false;
+        }
+        notifyConnected();
+        return true;
+    }
+
+    /**
+     * 最初の接続 (失敗した場合はバックグラウンドで再接続)
+     *
+     * @return 接続できた場合はtrue
+     */
+    private synchronized boolean tryConnect() {
+        if (state != State.DISCONNECTED) {
+            return false;
+        }
+        var start = System.nanoTime();
+        try {
+            connector.open();
+            state = State.CONNECTED;
+            log.info("{}に接続しました。({}ms)", name, (System.nanoTime() - start) / 1_000_000L);
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            log.warn("{}に接続できませんでした。{}ミリ秒後に再接続します。", name, backoff, e);
+            safeClose();
+            scheduleReconnect();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 接続した時の処理を追加 (再接続を含む、接続したスレッドで実行)
+     *
+     * <p>
+     * 接続中の排他を待たない(応答しないデバイスに接続している間も呼び出し元を止めない)。
+     * 追加と同時に接続した場合は、2回実行することがある。
+     * </p>
+     *
+     * @param listener 接続した時の処理 (既に接続している場合は直ちに実行)
+     */
+    public void addConnectListener(Runnable listener) {
+        connectListeners.add(listener);
+        if (state == State.CONNECTED) {
+            runListener(listener);
+        }
+    }
+
+    private void notifyConnected() {
+        connectListeners.forEach(this::runListener);
+    }
+
+    private void runListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (Exception e) {
+            log.warn("{}に接続した時の処理に失敗しました。", name, e);
+        }
+    }
+
+    /**
+     * 読み書きを実行して、期限まで結果を待つ
+     *
+     * @param transaction 読み書き処理
+     * @return 結果
+     * @throws IOException 接続していない・期限を超えた・読み書きに失敗した場合
+     */
+    public <T> T call(Transaction<T> transaction) throws IOException {
+        return await(submit(transaction));
+    }
+
+    /**
+     * 読み書きを登録 (登録順に1件ずつ実行)
+     *
+     * @param transaction 読み書き処理
+     * @return 結果 ({@link #await(Future)}で待つ)
+     * @throws DeviceUnavailableException 接続していない場合
+     */
+    public <T> Future<T> submit(Transaction<T> transaction) throws DeviceUnavailableException {
+        if (state != State.CONNECTED) {
+            throw new DeviceUnavailableException(name + "に接続していません。(" + state + ")");
+        }
+        transactions.incrementAndGet();
+        return worker.submit(transaction::execute);
+    }
+
+    /**
+     * 登録した読み書きの結果を期限まで待つ
+     *
+     * @param future 登録した読み書き
+     * @return 結果
+     * @throws IOException 期限を超えた・読み書きに失敗した場合
+     */
+    public <T> T await(Future<T> future) throws IOException {
+        try {
+            var result = future.get(deadline, TimeUnit.MILLISECONDS);
+            consecutiveFailures.set(0);
+            return result;
+
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.incrementAndGet();
+            var error = new ConnectionLostException(name + "から" + deadline + "ミリ秒以内に応答がありません。");
+            fail(error);
+            throw error;
+
+        } catch (CancellationException e) {
+            throw new DeviceUnavailableException(name + "の読み書きが中断されました。");
+
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException(name + "の読み書きが中断されました。", e);
+
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            fail(cause);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 読み書きの失敗を記録 (接続が切れた・連続失敗の上限に達した場合は再接続)
+     */
+    private synchronized void fail(Throwable cause) {
+        failures.incrementAndGet();
+        lastError = cause.getMessage();
+        var consecutive = consecutiveFailures.incrementAndGet();
+        if (state != State.CONNECTED) {
+            return;
+        }
+        if (!(cause instanceof ConnectionLostException) && consecutive < reconnect.getFailureThreshold()) {
+            return;
+        }
+
+        log.warn("{}の接続が切れました。{}ミリ秒後に再接続します。: {}", name, backoff, lastError);
+        state = State.DISCONNECTED;
+        // 戻らない読み書きを打ち切り、スレッドを作り直す
+        safeClose();
+        worker.shutdownNow();
+        worker = newWorker();
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        reconnector.schedule(this::reconnect, backoff, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 再接続 (接続した時の処理は、接続の排他の外で実行)
+     */
+    private void reconnect() {
+        if (tryReconnect()) {
+            notifyConnected();
+        }
+    }
+
+    /**
+     * 再接続 (失敗した場合は間隔を延ばして再実行)
+     *
+     * @return 再接続できた場合はtrue
+     */
+    private synchronized boolean tryReconnect() {
+        if (state != State.DISCONNECTED) {
+            return false;
+        }
+        try {
+            connector.open();
+            state = State.CONNECTED;
+            consecutiveFailures.set(0);
+            backoff = reconnect.getMinInterval();
+            reconnects.incrementAndGet();
+            log.info("{}に再接続しました。(累計{}回)", name, reconnects.get());
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            safeClose();
+            backoff = Math.min(backoff * 2, reconnect.getMaxInterval());
+            log.warn("{}に再接続できませんでした。{}ミリ秒後に再実行します。: {}", name, backoff, lastError);
+            scheduleReconnect();
+            return false;
+        }
+        return true;
+    }
+
+    private void safeClose() {
+        try {
+            connector.close();
+        } catch (Exception e) {
+            log.debug("{}の切断に失敗しました。", name, e);
+        }
+    }
+
+    private ExecutorService newWorker() {
+        return Executors.newSingleThreadExecutor(daemon("device-" + name));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        var logContext = LogContext.current();
+        return r -> {
+            var thread = new Thread(logContext.wrap(r), name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 接続名
+     *
+     * @return 接続名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 接続状態
+     *
+     * @return 接続状態
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 最後のエラー
+     *
+     * @return エラーメッセージ(無い場合はnull)
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * 読み書きの回数
+     *
+     * @return 回数
+     */
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    /**
+     * 読み書きに失敗した回数 (期限切れを含む)
+     *
+     * @return 回数
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * 期限を超えた回数
+     *
+     * @return 回数
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * 再接続した回数
+     *
+     * @return 回数
+     */
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        state = State.CLOSED;
+        reconnector.shutdownNow();
+        worker.shutdownNow();
+        safeClose();
+    }
+}
@@ -0,0 +1,19 @@
+package com.heterodain.gtimonitor.device;
+
+import java.io.IOException;
+
+/**
+ * デバイスに接続していない (再接続待ち) ためにアクセスできない
+ */
+public class DeviceUnavailableException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * コンストラクタ
+     *
+     * @param message メッセージ
+     */
+    public DeviceUnavailableException(String message) {
+        super(message);
+    }
+}
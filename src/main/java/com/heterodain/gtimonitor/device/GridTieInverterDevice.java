@@ -2,78 +2,268 @@ package com.heterodain.gtimonitor.device;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import com.ghgande.j2mod.modbus.ModbusException;
-import com.ghgande.j2mod.modbus.io.ModbusSerialTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
 import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
 import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
-import com.ghgande.j2mod.modbus.net.SerialConnection;
-import com.ghgande.j2mod.modbus.util.SerialParameters;
+import com.ghgande.j2mod.modbus.msg.WriteSingleRegisterRequest;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
 import com.heterodain.gtimonitor.config.DeviceConfig.Gti;
+import com.heterodain.gtimonitor.config.DeviceConfig.Reconnect;
 
 /**
  * グリッドタイインバーターデバイス
+ * 
+ * <p>
+ * 複数のGTIを指定した場合は、バス(シリアルポート・ゲートウェイ)毎に1接続を共有し、
+ * バス毎に並行して読み込んだ発電電力を合計する。出力制限は先頭のGTIのみ。
+ * バスは汎用のModbusデバイス(スマートメーターなど)とも共有する。
+ * </p>
  */
 @Component
 @Slf4j
 public class GridTieInverterDevice implements Closeable {
+	/** 発電電力のレジスタアドレス */
+	private static final int POWER_REGISTER = 86;
 
-	/** GTIへのシリアル接続 */
-	private SerialConnection connection;
-	/** RS485のユニットID */
-	private Integer unitId;
+	/** バスの共有 (Springの管理外で生成した場合は専用) */
+	@Autowired
+	private ModbusBusPool busPool;
+	/** 接続中のバス(バス名→バス) */
+	private final Map<String, ModbusBus> buses = new LinkedHashMap<>();
+	/** 接続中のGTI (先頭は出力制限を行うGTI) */
+	private final List<Unit> units = new ArrayList<>();
+	/** 出力制限のレジスタアドレス (非対応の場合はnull) */
+	private Integer limitRegister;
+	/** 出力制限のレジスタ値の倍率 */
+	private double limitScale;
+	/** 出力制限の書き込み後に読み込んで確認するかどうか */
+	private boolean limitVerify;
+	/** 出力制限の読み書きの排他 (GTIの応答を待つため、仮想スレッドを固定しないロック) */
+	private final ReentrantLock limitLock = new ReentrantLock();
 
 	/**
-	 * GTI接続
+	 * バスの共有を設定 (Springの管理外で、汎用のModbusデバイスとバスを共有する場合)
+	 * 
+	 * @param busPool バスの共有
+	 */
+	public void setBusPool(ModbusBusPool busPool) {
+		this.busPool = busPool;
+	}
+
+	/**
+	 * GTI接続 (接続を試みるまで待つ)
 	 * 
 	 * @param config GTI情報
 	 * @throws IOException
 	 */
 	public void connect(Gti config) throws IOException {
-		// 接続
-		log.info("GTIに接続します: {}", config);
-
-		var params = new SerialParameters();
-		params.setPortName(config.getComPort());
-		params.setBaudRate(9600);
-		params.setDatabits(8);
-		params.setParity("None");
-		params.setStopbits(1);
-		params.setEncoding("rtu");
-		params.setEcho(false);
-
-		connection = new SerialConnection(params);
-		connection.open();
-
-		unitId = config.getUnitId();
+		var reconnect = new Reconnect();
+		reconnect.setAsyncStart(false);
+		connect(List.of(config), reconnect);
+	}
+
+	/**
+	 * 複数のGTIに接続 (同じバスのGTIは1接続を共有、接続できないバスはバックグラウンドで再接続)
+	 * 
+	 * @param configs   GTI情報 (先頭は出力制限を行うGTI)
+	 * @param reconnect 再接続の設定
+	 * @throws IOException
+	 */
+	public synchronized void connect(List<Gti> configs, Reconnect reconnect) throws IOException {
+		if (busPool == null) {
+			busPool = new ModbusBusPool();
+		}
+		for (var config : configs) {
+			log.info("GTIに接続します: {}", config);
+
+			var name = ModbusBus.nameOf(config);
+			var bus = buses.get(name);
+			if (bus == null) {
+				bus = busPool.acquire(config, reconnect);
+				buses.put(name, bus);
+			}
+			units.add(new Unit(bus, config.getUnitId()));
+		}
+
+		var primary = configs.get(0);
+		limitRegister = primary.getLimitRegister();
+		limitScale = primary.getLimitScale();
+		limitVerify = Boolean.TRUE.equals(primary.getLimitVerify());
+		if (units.size() > 1) {
+			log.info("{}台のGTIを{}本のバスで読み込みます。", units.size(), buses.size());
+		}
 	}
 
 	/**
-	 * 現在の発電電力取得
+	 * 現在の発電電力取得 (複数のGTIの場合は合計)
 	 * 
 	 * @return 発電電力(W)
 	 * @throws IOException
 	 * @throws ModbusException
 	 */
 	public Double getCurrentPower() throws IOException, ModbusException {
-		var req = new ReadMultipleRegistersRequest(86, 1);
-		req.setUnitID(unitId);
-		var tr = new ModbusSerialTransaction(connection);
-		tr.setRequest(req);
-		tr.execute();
+		if (units.size() == 1) {
+			return readPower(units.get(0));
+		}
+
+		// 全GTIの読み込みをバス毎のスレッドに登録して並行して読み込み (同じバスのGTIは順に読み込み)
+		var futures = new ArrayList<Future<ModbusTransaction>>();
+		for (var unit : units) {
+			futures.add(unit.bus.submit(unit.unitId, new ReadMultipleRegistersRequest(POWER_REGISTER, 1)));
+		}
+
+		var total = 0D;
+		for (int i = 0; i < units.size(); i++) {
+			var unit = units.get(i);
+			var tr = unit.bus.await(futures.get(i));
+			var power = ((ReadMultipleRegistersResponse) tr.getResponse()).getRegisterValue(0) / 10D;
+			log.trace("{}#{}: {} W", unit.bus.getName(), unit.unitId, power);
+			total += power;
+		}
+		return total;
+	}
+
+	/**
+	 * 出力制限の書き込みに対応しているかどうか
+	 * 
+	 * @return 対応している場合はtrue
+	 */
+	public boolean isLimitSupported() {
+		return limitRegister != null;
+	}
+
+	/**
+	 * 現在の出力制限取得
+	 * 
+	 * @return 出力制限(W)
+	 * @throws IOException
+	 * @throws ModbusException
+	 */
+	public Double getPowerLimit() throws IOException, ModbusException {
+		checkLimitSupported();
+		limitLock.lock();
+		try {
+			return readRegister(units.get(0), limitRegister) / limitScale;
+		} finally {
+			limitLock.unlock();
+		}
+	}
+
+	/**
+	 * 出力制限の変更
+	 * 
+	 * @param watts 出力制限(W)
+	 * @throws IOException
+	 * @throws ModbusException
+	 */
+	public void setPowerLimit(double watts) throws IOException, ModbusException {
+		checkLimitSupported();
+		var value = (int) Math.round(watts * limitScale);
+		if (value < 0 || value > 0xFFFF) {
+			throw new IllegalArgumentException("出力制限がレジスタの範囲外です: " + watts + "W");
+		}
+
+		limitLock.lock();
+		try {
+			var req = new WriteSingleRegisterRequest(limitRegister, new SimpleRegister(value));
+			execute(units.get(0), req);
+
+			// 書き込んだ値を読み込んで確認
+			if (limitVerify) {
+				var actual = readRegister(units.get(0), limitRegister);
+				if (actual != value) {
+					throw new IOException("GTIの出力制限を変更できませんでした。(書き込み値=" + value + ", 読み込み値=" + actual + ")");
+				}
+			}
+		} finally {
+			limitLock.unlock();
+		}
+	}
 
+	/**
+	 * GTIの発電電力読み込み
+	 * 
+	 * @param unit GTI
+	 * @return 発電電力(W)
+	 */
+	private double readPower(Unit unit) throws IOException, ModbusException {
+		var power = readRegister(unit, POWER_REGISTER) / 10D;
+		log.trace("{}#{}: {} W", unit.bus.getName(), unit.unitId, power);
+		return power;
+	}
+
+	/**
+	 * レジスタ読み込み
+	 * 
+	 * @param unit     GTI
+	 * @param register レジスタアドレス
+	 * @return レジスタ値
+	 */
+	private int readRegister(Unit unit, int register) throws IOException, ModbusException {
+		var tr = execute(unit, new ReadMultipleRegistersRequest(register, 1));
 		var res = (ReadMultipleRegistersResponse) tr.getResponse();
-		return ((double) res.getRegisterValue(0)) / 10D;
+		return res.getRegisterValue(0);
+	}
+
+	/**
+	 * リクエスト実行
+	 * 
+	 * @param unit GTI
+	 * @param req  リクエスト
+	 * @return 実行したトランザクション
+	 */
+	private ModbusTransaction execute(Unit unit, ModbusRequest req) throws IOException, ModbusException {
+		return unit.bus.execute(unit.unitId, req);
+	}
+
+	private void checkLimitSupported() {
+		if (limitRegister == null) {
+			throw new IllegalStateException("device.gti.limit-registerが設定されていません");
+		}
+	}
+
+	/**
+	 * バス毎の接続の監視
+	 * 
+	 * @return 接続の監視
+	 */
+	public synchronized List<ConnectionSupervisor> getConnections() {
+		return buses.values().stream().map(ModbusBus::getSupervisor).collect(Collectors.toList());
 	}
 
 	@Override
-	public void close() throws IOException {
-		if (connection != null && connection.isOpen()) {
-			connection.close();
+	public synchronized void close() throws IOException {
+		for (var bus : buses.values()) {
+			busPool.release(bus);
 		}
+		buses.clear();
+		units.clear();
+	}
+
+	/**
+	 * バス上のGTI
+	 */
+	@AllArgsConstructor
+	private static class Unit {
+		/** バス */
+		private final ModbusBus bus;
+		/** ユニットID */
+		private final Integer unitId;
 	}
-}
\ No newline at end of file
+}
@@ -4,10 +4,13 @@ import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 
 import com.fazecast.jSerialComm.SerialPort;
 import com.heterodain.gtimonitor.config.DeviceConfig.LightSensor;
+import com.heterodain.gtimonitor.config.DeviceConfig.Reconnect;
 
 import org.springframework.stereotype.Component;
 
@@ -15,25 +18,139 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * 照度センサーデバイス
+ *
+ * <p>
+ * 接続はConnectionSupervisorで監視し、ポートの消失・応答停止の場合はバックグラウンドで再接続する。
+ * </p>
  */
 @Component
 @Slf4j
 public class LightSensorDevice implements Closeable {
+    /** TCP読み込みタイムアウト(ミリ秒) */
+    private static final int SOCKET_READ_TIMEOUT = 2000;
 
+    // 接続設定
+    private LightSensor config;
+    // 接続の監視
+    private ConnectionSupervisor supervisor;
     // シリアルポート
-    private SerialPort serial;
+    private volatile SerialPort serial;
+    // TCPソケット (シリアル-TCP変換器経由の場合)
+    private volatile Socket socket;
     // シリアル入力ストリーム
-    private BufferedReader in;
+    private volatile BufferedReader in;
+    // シリアル出力ストリーム
+    private volatile OutputStream out;
 
     /**
-     * 照度センサーに接続する
-     * 
+     * 照度センサーに接続する (接続を試みるまで待つ)
+     *
+     * @param config 照度センサーの設定
      * @throws IOException
-     * @throws InterruptedException
      */
     public void connect(LightSensor config) throws IOException {
+        var reconnect = new Reconnect();
+        reconnect.setAsyncStart(false);
+        connect(config, reconnect);
+    }
+
+    /**
+     * 照度センサーに接続する (接続できない場合はバックグラウンドで再接続)
+     *
+     * @param config    照度センサーの設定
+     * @param reconnect 再接続の設定
+     * @throws IOException
+     */
+    public synchronized void connect(LightSensor config, Reconnect reconnect) throws IOException {
         log.info("照度センサーに接続します: {}", config);
 
+        this.config = config;
+        var name = config.getHost() != null ? config.getHost() + ":" + config.getPort() : config.getComPort();
+        supervisor = new ConnectionSupervisor("照度センサー[" + name + "]", new ConnectionSupervisor.Connector() {
+            @Override
+            public void open() throws IOException {
+                openPort();
+            }
+
+            @Override
+            public void close() {
+                closePort();
+            }
+        }, config.getDeadline(), reconnect);
+        supervisor.start();
+    }
+
+    /**
+     * 照度を取得する
+     *
+     * @return 照度(Lux)
+     * @throws IOException 接続していない・応答が無い・解析できない場合
+     */
+    public Double readLux() throws IOException {
+        if (supervisor == null) {
+            throw new DeviceUnavailableException("照度センサーに接続していません。");
+        }
+        return supervisor.call(this::transact);
+    }
+
+    /**
+     * 照度を1回読み込む (接続の監視のスレッドで実行)
+     */
+    private Double transact() throws IOException {
+        if (serial != null && !serial.isOpen()) {
+            throw new ConnectionLostException("照度センサーのシリアルポートが閉じています。");
+        }
+
+        // 前回の途中で切れた行・遅れて届いた応答を読み捨てて、行の区切りを合わせる
+        resync();
+
+        out.write("GET".getBytes());
+        out.flush();
+
+        var line = in.readLine();
+        log.trace("Receive: {}", line);
+        if (line == null) {
+            if (socket != null) {
+                throw new ConnectionLostException("照度センサーとの接続が切れました。");
+            }
+            throw new IOException("照度センサーから応答がありません。");
+        }
+
+        try {
+            return Double.parseDouble(line.trim());
+        } catch (NumberFormatException e) {
+            // 途中で切れた行の残りが次の応答に混ざらないよう、受信済みのデータを読み捨てる
+            resync();
+            throw new IOException("照度センサーの応答を解析できません: " + line, e);
+        }
+    }
+
+    /**
+     * 受信済みのデータを読み捨てる
+     */
+    private void resync() throws IOException {
+        var skipped = 0;
+        while (in.ready()) {
+            in.read();
+            skipped++;
+        }
+        if (skipped > 0) {
+            log.debug("照度センサーの受信済みのデータを読み捨てました。({}文字)", skipped);
+        }
+    }
+
+    /**
+     * ポートを開く
+     */
+    private void openPort() throws IOException {
+        if (config.getHost() != null) {
+            socket = new Socket(config.getHost(), config.getPort());
+            socket.setSoTimeout(SOCKET_READ_TIMEOUT);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            out = socket.getOutputStream();
+            return;
+        }
+
         serial = SerialPort.getCommPort(config.getComPort());
         serial.setBaudRate(9600);
         serial.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, 200, 200);
@@ -42,36 +159,46 @@ public class LightSensorDevice implements Closeable {
         }
 
         in = new BufferedReader(new InputStreamReader(serial.getInputStream(), StandardCharsets.ISO_8859_1));
+        out = serial.getOutputStream();
     }
 
     /**
-     * 照度を取得する
-     * 
-     * @return 照度(Lux)
-     * @throws IOException
+     * ポートを閉じる (読み込み中の場合は読み込みを打ち切る)
      */
-    public Double readLux() throws IOException {
-        var command = "GET".getBytes();
-        serial.writeBytes(command, command.length);
+    private void closePort() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            log.debug("照度センサーのソケットを閉じられませんでした。", e);
+        }
+        if (serial != null && serial.isOpen()) {
+            serial.closePort();
+        }
+        socket = null;
+        serial = null;
+    }
 
-        var line = in.readLine();
-        log.trace("Receive: {}", line);
-        return Double.parseDouble(line);
+    /**
+     * 接続の監視
+     *
+     * @return 接続の監視 (接続していない場合はnull)
+     */
+    public ConnectionSupervisor getConnection() {
+        return supervisor;
     }
 
     /**
      * シリアルポートを閉じる
-     * 
+     *
      * @throws IOException
      */
     @Override
     public void close() throws IOException {
-        if (in != null) {
-            in.close();
-        }
-        if (serial != null && serial.isOpen()) {
-            serial.closePort();
+        if (supervisor != null) {
+            supervisor.close();
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package com.heterodain.gtimonitor.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.Future;
+
+import com.ghgande.j2mod.modbus.io.ModbusSerialTransaction;
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.net.SerialConnection;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.util.SerialParameters;
+import com.heterodain.gtimonitor.config.DeviceConfig.Modbus;
+import com.heterodain.gtimonitor.config.DeviceConfig.Reconnect;
+import com.heterodain.gtimonitor.config.DeviceConfig.Transport;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Modbusのバス (シリアルポート・Ethernet-RS485ゲートウェイ毎の接続)
+ *
+ * <p>
+ * RS-485のバスは同時に1つのリクエストしか流せないため、同じバスのリクエストは直列に実行する。
+ * バス毎に専用のスレッドを持ち、異なるバスのリクエストは並行して実行できる。
+ * 接続はConnectionSupervisorで監視し、切断・応答停止の場合はバックグラウンドで再接続する。
+ * </p>
+ */
+@Slf4j
+public class ModbusBus implements Closeable {
+    /** バス名 (接続方式と接続先) */
+    private final String name;
+    /** 接続設定 */
+    private final Modbus config;
+    /** 接続方式 */
+    private final Transport transport;
+    /** 接続の監視 */
+    private final ConnectionSupervisor supervisor;
+    /** シリアル接続 */
+    private volatile SerialConnection serialConnection;
+    /** TCP接続 (Modbus TCP・RTU over TCP) */
+    private volatile TCPMasterConnection tcpConnection;
+
+    /**
+     * コンストラクタ
+     *
+     * @param config    接続設定
+     * @param reconnect 再接続の設定
+     */
+    public ModbusBus(Modbus config, Reconnect reconnect) {
+        this.config = config;
+        this.transport = transportOf(config);
+        this.name = nameOf(config);
+        this.supervisor = new ConnectionSupervisor("Modbus[" + name + "]", new ConnectionSupervisor.Connector() {
+            @Override
+            public void open() throws IOException {
+                openConnection();
+            }
+
+            @Override
+            public void close() {
+                closeConnection();
+            }
+        }, config.getDeadline(), reconnect);
+    }
+
+    /**
+     * 接続方式 (指定なしの場合は、接続先ホストの有無で判定)
+     *
+     * @param config 接続設定
+     * @return 接続方式
+     */
+    public static Transport transportOf(Modbus config) {
+        if (config.getTransport() != null) {
+            return config.getTransport();
+        }
+        return config.getHost() != null ? Transport.TCP : Transport.SERIAL;
+    }
+
+    /**
+     * バス名 (同じバス名の接続設定は1つの接続を共有する)
+     *
+     * @param config 接続設定
+     * @return バス名
+     */
+    public static String nameOf(Modbus config) {
+        switch (transportOf(config)) {
+            case TCP:
+                return "tcp://" + config.getHost() + ":" + config.getPort();
+            case RTU_OVER_TCP:
+                return "rtu+tcp://" + config.getHost() + ":" + config.getPort();
+            default:
+                return "serial:" + config.getComPort();
+        }
+    }
+
+    /**
+     * バス名
+     *
+     * @return バス名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 接続の監視
+     *
+     * @return 接続の監視
+     */
+    public ConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    /**
+     * 接続 (失敗した場合はバックグラウンドで再接続)
+     *
+     * @return 接続できた場合はtrue
+     */
+    public boolean open() {
+        log.info("Modbusのバスに接続します: {}", name);
+        return supervisor.start();
+    }
+
+    /**
+     * リクエスト実行 (同じバスのリクエストは直列に実行)
+     *
+     * @param unitId ユニットID
+     * @param req    リクエスト
+     * @return 実行したトランザクション
+     * @throws IOException 接続していない・期限を超えた・実行に失敗した場合
+     */
+    public ModbusTransaction execute(int unitId, ModbusRequest req) throws IOException {
+        return supervisor.await(submit(unitId, req));
+    }
+
+    /**
+     * リクエストをバスのスレッドに登録 (異なるバスのリクエストは並行して実行)
+     *
+     * @param unitId ユニットID
+     * @param req    リクエスト
+     * @return 実行したトランザクション ({@link #await(Future)}で待つ)
+     * @throws DeviceUnavailableException 接続していない場合
+     */
+    public Future<ModbusTransaction> submit(int unitId, ModbusRequest req) throws DeviceUnavailableException {
+        return supervisor.submit(() -> transact(unitId, req));
+    }
+
+    /**
+     * 登録したリクエストの完了を期限まで待つ
+     *
+     * @param future 登録したリクエスト
+     * @return 実行したトランザクション
+     * @throws IOException 期限を超えた・実行に失敗した場合
+     */
+    public ModbusTransaction await(Future<ModbusTransaction> future) throws IOException {
+        return supervisor.await(future);
+    }
+
+    private ModbusTransaction transact(int unitId, ModbusRequest req) throws Exception {
+        req.setUnitID(unitId);
+        ModbusTransaction tr;
+        if (tcpConnection != null) {
+            if (!tcpConnection.isConnected()) {
+                throw new ConnectionLostException("Modbusのバス[" + name + "]の接続が切れています。");
+            }
+            tr = tcpConnection.getModbusTransport().createTransaction();
+        } else if (serialConnection != null) {
+            if (!serialConnection.isOpen()) {
+                throw new ConnectionLostException("Modbusのバス[" + name + "]のシリアルポートが閉じています。");
+            }
+            tr = new ModbusSerialTransaction(serialConnection);
+        } else {
+            throw new ConnectionLostException("Modbusのバス[" + name + "]に接続していません。");
+        }
+        tr.setRequest(req);
+        tr.execute();
+        return tr;
+    }
+
+    private void openConnection() throws IOException {
+        if (transport == Transport.SERIAL) {
+            var params = new SerialParameters();
+            params.setPortName(config.getComPort());
+            params.setBaudRate(config.getBaudRate());
+            params.setDatabits(8);
+            params.setParity("None");
+            params.setStopbits(1);
+            params.setEncoding("rtu");
+            params.setEcho(false);
+
+            var connection = new SerialConnection(params);
+            connection.open();
+            connection.setTimeout(config.getTimeout());
+            serialConnection = connection;
+            return;
+        }
+
+        var connection = new TCPMasterConnection(InetAddress.getByName(config.getHost()));
+        connection.setPort(config.getPort());
+        connection.setTimeout(config.getTimeout());
+        try {
+            connection.connect(transport == Transport.RTU_OVER_TCP);
+        } catch (Exception e) {
+            throw new IOException("Modbusのバス[" + name + "]に接続できませんでした。", e);
+        }
+        tcpConnection = connection;
+    }
+
+    private void closeConnection() {
+        var serial = serialConnection;
+        serialConnection = null;
+        if (serial != null && serial.isOpen()) {
+            serial.close();
+        }
+        var tcp = tcpConnection;
+        tcpConnection = null;
+        if (tcp != null && tcp.isConnected()) {
+            tcp.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        supervisor.close();
+    }
+}
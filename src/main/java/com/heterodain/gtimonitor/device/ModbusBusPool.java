@@ -0,0 +1,86 @@
+package com.heterodain.gtimonitor.device;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.heterodain.gtimonitor.config.DeviceConfig.Modbus;
+import com.heterodain.gtimonitor.config.DeviceConfig.Reconnect;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Modbusのバスの共有
+ *
+ * <p>
+ * GTIと汎用のModbusデバイスが同じシリアルポート・ゲートウェイに繋がっている場合は、1つのバス(接続とスレッド)を
+ * 共有して、同じバスのリクエストを直列に実行する。バスは最初に接続したデバイスの接続設定で開き、
+ * 全てのデバイスが解放したら閉じる。
+ * </p>
+ */
+@Component
+@Slf4j
+public class ModbusBusPool {
+    /** 共有中のバス(バス名→バス) */
+    private final Map<String, Shared> buses = new LinkedHashMap<>();
+
+    /**
+     * バスを取得 (同じバス名のバスが無い場合は接続)
+     *
+     * @param config    接続設定
+     * @param reconnect 再接続の設定
+     * @return バス
+     */
+    public synchronized ModbusBus acquire(Modbus config, Reconnect reconnect) {
+        var name = ModbusBus.nameOf(config);
+        var shared = buses.get(name);
+        if (shared == null) {
+            var bus = new ModbusBus(config, reconnect);
+            bus.open();
+            shared = new Shared(bus, config);
+            buses.put(name, shared);
+        } else if (!Objects.equals(shared.config.getBaudRate(), config.getBaudRate())
+                || !Objects.equals(shared.config.getTimeout(), config.getTimeout())) {
+            log.warn("Modbusのバス[{}]は最初に接続した設定(速度={}, タイムアウト={}ms)で共有します。", name,
+                    shared.config.getBaudRate(), shared.config.getTimeout());
+        }
+        shared.references++;
+        return shared.bus;
+    }
+
+    /**
+     * バスを解放 (全てのデバイスが解放したら閉じる)
+     *
+     * @param bus バス
+     */
+    public synchronized void release(ModbusBus bus) {
+        var shared = buses.get(bus.getName());
+        if (shared == null || shared.bus != bus) {
+            bus.close();
+            return;
+        }
+        if (--shared.references <= 0) {
+            buses.remove(bus.getName());
+            bus.close();
+        }
+    }
+
+    /**
+     * 共有中のバス
+     */
+    private static class Shared {
+        /** バス */
+        private final ModbusBus bus;
+        /** バスを開いた接続設定 */
+        private final Modbus config;
+        /** 取得しているデバイスの数 */
+        private int references;
+
+        Shared(ModbusBus bus, Modbus config) {
+            this.bus = bus;
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.heterodain.gtimonitor.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import com.ghgande.j2mod.modbus.io.ModbusTransaction;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadInputRegistersResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.heterodain.gtimonitor.config.DeviceConfig.ModbusDevice;
+import com.heterodain.gtimonitor.config.DeviceConfig.ModbusDeviceType;
+import com.heterodain.gtimonitor.config.DeviceConfig.Reconnect;
+import com.heterodain.gtimonitor.config.DeviceConfig.Register;
+import com.heterodain.gtimonitor.config.DeviceConfig.RegisterFormat;
+import com.heterodain.gtimonitor.config.DeviceConfig.RegisterTable;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 汎用のModbusデバイス
+ *
+ * <p>
+ * 設定したデバイス(種類毎の既定のレジスタ + 設定したレジスタ)を読み込み、"デバイス名.レジスタ名"の計測値として扱う。
+ * バスはGTIと共有し、同じバスのリクエストは直列に実行する。連続したレジスタは1リクエストにまとめて読み込む。
+ * </p>
+ */
+@Component
+@Slf4j
+public class ModbusDeviceRegistry implements Closeable {
+    /** 1リクエストで読み込むレジスタ数の上限 */
+    private static final int MAX_REGISTERS = 125;
+
+    /** バスの共有 (Springの管理外で生成した場合は専用) */
+    @Autowired
+    private ModbusBusPool busPool;
+    /** 接続中のデバイス(デバイス名→デバイス) */
+    private final Map<String, Device> devices = new LinkedHashMap<>();
+    /** 最新の計測値(計測値名→値) */
+    private final Map<String, Double> latest = new ConcurrentHashMap<>();
+
+    /**
+     * デバイスの読み込むレジスタ (種類毎の既定のレジスタを、設定した同じ名前のレジスタで置き換え)
+     *
+     * @param config デバイスの設定
+     * @return レジスタ
+     */
+    public static List<Register> registersOf(ModbusDevice config) {
+        var registers = new LinkedHashMap<String, Register>();
+        for (var register : presetOf(config.getType())) {
+            registers.put(register.getName(), register);
+        }
+        for (var register : config.getRegisters()) {
+            registers.put(register.getName(), register);
+        }
+        return new ArrayList<>(registers.values());
+    }
+
+    /**
+     * 設定した全デバイスの計測値名
+     *
+     * @param configs デバイスの設定
+     * @return 計測値名("デバイス名.レジスタ名")
+     */
+    public static List<String> metricsOf(List<ModbusDevice> configs) {
+        var metrics = new ArrayList<String>();
+        for (var config : configs) {
+            for (var register : registersOf(config)) {
+                metrics.add(config.getName() + "." + register.getName());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 種類毎の既定のレジスタ
+     *
+     * @param type デバイスの種類
+     * @return レジスタ
+     */
+    private static List<Register> presetOf(ModbusDeviceType type) {
+        switch (type) {
+            case SDM120:
+            case SDM630:
+                // Eastronの電力量計 (入力レジスタ、32ビット浮動小数点数、電力は買電が正)
+                var power = type == ModbusDeviceType.SDM120 ? 0x000C : 0x0034;
+                return List.of(
+                        register("power", power, RegisterTable.INPUT, RegisterFormat.FLOAT32, 1D),
+                        register("export", power, RegisterTable.INPUT, RegisterFormat.FLOAT32, -1D),
+                        register("voltage", 0x0000, RegisterTable.INPUT, RegisterFormat.FLOAT32, 1D),
+                        register("frequency", 0x0046, RegisterTable.INPUT, RegisterFormat.FLOAT32, 1D),
+                        register("import-energy", 0x0048, RegisterTable.INPUT, RegisterFormat.FLOAT32, 1D),
+                        register("export-energy", 0x004A, RegisterTable.INPUT, RegisterFormat.FLOAT32, 1D));
+            default:
+                return List.of();
+        }
+    }
+
+    private static Register register(String name, int address, RegisterTable table, RegisterFormat format,
+            double scale) {
+        var register = new Register();
+        register.setName(name);
+        register.setAddress(address);
+        register.setTable(table);
+        register.setFormat(format);
+        register.setScale(scale);
+        return register;
+    }
+
+    /**
+     * バスの共有を設定 (Springの管理外で、GTIとバスを共有する場合)
+     *
+     * @param busPool バスの共有
+     */
+    public void setBusPool(ModbusBusPool busPool) {
+        this.busPool = busPool;
+    }
+
+    /**
+     * デバイスに接続 (GTIと同じバスのデバイスは接続を共有、接続できないバスはバックグラウンドで再接続)
+     *
+     * @param configs   デバイスの設定
+     * @param reconnect 再接続の設定
+     * @throws IllegalArgumentException 設定が不正な場合
+     */
+    public synchronized void connect(List<ModbusDevice> configs, Reconnect reconnect) {
+        if (busPool == null) {
+            busPool = new ModbusBusPool();
+        }
+        var names = new HashSet<>(devices.keySet());
+        for (var config : configs) {
+            validate(config);
+            if (!names.add(config.getName())) {
+                throw new IllegalArgumentException("Modbusデバイスの名前が重複しています: " + config.getName());
+            }
+        }
+        for (var config : configs) {
+            log.info("Modbusデバイスに接続します: {}", config);
+
+            var registers = registersOf(config);
+            var device = new Device(config, busPool.acquire(config, reconnect), blocks(registers));
+            devices.put(config.getName(), device);
+            log.info("Modbusデバイス[{}]のレジスタ{}個を{}リクエストで読み込みます。", config.getName(), registers.size(),
+                    device.blocks.size());
+        }
+    }
+
+    /**
+     * 設定の検証
+     */
+    private static void validate(ModbusDevice config) {
+        var name = config.getName();
+        if (name == null || name.isEmpty() || name.contains(".") || name.contains(":")) {
+            throw new IllegalArgumentException("Modbusデバイスの名前には\".\"と\":\"以外の文字を指定してください: " + name);
+        }
+        if (config.getUnitId() == null) {
+            throw new IllegalArgumentException("Modbusデバイス[" + name + "]のunit-idが設定されていません");
+        }
+        var registers = registersOf(config);
+        if (registers.isEmpty()) {
+            throw new IllegalArgumentException("Modbusデバイス[" + name + "]の読み込むレジスタがありません");
+        }
+        var names = new HashSet<String>();
+        for (var register : registers) {
+            if (register.getName() == null || register.getAddress() == null || !names.add(register.getName())) {
+                throw new IllegalArgumentException(
+                        "Modbusデバイス[" + name + "]のレジスタの名前・アドレスが不正です: " + register);
+            }
+        }
+    }
+
+    /**
+     * 連続したレジスタを1リクエストにまとめる (レジスタの種類毎、重なっているレジスタも1回で読み込む)
+     *
+     * @param registers レジスタ
+     * @return リクエスト毎のレジスタ
+     */
+    private static List<Block> blocks(List<Register> registers) {
+        var sorted = new ArrayList<>(registers);
+        sorted.sort(Comparator.comparing(Register::getTable).thenComparing(Register::getAddress));
+
+        var blocks = new ArrayList<Block>();
+        Block block = null;
+        for (var register : sorted) {
+            var end = register.getAddress() + register.getFormat().words();
+            if (block != null && block.table == register.getTable() && register.getAddress() <= block.end()
+                    && Math.max(end, block.end()) - block.start <= MAX_REGISTERS) {
+                block.count = Math.max(end, block.end()) - block.start;
+            } else {
+                block = new Block(register.getTable(), register.getAddress(), end - register.getAddress());
+                blocks.add(block);
+            }
+            block.registers.add(register);
+        }
+        return blocks;
+    }
+
+    /**
+     * 登録したデバイスの名前
+     *
+     * @return デバイス名
+     */
+    public synchronized List<String> getDeviceNames() {
+        return new ArrayList<>(devices.keySet());
+    }
+
+    /**
+     * デバイスの全レジスタを読み込む (全リクエストをバスのスレッドに登録してから待つ)
+     *
+     * @param name デバイス名
+     * @return 計測値名("デバイス名.レジスタ名")→計測値
+     * @throws IOException 接続していない・期限を超えた・読み込みに失敗した場合
+     */
+    public Map<String, Double> poll(String name) throws IOException {
+        Device device;
+        synchronized (this) {
+            device = devices.get(name);
+        }
+        if (device == null) {
+            throw new DeviceUnavailableException("Modbusデバイス[" + name + "]に接続していません。");
+        }
+
+        var futures = new ArrayList<Future<ModbusTransaction>>();
+        for (var block : device.blocks) {
+            var req = block.table == RegisterTable.INPUT ? new ReadInputRegistersRequest(block.start, block.count)
+                    : new ReadMultipleRegistersRequest(block.start, block.count);
+            futures.add(device.bus.submit(device.config.getUnitId(), req));
+        }
+
+        var values = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < futures.size(); i++) {
+            var block = device.blocks.get(i);
+            var words = words(device.bus.await(futures.get(i)), block.count);
+            for (var register : block.registers) {
+                var value = decode(register, words, register.getAddress() - block.start);
+                values.put(name + "." + register.getName(), value);
+            }
+        }
+        log.trace("{}: {}", name, values);
+        latest.putAll(values);
+        return values;
+    }
+
+    /**
+     * 応答のレジスタ値
+     */
+    private static int[] words(ModbusTransaction tr, int count) throws IOException {
+        var res = tr.getResponse();
+        var words = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (res instanceof ReadInputRegistersResponse) {
+                words[i] = ((ReadInputRegistersResponse) res).getRegisterValue(i);
+            } else if (res instanceof ReadMultipleRegistersResponse) {
+                words[i] = ((ReadMultipleRegistersResponse) res).getRegisterValue(i);
+            } else {
+                throw new IOException("Modbusデバイスの応答が不正です: " + res);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * レジスタ値を計測値に変換
+     *
+     * @param register レジスタ
+     * @param words    リクエストで読み込んだレジスタ値
+     * @param offset   レジスタの位置
+     * @return 計測値
+     */
+    private static double decode(Register register, int[] words, int offset) {
+        var wide = register.getFormat().words() == 2;
+        var high = words[offset];
+        var low = wide ? words[offset + 1] : 0;
+        if (wide && Boolean.TRUE.equals(register.getWordSwap())) {
+            var swap = high;
+            high = low;
+            low = swap;
+        }
+        var bits = (high << 16) | low;
+
+        double raw;
+        switch (register.getFormat()) {
+            case INT16:
+                raw = (short) high;
+                break;
+            case INT32:
+                raw = bits;
+                break;
+            case UINT32:
+                raw = bits & 0xFFFFFFFFL;
+                break;
+            case FLOAT32:
+                raw = Float.intBitsToFloat(bits);
+                break;
+            default:
+                raw = high;
+                break;
+        }
+        return raw * register.getScale();
+    }
+
+    /**
+     * 最新の計測値
+     *
+     * @param metric 計測値名("デバイス名.レジスタ名")
+     * @return 計測値(未読み込みの場合はnull)
+     */
+    public Double getLatest(String metric) {
+        return latest.get(metric);
+    }
+
+    /**
+     * バス毎の接続の監視
+     *
+     * @return 接続の監視
+     */
+    public synchronized List<ConnectionSupervisor> getConnections() {
+        return devices.values().stream().map(d -> d.bus.getSupervisor()).distinct().collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void close() {
+        for (var device : devices.values()) {
+            busPool.release(device.bus);
+        }
+        devices.clear();
+    }
+
+    /**
+     * 接続中のデバイス
+     */
+    private static class Device {
+        /** デバイスの設定 */
+        private final ModbusDevice config;
+        /** バス */
+        private final ModbusBus bus;
+        /** リクエスト毎のレジスタ */
+        private final List<Block> blocks;
+
+        Device(ModbusDevice config, ModbusBus bus, List<Block> blocks) {
+            this.config = config;
+            this.bus = bus;
+            this.blocks = blocks;
+        }
+    }
+
+    /**
+     * 1リクエストで読み込むレジスタ
+     */
+    private static class Block {
+        /** レジスタの種類 */
+        private final RegisterTable table;
+        /** 先頭のレジスタアドレス */
+        private final int start;
+        /** レジスタ数 */
+        private int count;
+        /** 含まれるレジスタ */
+        private final List<Register> registers = new ArrayList<>();
+
+        Block(RegisterTable table, int start, int count) {
+            this.table = table;
+            this.start = start;
+            this.count = count;
+        }
+
+        int end() {
+            return start + count;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.heterodain.gtimonitor.ha;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * 共有ファイルのリース
+ *
+ * <p>
+ * 読み書きの間だけファイルをロックし、ロックは保持し続けない(稼働系のホストが停止しても、
+ * OS・NFSがロックを解放するまで待たずに引き継げる)。ネットワークファイルシステムの場合は、
+ * ファイルロックに対応したもの(NFSv4など)を使用すること。
+ * 同じプロセスで同じファイルを2つ開くと、ロックが重複して例外になる。
+ * </p>
+ */
+public class FileLeaseStore implements LeaseStore {
+    /** 状態のキーの接頭辞 */
+    private static final String STATE_PREFIX = "state.";
+
+    /** リースファイル */
+    private final Path file;
+    /** ファイルのチャネル */
+    private final FileChannel channel;
+
+    /**
+     * コンストラクタ
+     *
+     * @param file リースファイル (無い場合は作成)
+     * @throws IOException ファイルを開けない場合
+     */
+    public FileLeaseStore(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public synchronized Lease read() throws IOException {
+        try (var lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            return readLocked();
+        }
+    }
+
+    @Override
+    public synchronized boolean compareAndSet(Lease expected, Lease next) throws IOException {
+        try (var lock = channel.lock()) {
+            if (!Objects.equals(readLocked(), expected)) {
+                return false;
+            }
+
+            var properties = new Properties();
+            properties.setProperty("holder", next.getHolder() == null ? "" : next.getHolder());
+            properties.setProperty("epoch", String.valueOf(next.getEpoch()));
+            properties.setProperty("renewals", String.valueOf(next.getRenewals()));
+            if (next.getState() != null) {
+                next.getState().forEach((k, v) -> properties.setProperty(STATE_PREFIX + k, v));
+            }
+            var out = new ByteArrayOutputStream();
+            properties.store(out, null);
+
+            // 先に書いてから切り詰める (同じ長さの更新で空のファイルが見えないように)
+            var bytes = ByteBuffer.wrap(out.toByteArray());
+            var position = 0L;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+            channel.truncate(position);
+            channel.force(false);
+            return true;
+        }
+    }
+
+    private Lease readLocked() throws IOException {
+        var size = (int) channel.size();
+        if (size == 0) {
+            return null;
+        }
+        var bytes = ByteBuffer.allocate(size);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, bytes.position()) < 0) {
+                break;
+            }
+        }
+
+        var properties = new Properties();
+        properties.load(new ByteArrayInputStream(bytes.array(), 0, bytes.position()));
+        var state = new TreeMap<String, String>();
+        for (var name : properties.stringPropertyNames()) {
+            if (name.startsWith(STATE_PREFIX)) {
+                state.put(name.substring(STATE_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+        try {
+            return new Lease(properties.getProperty("holder", ""),
+                    Long.parseLong(properties.getProperty("epoch", "0")),
+                    Long.parseLong(properties.getProperty("renewals", "0")), state);
+        } catch (NumberFormatException e) {
+            // 書き込み中に停止した稼働系のリースは、解放されたものとして扱う
+            return new Lease("", 0L, 0L, state);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package com.heterodain.gtimonitor.ha;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.heterodain.gtimonitor.config.HaConfig;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 稼働系の選出 (冗長構成)
+ *
+ * <p>
+ * リースを更新している間だけ稼働系になり、OCプロファイル・GTIの出力制限の変更とAmbient・追加の送信先への送信を行う。
+ * 待機系は計測・集計を続けてリースを監視し、リースが有効期間の間変わらなかった場合に引き継ぐ。
+ * 稼働系は、最後にリースを更新し始めてから(有効期間−更新間隔)を過ぎると稼働系として振る舞わないため、
+ * 待機系が引き継ぐ前に必ず止まる。リースの更新は専用のスレッドで行い、タスクの混雑・再試行の待ちに影響されない。
+ * 冗長構成にしない場合は常に稼働系。
+ * </p>
+ */
+@Component
+@Slf4j
+public class LeaderElection {
+    @Autowired
+    private HaConfig haConfig;
+
+    /** リースの保存先 (冗長構成にしない場合はnull) */
+    private LeaseStore leaseStore;
+    /** インスタンスのID */
+    private String nodeId;
+    /** リースの更新 */
+    private ScheduledExecutorService renewer;
+    /** 稼働系が公開する状態 (キー→値の取得) */
+    private final Map<String, Supplier<String>> states = new ConcurrentSkipListMap<>();
+
+    /** 自分が書いたリース (待機系の場合はnull) */
+    private volatile Lease ownLease;
+    /** 最後にリースを更新し始めた時刻(System.nanoTime) */
+    private volatile long renewedNanos;
+    /** 最後に読み込んだリース */
+    private volatile Lease lastLease;
+    /** 最後に読み込んだ他のインスタンスのリース */
+    private Lease observed;
+    /** 他のインスタンスのリースが最後に変わった時刻(System.nanoTime) */
+    private long observedNanos;
+    /** リースを更新できずに稼働系の処理を止めている場合はtrue */
+    private boolean fenced;
+    /** 稼働系になった回数 */
+    private volatile long promotions;
+    /** 待機系に戻った回数 */
+    private volatile long demotions;
+
+    /**
+     * 初期化処理 (最初の選出を済ませてから、定期的な更新を開始)
+     *
+     * @throws IOException リースの保存先を開けない場合
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (!Boolean.TRUE.equals(haConfig.getEnabled())) {
+            return;
+        }
+        if (haConfig.getRenewInterval() * 2 >= haConfig.getLeaseTtl()) {
+            throw new IllegalArgumentException("ha.renew-intervalはha.lease-ttlの半分未満にしてください");
+        }
+
+        nodeId = haConfig.getNodeId() != null ? haConfig.getNodeId()
+                : hostName() + ":" + ProcessHandle.current().pid();
+        switch (haConfig.getBackend()) {
+            case FILE:
+            default:
+                leaseStore = new FileLeaseStore(Path.of(haConfig.getFile()));
+                break;
+        }
+        log.info("冗長構成: ID={}, リース={}, 有効期間={}ms, 更新間隔={}ms", nodeId, leaseStore, haConfig.getLeaseTtl(),
+                haConfig.getRenewInterval());
+
+        renew();
+        if (ownLease == null) {
+            log.info("待機系として起動しました。稼働系={}", lastLease == null ? null : lastLease.getHolder());
+        }
+        renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "ha-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renewer.scheduleWithFixedDelay(this::renew, haConfig.getRenewInterval(), haConfig.getRenewInterval(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * リースを更新 (稼働系)、またはリースを監視して引き継ぐ (待機系)
+     */
+    synchronized void renew() {
+        // 読み込む前の時刻を更新時刻にする (稼働系の期限を短めに見積もる)
+        var now = System.nanoTime();
+        var own = ownLease;
+        try {
+            var current = leaseStore.read();
+            lastLease = current;
+
+            if (own != null) {
+                var next = new Lease(nodeId, own.getEpoch(), own.getRenewals() + 1, snapshotStates());
+                if (own.equals(current) && leaseStore.compareAndSet(current, next)) {
+                    renewedNanos = now;
+                    ownLease = next;
+                    lastLease = next;
+                    if (fenced) {
+                        log.info("リースを更新できました。稼働系の処理を再開します。");
+                        fenced = false;
+                    }
+                    return;
+                }
+                ownLease = null;
+                observedNanos = now;
+                demotions++;
+                log.warn("他のインスタンスがリースを引き継いだため、待機系になりました。稼働系={} (epoch={})",
+                        current == null ? null : current.getHolder(), current == null ? null : current.getEpoch());
+                return;
+            }
+
+            // 待機系は、リースが解放されたか、有効期間の間変わらなかった場合に引き継ぐ
+            if (current != null && !current.isReleased()) {
+                if (!current.equals(observed)) {
+                    observed = current;
+                    observedNanos = now;
+                    return;
+                }
+                if (now - observedNanos < TimeUnit.MILLISECONDS.toNanos(haConfig.getLeaseTtl())) {
+                    return;
+                }
+            }
+            // 前の稼働系が公開した状態は、引き継いだ後の最初の更新まで残す
+            var next = new Lease(nodeId, current == null ? 1L : current.getEpoch() + 1, 0L,
+                    current == null ? Map.of() : current.getState());
+            if (leaseStore.compareAndSet(current, next)) {
+                renewedNanos = now;
+                ownLease = next;
+                lastLease = next;
+                observed = null;
+                fenced = false;
+                promotions++;
+                log.info("稼働系になりました。(epoch={}, 前の稼働系={})", next.getEpoch(),
+                        current == null || current.isReleased() ? null : current.getHolder());
+            }
+        } catch (Exception e) {
+            if (own != null && !fenced && !isLeader()) {
+                log.error("リースを更新できないため、稼働系の処理を止めます。", e);
+                fenced = true;
+            } else if (!fenced) {
+                log.warn("リースを読み書きできませんでした。", e);
+            }
+        }
+    }
+
+    /**
+     * 稼働系かどうか
+     *
+     * @return 稼働系の場合はtrue (冗長構成にしない場合は常にtrue)
+     */
+    public boolean isLeader() {
+        if (leaseStore == null) {
+            return true;
+        }
+        var own = ownLease;
+        return own != null && System.nanoTime() - renewedNanos < TimeUnit.MILLISECONDS
+                .toNanos(haConfig.getLeaseTtl() - haConfig.getRenewInterval());
+    }
+
+    /**
+     * 稼働系の期間を表す番号
+     *
+     * @return 稼働系の場合はリースのepoch、待機系の場合は-1 (冗長構成にしない場合は常に0)
+     */
+    public long term() {
+        if (leaseStore == null) {
+            return 0L;
+        }
+        var own = ownLease;
+        return own != null && isLeader() ? own.getEpoch() : -1L;
+    }
+
+    /**
+     * 冗長構成かどうか
+     *
+     * @return 冗長構成の場合はtrue
+     */
+    public boolean isEnabled() {
+        return leaseStore != null;
+    }
+
+    /**
+     * 稼働系として公開する状態を登録 (リースの更新毎に取得して書き込む)
+     *
+     * @param key      キー
+     * @param supplier 値の取得 (値がnullの場合は公開しない)
+     */
+    public void publish(String key, Supplier<String> supplier) {
+        states.put(key, supplier);
+    }
+
+    /**
+     * 公開する状態の登録を解除
+     *
+     * @param key キー
+     */
+    public void unpublish(String key) {
+        states.remove(key);
+    }
+
+    /**
+     * 最後に読み込んだリースで稼働系が公開していた状態
+     *
+     * @param key キー
+     * @return 値 (無い場合はnull)
+     */
+    public String published(String key) {
+        var lease = lastLease;
+        return lease == null || lease.getState() == null ? null : lease.getState().get(key);
+    }
+
+    private Map<String, String> snapshotStates() {
+        var snapshot = new TreeMap<String, String>();
+        states.forEach((key, supplier) -> {
+            var value = supplier.get();
+            if (value != null) {
+                snapshot.put(key, value);
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * インスタンスのID取得
+     *
+     * @return インスタンスのID (冗長構成にしない場合はnull)
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 稼働系になった回数取得
+     *
+     * @return 稼働系になった回数
+     */
+    public long getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * 待機系に戻った回数取得
+     *
+     * @return 待機系に戻った回数
+     */
+    public long getDemotions() {
+        return demotions;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * 終了処理 (稼働系の場合はリースを解放して、待機系がすぐに引き継げるようにする)
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (leaseStore == null) {
+            return;
+        }
+        renewer.shutdownNow();
+        synchronized (this) {
+            var own = ownLease;
+            ownLease = null;
+            if (own != null) {
+                try {
+                    if (leaseStore.compareAndSet(own,
+                            new Lease("", own.getEpoch(), own.getRenewals() + 1, own.getState()))) {
+                        log.info("リースを解放しました。");
+                    }
+                } catch (IOException e) {
+                    log.warn("リースを解放できませんでした。", e);
+                }
+            }
+            leaseStore.close();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.heterodain.gtimonitor.ha;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 稼働系のリース
+ *
+ * <p>
+ * 稼働系は更新の度にrenewalsを増やす。待機系は、リースが有効期間の間変わらなかった場合に
+ * epochを増やして引き継ぐ(時刻を比べないため、インスタンス間の時計のずれの影響を受けない)。
+ * </p>
+ */
+@Data
+@AllArgsConstructor
+public class Lease {
+    /** 稼働系のインスタンスのID (解放された場合は空) */
+    private String holder;
+    /** 稼働系が替わる度に増える番号 */
+    private long epoch;
+    /** 更新回数 */
+    private long renewals;
+    /** 稼働系が公開する状態 (待機系が引き継ぎに使用) */
+    private Map<String, String> state;
+
+    /**
+     * 解放されたかどうか
+     *
+     * @return 稼働系がいない場合はtrue
+     */
+    public boolean isReleased() {
+        return holder == null || holder.isEmpty();
+    }
+}
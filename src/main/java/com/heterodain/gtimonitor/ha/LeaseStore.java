@@ -0,0 +1,32 @@
+package com.heterodain.gtimonitor.ha;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * リースの保存先
+ *
+ * <p>
+ * 全てのインスタンスから参照でき、比較して置き換える操作が排他になる保存先。
+ * 共有ファイル以外(データベース・分散KVSなど)を使う場合は、これを実装してHaConfig.Backendに追加する。
+ * </p>
+ */
+public interface LeaseStore extends Closeable {
+    /**
+     * リースを読み込む
+     *
+     * @return リース (まだ無い場合はnull)
+     * @throws IOException 読み込めない場合
+     */
+    Lease read() throws IOException;
+
+    /**
+     * リースが想定どおりの場合のみ置き換える
+     *
+     * @param expected 想定するリース (まだ無い場合はnull)
+     * @param next     新しいリース
+     * @return 置き換えた場合はtrue (他のインスタンスが先に置き換えた場合はfalse)
+     * @throws IOException 読み書きできない場合
+     */
+    boolean compareAndSet(Lease expected, Lease next) throws IOException;
+}
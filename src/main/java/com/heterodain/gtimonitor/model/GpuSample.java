@@ -0,0 +1,40 @@
+package com.heterodain.gtimonitor.model;
+
+import lombok.Data;
+
+/**
+ * GPU毎の計測データ
+ */
+@Data
+public class GpuSample {
+    /** GPUのキー(バスID、ファーム単位の場合は"ワーカーID/バスID") */
+    private String key;
+    /** ワーカーID */
+    private Integer workerId;
+    /** バスID */
+    private String busId;
+    /** 名称 */
+    private String name;
+    /** 計測時のOCプロファイル名 */
+    private String profileName;
+    /** 温度(℃) */
+    private Double temp;
+    /** ファン出力(%) */
+    private Double fan;
+    /** 消費電力(W) */
+    private Double power;
+    /** ハッシュレート(MH/s) */
+    private Double hash;
+
+    /**
+     * 電力効率(MH/J)
+     * 
+     * @return 電力効率(消費電力が不明な場合はnull)
+     */
+    public Double getEfficiency() {
+        if (hash == null || power == null || power <= 0) {
+            return null;
+        }
+        return hash / power;
+    }
+}
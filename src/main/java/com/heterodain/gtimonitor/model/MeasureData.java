@@ -1,16 +1,37 @@
 package com.heterodain.gtimonitor.model;
 
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import com.heterodain.gtimonitor.service.OpenWeatherService.CurrentWeather;
+import com.heterodain.gtimonitor.util.QuantileSketch;
+
 import lombok.Data;
+import lombok.ToString;
 
 /**
  * 計測データ
  */
 @Data
 public class MeasureData {
+    /** 集計した時刻 */
+    private ZonedDateTime time;
     /** 照度(Lux) */
     private Double light;
     /** 電力(Wh) */
     private Double power;
+    /** 照度から推定した電力(Wh) */
+    private Double fusedPower;
+    /** 汎用のModbusデバイスの計測値(計測値名→平均値) */
+    private Map<String, Double> metrics;
     /** ハッシュレート(MH/s) */
     private Double hash;
+    /** 天候 (コメントは前回と異なる場合のみ) */
+    private CurrentWeather weather;
+    /** GPU毎の計測データ */
+    private List<GpuSample> gpus;
+    /** 計測値毎の分位点のスケッチ (light、power、fused) */
+    @ToString.Exclude
+    private Map<String, QuantileSketch> sketches;
 }
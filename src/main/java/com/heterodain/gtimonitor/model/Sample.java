@@ -0,0 +1,54 @@
+package com.heterodain.gtimonitor.model;
+
+import lombok.Data;
+
+/**
+ * 計測値のサンプル (パイプラインを流れる要素)
+ *
+ * <p>
+ * 3分値の区切りもサンプルとして同じ順序で流し、区切りまでのサンプルを集計させる。
+ * </p>
+ */
+@Data
+public class Sample {
+    /** 計測値名 (light、power、fused、"デバイス名.レジスタ名"、区切りの場合はnull) */
+    private final String metric;
+    /** 計測時刻(ミリ秒) */
+    private final long millis;
+    /** 計測値 */
+    private final double value;
+    /** 区切りで集計する3分値 (ハッシュレート・天候などを設定済み、計測値のサンプルの場合はnull) */
+    private final MeasureData close;
+
+    /**
+     * 計測値のサンプル
+     *
+     * @param metric 計測値名
+     * @param millis 計測時刻(ミリ秒)
+     * @param value  計測値
+     * @return サンプル
+     */
+    public static Sample of(String metric, long millis, double value) {
+        return new Sample(metric, millis, value, null);
+    }
+
+    /**
+     * 3分値の区切り
+     *
+     * @param millis 区切りの時刻(ミリ秒)
+     * @param data   集計する3分値 (サンプル以外の計測データを設定済み)
+     * @return 区切り
+     */
+    public static Sample close(long millis, MeasureData data) {
+        return new Sample(null, millis, Double.NaN, data);
+    }
+
+    /**
+     * 3分値の区切りかどうか
+     *
+     * @return 区切りの場合はtrue
+     */
+    public boolean isClose() {
+        return close != null;
+    }
+}
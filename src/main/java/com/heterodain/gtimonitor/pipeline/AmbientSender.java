@@ -0,0 +1,146 @@
+package com.heterodain.gtimonitor.pipeline;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.control.ControlDispatcher;
+import com.heterodain.gtimonitor.control.FusionEstimator;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.service.AmbientSchema;
+import com.heterodain.gtimonitor.service.AmbientService;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+import com.heterodain.gtimonitor.util.QuantileSketch;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 3分値・分位点のAmbientへの送信 (ambient段)
+ *
+ * <p>
+ * 3分値に現在のOCプロファイル・出力制限・推定の信頼度を加えて現在値のチャネルに送信し、分位点の送信間隔毎に
+ * 併合したスケッチの分位点を分位点のチャネルに送信する。待機系は併合だけ続けて送信しない。
+ * </p>
+ */
+@Slf4j
+public class AmbientSender implements Operator<MeasureData, Void> {
+    private final ServiceConfig serviceConfig;
+    private final AmbientService ambientService;
+    private final LeaderElection leaderElection;
+    /** 照度とGTIのセンサーフュージョン (推定の信頼度) */
+    private final FusionEstimator fusionEstimator;
+    /** 制御モード毎の制御 (現在のOCプロファイル・出力制限) */
+    private final ControlDispatcher controlDispatcher;
+
+    /** 分位点チャネルの送信間隔のスケッチ */
+    private Map<String, QuantileSketch> percentileSketches = new LinkedHashMap<>();
+    /** 前回の天候 (ログ出力用) */
+    private String lastWeather;
+
+    /**
+     * コンストラクタ
+     *
+     * @param serviceConfig     外部サービスの設定
+     * @param ambientService    Ambient API
+     * @param leaderElection    冗長構成の稼働系の選出
+     * @param fusionEstimator   照度とGTIのセンサーフュージョン
+     * @param controlDispatcher 制御モード毎の制御
+     */
+    public AmbientSender(ServiceConfig serviceConfig, AmbientService ambientService, LeaderElection leaderElection,
+            FusionEstimator fusionEstimator, ControlDispatcher controlDispatcher) {
+        this.serviceConfig = serviceConfig;
+        this.ambientService = ambientService;
+        this.leaderElection = leaderElection;
+        this.fusionEstimator = fusionEstimator;
+        this.controlDispatcher = controlDispatcher;
+    }
+
+    @Override
+    public void process(MeasureData measureData, Consumer<Void> emit) {
+        var now = measureData.getTime();
+        var weather = measureData.getWeather();
+        MeasureUtils.mergeSketches(percentileSketches, measureData.getSketches());
+        // 前回の天候と同じ場合は、天候のコメントが無い
+        if (weather.getWeather() != null) {
+            lastWeather = weather.getWeather();
+        }
+
+        // 現在のOCプロファイルをAmbientの状態色に変換(HIGH=赤[9],LOW=緑[12])
+        var profileName = controlDispatcher.getOcProfileName();
+        var ocState = profileName == null ? null : controlDispatcher.isHighProfile(profileName) ? 9D : 12D;
+
+        // Ambient送信
+        var schema = AmbientSchema.current(serviceConfig.getAmbient());
+        if (schema == null) {
+            return;
+        }
+
+        try {
+            var values = new HashMap<String, Double>();
+            values.put("light", measureData.getLight());
+            values.put("power", measureData.getPower());
+            values.put("temperature", weather.getTemperature());
+            values.put("cloudness", toDouble(weather.getCloudness()));
+            values.put("humidity", toDouble(weather.getHumidity()));
+            values.put("oc", ocState);
+            values.put("hash", measureData.getHash());
+            values.put("fused", measureData.getFusedPower());
+            values.put("confidence", fusionEstimator.getConfidence());
+            values.put("limit", controlDispatcher.getCurrentLimit());
+            if (measureData.getMetrics() != null) {
+                values.putAll(measureData.getMetrics());
+            }
+            MeasureUtils.putPercentiles(values, schema.getMetrics(), measureData.getSketches());
+            if (measureData.getGpus() != null) {
+                for (var gpu : measureData.getGpus()) {
+                    values.put("gpu:" + gpu.getKey() + ":temp", gpu.getTemp());
+                    values.put("gpu:" + gpu.getKey() + ":fan", gpu.getFan());
+                    values.put("gpu:" + gpu.getKey() + ":power", gpu.getPower());
+                    values.put("gpu:" + gpu.getKey() + ":hash", gpu.getHash());
+                }
+            }
+            if (leaderElection.isLeader()) {
+                log.debug("Ambientに3分値を送信します。weather={}, {}", lastWeather, schema.ordered(values));
+                ambientService.send(schema, now, weather.getWeather(), values);
+            }
+        } catch (Exception e) {
+            log.error("Ambientへのデータ送信に失敗しました。", e);
+        }
+
+        sendPercentiles(now);
+    }
+
+    /**
+     * 分位点の送信間隔毎に、併合したスケッチの分位点をAmbientに送信
+     *
+     * @param now 送信時刻
+     */
+    private void sendPercentiles(ZonedDateTime now) {
+        var ambientConfig = serviceConfig.getAmbient();
+        if ((now.getHour() * 60 + now.getMinute()) % ambientConfig.getPercentileInterval() != 0) {
+            return;
+        }
+        var values = new HashMap<String, Double>();
+        MeasureUtils.putPercentiles(values, ambientConfig.getPercentileMetrics(), percentileSketches);
+        percentileSketches = new LinkedHashMap<>();
+        var schema = AmbientSchema.percentile(ambientConfig);
+        if (schema == null || !leaderElection.isLeader()) {
+            return;
+        }
+
+        try {
+            log.debug("Ambientに分位点を送信します。{}", schema.ordered(values));
+            ambientService.send(schema, now, null, values);
+        } catch (Exception e) {
+            log.error("Ambientへの分位点の送信に失敗しました。", e);
+        }
+    }
+
+    private static Double toDouble(Number value) {
+        return value == null ? null : value.doubleValue();
+    }
+}
@@ -0,0 +1,80 @@
+package com.heterodain.gtimonitor.pipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+import com.heterodain.gtimonitor.util.QuantileSketch;
+
+/**
+ * 3分値の集計
+ *
+ * <p>
+ * 区切りまでのサンプルを計測値名毎に保持し、区切りを受け取ったら平均値と分位点のスケッチを3分値に設定して送る。
+ * 区切りまでにサンプルが無い場合は送らない。
+ * </p>
+ */
+public class MeasureWindow implements Operator<Sample, MeasureData> {
+    /** 区切りまでのサンプル(計測値名→計測値) */
+    private final Map<String, List<Double>> datas = new LinkedHashMap<>();
+    /** 区切りまでの分位点のスケッチ(計測値名→スケッチ) */
+    private final Map<String, QuantileSketch> sketches = new LinkedHashMap<>();
+    /** 区切りまでのサンプル数 */
+    private volatile int samples;
+
+    @Override
+    public void process(Sample sample, Consumer<MeasureData> emit) {
+        if (!sample.isClose()) {
+            datas.computeIfAbsent(sample.getMetric(), m -> new ArrayList<>()).add(sample.getValue());
+            sketches.computeIfAbsent(sample.getMetric(), m -> new QuantileSketch()).add(sample.getValue());
+            samples++;
+            return;
+        }
+        if (samples == 0) {
+            return;
+        }
+
+        var measureData = sample.getClose();
+        var metrics = new LinkedHashMap<String, Double>();
+        datas.forEach((metric, values) -> {
+            var average = MeasureUtils.average(values);
+            switch (metric) {
+                case "light":
+                    measureData.setLight(average);
+                    break;
+                case "power":
+                    measureData.setPower(average);
+                    break;
+                case "fused":
+                    measureData.setFusedPower(average);
+                    break;
+                default:
+                    metrics.put(metric, average);
+                    break;
+            }
+        });
+        if (!metrics.isEmpty()) {
+            measureData.setMetrics(metrics);
+        }
+        measureData.setSketches(new LinkedHashMap<>(sketches));
+
+        datas.clear();
+        sketches.clear();
+        samples = 0;
+        emit.accept(measureData);
+    }
+
+    /**
+     * 区切りまでのサンプルが無いかどうか
+     *
+     * @return サンプルが無い場合はtrue
+     */
+    public boolean isEmpty() {
+        return samples == 0;
+    }
+}
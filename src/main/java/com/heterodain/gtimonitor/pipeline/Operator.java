@@ -0,0 +1,21 @@
+package com.heterodain.gtimonitor.pipeline;
+
+import java.util.function.Consumer;
+
+/**
+ * パイプラインの段の処理
+ *
+ * @param <I> 入力の要素
+ * @param <O> 出力の要素 (出力先の場合はVoid)
+ */
+@FunctionalInterface
+public interface Operator<I, O> {
+    /**
+     * 要素を1つ処理 (段のスレッドで順に呼び出す)
+     *
+     * @param item 入力の要素
+     * @param emit 出力 (0個以上、下流が受け取れるまで待つ)
+     * @throws Exception 処理に失敗した場合 (ログ出力して次の要素を処理)
+     */
+    void process(I item, Consumer<O> emit) throws Exception;
+}
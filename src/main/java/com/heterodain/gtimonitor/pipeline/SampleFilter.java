@@ -0,0 +1,110 @@
+package com.heterodain.gtimonitor.pipeline;
+
+import java.util.function.Consumer;
+
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.control.AdaptiveSampler;
+import com.heterodain.gtimonitor.control.FusionEstimator;
+import com.heterodain.gtimonitor.control.OutlierFilter;
+import com.heterodain.gtimonitor.control.AdaptiveSampler.Channel;
+import com.heterodain.gtimonitor.model.Sample;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * サンプルの外れ値除外と、照度・GTIの計測値からの発電電力の推定 (filter段)
+ *
+ * <p>
+ * 照度・GTIの発電電力は外れ値を除外してから送り、サンプリング間隔の調整とセンサーフュージョンに反映して
+ * 推定した発電電力(fused)を続けて送る。それ以外のサンプルと3分値の区切りはそのまま送る。
+ * </p>
+ */
+@Slf4j
+public class SampleFilter implements Operator<Sample, Sample> {
+    /** 照度とGTIのセンサーフュージョン */
+    private final FusionEstimator fusionEstimator;
+    /** 日の出・日の入りと発電電力の変化に合わせたサンプリング間隔 (可変でない場合はnull) */
+    private final AdaptiveSampler adaptiveSampler;
+    /** 照度の外れ値除外 (除外しない場合はnull) */
+    private OutlierFilter lightFilter;
+    /** GTIの発電電力の外れ値除外 (除外しない場合はnull) */
+    private OutlierFilter gtiFilter;
+
+    /**
+     * コンストラクタ
+     *
+     * @param filterConfig    外れ値除外の設定
+     * @param fusionEstimator 照度とGTIのセンサーフュージョン
+     * @param adaptiveSampler サンプリング間隔の調整 (可変でない場合はnull)
+     */
+    public SampleFilter(ControlConfig.Filter filterConfig, FusionEstimator fusionEstimator,
+            AdaptiveSampler adaptiveSampler) {
+        this.fusionEstimator = fusionEstimator;
+        this.adaptiveSampler = adaptiveSampler;
+        if (Boolean.TRUE.equals(filterConfig.getLightSensor().getEnabled())) {
+            lightFilter = new OutlierFilter(filterConfig.getLightSensor());
+        }
+        if (Boolean.TRUE.equals(filterConfig.getGti().getEnabled())) {
+            gtiFilter = new OutlierFilter(filterConfig.getGti());
+        }
+    }
+
+    @Override
+    public void process(Sample sample, Consumer<Sample> emit) {
+        if (sample.isClose()) {
+            emit.accept(sample);
+            return;
+        }
+
+        var millis = sample.getMillis();
+        var value = sample.getValue();
+        switch (sample.getMetric()) {
+            case "light":
+                if (lightFilter != null && !lightFilter.accept(value)) {
+                    log.debug("照度の外れ値を除外しました。{} lx (中央値={} lx)", value, lightFilter.median());
+                    return;
+                }
+                emit.accept(sample);
+                if (adaptiveSampler != null) {
+                    adaptiveSampler.onSample(Channel.LIGHT_SENSOR, millis, value);
+                }
+                var fused = fusionEstimator.onLux(millis, value);
+                if (fused != null) {
+                    emit.accept(Sample.of("fused", millis, fused));
+                }
+                break;
+            case "power":
+                if (gtiFilter != null && !gtiFilter.accept(value)) {
+                    log.debug("発電電力の外れ値を除外しました。{} W (中央値={} W)", value, gtiFilter.median());
+                    return;
+                }
+                emit.accept(sample);
+                if (adaptiveSampler != null) {
+                    adaptiveSampler.onSample(Channel.GTI, millis, value);
+                }
+                emit.accept(Sample.of("fused", millis, fusionEstimator.onPower(millis, value)));
+                break;
+            default:
+                emit.accept(sample);
+                break;
+        }
+    }
+
+    /**
+     * 照度の外れ値除外取得
+     *
+     * @return 照度の外れ値除外 (除外しない場合はnull)
+     */
+    public OutlierFilter getLightFilter() {
+        return lightFilter;
+    }
+
+    /**
+     * GTIの発電電力の外れ値除外取得
+     *
+     * @return GTIの発電電力の外れ値除外 (除外しない場合はnull)
+     */
+    public OutlierFilter getGtiFilter() {
+        return gtiFilter;
+    }
+}
@@ -0,0 +1,512 @@
+package com.heterodain.gtimonitor.pipeline;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import com.heterodain.gtimonitor.util.LogContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * パイプラインの段
+ *
+ * <p>
+ * 受け取った要素を上限付きのバッファに入れ、段専用のスレッド(同期モードでは呼び出し元のスレッド)で順に処理して、
+ * 全ての下流に送る。下流への送信は下流の要求(Flow.Subscription#request)を待つ。
+ * バッファが一杯の場合の扱いは段毎に指定する。
+ * </p>
+ * <ul>
+ * <li>BACKPRESSURE: バッファの空き分だけ上流に要求し、上流は空くまで送らない。
+ * 上流の無い段に{@link #offer(Object)}した場合は、空くまで待つ。</li>
+ * <li>DROP_OLDEST: 上流には無制限に要求し、一杯の場合は最も古い要素を捨てる。
+ * 遅い出力先・制御が、上流のサンプリングを止めないようにする。
+ * 捨てない要素(3分値の区切りなど)を指定した場合は、それ以外で最も古い要素を捨てる。</li>
+ * </ul>
+ * <p>
+ * 段毎に受け取り・処理・破棄の件数、バッファの最大使用数、処理時間・下流の待ち時間を計測する。
+ * </p>
+ *
+ * @param <I> 入力の要素
+ * @param <O> 出力の要素 (出力先の場合はVoid)
+ */
+@Slf4j
+public class Stage<I, O> implements Flow.Processor<I, O>, Closeable {
+    /**
+     * バッファが一杯の場合の扱い
+     */
+    public enum Overflow {
+        /** 上流を待たせる */
+        BACKPRESSURE,
+        /** 最も古い要素を捨てる */
+        DROP_OLDEST
+    }
+
+    /** 段の名前 */
+    private final String name;
+    /** バッファの上限 */
+    private final int capacity;
+    /** バッファが一杯の場合の扱い */
+    private final Overflow overflow;
+    /** 捨てない要素 (DROP_OLDEST) */
+    private final Predicate<? super I> retained;
+    /** 処理 */
+    private final Operator<I, O> operator;
+    /** 段専用のスレッド (同期モードの場合はnull) */
+    private final ExecutorService executor;
+    /** バッファ */
+    private final ArrayDeque<I> buffer = new ArrayDeque<>();
+    /** 下流 */
+    private final List<Downstream> downstreams = new CopyOnWriteArrayList<>();
+    /** 上流 (上流の無い段の場合はnull) */
+    private volatile Flow.Subscription upstream;
+    /** バッファを処理中かどうか (bufferで排他) */
+    private boolean draining;
+    /** 上流が完了したかどうか (bufferで排他) */
+    private boolean completed;
+    /** 閉じたかどうか */
+    private volatile boolean closed;
+
+    /** 受け取った要素数 */
+    private final AtomicLong received = new AtomicLong();
+    /** 捨てた要素数 */
+    private final AtomicLong dropped = new AtomicLong();
+    /** 処理した要素数 */
+    private final AtomicLong processed = new AtomicLong();
+    /** 下流に送った要素数 */
+    private final AtomicLong emitted = new AtomicLong();
+    /** 処理に失敗した要素数 */
+    private final AtomicLong errors = new AtomicLong();
+    /** 処理時間の合計(ナノ秒、下流の待ち時間を含む) */
+    private final AtomicLong busyNanos = new AtomicLong();
+    /** 下流の要求の待ち時間の合計(ナノ秒) */
+    private final AtomicLong waitNanos = new AtomicLong();
+    /** バッファの最大使用数 (bufferで排他) */
+    private int maxQueued;
+
+    /**
+     * コンストラクタ
+     *
+     * @param name     段の名前
+     * @param capacity バッファの上限
+     * @param overflow バッファが一杯の場合の扱い
+     * @param async    専用のスレッドで処理する場合はtrue (falseの場合は呼び出し元のスレッドで処理)
+     * @param operator 処理
+     */
+    public Stage(String name, int capacity, Overflow overflow, boolean async, Operator<I, O> operator) {
+        this(name, capacity, overflow, item -> false, async, operator);
+    }
+
+    /**
+     * コンストラクタ
+     *
+     * @param name     段の名前
+     * @param capacity バッファの上限
+     * @param overflow バッファが一杯の場合の扱い
+     * @param retained 捨てない要素 (DROP_OLDEST、全て捨てない要素で一杯の場合は上限を超えて入れる)
+     * @param async    専用のスレッドで処理する場合はtrue (falseの場合は呼び出し元のスレッドで処理)
+     * @param operator 処理
+     */
+    public Stage(String name, int capacity, Overflow overflow, Predicate<? super I> retained, boolean async,
+            Operator<I, O> operator) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("バッファの上限は1以上を指定してください: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.retained = retained;
+        this.operator = operator;
+        var logContext = LogContext.current();
+        this.executor = async ? Executors.newSingleThreadExecutor(r -> {
+            var thread = new Thread(logContext.wrap(r), "pipeline-" + name);
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * 下流の段に接続
+     *
+     * @param <T>  下流の段の出力の要素
+     * @param next 下流の段
+     * @return 下流の段
+     */
+    public <T> Stage<O, T> to(Stage<O, T> next) {
+        subscribe(next);
+        return next;
+    }
+
+    /**
+     * 上流の無い段に要素を入れる (BACKPRESSUREの場合は空くまで待つ)
+     *
+     * @param item 要素
+     * @return 受け取った場合はtrue (閉じている・待っている間に割り込まれた場合はfalse)
+     */
+    public boolean offer(I item) {
+        return enqueue(item, true);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(overflow == Overflow.BACKPRESSURE ? capacity : Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(I item) {
+        enqueue(item, false);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.error("パイプラインの段[{}]の上流でエラーが発生しました。", name, throwable);
+        for (var downstream : downstreams) {
+            downstream.subscriber.onError(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (buffer) {
+            completed = true;
+            if (draining) {
+                return;
+            }
+        }
+        complete();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super O> subscriber) {
+        var downstream = new Downstream(subscriber);
+        downstreams.add(downstream);
+        subscriber.onSubscribe(downstream);
+    }
+
+    /**
+     * バッファに入れて、処理中でなければ処理を開始
+     */
+    private boolean enqueue(I item, boolean blocking) {
+        synchronized (buffer) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (buffer.size() >= capacity) {
+                if (overflow == Overflow.DROP_OLDEST) {
+                    if (!evictOldest() && !retained.test(item)) {
+                        // 捨てない要素で一杯のため、受け取った要素を捨てる
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                } else if (blocking) {
+                    try {
+                        while (buffer.size() >= capacity && !closed) {
+                            buffer.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                    if (closed) {
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                } else {
+                    // 要求を超えて送られた要素
+                    dropped.incrementAndGet();
+                    return false;
+                }
+            }
+            buffer.addLast(item);
+            received.incrementAndGet();
+            maxQueued = Math.max(maxQueued, buffer.size());
+            if (draining) {
+                return true;
+            }
+            draining = true;
+        }
+
+        if (executor == null) {
+            drain();
+        } else {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * 捨てない要素以外で最も古い要素を捨てる (bufferで排他)
+     *
+     * @return 捨てた場合はtrue (全て捨てない要素の場合はfalse)
+     */
+    private boolean evictOldest() {
+        for (var it = buffer.iterator(); it.hasNext();) {
+            if (!retained.test(it.next())) {
+                it.remove();
+                dropped.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * バッファが空になるまで処理
+     */
+    private void drain() {
+        while (true) {
+            I item;
+            boolean complete = false;
+            synchronized (buffer) {
+                item = buffer.pollFirst();
+                if (item == null) {
+                    draining = false;
+                    complete = completed;
+                } else {
+                    buffer.notifyAll();
+                }
+            }
+            if (item == null) {
+                if (complete) {
+                    complete();
+                }
+                return;
+            }
+
+            var start = System.nanoTime();
+            try {
+                operator.process(item, this::emit);
+                processed.incrementAndGet();
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                log.error("パイプラインの段[{}]の処理に失敗しました。", name, e);
+            }
+            busyNanos.addAndGet(System.nanoTime() - start);
+
+            var subscription = upstream;
+            if (overflow == Overflow.BACKPRESSURE && subscription != null) {
+                subscription.request(1);
+            }
+        }
+    }
+
+    /**
+     * 全ての下流に送る (下流の要求を待つ)
+     */
+    private void emit(O item) {
+        for (var downstream : downstreams) {
+            var start = System.nanoTime();
+            try {
+                downstream.deliver(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                waitNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+        emitted.incrementAndGet();
+    }
+
+    private void complete() {
+        for (var downstream : downstreams) {
+            downstream.subscriber.onComplete();
+        }
+    }
+
+    /**
+     * 段の名前
+     *
+     * @return 段の名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 受け取った要素数
+     *
+     * @return 要素数
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * 捨てた要素数 (バッファが一杯・閉じた後)
+     *
+     * @return 要素数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 処理した要素数
+     *
+     * @return 要素数
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * 下流に送った要素数
+     *
+     * @return 要素数
+     */
+    public long getEmitted() {
+        return emitted.get();
+    }
+
+    /**
+     * 処理に失敗した要素数
+     *
+     * @return 要素数
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * バッファの使用数
+     *
+     * @return 要素数
+     */
+    public int getQueued() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    /**
+     * バッファの最大使用数
+     *
+     * @return 要素数
+     */
+    public int getMaxQueued() {
+        synchronized (buffer) {
+            return maxQueued;
+        }
+    }
+
+    /**
+     * バッファの上限
+     *
+     * @return 要素数
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 処理時間の合計 (下流の待ち時間を含む)
+     *
+     * @return 処理時間(ミリ秒)
+     */
+    public long getBusyMillis() {
+        return busyNanos.get() / 1_000_000L;
+    }
+
+    /**
+     * 下流の要求の待ち時間の合計
+     *
+     * @return 待ち時間(ミリ秒)
+     */
+    public long getWaitMillis() {
+        return waitNanos.get() / 1_000_000L;
+    }
+
+    /**
+     * 段を閉じる (バッファに残った要素は捨てる)
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (buffer) {
+            dropped.addAndGet(buffer.size());
+            buffer.clear();
+            buffer.notifyAll();
+        }
+        var subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        for (var downstream : downstreams) {
+            downstream.cancel();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 下流の購読
+     */
+    private class Downstream implements Flow.Subscription {
+        /** 下流 */
+        private final Flow.Subscriber<? super O> subscriber;
+        /** 未送信の要求数 */
+        private long demand;
+        /** 取り消したかどうか */
+        private boolean cancelled;
+
+        Downstream(Flow.Subscriber<? super O> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * 要求を待って送る (取り消した・段を閉じた場合は送らない)
+         */
+        void deliver(O item) throws InterruptedException {
+            synchronized (this) {
+                while (demand == 0 && !cancelled && !closed) {
+                    wait();
+                }
+                if (cancelled || closed) {
+                    return;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+            subscriber.onNext(item);
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                subscriber.onError(new IllegalArgumentException("要求数は1以上を指定してください: " + n));
+                return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            downstreams.remove(this);
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.heterodain.gtimonitor.pipeline;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+import com.heterodain.gtimonitor.util.QuantileSketch;
+
+/**
+ * 3分値の保存と、1日の分位点のスケッチへの併合 (store段)
+ *
+ * <p>
+ * 保存した3分値は15分毎の制御で取り出す。1日のスケッチは当日と前日の2日分を保持し、
+ * 0時の送信(前日分)の後、翌日分の最初の3分値で当日のスケッチを前日に移す。
+ * store段のスレッドとスケジューラーのスレッドから呼び出されるため、どちらも排他して扱う。
+ * </p>
+ */
+public class WindowStore implements Operator<MeasureData, Void> {
+    /** 計測データ(3分値) */
+    private final List<MeasureData> threeMinDatas = new ArrayList<>();
+    /** 1日・前日のスケッチの排他 */
+    private final Object daySketchLock = new Object();
+    /** 1日のスケッチ */
+    private Map<String, QuantileSketch> daySketches = new LinkedHashMap<>();
+    /** 1日のスケッチの日付 */
+    private LocalDate daySketchDate;
+    /** 前日のスケッチ */
+    private Map<String, QuantileSketch> lastDaySketches = Map.of();
+    /** 前日のスケッチの日付 */
+    private LocalDate lastDaySketchDate;
+
+    @Override
+    public void process(MeasureData measureData, Consumer<Void> emit) {
+        synchronized (threeMinDatas) {
+            threeMinDatas.add(measureData);
+        }
+
+        // 0時の送信は前日分
+        var windowDate = measureData.getTime().minusSeconds(1).toLocalDate();
+        synchronized (daySketchLock) {
+            if (!windowDate.equals(daySketchDate)) {
+                lastDaySketches = daySketches;
+                lastDaySketchDate = daySketchDate;
+                daySketches = new LinkedHashMap<>();
+                daySketchDate = windowDate;
+            }
+            MeasureUtils.mergeSketches(daySketches, measureData.getSketches());
+        }
+    }
+
+    /**
+     * 保存した3分値があるかどうか
+     *
+     * @return 無い場合はtrue
+     */
+    public boolean isEmpty() {
+        synchronized (threeMinDatas) {
+            return threeMinDatas.isEmpty();
+        }
+    }
+
+    /**
+     * 保存した3分値を取り出す (集計に失敗しても計測データが溜まり続けないよう、取り出した分は消す)
+     *
+     * @return 3分値(保存順)
+     */
+    public List<MeasureData> drain() {
+        synchronized (threeMinDatas) {
+            var datas = new ArrayList<>(threeMinDatas);
+            threeMinDatas.clear();
+            return datas;
+        }
+    }
+
+    /**
+     * 1日の分位点のメトリクスの値を追加
+     *
+     * @param values  メトリクス名→値
+     * @param metrics メトリクス名
+     * @param day     日付 (当日・前日以外の場合は値なし)
+     */
+    public void putDayPercentiles(Map<String, Double> values, List<String> metrics, LocalDate day) {
+        synchronized (daySketchLock) {
+            Map<String, QuantileSketch> sketches;
+            if (day.equals(daySketchDate)) {
+                sketches = daySketches;
+            } else if (day.equals(lastDaySketchDate)) {
+                sketches = lastDaySketches;
+            } else {
+                sketches = Map.of();
+            }
+            MeasureUtils.putPercentiles(values, metrics, sketches);
+        }
+    }
+}
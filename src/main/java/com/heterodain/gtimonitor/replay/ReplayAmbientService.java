@@ -0,0 +1,96 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
+import com.heterodain.gtimonitor.service.AmbientService;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * リプレイモードのAmbientサービス (送信内容をメモリに記録する)
+ */
+@Service
+@Primary
+@Profile("replay")
+public class ReplayAmbientService extends AmbientService {
+    /** 送信記録 */
+    private final List<SentData> sentDatas = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void send(AmbientApi config, ZonedDateTime ts, String comment, Double... datas) {
+        sentDatas.add(new SentData(config.getChannelId(), ts, comment, datas.clone()));
+    }
+
+    @Override
+    public List<ReadData> read(AmbientApi config, LocalDate date) {
+        synchronized (sentDatas) {
+            return sentDatas.stream()
+                    .filter(d -> d.getChannelId().equals(config.getChannelId()))
+                    .filter(d -> d.getTs().toLocalDate().equals(date))
+                    .map(SentData::toReadData)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 送信記録取得
+     * 
+     * @return 送信記録
+     */
+    public List<SentData> getSentDatas() {
+        synchronized (sentDatas) {
+            return new ArrayList<>(sentDatas);
+        }
+    }
+
+    /**
+     * 送信記録
+     */
+    @AllArgsConstructor
+    @Getter
+    public static class SentData {
+        /** チャネルID */
+        private Integer channelId;
+        /** タイムスタンプ */
+        private ZonedDateTime ts;
+        /** コメント */
+        private String comment;
+        /** 送信データ */
+        private Double[] datas;
+
+        /**
+         * 読み込みデータに変換
+         * 
+         * @return 読み込みデータ
+         */
+        public ReadData toReadData() {
+            var data = new ReadData();
+            data.setCreated(ts.toInstant().toString());
+            data.setD1(field(0));
+            data.setD2(field(1));
+            data.setD3(field(2));
+            data.setD4(field(3));
+            data.setD5(field(4));
+            data.setD6(field(5));
+            data.setD7(field(6));
+            data.setD8(field(7));
+            data.setCmnt(comment);
+            return data;
+        }
+
+        private Double field(int index) {
+            return index < datas.length ? datas[index] : null;
+        }
+    }
+}
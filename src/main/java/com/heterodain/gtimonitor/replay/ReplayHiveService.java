@@ -0,0 +1,112 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ServiceConfig.HiveApi;
+import com.heterodain.gtimonitor.service.HiveService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * リプレイモードのHiveサービス (トレースのハッシュレートを返し、OCプロファイル変更を記録する)
+ */
+@Service
+@Primary
+@Profile("replay")
+public class ReplayHiveService extends HiveService {
+    @Autowired
+    private Clock clock;
+
+    /** 現在のハッシュレート */
+    @Setter
+    private volatile Double hash;
+    /** 現在のOCプロファイル */
+    private volatile OcProfile ocProfile;
+    /** ワーカー毎の現在のOCプロファイル (ファーム単位の場合) */
+    private final Map<Integer, OcProfile> workerOcProfiles = new ConcurrentHashMap<>();
+    /** OCプロファイル変更記録 */
+    private final List<Switch> switches = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public OcProfile changeWorkerOcProfile(HiveApi config, String ocProfileName) {
+        ocProfile = new OcProfile(ocProfileName.hashCode(), ocProfileName, null);
+        switches.add(new Switch(ZonedDateTime.now(clock), config.getWorkerId(), ocProfileName));
+        return ocProfile;
+    }
+
+    @Override
+    public Map<Integer, OcProfile> changeWorkerOcProfiles(HiveApi config, Map<Integer, String> changes) {
+        var results = new LinkedHashMap<Integer, OcProfile>();
+        for (var change : changes.entrySet()) {
+            var profile = new OcProfile(change.getValue().hashCode(), change.getValue(), null);
+            workerOcProfiles.put(change.getKey(), profile);
+            switches.add(new Switch(ZonedDateTime.now(clock), change.getKey(), change.getValue()));
+            results.put(change.getKey(), profile);
+        }
+        return results;
+    }
+
+    @Override
+    public List<WorkerInfo> getFarmWorkers(HiveApi config) {
+        // トレースのハッシュレートはファーム合計として、ワーカーに均等に配分
+        var workers = config.getWorkers();
+        var workerHash = hash == null ? null : hash / workers.size();
+        return workers.stream().map(w -> {
+            var profile = workerOcProfiles.get(w.getId());
+            return new WorkerInfo(w.getId(), "replay" + w.getId(), true, profile == null ? null : profile.getId(),
+                    workerHash, "replay", "replay", List.of());
+        }).collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<String, OcProfile> getOcProfiles(HiveApi config) {
+        return workerOcProfiles.values().stream().distinct()
+                .collect(Collectors.toMap(OcProfile::getName, p -> p, (a, b) -> a));
+    }
+
+    @Override
+    public WorkerInfo getWorkerInfo(HiveApi config) {
+        var ocId = ocProfile == null ? null : ocProfile.getId();
+        return new WorkerInfo(config.getWorkerId(), "replay", true, ocId, hash, "replay", "replay", List.of());
+    }
+
+    /**
+     * OCプロファイル変更記録取得
+     * 
+     * @return OCプロファイル変更記録
+     */
+    public List<Switch> getSwitches() {
+        synchronized (switches) {
+            return new ArrayList<>(switches);
+        }
+    }
+
+    /**
+     * OCプロファイル変更記録
+     */
+    @AllArgsConstructor
+    @Getter
+    public static class Switch {
+        /** 変更時刻 */
+        private ZonedDateTime ts;
+        /** ワーカーID */
+        private Integer workerId;
+        /** 変更後のOCプロファイル名 */
+        private String profileName;
+    }
+}
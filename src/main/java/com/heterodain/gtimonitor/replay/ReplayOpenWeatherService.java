@@ -0,0 +1,106 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ServiceConfig.OpenWeatherApi;
+import com.heterodain.gtimonitor.service.OpenWeatherService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+/**
+ * リプレイモードのOpen Weatherサービス (トレースの天気情報を返す)
+ *
+ * <p>
+ * 天気予報は、トレースの以降の天気情報を3時間毎に間引いて返す(予報が完全に当たった場合を再現する)。
+ * </p>
+ */
+@Service
+@Primary
+@Profile("replay")
+public class ReplayOpenWeatherService extends OpenWeatherService {
+    /** 天気予報の間隔 */
+    private static final Duration FORECAST_INTERVAL = Duration.ofHours(3);
+    /** 天気予報の期間 */
+    private static final Duration FORECAST_RANGE = Duration.ofDays(5);
+
+    @Autowired
+    private Clock clock;
+
+    /** 現在の天気 */
+    private final CurrentWeather current = new CurrentWeather();
+    /** トレース全体 (天気予報用) */
+    private List<TraceRecord> records = List.of();
+
+    /**
+     * トレース全体を設定 (天気予報用)
+     * 
+     * @param records トレース
+     */
+    public synchronized void setRecords(List<TraceRecord> records) {
+        this.records = records;
+    }
+
+    /**
+     * トレースの天気情報を反映
+     * 
+     * @param record トレース
+     */
+    public synchronized void update(TraceRecord record) {
+        if (record.getWeather() != null) {
+            current.setWeather(record.getWeather());
+        }
+        if (record.getTemperature() != null) {
+            current.setTemperature(record.getTemperature());
+        }
+        if (record.getCloudness() != null) {
+            current.setCloudness(record.getCloudness());
+        }
+        if (record.getHumidity() != null) {
+            current.setHumidity(record.getHumidity());
+        }
+    }
+
+    @Override
+    public synchronized CurrentWeather getCurrentWeather(OpenWeatherApi config) {
+        // 呼び出し元で天候を書き換えるため、複製を返す
+        var result = new CurrentWeather();
+        result.setWeather(current.getWeather() == null ? "" : current.getWeather());
+        result.setTemperature(current.getTemperature());
+        result.setCloudness(current.getCloudness());
+        result.setHumidity(current.getHumidity());
+        return result;
+    }
+
+    @Override
+    public synchronized Forecast getForecast(OpenWeatherApi config) {
+        var now = clock.instant();
+        var end = now.plus(FORECAST_RANGE);
+        var items = new ArrayList<ForecastItem>();
+        var next = now;
+        for (var record : records) {
+            if (!record.hasWeather() || record.getTimestamp().isBefore(next)) {
+                continue;
+            }
+            if (!record.getTimestamp().isBefore(end)) {
+                break;
+            }
+            var item = new ForecastItem();
+            item.setTime(record.getTimestamp());
+            item.setWeather(record.getWeather());
+            item.setTemperature(record.getTemperature());
+            item.setCloudness(record.getCloudness());
+            items.add(item);
+            next = record.getTimestamp().plus(FORECAST_INTERVAL);
+        }
+
+        var forecast = new Forecast();
+        forecast.setItems(items);
+        return forecast;
+    }
+}
@@ -0,0 +1,246 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.heterodain.gtimonitor.config.ReplayConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientChannel;
+import com.heterodain.gtimonitor.config.ServiceConfig.HiveApi;
+import com.heterodain.gtimonitor.config.ServiceConfig.OpenWeatherApi;
+import com.heterodain.gtimonitor.control.OutlierFilter;
+import com.heterodain.gtimonitor.task.GridTieInverterTasks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * リプレイモード
+ *
+ * <p>
+ * トレースファイルの計測データを仮想時計に沿ってGridTieInverterTasksに流し込み、
+ * 本番と同じスケジュール(cron)で集計・Power Limit制御・Ambient送信を実行する。
+ * 外部サービスはメモリ上のスタブに置き換える。
+ * </p>
+ *
+ * <pre>
+ * java -jar gti-monitor.jar --spring.profiles.active=replay --replay.file=trace.csv
+ * </pre>
+ */
+@Component
+@Profile("replay")
+@Slf4j
+public class ReplayRunner implements ApplicationRunner {
+    @Autowired
+    private ReplayConfig replayConfig;
+    @Autowired
+    private ServiceConfig serviceConfig;
+
+    @Autowired
+    private VirtualClock clock;
+    @Autowired
+    private GridTieInverterTasks tasks;
+    @Autowired
+    private ReplayAmbientService ambientService;
+    @Autowired
+    private ReplayHiveService hiveService;
+    @Autowired
+    private ReplayOpenWeatherService openWeatherService;
+
+    /**
+     * 仮想時計で駆動するスケジュール
+     */
+    private static class ScheduledTask {
+        private final String name;
+        private final CronExpression cron;
+        private final ReplayTask task;
+        private ZonedDateTime next;
+        private int count;
+        private int failures;
+
+        ScheduledTask(String name, String cron, ReplayTask task) {
+            this.name = name;
+            this.cron = CronExpression.parse(cron);
+            this.task = task;
+        }
+    }
+
+    /**
+     * 例外を投げるタスク
+     */
+    @FunctionalInterface
+    private interface ReplayTask {
+        void run() throws Exception;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (replayConfig.getFile() == null) {
+            throw new IllegalArgumentException("replay.fileにトレースファイルを指定してください");
+        }
+
+        var records = TraceReader.read(Path.of(replayConfig.getFile()), clock.getZone());
+        if (records.isEmpty()) {
+            log.warn("トレースファイルにデータがありません: {}", replayConfig.getFile());
+            return;
+        }
+        prepareServiceConfig(records.stream().anyMatch(TraceRecord::hasWeather));
+        openWeatherService.setRecords(records);
+
+        var startNanos = System.nanoTime();
+        var first = records.get(0).getTimestamp();
+        var last = records.get(records.size() - 1).getTimestamp();
+        log.info("リプレイを開始します。{} ～ {} ({}件)", first, last, records.size());
+
+        // @formatter:off
+        var scheduledTasks = List.of(
+            new ScheduledTask("sendAmbient1", GridTieInverterTasks.SEND_AMBIENT1_CRON, tasks::sendAmbient1),
+            new ScheduledTask("controlPower", GridTieInverterTasks.CONTROL_POWER_CRON, tasks::controlPower),
+            new ScheduledTask("sendAmbient2", GridTieInverterTasks.SEND_AMBIENT2_CRON, tasks::sendAmbient2),
+            new ScheduledTask("planTomorrow", GridTieInverterTasks.PLAN_CRON, tasks::planTomorrow));
+        // @formatter:on
+        var start = first.atZone(clock.getZone());
+        for (var scheduledTask : scheduledTasks) {
+            scheduledTask.next = scheduledTask.cron.next(start);
+        }
+
+        for (var record : records) {
+            // 計測時刻までに実行されるスケジュールを実行
+            runUntil(scheduledTasks, record.getTimestamp().atZone(clock.getZone()));
+
+            clock.setInstant(record.getTimestamp());
+            if (record.getHash() != null) {
+                hiveService.setHash(record.getHash());
+            }
+            if (record.hasWeather()) {
+                openWeatherService.update(record);
+            }
+            if (record.getLight() != null) {
+                tasks.addLightData(record.getLight());
+            }
+            if (record.getPower() != null) {
+                tasks.addGtiData(record.getPower());
+            }
+        }
+
+        // 最終日の1日値送信まで実行
+        var daily = scheduledTasks.get(2);
+        runUntil(scheduledTasks, daily.next);
+
+        var elapsed = (System.nanoTime() - startNanos) / 1_000_000L;
+        for (var scheduledTask : scheduledTasks) {
+            log.info("{}: 実行{}回 (失敗{}回)", scheduledTask.name, scheduledTask.count, scheduledTask.failures);
+        }
+        logFilter("照度", tasks.getLightFilter());
+        logFilter("発電電力", tasks.getGtiFilter());
+        var switches = hiveService.getSwitches();
+        log.info("OCプロファイル変更: {}回", switches.size());
+        for (var s : switches) {
+            log.debug("  {} [{}] -> {}", s.getTs(), s.getWorkerId(), s.getProfileName());
+        }
+        log.info("リプレイが完了しました。({}ミリ秒)", elapsed);
+
+        if (replayConfig.getOutput() != null) {
+            writeOutput(Path.of(replayConfig.getOutput()));
+        }
+    }
+
+    /**
+     * 外れ値除外の結果をログ出力
+     */
+    private static void logFilter(String name, OutlierFilter filter) {
+        if (filter != null) {
+            log.info("外れ値除外({}): 受入{}回, 除外{}回, 不正{}回", name, filter.getAccepted(), filter.getRejected(),
+                    filter.getInvalid());
+        }
+    }
+
+    /**
+     * 指定時刻までのスケジュールを時刻順に実行
+     */
+    private void runUntil(List<ScheduledTask> scheduledTasks, ZonedDateTime until) {
+        while (true) {
+            var next = scheduledTasks.stream().filter(t -> !t.next.isAfter(until))
+                    .min((a, b) -> a.next.compareTo(b.next)).orElse(null);
+            if (next == null) {
+                return;
+            }
+
+            clock.setInstant(next.next.toInstant());
+            try {
+                next.task.run();
+            } catch (Exception e) {
+                next.failures++;
+                log.warn("{}の実行に失敗しました。({})", next.name, next.next, e);
+            }
+            next.count++;
+            next.next = next.cron.next(next.next);
+        }
+    }
+
+    /**
+     * 外部サービスの設定が無い場合は、スタブ用の設定を補完
+     */
+    private void prepareServiceConfig(boolean hasWeather) {
+        if (serviceConfig.getAmbient() == null) {
+            serviceConfig.setAmbient(new AmbientChannel());
+        }
+        if (serviceConfig.getAmbient().getCurrent() == null) {
+            var current = new AmbientApi();
+            current.setChannelId(1);
+            serviceConfig.getAmbient().setCurrent(current);
+        }
+        if (serviceConfig.getAmbient().getSummary() == null) {
+            var summary = new AmbientApi();
+            summary.setChannelId(2);
+            serviceConfig.getAmbient().setSummary(summary);
+        }
+        if (serviceConfig.getHiveApi() == null) {
+            var hive = new HiveApi();
+            hive.setFarmId(0);
+            hive.setWorkerId(0);
+            serviceConfig.setHiveApi(hive);
+        }
+        if (serviceConfig.getOpenWeatherApi() == null && hasWeather) {
+            serviceConfig.setOpenWeatherApi(new OpenWeatherApi());
+        }
+    }
+
+    /**
+     * Ambientへの送信内容をCSV出力
+     */
+    private void writeOutput(Path path) throws IOException {
+        try (var out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.println("channel,created,d1,d2,d3,d4,d5,d6,d7,d8,cmnt");
+            for (var sent : ambientService.getSentDatas()) {
+                var datas = new ArrayList<Object>(Arrays.asList(sent.getDatas()));
+                while (datas.size() < 8) {
+                    datas.add(null);
+                }
+                var fields = Stream.concat(Stream.of(sent.getChannelId(), sent.getTs().toOffsetDateTime()),
+                        Stream.concat(datas.stream(), Stream.of(sent.getComment())))
+                        .map(v -> Objects.toString(v, ""))
+                        .collect(Collectors.joining(","));
+                out.println(fields);
+            }
+        }
+        log.info("Ambientへの送信内容を出力しました: {}", path);
+    }
+}
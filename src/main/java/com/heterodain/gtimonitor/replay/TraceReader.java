@@ -0,0 +1,135 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * トレースファイル(CSV)の読み込み
+ * 
+ * <p>
+ * 1行目はヘッダー。列名は以下のどちらの形式でもよい(Ambientのエクスポート形式をそのまま読み込める)。
+ * </p>
+ * 
+ * <pre>
+ * timestamp,light,power,temperature,cloudness,humidity,hash,weather
+ * created,d1,d2,d3,d4,d5,d7,cmnt
+ * </pre>
+ */
+public final class TraceReader {
+    /** 列名の別名 (Ambientの3分値チャネルのフィールド割り当て) */
+    private static final Map<String, String> ALIASES = Map.of(
+            "created", "timestamp",
+            "d1", "light",
+            "d2", "power",
+            "d3", "temperature",
+            "d4", "cloudness",
+            "d5", "humidity",
+            "d7", "hash",
+            "cmnt", "weather");
+
+    private TraceReader() {
+    }
+
+    /**
+     * トレースファイル読み込み
+     * 
+     * @param path ファイルパス
+     * @param zone タイムゾーンが無い時刻の解釈に使うタイムゾーン
+     * @return 時刻順のトレース
+     * @throws IOException
+     */
+    public static List<TraceRecord> read(Path path, ZoneId zone) throws IOException {
+        var lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return List.of();
+        }
+
+        var header = lines.get(0).replace("\uFEFF", "").split(",", -1);
+        var columns = new HashMap<String, Integer>();
+        for (int i = 0; i < header.length; i++) {
+            var name = unquote(header[i]).toLowerCase();
+            columns.put(ALIASES.getOrDefault(name, name), i);
+        }
+        if (!columns.containsKey("timestamp")) {
+            throw new IOException("トレースファイル[" + path + "]に時刻の列がありません");
+        }
+
+        var records = new ArrayList<TraceRecord>();
+        for (int i = 1; i < lines.size(); i++) {
+            var line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            var values = line.split(",", -1);
+            try {
+                var record = new TraceRecord();
+                record.setTimestamp(parseTimestamp(value(values, columns, "timestamp"), zone));
+                record.setLight(toDouble(value(values, columns, "light")));
+                record.setPower(toDouble(value(values, columns, "power")));
+                record.setHash(toDouble(value(values, columns, "hash")));
+                record.setWeather(value(values, columns, "weather"));
+                record.setTemperature(toDouble(value(values, columns, "temperature")));
+                record.setCloudness(toInteger(value(values, columns, "cloudness")));
+                record.setHumidity(toInteger(value(values, columns, "humidity")));
+                records.add(record);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IOException("トレースファイル[" + path + "]の" + (i + 1) + "行目を解析できません: " + line, e);
+            }
+        }
+
+        records.sort(Comparator.comparing(TraceRecord::getTimestamp));
+        return records;
+    }
+
+    private static String value(String[] values, Map<String, Integer> columns, String name) {
+        var index = columns.get(name);
+        if (index == null || index >= values.length) {
+            return null;
+        }
+        var value = unquote(values[index]);
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String unquote(String value) {
+        var trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+
+    private static Instant parseTimestamp(String value, ZoneId zone) {
+        if (value == null) {
+            throw new DateTimeParseException("時刻がありません", "", 0);
+        }
+        if (value.chars().allMatch(Character::isDigit)) {
+            return Instant.ofEpochMilli(Long.parseLong(value));
+        }
+        var iso = value.replace(' ', 'T');
+        try {
+            return OffsetDateTime.parse(iso).toInstant();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(iso).atZone(zone).toInstant();
+        }
+    }
+
+    private static Double toDouble(String value) {
+        return value == null ? null : Double.valueOf(value);
+    }
+
+    private static Integer toInteger(String value) {
+        return value == null ? null : (int) Math.round(Double.parseDouble(value));
+    }
+}
@@ -0,0 +1,37 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.time.Instant;
+
+import lombok.Data;
+
+/**
+ * トレースファイルの1行
+ */
+@Data
+public class TraceRecord {
+    /** 計測時刻 */
+    private Instant timestamp;
+    /** 照度(Lux) */
+    private Double light;
+    /** 発電電力(W) */
+    private Double power;
+    /** ハッシュレート(MH/s) */
+    private Double hash;
+    /** 天候 */
+    private String weather;
+    /** 温度(℃) */
+    private Double temperature;
+    /** 雲量(%) */
+    private Integer cloudness;
+    /** 湿度(%) */
+    private Integer humidity;
+
+    /**
+     * 天気情報を含むかどうか
+     * 
+     * @return 含む場合はtrue
+     */
+    public boolean hasWeather() {
+        return weather != null || temperature != null || cloudness != null || humidity != null;
+    }
+}
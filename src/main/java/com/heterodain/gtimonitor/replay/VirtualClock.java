@@ -0,0 +1,53 @@
+package com.heterodain.gtimonitor.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * リプレイモードの仮想時計
+ */
+@Component
+@Profile("replay")
+public class VirtualClock extends Clock {
+    /** タイムゾーン */
+    private final ZoneId zone;
+    /** 現在時刻 */
+    private volatile Instant instant;
+
+    public VirtualClock() {
+        this(ZoneId.systemDefault(), Instant.EPOCH);
+    }
+
+    private VirtualClock(ZoneId zone, Instant instant) {
+        this.zone = zone;
+        this.instant = instant;
+    }
+
+    /**
+     * 現在時刻を設定
+     * 
+     * @param instant 現在時刻
+     */
+    public void setInstant(Instant instant) {
+        this.instant = instant;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new VirtualClock(zone, instant);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
@@ -0,0 +1,209 @@
+package com.heterodain.gtimonitor.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientChannel;
+import com.heterodain.gtimonitor.service.AmbientService.ReadData;
+
+/**
+ * Ambientのメトリクスの割り当て
+ *
+ * <p>
+ * メトリクス名の並び順に、チャネルのd1～d8へ割り当てる。8項目を超えた分は次のチャネルへ順に割り当てるため、
+ * チャネルを追加するだけで送信するメトリクスを増やせる。送信・読み込みとも、メトリクス名で値を扱う。
+ * </p>
+ */
+public class AmbientSchema {
+    /** 1チャネルのデータ項目数 */
+    public static final int FIELDS = 8;
+
+    /** メトリクス名(割り当て順) */
+    private final List<String> metrics;
+    /** チャネル(割り当て順) */
+    private final List<AmbientApi> channels;
+    /** メトリクス名→割り当て番号 */
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * コンストラクタ
+     *
+     * @param metrics  メトリクス名(割り当て順)
+     * @param channels チャネル(割り当て順)
+     * @throws IllegalArgumentException チャネルが足りない・メトリクス名が重複している場合
+     */
+    public AmbientSchema(List<String> metrics, List<AmbientApi> channels) {
+        var needed = (metrics.size() + FIELDS - 1) / FIELDS;
+        if (channels.size() < needed || channels.subList(0, needed).stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException(
+                    String.format("%d項目のメトリクスには%dチャネル必要です。: %s", metrics.size(), needed, metrics));
+        }
+        for (int i = 0; i < metrics.size(); i++) {
+            if (indexes.put(metrics.get(i), i) != null) {
+                throw new IllegalArgumentException("メトリクス名が重複しています: " + metrics.get(i));
+            }
+        }
+        this.metrics = List.copyOf(metrics);
+        this.channels = List.copyOf(channels.subList(0, Math.min(channels.size(), Math.max(1, needed))));
+    }
+
+    /**
+     * 先頭のチャネルと追加チャネルから生成
+     *
+     * @param metrics メトリクス名(割り当て順)
+     * @param first   先頭のチャネル
+     * @param shards  追加チャネル
+     * @return メトリクスの割り当て(先頭のチャネルが無い場合はnull)
+     */
+    public static AmbientSchema of(List<String> metrics, AmbientApi first, List<AmbientApi> shards) {
+        if (first == null) {
+            return null;
+        }
+        var channels = new ArrayList<AmbientApi>();
+        channels.add(first);
+        if (shards != null) {
+            channels.addAll(shards);
+        }
+        return new AmbientSchema(metrics, channels);
+    }
+
+    /**
+     * 現在値のメトリクスの割り当て
+     *
+     * @param config Ambientのチャネル設定
+     * @return メトリクスの割り当て(チャネルが無い場合はnull)
+     */
+    public static AmbientSchema current(AmbientChannel config) {
+        return of(config.getCurrentMetrics(), config.getCurrent(), config.getCurrentShards());
+    }
+
+    /**
+     * 集計値のメトリクスの割り当て
+     *
+     * @param config Ambientのチャネル設定
+     * @return メトリクスの割り当て(チャネルが無い場合はnull)
+     */
+    public static AmbientSchema summary(AmbientChannel config) {
+        return of(config.getSummaryMetrics(), config.getSummary(), config.getSummaryShards());
+    }
+
+    /**
+     * 分位点のメトリクスの割り当て
+     *
+     * @param config Ambientのチャネル設定
+     * @return メトリクスの割り当て(チャネルが無い場合はnull)
+     */
+    public static AmbientSchema percentile(AmbientChannel config) {
+        return of(config.getPercentileMetrics(), config.getPercentile(), config.getPercentileShards());
+    }
+
+    /**
+     * メトリクス名(割り当て順)
+     *
+     * @return メトリクス名
+     */
+    public List<String> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 使用するチャネル(割り当て順)
+     *
+     * @return チャネル
+     */
+    public List<AmbientApi> getChannels() {
+        return channels;
+    }
+
+    /**
+     * メトリクスが割り当てられているかどうか
+     *
+     * @param metric メトリクス名
+     * @return 割り当てられている場合はtrue
+     */
+    public boolean contains(String metric) {
+        return indexes.containsKey(metric);
+    }
+
+    /**
+     * メトリクスを割り当てたチャネル
+     *
+     * @param metric メトリクス名
+     * @return チャネル(割り当てられていない場合はnull)
+     */
+    public AmbientApi channelOf(String metric) {
+        var index = indexes.get(metric);
+        return index == null ? null : channels.get(index / FIELDS);
+    }
+
+    /**
+     * メトリクスを割り当てたデータ項目の番号
+     *
+     * @param metric メトリクス名
+     * @return データ項目の番号(1～8、割り当てられていない場合は0)
+     */
+    public int fieldOf(String metric) {
+        var index = indexes.get(metric);
+        return index == null ? 0 : index % FIELDS + 1;
+    }
+
+    /**
+     * 送信データをチャネル毎に振り分け
+     *
+     * @param values メトリクス名→値 (割り当てられていないメトリクスは無視)
+     * @return チャネル→送信データ(d1～d8)
+     */
+    public Map<AmbientApi, Double[]> shard(Map<String, Double> values) {
+        var shards = new LinkedHashMap<AmbientApi, Double[]>();
+        for (var channel : channels) {
+            shards.put(channel, new Double[FIELDS]);
+        }
+        for (int i = 0; i < metrics.size(); i++) {
+            shards.get(channels.get(i / FIELDS))[i % FIELDS] = values.get(metrics.get(i));
+        }
+        return shards;
+    }
+
+    /**
+     * 読み込みデータからメトリクスの値を取得
+     *
+     * @param data   読み込みデータ (メトリクスを割り当てたチャネルのもの)
+     * @param metric メトリクス名
+     * @return 値(割り当てられていない・値が無い場合はnull)
+     */
+    public Double valueOf(ReadData data, String metric) {
+        var field = fieldOf(metric);
+        return field == 0 ? null : data.field(field);
+    }
+
+    /**
+     * 割り当ての一覧 (ログ出力用)
+     *
+     * @return "メトリクス名=チャネルID:dN" の一覧
+     */
+    public List<String> describe() {
+        var descriptions = new ArrayList<String>();
+        for (var metric : metrics) {
+            descriptions.add(String.format("%s=%s:d%d", metric, Objects.toString(channelOf(metric).getChannelId()),
+                    fieldOf(metric)));
+        }
+        return descriptions;
+    }
+
+    /**
+     * 割り当て順のメトリクスの値 (ログ出力用)
+     *
+     * @param values メトリクス名→値
+     * @return メトリクス名→値(割り当て順)
+     */
+    public Map<String, Double> ordered(Map<String, Double> values) {
+        var ordered = new LinkedHashMap<String, Double>();
+        metrics.forEach(m -> ordered.put(m, values.get(m)));
+        return ordered;
+    }
+}
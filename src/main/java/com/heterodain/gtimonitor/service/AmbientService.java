@@ -6,18 +6,24 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,6 +42,8 @@ public class AmbientService {
     private static final ZoneId UTC = ZoneId.of("UTC");
     /** HTTP読み込みタイムアウト(秒) */
     private static final int READ_TIMEOUT = 30;
+    /** チャネルごとに保持する未送信データの上限 (超えた場合は古いものから破棄) */
+    private static final int MAX_PENDING = 100;
 
     /** Httpクライアント */
     @Autowired
@@ -45,11 +53,54 @@ public class AmbientService {
     @Autowired
     private ObjectMapper om;
 
+    /** 時計 */
+    @Autowired
+    private Clock clock;
+
     /** チャネルごとの前回送信時刻 */
     private Map<Integer, Long> lastSendTimes = new ConcurrentHashMap<>();
+    /** チャネルごとの送信の排他 (待ち・HTTP通信を含むため、仮想スレッドを固定しないロック) */
+    private Map<Integer, ReentrantLock> sendLocks = new ConcurrentHashMap<>();
+    /** チャネルごとの未送信データ (タイムスタンプ→データ、次回の送信でまとめて送信) */
+    private Map<Integer, LinkedHashMap<String, ObjectNode>> pendings = new ConcurrentHashMap<>();
+
+    /**
+     * メトリクスの割り当てに従って、各チャネルにデータ送信
+     * 
+     * <p>
+     * チャネル毎に送信間隔の調整・未送信データの再送を行う。一部のチャネルへの送信に失敗しても、
+     * 残りのチャネルへは送信する。
+     * </p>
+     * 
+     * @param schema  メトリクスの割り当て
+     * @param ts      タイムスタンプ
+     * @param comment コメント (先頭のチャネルのみ)
+     * @param values  メトリクス名→値
+     * @throws IOException          いずれかのチャネルへの送信に失敗した場合
+     * @throws InterruptedException
+     */
+    public void send(AmbientSchema schema, ZonedDateTime ts, String comment, Map<String, Double> values)
+            throws IOException, InterruptedException {
+        IOException failure = null;
+        var first = true;
+        for (var shard : schema.shard(values).entrySet()) {
+            try {
+                send(shard.getKey(), ts, first ? comment : null, shard.getValue());
+            } catch (IOException e) {
+                log.warn("Ambient(チャネル{})への送信に失敗しました。", shard.getKey().getChannelId(), e);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            first = false;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
     /**
-     * チャネルにデータ送信
+     * チャネルにデータ送信 (前回までの未送信データがあれば、まとめて送信)
      * 
      * @param config  API接続設定
      * @param ts      タイムスタンプ
@@ -61,39 +112,33 @@ public class AmbientService {
     public void send(AmbientApi config, ZonedDateTime ts, String comment, Double... datas)
             throws IOException, InterruptedException {
 
-        synchronized (config) {
+        var lock = sendLocks.computeIfAbsent(config.getChannelId(), id -> new ReentrantLock());
+        lock.lock();
+        try {
+            // 未送信データに追加 (同じタイムスタンプの再送は置き換え)
+            var pending = pendings.computeIfAbsent(config.getChannelId(), id -> new LinkedHashMap<>());
+            var dataNode = buildDataNode(ts, comment, datas);
+            pending.put(dataNode.get("created").asText(), dataNode);
+            while (pending.size() > MAX_PENDING) {
+                var oldest = pending.keySet().iterator().next();
+                log.warn("Ambient(チャネル{})の未送信データを破棄しました。: {}", config.getChannelId(), oldest);
+                pending.remove(oldest);
+            }
+
             // チャネルへの送信間隔が6秒以上になるように調整 (同一チャネルへの送信は5秒以上間隔を空ける必要がある)
             var lastSendTime = lastSendTimes.get(config.getChannelId());
             if (lastSendTime != null) {
-                var diff = System.currentTimeMillis() - lastSendTime;
+                var diff = clock.millis() - lastSendTime;
                 if (diff < 6000) {
                     Thread.sleep(6000 - diff);
                 }
             }
 
             // 送信するJSONを構築
-            var rootNode = om.createObjectNode();
-            rootNode.put("writeKey", config.getWriteKey());
-
-            var dataArrayNode = om.createArrayNode();
-            var dataNode = om.createObjectNode();
-            var utcTs = ts.withZoneSameInstant(UTC).toLocalDateTime();
-            dataNode.put("created", utcTs.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            for (int i = 1; i <= datas.length; i++) {
-                if (datas[i - 1] != null) {
-                    dataNode.put("d" + i, datas[i - 1]);
-                }
-            }
-            if (comment != null) {
-                dataNode.put("cmnt", comment);
-            }
-            dataArrayNode.add(dataNode);
-            rootNode.set("data", dataArrayNode);
-
-            var payload = om.writeValueAsString(rootNode);
+            var payload = buildPayload(config, pending.values());
 
             // HTTP POST
-            var uri = "http://ambidata.io/api/v2/channels/" + config.getChannelId() + "/dataarray";
+            var uri = config.getBaseUrl() + "/channels/" + config.getChannelId() + "/dataarray";
             log.trace("request > [POST] {}", uri);
             log.trace("payload > {}", payload);
 
@@ -103,12 +148,69 @@ public class AmbientService {
                     .uri(URI.create(uri))
                     .header("Content-Type", "application/json").timeout(Duration.ofSeconds(READ_TIMEOUT)).build();
             var response = httpClient.send(request, BodyHandlers.discarding());
+            lastSendTimes.put(config.getChannelId(), clock.millis());
             if (response.statusCode() != 200) {
                 throw new IOException("Ambient Response Code " + response.statusCode());
             }
+            if (pending.size() > 1) {
+                log.debug("Ambient(チャネル{})に未送信データをまとめて送信しました。({}件)", config.getChannelId(), pending.size());
+            }
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            lastSendTimes.put(config.getChannelId(), System.currentTimeMillis());
+    /**
+     * 送信するJSONを構築
+     * 
+     * @param config  API接続設定
+     * @param ts      タイムスタンプ
+     * @param comment コメント
+     * @param datas   送信データ(最大8個)
+     * @return JSON文字列
+     * @throws JsonProcessingException
+     */
+    public String buildPayload(AmbientApi config, ZonedDateTime ts, String comment, Double... datas)
+            throws JsonProcessingException {
+        return buildPayload(config, List.of(buildDataNode(ts, comment, datas)));
+    }
+
+    /**
+     * 複数件の送信データのJSONを構築
+     * 
+     * @param config    API接続設定
+     * @param dataNodes 送信データ
+     * @return JSON文字列
+     * @throws JsonProcessingException
+     */
+    private String buildPayload(AmbientApi config, Collection<ObjectNode> dataNodes) throws JsonProcessingException {
+        var rootNode = om.createObjectNode();
+        rootNode.put("writeKey", config.getWriteKey());
+
+        var dataArrayNode = om.createArrayNode();
+        dataArrayNode.addAll(dataNodes);
+        rootNode.set("data", dataArrayNode);
+
+        return om.writeValueAsString(rootNode);
+    }
+
+    /**
+     * 1件の送信データを構築
+     */
+    private ObjectNode buildDataNode(ZonedDateTime ts, String comment, Double... datas) {
+        var dataNode = om.createObjectNode();
+        var utcTs = ts.withZoneSameInstant(UTC).toLocalDateTime();
+        dataNode.put("created", utcTs.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        for (int i = 1; i <= datas.length; i++) {
+            if (datas[i - 1] != null) {
+                dataNode.put("d" + i, datas[i - 1]);
+            }
+        }
+        if (comment != null) {
+            dataNode.put("cmnt", comment);
         }
+        return dataNode;
     }
 
     /**
@@ -123,7 +225,7 @@ public class AmbientService {
     public List<ReadData> read(AmbientApi config, LocalDate date) throws IOException, InterruptedException {
 
         // HTTP GET
-        var uri = "http://ambidata.io/api/v2/channels/" + config.getChannelId() + "/data?readKey=" + config.getReadKey()
+        var uri = config.getBaseUrl() + "/channels/" + config.getChannelId() + "/data?readKey=" + config.getReadKey()
                 + "&date=" + date.format(DateTimeFormatter.ISO_DATE);
         log.trace("request > [GET] {}", uri);
 
@@ -154,5 +256,34 @@ public class AmbientService {
         private Double d7;
         private Double d8;
         private String cmnt;
+
+        /**
+         * データ項目の値
+         * 
+         * @param field データ項目の番号(1～8)
+         * @return 値
+         */
+        public Double field(int field) {
+            switch (field) {
+                case 1:
+                    return d1;
+                case 2:
+                    return d2;
+                case 3:
+                    return d3;
+                case 4:
+                    return d4;
+                case 5:
+                    return d5;
+                case 6:
+                    return d6;
+                case 7:
+                    return d7;
+                case 8:
+                    return d8;
+                default:
+                    return null;
+            }
+        }
     }
 }
\ No newline at end of file
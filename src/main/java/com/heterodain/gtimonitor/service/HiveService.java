@@ -4,10 +4,16 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -29,10 +35,10 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 @Slf4j
 public class HiveService {
-    private static final String HIVE_API_BASE_URL = "https://api2.hiveos.farm/api/v2";
-    private static final String GET_OC_PROFILE_URL = HIVE_API_BASE_URL + "/farms/%d/oc";
-    private static final String GET_WORKER_INFO_URL = HIVE_API_BASE_URL + "/farms/%d/workers/%d";
-    private static final String SET_WORKER_OC_URL = HIVE_API_BASE_URL + "/farms/%d/workers/%d";
+    private static final String GET_OC_PROFILE_URL = "%s/farms/%d/oc";
+    private static final String GET_WORKER_INFO_URL = "%s/farms/%d/workers/%d";
+    private static final String GET_FARM_WORKERS_URL = "%s/farms/%d/workers";
+    private static final String SET_WORKER_OC_URL = "%s/farms/%d/workers/%d";
 
     /** HTTP読み込みタイムアウト(秒) */
     private static final int READ_TIMEOUT = 30;
@@ -66,43 +72,155 @@ public class HiveService {
             throw new IllegalArgumentException(msg);
         }
 
+        // HTTP PATCH
+        var request = buildChangeOcRequest(config, config.getWorkerId(), ocProfile);
+        var response = httpClient.send(request, BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Hive API Response Code " + response.statusCode());
+        }
+
+        log.trace("response > {}", response.body());
+
+        return ocProfile;
+    }
+
+    /**
+     * 複数ワーカーのOCプロファイル変更
+     * 
+     * <p>
+     * OCプロファイル一覧は1回だけ取得し、変更リクエストは同時リクエスト数と
+     * リクエスト間隔の上限を守って並行に送信する。
+     * </p>
+     * 
+     * @param config  Hive API接続設定
+     * @param changes ワーカーID毎の変更後のOCプロファイル名
+     * @return 変更に成功したワーカーID毎のOCプロファイル
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public Map<Integer, OcProfile> changeWorkerOcProfiles(HiveApi config, Map<Integer, String> changes)
+            throws IOException, InterruptedException {
+        var results = new LinkedHashMap<Integer, OcProfile>();
+        if (changes.isEmpty()) {
+            return results;
+        }
+
+        var ocProfiles = getOcProfiles(config);
+        log.debug("OC Profiles > {}", ocProfiles);
+        for (var ocProfileName : changes.values()) {
+            if (!ocProfiles.containsKey(ocProfileName)) {
+                String msg = String.format("%sに該当するOCプロファイルが定義されていません", ocProfileName);
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        // HTTP PATCH (並行)
+        var semaphore = new Semaphore(config.getMaxConcurrentRequests());
+        var intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getRequestInterval());
+        var futures = new LinkedHashMap<Integer, CompletableFuture<HttpResponse<String>>>();
+        var nextNanos = System.nanoTime();
+        for (var change : changes.entrySet()) {
+            semaphore.acquire();
+            var waitNanos = nextNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            nextNanos = System.nanoTime() + intervalNanos;
+
+            var request = buildChangeOcRequest(config, change.getKey(), ocProfiles.get(change.getValue()));
+            futures.put(change.getKey(), httpClient.sendAsync(request, BodyHandlers.ofString())
+                    .whenComplete((response, e) -> semaphore.release()));
+        }
+
+        for (var future : futures.entrySet()) {
+            var workerId = future.getKey();
+            try {
+                var response = future.getValue().get();
+                if (response.statusCode() != 200) {
+                    log.error("ワーカー{}のOCプロファイル変更に失敗しました。Hive API Response Code {}", workerId,
+                            response.statusCode());
+                    continue;
+                }
+                log.trace("response > {}", response.body());
+                results.put(workerId, ocProfiles.get(changes.get(workerId)));
+            } catch (ExecutionException e) {
+                log.error("ワーカー{}のOCプロファイル変更に失敗しました。", workerId, e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * OCプロファイル変更リクエストの構築
+     * 
+     * @param config    Hive API接続設定
+     * @param workerId  ワーカーID
+     * @param ocProfile OCプロファイル
+     * @return リクエスト
+     * @throws IOException
+     */
+    private HttpRequest buildChangeOcRequest(HiveApi config, Integer workerId, OcProfile ocProfile)
+            throws IOException {
         // 送信JSON構築
         var rootNode = om.createObjectNode();
         rootNode.put("oc_id", ocProfile.getId());
         rootNode.put("oc_apply_mode", "replace");
         var payload = om.writeValueAsString(rootNode);
 
-        // HTTP PATCH
-        var uri = String.format(SET_WORKER_OC_URL, config.getFarmId(), config.getWorkerId());
-        log.trace("request > [POST] {}", uri);
+        var uri = String.format(SET_WORKER_OC_URL, config.getBaseUrl(), config.getFarmId(), workerId);
+        log.trace("request > [PATCH] {}", uri);
         log.trace("payload > {}", payload);
 
-        var request = HttpRequest.newBuilder().method("PATCH", HttpRequest.BodyPublishers.ofString(payload))
+        return HttpRequest.newBuilder().method("PATCH", HttpRequest.BodyPublishers.ofString(payload))
                 .uri(URI.create(uri)).header("Content-Type", "application/json")
                 .header("Authorization", "Bearer " + config.getPersonalToken())
                 .timeout(Duration.ofSeconds(READ_TIMEOUT)).build();
-        var response = httpClient.send(request, BodyHandlers.ofString());
+    }
+
+    /**
+     * ワーカー情報取得
+     * 
+     * @param config Hive API接続設定
+     * @return ワーカー情報
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public WorkerInfo getWorkerInfo(HiveApi config) throws IOException, InterruptedException {
+
+        // HTTP GET
+        var uri = String.format(GET_WORKER_INFO_URL, config.getBaseUrl(), config.getFarmId(), config.getWorkerId());
+        log.trace("request > [GET] {}", uri);
+
+        var request = HttpRequest.newBuilder().GET().uri(URI.create(uri))
+                .header("Authorization", "Bearer " + config.getPersonalToken())
+                .timeout(Duration.ofSeconds(READ_TIMEOUT)).build();
+        var response = httpClient.send(request, BodyHandlers.ofInputStream());
         if (response.statusCode() != 200) {
             throw new IOException("Hive API Response Code " + response.statusCode());
         }
 
-        log.trace("response > {}", response.body());
+        JsonNode json;
+        try (var is = response.body()) {
+            json = om.readTree(is);
+        }
+        log.trace("response > {}", json);
 
-        return ocProfile;
+        return parseWorkerInfo(json);
     }
 
     /**
-     * ワーカー情報取得
+     * ファームの全ワーカー情報取得 (1リクエストで取得)
      * 
      * @param config Hive API接続設定
-     * @return ワーカー情報
+     * @return 全ワーカー情報
      * @throws IOException
      * @throws InterruptedException
      */
-    public WorkerInfo getWorkerInfo(HiveApi config) throws IOException, InterruptedException {
+    public List<WorkerInfo> getFarmWorkers(HiveApi config) throws IOException, InterruptedException {
 
         // HTTP GET
-        var uri = String.format(GET_WORKER_INFO_URL, config.getFarmId(), config.getWorkerId());
+        var uri = String.format(GET_FARM_WORKERS_URL, config.getBaseUrl(), config.getFarmId());
         log.trace("request > [GET] {}", uri);
 
         var request = HttpRequest.newBuilder().GET().uri(URI.create(uri))
@@ -119,14 +237,36 @@ public class HiveService {
         }
         log.trace("response > {}", json);
 
-        // レスポンスのJSONから、ワーカー情報を抽出
-        var gpuNames = StreamSupport.stream(json.get("gpu_info").spliterator(), false)
+        return parseFarmWorkers(json);
+    }
+
+    /**
+     * レスポンスのJSONから、全ワーカー情報を抽出
+     * 
+     * @param json ワーカー一覧APIのレスポンス
+     * @return 全ワーカー情報
+     */
+    public static List<WorkerInfo> parseFarmWorkers(JsonNode json) {
+        return StreamSupport.stream(json.path("data").spliterator(), false)
+                .map(HiveService::parseWorkerInfo)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * レスポンスのJSONから、ワーカー情報を抽出
+     * 
+     * @param json ワーカー情報APIのレスポンス
+     * @return ワーカー情報
+     */
+    public static WorkerInfo parseWorkerInfo(JsonNode json) {
+        var gpuNames = StreamSupport.stream(json.path("gpu_info").spliterator(), false)
                 .collect(Collectors.toMap(
                         gpuInfo -> gpuInfo.get("bus_id").asText(),
                         gpuInfo -> gpuInfo.get("model").asText()));
         // @formatter:off
-        var gpuInfos = StreamSupport.stream(json.get("gpu_stats").spliterator(), false)
+        var gpuInfos = StreamSupport.stream(json.path("gpu_stats").spliterator(), false)
                 .map(gpuStats -> new GpuInfo(
+                    gpuStats.get("bus_id").asText(),
                     gpuNames.get(gpuStats.get("bus_id").asText()),
                     gpuStats.get("temp").asDouble(),
                     gpuStats.get("fan").asInt(),
@@ -137,8 +277,8 @@ public class HiveService {
         return new WorkerInfo(
             json.get("id").asInt(),
             json.get("name").asText(),
-            json.get("active").asBoolean(),
-            json.get("oc_id").asInt(),
+            json.path("active").asBoolean(),
+            json.hasNonNull("oc_id") ? json.get("oc_id").asInt() : null,
             json.at("/miners_summary/hashrates/0/hash").asDouble(),
             json.at("/miners_summary/hashrates/0/miner").asText(),
             json.at("/miners_summary/hashrates/0/algo").asText(),
@@ -154,10 +294,10 @@ public class HiveService {
      * @throws IOException
      * @throws InterruptedException
      */
-    private Map<String, OcProfile> getOcProfiles(HiveApi config) throws IOException, InterruptedException {
+    public Map<String, OcProfile> getOcProfiles(HiveApi config) throws IOException, InterruptedException {
 
         // HTTP GET
-        var uri = String.format(GET_OC_PROFILE_URL, config.getFarmId());
+        var uri = String.format(GET_OC_PROFILE_URL, config.getBaseUrl(), config.getFarmId());
         log.trace("request > [GET] {}", uri);
 
         var request = HttpRequest.newBuilder().GET().uri(URI.create(uri))
@@ -174,7 +314,16 @@ public class HiveService {
         }
         log.trace("response > {}", json);
 
-        // レスポンスのJSONから、OCプロファイル情報を抽出
+        return parseOcProfiles(json);
+    }
+
+    /**
+     * レスポンスのJSONから、OCプロファイル情報を抽出
+     * 
+     * @param json OCプロファイルAPIのレスポンス
+     * @return 全OCプロファイル
+     */
+    public static Map<String, OcProfile> parseOcProfiles(JsonNode json) {
         return StreamSupport.stream(json.get("data").spliterator(), false)
                 .map(oc -> new OcProfile(oc.get("id").asInt(), oc.get("name").asText(), oc.get("options")))
                 .collect(Collectors.toMap(OcProfile::getName, ocp -> ocp));
@@ -225,6 +374,8 @@ public class HiveService {
     @Getter
     @ToString
     public static class GpuInfo {
+        /** バスID */
+        public String busId;
         /** 名称 */
         public String name;
         /** 温度(℃) */
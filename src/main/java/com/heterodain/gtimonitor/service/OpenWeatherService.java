@@ -6,6 +6,10 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -24,7 +28,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class OpenWeatherService {
     /** 天気情報APIのURL */
-    private static final String CURRENT_WEATHER_API_URL = "https://api.openweathermap.org/data/2.5/weather?id=%s&mode=json&lang=ja&units=metric&appid=%s";
+    private static final String CURRENT_WEATHER_API_URL = "%s/weather?id=%s&mode=json&lang=ja&units=metric&appid=%s";
+    /** 天気予報(3時間毎・5日分)APIのURL */
+    private static final String FORECAST_API_URL = "%s/forecast?id=%s&mode=json&lang=ja&units=metric&appid=%s";
     /** HTTP読み込みタイムアウト(秒) */
     private static final int READ_TIMEOUT = 10;
 
@@ -44,7 +50,7 @@ public class OpenWeatherService {
      * @throws IOException
      */
     public CurrentWeather getCurrentWeather(OpenWeatherApi config) throws IOException, InterruptedException {
-        var uri = String.format(CURRENT_WEATHER_API_URL, config.getCityId(), config.getApiKey());
+        var uri = String.format(CURRENT_WEATHER_API_URL, config.getBaseUrl(), config.getCityId(), config.getApiKey());
         log.trace("request > [GET] {}", uri);
 
         // HTTP GET
@@ -62,7 +68,16 @@ public class OpenWeatherService {
         }
         log.trace("response > {}", json);
 
-        // レスポンスのJSONから、天気情報を抽出
+        return parseCurrentWeather(json);
+    }
+
+    /**
+     * レスポンスのJSONから、天気情報を抽出
+     * 
+     * @param json 天気情報APIのレスポンス
+     * @return 現在の天気
+     */
+    public static CurrentWeather parseCurrentWeather(JsonNode json) {
         var result = new CurrentWeather();
         result.setWeather(json.at("/weather/0/description").textValue());
         result.setTemperature(json.at("/main/temp").doubleValue());
@@ -76,6 +91,85 @@ public class OpenWeatherService {
         return result;
     }
 
+    /**
+     * 天気予報(3時間毎・5日分)を取得
+     * 
+     * @param config API接続設定
+     * @return 天気予報
+     * @throws IOException
+     */
+    public Forecast getForecast(OpenWeatherApi config) throws IOException, InterruptedException {
+        var uri = String.format(FORECAST_API_URL, config.getBaseUrl(), config.getCityId(), config.getApiKey());
+        log.trace("request > [GET] {}", uri);
+
+        // HTTP GET
+        var request = HttpRequest.newBuilder().GET()
+                .uri(URI.create(uri))
+                .timeout(Duration.ofSeconds(READ_TIMEOUT)).build();
+        var response = httpClient.send(request, BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            throw new IOException("OpenWeather API Response Code " + response.statusCode());
+        }
+
+        JsonNode json;
+        try (var is = response.body()) {
+            json = om.readTree(is);
+        }
+        log.trace("response > {}", json);
+
+        return parseForecast(json);
+    }
+
+    /**
+     * レスポンスのJSONから、天気予報を抽出
+     * 
+     * @param json 天気予報APIのレスポンス
+     * @return 天気予報
+     */
+    public static Forecast parseForecast(JsonNode json) {
+        var result = new Forecast();
+        result.setLatitude(json.at("/city/coord/lat").isNumber() ? json.at("/city/coord/lat").doubleValue() : null);
+        result.setLongitude(json.at("/city/coord/lon").isNumber() ? json.at("/city/coord/lon").doubleValue() : null);
+        result.setItems(StreamSupport.stream(json.path("list").spliterator(), false).map(item -> {
+            var forecastItem = new ForecastItem();
+            forecastItem.setTime(Instant.ofEpochSecond(item.path("dt").longValue()));
+            forecastItem.setWeather(item.at("/weather/0/description").textValue());
+            forecastItem.setTemperature(item.at("/main/temp").doubleValue());
+            forecastItem.setCloudness(item.at("/clouds/all").intValue());
+            return forecastItem;
+        }).collect(Collectors.toList()));
+
+        return result;
+    }
+
+    /**
+     * 天気予報
+     */
+    @Data
+    public static class Forecast {
+        /** 緯度 */
+        private Double latitude;
+        /** 経度 */
+        private Double longitude;
+        /** 3時間毎の予報(時刻順) */
+        private List<ForecastItem> items;
+    }
+
+    /**
+     * 3時間毎の予報
+     */
+    @Data
+    public static class ForecastItem {
+        /** 予報時刻 */
+        private Instant time;
+        /** 天候 */
+        private String weather;
+        /** 温度(℃) */
+        private Double temperature;
+        /** 雲量(%) */
+        private Integer cloudness;
+    }
+
     /**
      * 現在の天気情報
      */
@@ -0,0 +1,320 @@
+package com.heterodain.gtimonitor.sink;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.config.SinkConfig.Resolution;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.util.LogContext;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 送信先毎の未送信データのバッファと送信スレッド
+ *
+ * <p>
+ * 計測データをバッファに溜め、送信先専用のスレッドで送信間隔毎(溜まった件数が上限に達した場合はすぐ)にまとめて送信する。
+ * 送信に失敗した場合は、まとめた計測データをバッファの先頭に戻して再送間隔の後に再送する。
+ * バッファが一杯の場合は古いものから捨てるため、遅い・止まった送信先があっても、計測や他の送信先を待たせない。
+ * </p>
+ */
+@Slf4j
+public class BatchingSink implements Closeable {
+    /** 送信先 */
+    private final TelemetrySink sink;
+    /** 送信する計測データの粒度 */
+    private final Resolution resolution;
+    /** 1回に送信する最大件数 */
+    private final int batchSize;
+    /** 送信間隔(ミリ秒) */
+    private final long flushInterval;
+    /** 未送信データの上限件数 */
+    private final int bufferSize;
+    /** 送信失敗時の再送間隔(ミリ秒) */
+    private final long retryInterval;
+    /** 未送信データ */
+    private final ArrayDeque<Sample> buffer = new ArrayDeque<>();
+    /** 送信スレッド */
+    private final Thread thread;
+    /** 閉じたかどうか */
+    private volatile boolean closed;
+
+    /** 受け取った件数 */
+    private final AtomicLong received = new AtomicLong();
+    /** 送信した件数 */
+    private final AtomicLong written = new AtomicLong();
+    /** 捨てた件数 */
+    private final AtomicLong dropped = new AtomicLong();
+    /** 送信した回数 */
+    private final AtomicLong batches = new AtomicLong();
+    /** 送信に失敗した回数 */
+    private final AtomicLong failures = new AtomicLong();
+    /** 送信時間の合計(ナノ秒) */
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    /**
+     * コンストラクタ (送信スレッドを開始)
+     *
+     * @param sink   送信先
+     * @param config 送信先の設定
+     */
+    public BatchingSink(TelemetrySink sink, SinkConfig.Sink config) {
+        if (config.getBatchSize() < 1 || config.getBufferSize() < config.getBatchSize()) {
+            throw new IllegalArgumentException(
+                    "送信先[" + sink.getName() + "]のbatch-sizeは1以上、buffer-size以下を指定してください");
+        }
+        if (config.getFlushInterval() < 1 || config.getRetryInterval() < 1) {
+            throw new IllegalArgumentException(
+                    "送信先[" + sink.getName() + "]のflush-interval・retry-intervalは1以上を指定してください");
+        }
+        this.sink = sink;
+        this.resolution = config.getResolution();
+        this.batchSize = config.getBatchSize();
+        this.flushInterval = config.getFlushInterval();
+        this.bufferSize = config.getBufferSize();
+        this.retryInterval = config.getRetryInterval();
+
+        thread = new Thread(LogContext.current().wrap(this::run), "sink-" + sink.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 計測データを追加 (待たない、バッファが一杯の場合は古いものから捨てる)
+     *
+     * @param sample 計測データ
+     */
+    public void offer(Sample sample) {
+        synchronized (buffer) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+            buffer.addLast(sample);
+            received.incrementAndGet();
+            trim();
+            if (buffer.size() >= batchSize) {
+                buffer.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 送信スレッド
+     */
+    private void run() {
+        var nextFlush = System.currentTimeMillis() + flushInterval;
+        // 送信に失敗した後は、バッファの件数に関わらず再送間隔まで待つ
+        var retryUntil = 0L;
+        while (!closed) {
+            List<Sample> batch;
+            synchronized (buffer) {
+                try {
+                    var now = System.currentTimeMillis();
+                    while (!closed && (now < retryUntil || (buffer.size() < batchSize && now < nextFlush))) {
+                        buffer.wait(Math.max(retryUntil, nextFlush) - now);
+                        now = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (closed) {
+                    break;
+                }
+                batch = take();
+            }
+
+            if (batch.isEmpty() || flush(batch)) {
+                nextFlush = System.currentTimeMillis() + flushInterval;
+            } else {
+                retryUntil = System.currentTimeMillis() + retryInterval;
+                nextFlush = retryUntil;
+            }
+        }
+    }
+
+    /**
+     * バッファの先頭から最大件数まで取り出す (bufferで排他)
+     */
+    private List<Sample> take() {
+        var batch = new ArrayList<Sample>(Math.min(batchSize, buffer.size()));
+        while (batch.size() < batchSize && !buffer.isEmpty()) {
+            batch.add(buffer.pollFirst());
+        }
+        return batch;
+    }
+
+    /**
+     * まとめて送信 (失敗した場合はバッファの先頭に戻す)
+     *
+     * @return 送信できた場合はtrue
+     */
+    private boolean flush(List<Sample> batch) {
+        var start = System.nanoTime();
+        try {
+            sink.write(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.warn("送信先[{}]への送信に失敗しました。{}ミリ秒後に再送します。: {}", sink.getName(), retryInterval, e.toString());
+        } finally {
+            writeNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        synchronized (buffer) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                buffer.addFirst(batch.get(i));
+            }
+            trim();
+        }
+        return false;
+    }
+
+    /**
+     * 上限を超えた古い計測データを捨てる (bufferで排他)
+     */
+    private void trim() {
+        while (buffer.size() > bufferSize) {
+            buffer.pollFirst();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 送信先の名前
+     *
+     * @return 送信先の名前
+     */
+    public String getName() {
+        return sink.getName();
+    }
+
+    /**
+     * 送信する計測データの粒度
+     *
+     * @return 粒度
+     */
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    /**
+     * 受け取った件数
+     *
+     * @return 件数
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * 送信した件数
+     *
+     * @return 件数
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * 捨てた件数 (バッファが一杯・閉じた時に未送信)
+     *
+     * @return 件数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 送信した回数
+     *
+     * @return 回数
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * 送信に失敗した回数
+     *
+     * @return 回数
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * 未送信の件数
+     *
+     * @return 件数
+     */
+    public int getPending() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    /**
+     * 送信時間の合計
+     *
+     * @return 送信時間(ミリ秒)
+     */
+    public long getWriteMillis() {
+        return writeNanos.get() / 1_000_000L;
+    }
+
+    /**
+     * 送信スレッドを止めて、未送信データを1回だけ送信してから接続を閉じる
+     */
+    @Override
+    public void close() {
+        synchronized (buffer) {
+            closed = true;
+            buffer.notifyAll();
+        }
+        try {
+            thread.join(flushInterval + retryInterval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            thread.interrupt();
+        }
+
+        List<Sample> batch;
+        synchronized (buffer) {
+            batch = new ArrayList<>(buffer);
+            buffer.clear();
+        }
+        if (!thread.isAlive() && !batch.isEmpty()) {
+            for (int i = 0; i < batch.size(); i += batchSize) {
+                var chunk = batch.subList(i, Math.min(batch.size(), i + batchSize));
+                try {
+                    sink.write(chunk);
+                    written.addAndGet(chunk.size());
+                    batches.incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("送信先[{}]への未送信データの送信に失敗しました。: {}", sink.getName(), e.toString());
+                    dropped.addAndGet(batch.size() - i);
+                    break;
+                }
+            }
+        } else {
+            dropped.addAndGet(batch.size());
+        }
+
+        try {
+            sink.close();
+        } catch (Exception e) {
+            log.warn("送信先[{}]の切断に失敗しました。", sink.getName(), e);
+        }
+    }
+}
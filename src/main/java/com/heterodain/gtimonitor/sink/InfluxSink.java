@@ -0,0 +1,146 @@
+package com.heterodain.gtimonitor.sink;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.TreeMap;
+
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.model.Sample;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * InfluxDBの送信先 (ラインプロトコルをHTTPで送信)
+ *
+ * <p>
+ * 同じ計測時刻の計測データを1行にまとめ、計測値名をフィールド名として送信する。
+ * </p>
+ *
+ * <pre>
+ * gti,site=home light=52300.0,power=412.5,fused=405.1 1654041600000
+ * </pre>
+ */
+@Slf4j
+public class InfluxSink implements TelemetrySink {
+    /** 送信先の名前 */
+    private final String name;
+    /** 設定 */
+    private final SinkConfig.Influx config;
+    /** Httpクライアント */
+    private final HttpClient httpClient;
+    /** 書き込みAPIのURL */
+    private final URI writeUri;
+    /** 測定名とタグ (各行の先頭) */
+    private final String series;
+
+    /**
+     * コンストラクタ
+     *
+     * @param name       送信先の名前
+     * @param config     設定
+     * @param httpClient Httpクライアント
+     */
+    public InfluxSink(String name, SinkConfig.Influx config, HttpClient httpClient) {
+        if (config.getBucket() == null && config.getDatabase() == null) {
+            throw new IllegalArgumentException("送信先[" + name + "]のbucket(v2)またはdatabase(v1)を指定してください");
+        }
+        this.name = name;
+        this.config = config;
+        this.httpClient = httpClient;
+
+        var baseUrl = config.getBaseUrl().replaceAll("/+$", "");
+        if (config.getBucket() != null) {
+            writeUri = URI.create(baseUrl + "/api/v2/write?org=" + encode(config.getOrg() == null ? "" : config.getOrg())
+                    + "&bucket=" + encode(config.getBucket()) + "&precision=ms");
+        } else {
+            writeUri = URI.create(baseUrl + "/write?db=" + encode(config.getDatabase()) + "&precision=ms");
+        }
+
+        var series = new StringBuilder(escape(config.getMeasurement(), false));
+        new TreeMap<>(config.getTags()).forEach((key, value) -> {
+            series.append(',').append(escape(key, true)).append('=').append(escape(value, true));
+        });
+        this.series = series.toString();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void write(List<Sample> samples) throws IOException, InterruptedException {
+        var body = toLines(samples);
+        if (body.isEmpty()) {
+            return;
+        }
+
+        var builder = HttpRequest.newBuilder(writeUri)
+                .header("Content-Type", "text/plain; charset=utf-8")
+                .timeout(Duration.ofMillis(config.getTimeout()))
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        if (config.getToken() != null) {
+            builder.header("Authorization", "Token " + config.getToken());
+        }
+        log.trace("InfluxDB[{}]に{}件送信します。", name, samples.size());
+
+        var response = httpClient.send(builder.build(), BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("InfluxDB[" + name + "]への送信に失敗しました。status=" + response.statusCode()
+                    + ", body=" + response.body());
+        }
+    }
+
+    /**
+     * ラインプロトコルに変換 (同じ計測時刻の計測データは1行にまとめる)
+     *
+     * @param samples 計測データ
+     * @return ラインプロトコル
+     */
+    String toLines(List<Sample> samples) {
+        var lines = new StringBuilder();
+        Long lineMillis = null;
+        for (var sample : samples) {
+            if (sample.isClose() || Double.isNaN(sample.getValue()) || Double.isInfinite(sample.getValue())) {
+                continue;
+            }
+            if (lineMillis == null || lineMillis != sample.getMillis()) {
+                if (lineMillis != null) {
+                    lines.append(' ').append(lineMillis).append('\n');
+                }
+                lines.append(series).append(' ');
+                lineMillis = sample.getMillis();
+            } else {
+                lines.append(',');
+            }
+            lines.append(escape(sample.getMetric(), true)).append('=').append(sample.getValue());
+        }
+        if (lineMillis != null) {
+            lines.append(' ').append(lineMillis).append('\n');
+        }
+        return lines.toString();
+    }
+
+    /**
+     * 測定名・タグ・フィールド名のエスケープ
+     *
+     * @param value 値
+     * @param key   タグ・フィールド名の場合はtrue (=もエスケープ)
+     * @return エスケープした値
+     */
+    private static String escape(String value, boolean key) {
+        var escaped = value.replace("\\", "\\\\").replace(",", "\\,").replace(" ", "\\ ");
+        return key ? escaped.replace("=", "\\=") : escaped;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
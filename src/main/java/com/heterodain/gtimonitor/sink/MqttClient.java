@@ -0,0 +1,217 @@
+package com.heterodain.gtimonitor.sink;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 最小限のMQTTクライアント (MQTT 3.1.1、QoS 0の送信のみ)
+ *
+ * <p>
+ * CONNECT・PUBLISH(QoS 0)・PINGREQ・DISCONNECTのみを扱う。QoS 0は応答が無いため、
+ * {@link #ping()}の応答を受け取ることで、それまでに送信したメッセージがブローカーに届いたことを確かめる。
+ * </p>
+ */
+public class MqttClient implements Closeable {
+    /** CONNECT */
+    private static final int CONNECT = 0x10;
+    /** CONNACK */
+    private static final int CONNACK = 0x20;
+    /** PUBLISH (QoS 0) */
+    private static final int PUBLISH = 0x30;
+    /** PINGREQ */
+    private static final int PINGREQ = 0xC0;
+    /** PINGRESP */
+    private static final int PINGRESP = 0xD0;
+    /** DISCONNECT */
+    private static final int DISCONNECT = 0xE0;
+    /** 残りの長さの上限 */
+    private static final int MAX_REMAINING_LENGTH = 268_435_455;
+
+    /** ソケット */
+    private final Socket socket;
+    /** 受信 */
+    private final DataInputStream in;
+    /** 送信 */
+    private final OutputStream out;
+    /** 最後に送信した時刻(ミリ秒) */
+    private long lastSendMillis;
+
+    /**
+     * ブローカーに接続
+     *
+     * @param host      ホスト
+     * @param port      ポート
+     * @param clientId  クライアントID
+     * @param username  ユーザー名 (nullの場合は認証なし)
+     * @param password  パスワード
+     * @param keepAlive キープアライブ(秒)
+     * @param timeout   接続・応答タイムアウト(ミリ秒)
+     * @throws IOException 接続できない・ブローカーが拒否した場合
+     */
+    public MqttClient(String host, int port, String clientId, String username, String password, int keepAlive,
+            int timeout) throws IOException {
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+
+            var body = new ByteArrayOutputStream();
+            writeString(body, "MQTT");
+            body.write(4);
+            var flags = 0x02;
+            if (username != null) {
+                flags |= 0x80;
+                if (password != null) {
+                    flags |= 0x40;
+                }
+            }
+            body.write(flags);
+            body.write(keepAlive >> 8);
+            body.write(keepAlive);
+            writeString(body, clientId);
+            if (username != null) {
+                writeString(body, username);
+                if (password != null) {
+                    writeString(body, password);
+                }
+            }
+            writePacket(CONNECT, body.toByteArray());
+            out.flush();
+
+            var connack = readPacket();
+            if ((connack[0] & 0xF0) != CONNACK || connack.length < 3) {
+                throw new IOException("CONNACK以外の応答を受信しました: 0x" + Integer.toHexString(connack[0] & 0xFF));
+            }
+            if (connack[2] != 0) {
+                throw new IOException("ブローカーが接続を拒否しました: リターンコード=" + connack[2]);
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * メッセージを送信 (QoS 0、バッファに書き込むだけで送信は{@link #ping()}まで待つ場合がある)
+     *
+     * @param topic   トピック
+     * @param payload メッセージ
+     * @throws IOException
+     */
+    public void publish(String topic, byte[] payload) throws IOException {
+        var body = new ByteArrayOutputStream(topic.length() + payload.length + 2);
+        writeString(body, topic);
+        body.write(payload);
+        writePacket(PUBLISH, body.toByteArray());
+    }
+
+    /**
+     * PINGREQを送信して応答を待つ (それまでのメッセージを送信)
+     *
+     * @throws IOException 応答が無い・切断された場合
+     */
+    public void ping() throws IOException {
+        writePacket(PINGREQ, new byte[0]);
+        out.flush();
+        while (true) {
+            var packet = readPacket();
+            if ((packet[0] & 0xF0) == PINGRESP) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 最後に送信した時刻
+     *
+     * @return 時刻(ミリ秒)
+     */
+    public long getLastSendMillis() {
+        return lastSendMillis;
+    }
+
+    /**
+     * DISCONNECTを送信して切断
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writePacket(DISCONNECT, new byte[0]);
+            out.flush();
+        } catch (IOException e) {
+            // 切断済み
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * パケットを送信 (固定ヘッダー+可変ヘッダー・ペイロード)
+     */
+    private void writePacket(int type, byte[] body) throws IOException {
+        if (body.length > MAX_REMAINING_LENGTH) {
+            throw new IOException("パケットが大きすぎます: " + body.length + "バイト");
+        }
+        out.write(type);
+        var length = body.length;
+        do {
+            var digit = length % 128;
+            length /= 128;
+            out.write(length > 0 ? digit | 0x80 : digit);
+        } while (length > 0);
+        out.write(body);
+        lastSendMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * パケットを受信
+     *
+     * @return 固定ヘッダーの1バイト目+残りのバイト
+     */
+    private byte[] readPacket() throws IOException {
+        var type = in.read();
+        if (type < 0) {
+            throw new EOFException("ブローカーから切断されました。");
+        }
+        int length = 0;
+        int digit;
+        int shift = 0;
+        do {
+            if (shift > 21) {
+                throw new IOException("不正な残りの長さを受信しました。");
+            }
+            digit = in.readUnsignedByte();
+            length |= (digit & 0x7F) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+
+        var packet = new byte[length + 1];
+        packet[0] = (byte) type;
+        in.readFully(packet, 1, length);
+        return packet;
+    }
+
+    /**
+     * UTF-8の文字列 (長さ2バイト+本体)
+     */
+    private static void writeString(ByteArrayOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("文字列が長すぎます: " + bytes.length + "バイト");
+        }
+        out.write(bytes.length >> 8);
+        out.write(bytes.length);
+        out.write(bytes);
+    }
+}
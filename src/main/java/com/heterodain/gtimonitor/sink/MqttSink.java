@@ -0,0 +1,94 @@
+package com.heterodain.gtimonitor.sink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.model.Sample;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MQTTブローカーの送信先
+ *
+ * <p>
+ * 計測データ毎に"トピックの接頭辞/計測値名"に送信する。まとめて送信した後にPINGREQの応答を待ち、
+ * 応答が無い場合は送信失敗として再接続・再送する。
+ * </p>
+ *
+ * <pre>
+ * gti-monitor/power {"time":1654041600000,"value":412.5}
+ * </pre>
+ */
+@Slf4j
+public class MqttSink implements TelemetrySink {
+    /** 送信先の名前 */
+    private final String name;
+    /** 設定 */
+    private final SinkConfig.Mqtt config;
+    /** 接続 (未接続の場合はnull) */
+    private MqttClient client;
+
+    /**
+     * コンストラクタ (接続は最初の送信時)
+     *
+     * @param name   送信先の名前
+     * @param config 設定
+     */
+    public MqttSink(String name, SinkConfig.Mqtt config) {
+        this.name = name;
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void write(List<Sample> samples) throws IOException {
+        // キープアライブを過ぎた接続はブローカーに切断されているため、送信前に接続し直す
+        if (client != null && config.getKeepAlive() > 0
+                && System.currentTimeMillis() - client.getLastSendMillis() > config.getKeepAlive() * 1000L) {
+            disconnect();
+        }
+        if (client == null) {
+            log.debug("MQTTブローカー[{}]に接続します。{}:{}", name, config.getHost(), config.getPort());
+            client = new MqttClient(config.getHost(), config.getPort(), config.getClientId(), config.getUsername(),
+                    config.getPassword(), config.getKeepAlive(), config.getTimeout());
+        }
+
+        try {
+            for (var sample : samples) {
+                if (sample.isClose() || Double.isNaN(sample.getValue()) || Double.isInfinite(sample.getValue())) {
+                    continue;
+                }
+                var payload = "{\"time\":" + sample.getMillis() + ",\"value\":" + sample.getValue() + "}";
+                client.publish(config.getTopic() + "/" + sample.getMetric(),
+                        payload.getBytes(StandardCharsets.UTF_8));
+            }
+            client.ping();
+        } catch (IOException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+
+    private void disconnect() {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.debug("MQTTブローカー[{}]の切断に失敗しました。", name, e);
+        }
+        client = null;
+    }
+}
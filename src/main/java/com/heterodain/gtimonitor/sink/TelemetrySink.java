@@ -0,0 +1,40 @@
+package com.heterodain.gtimonitor.sink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import com.heterodain.gtimonitor.model.Sample;
+
+/**
+ * 計測データの送信先
+ *
+ * <p>
+ * {@link BatchingSink}の送信スレッドから、まとめた計測データを順に渡す。
+ * 送信に失敗した場合は例外を投げれば、同じ計測データを再送間隔の後に再び渡す。
+ * </p>
+ */
+public interface TelemetrySink extends Closeable {
+    /**
+     * 送信先の名前
+     *
+     * @return 送信先の名前
+     */
+    String getName();
+
+    /**
+     * 計測データをまとめて送信
+     *
+     * @param samples 計測データ (計測時刻順)
+     * @throws IOException          送信に失敗した場合
+     * @throws InterruptedException
+     */
+    void write(List<Sample> samples) throws IOException, InterruptedException;
+
+    /**
+     * 接続を閉じる
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,188 @@
+package com.heterodain.gtimonitor.sink;
+
+import java.io.Closeable;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.config.SinkConfig.Resolution;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 計測データの追加の送信先 (Ambient以外)
+ *
+ * <p>
+ * 送信先毎に{@link BatchingSink}でバッファ・送信スレッドを分け、設定した粒度(サンプル毎・3分値)の計測データを送信する。
+ * </p>
+ */
+@Component
+@Slf4j
+public class TelemetrySinks implements Closeable {
+    /** Httpクライアント (Springの管理外で生成した場合は専用) */
+    @Autowired
+    private HttpClient httpClient;
+    /** 送信先 */
+    private final List<BatchingSink> sinks = new CopyOnWriteArrayList<>();
+
+    /**
+     * 送信先を開始
+     *
+     * @param config 送信先の設定
+     */
+    public void connect(SinkConfig config) {
+        connect(config, null);
+    }
+
+    /**
+     * 送信先を開始 (複数拠点モード)
+     *
+     * <p>
+     * 拠点毎の計測データを区別できるよう、InfluxDBにはsiteタグ(指定が無い場合)を付け、
+     * MQTTはトピックの接頭辞とクライアントIDに拠点名を付ける。
+     * </p>
+     *
+     * @param config 送信先の設定
+     * @param site   拠点名 (単一拠点モードの場合はnull)
+     */
+    public synchronized void connect(SinkConfig config, String site) {
+        if (httpClient == null) {
+            httpClient = HttpClient.newHttpClient();
+        }
+
+        var names = new HashSet<String>();
+        for (int i = 0; i < config.getInflux().size(); i++) {
+            var influx = config.getInflux().get(i);
+            var name = nameOf(influx, "influx", i, names);
+            if (site != null && !influx.getTags().containsKey("site")) {
+                var tags = new LinkedHashMap<>(influx.getTags());
+                tags.put("site", site);
+                influx.setTags(tags);
+            }
+            add(new InfluxSink(name, influx, httpClient), influx);
+        }
+        for (int i = 0; i < config.getMqtt().size(); i++) {
+            var mqtt = config.getMqtt().get(i);
+            var name = nameOf(mqtt, "mqtt", i, names);
+            if (site != null) {
+                // 同じブローカーに同じクライアントIDで接続すると、先の接続が切断されるため
+                mqtt.setTopic(mqtt.getTopic() + "/" + site);
+                mqtt.setClientId(mqtt.getClientId() + "-" + site);
+            }
+            add(new MqttSink(name, mqtt), mqtt);
+        }
+    }
+
+    /**
+     * 送信先を追加
+     *
+     * @param sink   送信先
+     * @param config 送信先の設定
+     */
+    public void add(TelemetrySink sink, SinkConfig.Sink config) {
+        sinks.add(new BatchingSink(sink, config));
+        log.info("送信先[{}]を開始しました。粒度={}, 最大件数={}, 送信間隔={}ms", sink.getName(), config.getResolution(),
+                config.getBatchSize(), config.getFlushInterval());
+    }
+
+    private static String nameOf(SinkConfig.Sink config, String type, int index, HashSet<String> names) {
+        var name = config.getName() != null ? config.getName() : type + (index + 1);
+        if (!names.add(name)) {
+            throw new IllegalArgumentException("送信先の名前が重複しています: " + name);
+        }
+        return name;
+    }
+
+    /**
+     * 指定した粒度の送信先があるかどうか
+     *
+     * @param resolution 粒度
+     * @return 送信先がある場合はtrue
+     */
+    public boolean has(Resolution resolution) {
+        return sinks.stream().anyMatch(s -> s.getResolution() == resolution);
+    }
+
+    /**
+     * サンプル毎の計測データを送信 (待たない)
+     *
+     * @param sample 計測データ
+     */
+    public void onSample(Sample sample) {
+        if (sample.isClose()) {
+            return;
+        }
+        for (var sink : sinks) {
+            if (sink.getResolution() == Resolution.SAMPLE) {
+                sink.offer(sample);
+            }
+        }
+    }
+
+    /**
+     * 3分値を送信 (待たない)
+     *
+     * @param measureData 3分値
+     */
+    public void onWindow(MeasureData measureData) {
+        var samples = toSamples(measureData);
+        for (var sink : sinks) {
+            if (sink.getResolution() == Resolution.WINDOW) {
+                samples.forEach(sink::offer);
+            }
+        }
+    }
+
+    /**
+     * 3分値を計測値毎の計測データに変換 (集計した時刻、値の無い計測値は除く)
+     *
+     * @param measureData 3分値
+     * @return 計測データ
+     */
+    static List<Sample> toSamples(MeasureData measureData) {
+        var millis = measureData.getTime().toInstant().toEpochMilli();
+        var samples = new ArrayList<Sample>();
+        addSample(samples, "light", millis, measureData.getLight());
+        addSample(samples, "power", millis, measureData.getPower());
+        addSample(samples, "fused", millis, measureData.getFusedPower());
+        addSample(samples, "hash", millis, measureData.getHash());
+        if (measureData.getMetrics() != null) {
+            measureData.getMetrics().forEach((metric, value) -> addSample(samples, metric, millis, value));
+        }
+        return samples;
+    }
+
+    private static void addSample(List<Sample> samples, String metric, long millis, Double value) {
+        if (value != null) {
+            samples.add(Sample.of(metric, millis, value));
+        }
+    }
+
+    /**
+     * 送信先取得
+     *
+     * @return 送信先
+     */
+    public List<BatchingSink> getSinks() {
+        return List.copyOf(sinks);
+    }
+
+    /**
+     * 全ての送信先を閉じる (未送信データは1回だけ送信)
+     */
+    @Override
+    public void close() {
+        var closing = List.copyOf(sinks);
+        sinks.clear();
+        closing.parallelStream().forEach(BatchingSink::close);
+    }
+}
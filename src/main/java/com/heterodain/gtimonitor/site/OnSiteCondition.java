@@ -0,0 +1,22 @@
+package com.heterodain.gtimonitor.site;
+
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * 拠点を動かすコンテキストかどうか
+ *
+ * <p>
+ * 単一拠点モードではアプリケーションのコンテキスト、複数拠点モードでは拠点毎のコンテキストのみ一致する。
+ * 複数拠点モードのアプリケーションのコンテキストは共有のコンポーネントだけを持ち、拠点の制御は動かさない。
+ * </p>
+ */
+public class OnSiteCondition implements Condition {
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        var environment = context.getEnvironment();
+        return environment.containsProperty(SiteContexts.SITE_NAME)
+                || !environment.containsProperty("multi-site.sites[0].name");
+    }
+}
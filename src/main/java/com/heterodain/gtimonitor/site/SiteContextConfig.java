@@ -0,0 +1,36 @@
+package com.heterodain.gtimonitor.site;
+
+import com.heterodain.gtimonitor.config.SchedulingConfig;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * 拠点毎のコンテキストの設定 (複数拠点モード)
+ *
+ * <p>
+ * 拠点の設定をバインドし、拠点のタスクを共有のスケジューラーで実行する。
+ * 拠点毎のコンテキストに無いコンポーネント(HTTPクライアント・JSONパーサー・時計・外部サービス・HTTP API)は
+ * アプリケーションのコンテキストのものを共有する。
+ * 拠点毎のコンテキストにのみ登録するため、コンポーネントスキャンの対象にしない(@Configurationを付けない)。
+ * </p>
+ */
+@EnableConfigurationProperties
+@Import(SchedulingConfig.class)
+public class SiteContextConfig {
+    /**
+     * 拠点のスケジューラー
+     *
+     * @param taskScheduler 共有のスケジューラー
+     * @param site          拠点名
+     * @return 拠点のスケジューラー
+     */
+    @Bean
+    public SiteScheduler siteTaskScheduler(ThreadPoolTaskScheduler taskScheduler,
+            @Value("${" + SiteContexts.SITE_NAME + "}") String site) {
+        return new SiteScheduler(taskScheduler, site);
+    }
+}
@@ -0,0 +1,200 @@
+package com.heterodain.gtimonitor.site;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+
+import com.heterodain.gtimonitor.api.LiveStore;
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.config.CostConfig;
+import com.heterodain.gtimonitor.config.DeviceConfig;
+import com.heterodain.gtimonitor.config.MultiSiteConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.config.MultiSiteConfig.Site;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+import com.heterodain.gtimonitor.device.LightSensorDevice;
+import com.heterodain.gtimonitor.device.ModbusBusPool;
+import com.heterodain.gtimonitor.device.ModbusDeviceRegistry;
+import com.heterodain.gtimonitor.sink.TelemetrySinks;
+import com.heterodain.gtimonitor.task.GridTieInverterTasks;
+import com.heterodain.gtimonitor.util.LogContext;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 拠点毎のコンテキスト (複数拠点モード)
+ *
+ * <p>
+ * 拠点毎に子のコンテキストを作り、デバイス・3分値・制御・Ambientチャネル・追加の送信先・スナップショットを分ける。
+ * 子のコンテキストの環境は、拠点の設定を共通の設定の上に重ねたもの。子に無いコンポーネント
+ * (HTTPクライアント・スケジューラー・外部サービス・HTTP API)は全ての拠点で共有する。
+ * 1拠点の起動に失敗しても、他の拠点は起動する。
+ * </p>
+ */
+@Component
+@Profile("!replay & !backtest")
+@DependsOn({ "taskScheduler", "apiServer" })
+@Slf4j
+public class SiteContexts implements ApplicationRunner {
+    /** 拠点名のプロパティ (拠点毎のコンテキストのみ) */
+    public static final String SITE_NAME = "site.name";
+
+    /** 拠点毎のコンポーネント (同じ名前のアプリケーションのコンテキストのコンポーネントより優先される) */
+    private static final Class<?>[] SITE_COMPONENTS = { DeviceConfig.class, ServiceConfig.class,
+            ControlConfig.class, CostConfig.class, SinkConfig.class, ModbusBusPool.class,
+            GridTieInverterDevice.class, LightSensorDevice.class, ModbusDeviceRegistry.class, TelemetrySinks.class,
+            LiveStore.class, GridTieInverterTasks.class };
+    /** 拠点名 (HTTP APIのパス・MQTTのトピックに使用) */
+    private static final Pattern SITE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    @Autowired
+    private MultiSiteConfig multiSiteConfig;
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    /** 起動した拠点 (拠点名→コンテキスト) */
+    private final Map<String, AnnotationConfigApplicationContext> sites = new LinkedHashMap<>();
+
+    /**
+     * 全ての拠点を起動
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!multiSiteConfig.isMultiSite()) {
+            return;
+        }
+
+        var names = new HashSet<String>();
+        for (var site : multiSiteConfig.getSites()) {
+            if (site.getName() == null || !SITE_NAME_PATTERN.matcher(site.getName()).matches()) {
+                throw new IllegalArgumentException("拠点名は英数字・-・_で指定してください: " + site.getName());
+            }
+            if (!names.add(site.getName())) {
+                throw new IllegalArgumentException("拠点名が重複しています: " + site.getName());
+            }
+        }
+
+        var failures = new ArrayList<String>();
+        for (int i = 0; i < multiSiteConfig.getSites().size(); i++) {
+            var site = multiSiteConfig.getSites().get(i);
+            if (!Boolean.TRUE.equals(site.getEnabled())) {
+                log.info("拠点[{}]は無効です。", site.getName());
+                continue;
+            }
+            try (var ignored = MDC.putCloseable(LogContext.SITE, site.getName())) {
+                sites.put(site.getName(), start(site, i));
+                log.info("拠点[{}]を起動しました。", site.getName());
+            } catch (Exception e) {
+                log.error("拠点[{}]の起動に失敗しました。", site.getName(), e);
+                failures.add(site.getName());
+            }
+        }
+        if (sites.isEmpty()) {
+            throw new IllegalStateException("全ての拠点の起動に失敗しました。" + failures);
+        }
+        log.info("{}拠点を起動しました。{} (失敗={})", sites.size(), sites.keySet(), failures);
+    }
+
+    /**
+     * 拠点のコンテキストを起動
+     *
+     * @param site  拠点の設定
+     * @param index 拠点の設定の番号
+     * @return 拠点のコンテキスト
+     * @throws IOException 拠点の設定ファイルを読み込めない場合
+     */
+    private AnnotationConfigApplicationContext start(Site site, int index) throws IOException {
+        var context = new AnnotationConfigApplicationContext();
+        context.setDisplayName("site:" + site.getName());
+        context.setEnvironment(siteEnvironment(site, index));
+        context.setParent(applicationContext);
+        context.register(SiteContextConfig.class);
+        context.register(SITE_COMPONENTS);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * 拠点の環境 (拠点の設定 > 拠点の設定ファイル > 共通の設定)
+     *
+     * @param site  拠点の設定
+     * @param index 拠点の設定の番号
+     * @return 拠点の環境 (共通の設定は親のコンテキストを設定した時に併合される)
+     * @throws IOException 拠点の設定ファイルを読み込めない場合
+     */
+    private ConfigurableEnvironment siteEnvironment(Site site, int index) throws IOException {
+        var environment = new StandardEnvironment();
+        var propertySources = environment.getPropertySources();
+        propertySources.remove(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME);
+        propertySources.remove(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME);
+
+        // multi-site.sites[n].propertiesの下を、先頭を取り除いて拠点の設定にする
+        var prefix = "multi-site.sites[" + index + "].properties.";
+        var properties = new LinkedHashMap<String, Object>();
+        properties.put(SITE_NAME, site.getName());
+        for (var propertySource : applicationContext.getEnvironment().getPropertySources()) {
+            if (!(propertySource instanceof EnumerablePropertySource)) {
+                continue;
+            }
+            for (var name : ((EnumerablePropertySource<?>) propertySource).getPropertyNames()) {
+                if (name.startsWith(prefix)) {
+                    properties.putIfAbsent(name.substring(prefix.length()), propertySource.getProperty(name));
+                }
+            }
+        }
+        propertySources.addFirst(new MapPropertySource("site:" + site.getName(), properties));
+
+        if (site.getFile() != null) {
+            var fileSources = new YamlPropertySourceLoader().load("site:" + site.getName() + ":" + site.getFile(),
+                    new FileSystemResource(site.getFile()));
+            fileSources.forEach(propertySources::addLast);
+        }
+        return environment;
+    }
+
+    /**
+     * 起動した拠点のコンテキスト
+     *
+     * @return 拠点名→コンテキスト
+     */
+    public Map<String, AnnotationConfigApplicationContext> getSites() {
+        return sites;
+    }
+
+    /**
+     * 全ての拠点を停止 (起動と逆順)
+     */
+    @PreDestroy
+    public void close() {
+        var names = new ArrayList<>(sites.keySet());
+        for (int i = names.size() - 1; i >= 0; i--) {
+            try (var ignored = MDC.putCloseable(LogContext.SITE, names.get(i))) {
+                sites.remove(names.get(i)).close();
+            } catch (Exception e) {
+                log.error("拠点[{}]の停止に失敗しました。", names.get(i), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.heterodain.gtimonitor.site;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+
+import com.heterodain.gtimonitor.util.LogContext;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+
+/**
+ * 拠点のスケジューラー (複数拠点モード)
+ *
+ * <p>
+ * 全ての拠点で共有するスケジューラーに委譲し、タスクの実行中はログに拠点名を出力する。
+ * 拠点のコンテキストを閉じると、その拠点のタスクだけが取り消される。
+ * </p>
+ */
+public class SiteScheduler implements TaskScheduler {
+    /** 共有のスケジューラー */
+    private final TaskScheduler delegate;
+    /** 拠点名のログのコンテキスト */
+    private final LogContext logContext;
+
+    /**
+     * コンストラクタ
+     *
+     * @param delegate 共有のスケジューラー
+     * @param site     拠点名
+     */
+    public SiteScheduler(TaskScheduler delegate, String site) {
+        this.delegate = delegate;
+        this.logContext = LogContext.site(site);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        return delegate.schedule(logContext.wrap(task), trigger);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+        return delegate.schedule(logContext.wrap(task), startTime);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        return delegate.scheduleAtFixedRate(logContext.wrap(task), startTime, period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        return delegate.scheduleAtFixedRate(logContext.wrap(task), period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        return delegate.scheduleWithFixedDelay(logContext.wrap(task), startTime, delay);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        return delegate.scheduleWithFixedDelay(logContext.wrap(task), delay);
+    }
+}
@@ -0,0 +1,142 @@
+package com.heterodain.gtimonitor.task;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.CostConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+import com.heterodain.gtimonitor.pipeline.WindowStore;
+import com.heterodain.gtimonitor.service.AmbientSchema;
+import com.heterodain.gtimonitor.service.AmbientService;
+import com.heterodain.gtimonitor.service.AmbientService.ReadData;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 1日値の集計とAmbientへの送信
+ *
+ * <p>
+ * 1日分の3分値をAmbientの現在値のチャネルから読み込んで発電量・電気代・平均ハッシュレートを集計し、
+ * store段が保存した1日のスケッチの分位点を加えて集計値のチャネルに送信する。送信は稼働系のみ行う。
+ * </p>
+ */
+@Slf4j
+public class DailySummary {
+    /** 送受信リトライ回数 */
+    private static final int RETRY_COUNT = 5;
+    /** Ambient送受信リトライ間隔(ミリ秒) */
+    private static final long AMBIENT_RETRY_INTERVAL = 5 * 60 * 1000; // 5分
+
+    private final ServiceConfig serviceConfig;
+    private final CostConfig costConfig;
+    private final AmbientService ambientService;
+    private final LeaderElection leaderElection;
+    /** 3分値・1日のスケッチの保存 (1日の分位点) */
+    private final WindowStore windowStore;
+    private final Clock clock;
+
+    /**
+     * コンストラクタ
+     *
+     * @param serviceConfig  外部サービスの設定
+     * @param costConfig     電気料金の設定
+     * @param ambientService Ambient API
+     * @param leaderElection 冗長構成の稼働系の選出
+     * @param windowStore    3分値・1日のスケッチの保存
+     * @param clock          時計
+     */
+    public DailySummary(ServiceConfig serviceConfig, CostConfig costConfig, AmbientService ambientService,
+            LeaderElection leaderElection, WindowStore windowStore, Clock clock) {
+        this.serviceConfig = serviceConfig;
+        this.costConfig = costConfig;
+        this.ambientService = ambientService;
+        this.leaderElection = leaderElection;
+        this.windowStore = windowStore;
+        this.clock = clock;
+    }
+
+    /**
+     * 1日値を送信するかどうか
+     *
+     * @return 現在値・集計値のチャネルを設定している場合はtrue
+     */
+    public boolean isEnabled() {
+        var ambientConfig = serviceConfig.getAmbient();
+        return AmbientSchema.current(ambientConfig) != null && AmbientSchema.summary(ambientConfig) != null;
+    }
+
+    /**
+     * 1日分を集計してAmbientに送信 (待機系は何もしない)
+     *
+     * @param day 集計する日
+     * @throws IOException          Ambientからのデータ取得に全て失敗した場合
+     * @throws InterruptedException
+     */
+    public void send(LocalDate day) throws IOException, InterruptedException {
+        var ambientConfig = serviceConfig.getAmbient();
+        var currentSchema = AmbientSchema.current(ambientConfig);
+        var summarySchema = AmbientSchema.summary(ambientConfig);
+        if (currentSchema == null || summarySchema == null || !leaderElection.isLeader()) {
+            return;
+        }
+
+        // 1日分のデータを取得して集計 (発電電力・ハッシュレートを割り当てたチャネルから読み込み)
+        var channelDatas = new HashMap<AmbientApi, List<ReadData>>();
+        Double power = null;
+        Double hash = null;
+        for (int i = 0; i < RETRY_COUNT; i++) {
+            try {
+                for (var metric : List.of("power", "hash")) {
+                    var channel = currentSchema.channelOf(metric);
+                    if (channel != null && !channelDatas.containsKey(channel)) {
+                        channelDatas.put(channel, ambientService.read(channel, day));
+                    }
+                }
+                // 1時間ごとの電力平均値(Wh)を算出して1日分集計
+                if (currentSchema.contains("power")) {
+                    power = MeasureUtils.dailyPower(channelDatas.get(currentSchema.channelOf("power")),
+                            d -> currentSchema.valueOf(d, "power"), clock.getZone());
+                }
+                if (currentSchema.contains("hash")) {
+                    hash = MeasureUtils.averageField(channelDatas.get(currentSchema.channelOf("hash")),
+                            d -> currentSchema.valueOf(d, "hash"));
+                }
+                break;
+            } catch (Exception e) {
+                log.error("Ambientからのデータ取得に失敗しました。", e);
+            }
+
+            // 取得失敗したら、しばらく待ってから再実行
+            Thread.sleep(AMBIENT_RETRY_INTERVAL);
+        }
+        if (power == null && hash == null) {
+            throw new IOException("Ambientからのデータ取得に失敗しました。");
+        }
+
+        // Ambient送信
+        var values = new HashMap<String, Double>();
+        values.put("power", power);
+        values.put("yen", power == null ? null : power * costConfig.getKwh() / 1000D);
+        values.put("hash", hash);
+        // 1日の分位点 (store段が併合中のスケッチを読むため、排他して算出)
+        windowStore.putDayPercentiles(values, summarySchema.getMetrics(), day);
+        for (int i = 0; i < RETRY_COUNT && leaderElection.isLeader(); i++) {
+            try {
+                log.debug("Ambientに1日値を送信します。{}", summarySchema.ordered(values));
+                ambientService.send(summarySchema, day.atStartOfDay(clock.getZone()), null, values);
+                break;
+            } catch (Exception e) {
+                log.error("Ambientへのデータ送信に失敗しました。", e);
+            }
+
+            // 送信失敗したら、しばらく待ってから再実行
+            Thread.sleep(AMBIENT_RETRY_INTERVAL);
+        }
+    }
+}
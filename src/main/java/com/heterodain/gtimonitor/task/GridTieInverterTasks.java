@@ -1,52 +1,106 @@
 package com.heterodain.gtimonitor.task;
 
 import java.io.IOException;
-import java.time.Instant;
+import java.time.Clock;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
+import com.heterodain.gtimonitor.api.ApiServer;
+import com.heterodain.gtimonitor.api.LiveStore;
+import com.heterodain.gtimonitor.config.ApiConfig;
 import com.heterodain.gtimonitor.config.ControlConfig;
 import com.heterodain.gtimonitor.config.CostConfig;
 import com.heterodain.gtimonitor.config.DeviceConfig;
 import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.SinkConfig;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Mode;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.config.SinkConfig.Resolution;
+import com.heterodain.gtimonitor.control.AdaptiveSampler;
+import com.heterodain.gtimonitor.control.ControlDispatcher;
+import com.heterodain.gtimonitor.control.EfficiencyTracker;
+import com.heterodain.gtimonitor.control.FusionEstimator;
+import com.heterodain.gtimonitor.control.OutlierFilter;
+import com.heterodain.gtimonitor.control.AdaptiveSampler.Channel;
+import com.heterodain.gtimonitor.device.DeviceUnavailableException;
 import com.heterodain.gtimonitor.device.GridTieInverterDevice;
 import com.heterodain.gtimonitor.device.LightSensorDevice;
+import com.heterodain.gtimonitor.device.ModbusDeviceRegistry;
+import com.heterodain.gtimonitor.ha.LeaderElection;
 import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.model.Sample;
+import com.heterodain.gtimonitor.pipeline.AmbientSender;
+import com.heterodain.gtimonitor.pipeline.MeasureWindow;
+import com.heterodain.gtimonitor.pipeline.SampleFilter;
+import com.heterodain.gtimonitor.pipeline.Stage;
+import com.heterodain.gtimonitor.pipeline.Stage.Overflow;
+import com.heterodain.gtimonitor.pipeline.WindowStore;
+import com.heterodain.gtimonitor.service.AmbientSchema;
 import com.heterodain.gtimonitor.service.AmbientService;
 import com.heterodain.gtimonitor.service.HiveService;
 import com.heterodain.gtimonitor.service.OpenWeatherService;
-import com.heterodain.gtimonitor.service.HiveService.OcProfile;
-import com.heterodain.gtimonitor.service.HiveService.WorkerInfo;
 import com.heterodain.gtimonitor.service.OpenWeatherService.CurrentWeather;
+import com.heterodain.gtimonitor.site.OnSiteCondition;
+import com.heterodain.gtimonitor.site.SiteContexts;
+import com.heterodain.gtimonitor.sink.TelemetrySinks;
+import com.heterodain.gtimonitor.util.LogContext;
+import com.heterodain.gtimonitor.util.MeasureUtils;
+import com.heterodain.gtimonitor.util.StartupTimer;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.scheduling.TriggerContext;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.IntervalTask;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Component;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * グリッドタイインバーター関連の非同期タスク
+ * 
+ * デバイスのサンプリング・スケジュールの実行とパイプラインの構築を行い、段毎の処理は{@link SampleFilter}・
+ * {@link WindowStore}・{@link AmbientSender}に、制御モード毎の制御は{@link ControlDispatcher}に委ねる。
+ * 1日値の送信は{@link DailySummary}に、HTTP APIの制御状態と累計のログ出力は{@link StatusReporter}に委ねる。
+ * 複数拠点モードでは拠点毎のコンテキストに1つずつ生成する。
+ * 他から参照されないため、Beanの遅延初期化(spring.main.lazy-initialization)でも起動時に生成する。
  */
 @Component
+@Conditional(OnSiteCondition.class)
+@Lazy(false)
 @Slf4j
-public class GridTieInverterTasks {
-    /** 送受信リトライ回数 */
-    private static final int RETRY_COUNT = 5;
-    /** Ambient送受信リトライ間隔(ミリ秒) */
-    private static final long AMBIENT_RETRY_INTERVAL = 5 * 60 * 1000; // 5分
-    /** Hive更新リトライ間隔(ミリ秒) */
-    private static final long HIVE_RETRY_INTERVAL = 1 * 60 * 1000; // 1分
+public class GridTieInverterTasks implements SchedulingConfigurer {
+    /** 照度センサー・GTIのサンプリング開始までの時間(ミリ秒) */
+    private static final long SAMPLING_INITIAL_DELAY = 3 * 1000; // 3秒
+
+    /** 3分値送信のスケジュール */
+    public static final String SEND_AMBIENT1_CRON = "0 */3 * * * *";
+    /** Power Limit制御のスケジュール */
+    public static final String CONTROL_POWER_CRON = "10 */15 * * * *";
+    /** 1日値送信のスケジュール */
+    public static final String SEND_AMBIENT2_CRON = "0 1 0 * * *";
+    /** 翌日のOCプロファイル計画のスケジュール */
+    public static final String PLAN_CRON = "0 0 21 * * *";
+
+    /** 現在値のチャネルに割り当てられるメトリクス (分位点・GPU毎の計測値以外) */
+    private static final List<String> CURRENT_METRICS = List.of("light", "power", "temperature", "cloudness",
+            "humidity", "oc", "hash", "fused", "confidence", "limit");
+    /** 集計値のチャネルに割り当てられるメトリクス (分位点以外) */
+    private static final List<String> SUMMARY_METRICS = List.of("power", "yen", "hash");
+    /** GPU毎の計測値 (gpu:キー:計測値) */
+    private static final List<String> GPU_METRICS = List.of("temp", "fan", "power", "hash");
 
     @Autowired
     private DeviceConfig deviceConfig;
@@ -56,6 +110,10 @@ public class GridTieInverterTasks {
     private CostConfig costConfig;
     @Autowired
     private ControlConfig controlConfig;
+    @Autowired
+    private SinkConfig sinkConfig;
+    @Autowired
+    private ApiConfig apiConfig;
 
     @Autowired
     private GridTieInverterDevice gtiDevice;
@@ -64,20 +122,51 @@ public class GridTieInverterTasks {
     @Autowired
     private LightSensorDevice lightSensorDevice;
     @Autowired
+    private ModbusDeviceRegistry modbusDeviceRegistry;
+    @Autowired
     private OpenWeatherService openWeatherService;
     @Autowired
     private HiveService hiveService;
+    @Autowired
+    private TelemetrySinks telemetrySinks;
+    @Autowired
+    private LiveStore liveStore;
+    @Autowired
+    private ApiServer apiServer;
+    @Autowired
+    private LeaderElection leaderElection;
 
-    /** 照度計測データ(3秒値) */
-    private List<Double> lightDatas = new ArrayList<>();
-    /** GTI計測データ(30秒値) */
-    private List<Double> gtiDatas = new ArrayList<>();
-    /** 計測データ(3分値) */
-    private List<MeasureData> threeMinDatas = new ArrayList<>();
-    /** 現在のOCプロファイル */
-    private OcProfile currentOcProfile;
+    @Autowired
+    private Clock clock;
+    @Autowired
+    private Environment environment;
+
+    /** 計測データのパイプラインの入口 */
+    private Stage<Sample, Sample> filterStage;
+    /** 3分値の集計 */
+    private MeasureWindow measureWindow;
+    /** パイプラインの全ての段 */
+    private volatile List<Stage<?, ?>> stages = List.of();
+    /** 外れ値除外と発電電力の推定 (filter段) */
+    private SampleFilter sampleFilter;
+    /** 3分値・1日のスケッチの保存 (store段) */
+    private WindowStore windowStore;
+    /** 制御モード毎の制御 (control段と15分毎の制御) */
+    private ControlDispatcher controlDispatcher;
+    /** 1日値の集計とAmbientへの送信 */
+    private DailySummary dailySummary;
+    /** 拠点の状態の報告 */
+    private StatusReporter statusReporter;
+    /** 照度とGTIのセンサーフュージョン */
+    private FusionEstimator fusionEstimator;
+    /** 日の出・日の入りと発電電力の変化に合わせたサンプリング間隔 (可変の場合のみ) */
+    private AdaptiveSampler adaptiveSampler;
     /** 前回の天候 */
     private String lastWeather;
+    /** 拠点名 (単一拠点モードの場合はnull) */
+    private String siteName;
+    /** 起動から最初のサンプルまでの時間 */
+    private final StartupTimer startupTimer = new StartupTimer();
 
     /**
      * 初期化処理
@@ -86,23 +175,183 @@ public class GridTieInverterTasks {
      */
     @PostConstruct
     public void init() throws IOException, InterruptedException {
+        var powerConfig = controlConfig.getPower();
+        var ambientConfig = serviceConfig.getAmbient();
+        var deviceMetrics = ModbusDeviceRegistry.metricsOf(deviceConfig.getModbusDevices());
+        if (powerConfig != null && powerConfig.getSource() == Source.METRIC
+                && !deviceMetrics.contains(powerConfig.getMetric())) {
+            throw new IllegalArgumentException(String.format(
+                    "control.power.metricに汎用のModbusデバイスの計測値名を指定してください: %s (指定可能: %s)",
+                    powerConfig.getMetric(), deviceMetrics));
+        }
+        if (ambientConfig != null) {
+            // メトリクス名とチャネル数の検証
+            var currentMetrics = new ArrayList<>(CURRENT_METRICS);
+            currentMetrics.addAll(deviceMetrics);
+            ambientConfig.getCurrentMetrics().forEach(m -> validateMetric(m, currentMetrics, true));
+            ambientConfig.getSummaryMetrics().forEach(m -> validateMetric(m, SUMMARY_METRICS, false));
+            ambientConfig.getPercentileMetrics().forEach(m -> validateMetric(m, List.of(), false));
+            for (var schema : new AmbientSchema[] { AmbientSchema.current(ambientConfig),
+                    AmbientSchema.summary(ambientConfig), AmbientSchema.percentile(ambientConfig) }) {
+                if (schema != null) {
+                    log.info("Ambientのメトリクス割り当て: {}", schema.describe());
+                }
+            }
+        }
+        siteName = environment.getProperty(SiteContexts.SITE_NAME);
+        fusionEstimator = new FusionEstimator(controlConfig.getFusion());
+        controlDispatcher = new ControlDispatcher(controlConfig, serviceConfig, hiveService, openWeatherService,
+                gtiDevice, leaderElection, clock, stateKey("ocProfile"));
+        var samplingConfig = controlConfig.getSampling();
+        if (Boolean.TRUE.equals(samplingConfig.getAdaptive())) {
+            var latitude = samplingConfig.getLatitude() != null ? samplingConfig.getLatitude()
+                    : controlConfig.getPlan().getLatitude();
+            var longitude = samplingConfig.getLongitude() != null ? samplingConfig.getLongitude()
+                    : controlConfig.getPlan().getLongitude();
+            if (latitude == null || longitude == null) {
+                throw new IllegalArgumentException("control.sampling.latitude/longitudeに設置場所の座標を指定してください");
+            }
+            adaptiveSampler = new AdaptiveSampler(samplingConfig, latitude, longitude);
+            var sunTimes = adaptiveSampler.getSunTimes(clock.millis());
+            log.info("日の出={}、日の入り={}", sunTimes.getLeft().atZone(clock.getZone()).toLocalTime(),
+                    sunTimes.getRight().atZone(clock.getZone()).toLocalTime());
+        }
+        sampleFilter = new SampleFilter(controlConfig.getFilter(), fusionEstimator, adaptiveSampler);
+        statusReporter = new StatusReporter(siteName, controlConfig, leaderElection, controlDispatcher,
+                fusionEstimator, sampleFilter, lightSensorDevice, gtiDevice, modbusDeviceRegistry, telemetrySinks,
+                startupTimer, this::getStages);
+
+        // リプレイ・バックテストモードでは、再現性のためパイプラインを呼び出し元のスレッドで同期して処理し、
+        // 追加の送信先への送信・HTTP APIは起動しない
+        var live = !environment.acceptsProfiles(Profiles.of("replay | backtest"));
+        leaderElection.publish(stateKey("ocProfile"), controlDispatcher::getOcProfileName);
+        if (live) {
+            telemetrySinks.connect(sinkConfig, siteName);
+            if (apiConfig.getEnabled()) {
+                liveStore.setStatusSupplier(statusReporter::snapshot);
+                apiServer.start();
+                if (siteName != null) {
+                    apiServer.addSite(siteName, liveStore);
+                }
+            }
+        }
+        buildPipeline(live);
+        dailySummary = new DailySummary(serviceConfig, costConfig, ambientService, leaderElection, windowStore, clock);
+
+        // リプレイ・バックテストモードではデバイスに接続しない
+        if (environment.acceptsProfiles(Profiles.of("replay | backtest"))) {
+            if (powerConfig != null && powerConfig.getMode() == Mode.LOCAL) {
+                log.warn("リプレイ・バックテストモードではGTIの出力制限は制御しません。");
+            }
+            return;
+        }
+        controlDispatcher.startLocal(deviceConfig.getGti());
+
+        // デバイスには並行して接続し(device.reconnect.async-start)、接続できたデバイスから直ちに読み込む
         // 照度センサー接続
         var lightSensorConfig = deviceConfig.getLightSensor();
         if (lightSensorConfig != null) {
-            lightSensorDevice.connect(lightSensorConfig);
+            lightSensorDevice.connect(lightSensorConfig, deviceConfig.getReconnect());
+            lightSensorDevice.getConnection().addConnectListener(this::getLightData);
         }
 
         // GTI接続
         var gtiConfig = deviceConfig.getGti();
         if (gtiConfig != null) {
-            gtiDevice.connect(gtiConfig);
+            var gtiConfigs = new ArrayList<>(List.of(gtiConfig));
+            gtiConfigs.addAll(deviceConfig.getGtis());
+            if (controlDispatcher.isLocal() && gtiConfigs.size() > 1) {
+                log.warn("GTIの出力制限は先頭のGTIのみ変更します。");
+            }
+            gtiDevice.connect(gtiConfigs, deviceConfig.getReconnect());
+            for (var connection : gtiDevice.getConnections()) {
+                connection.addConnectListener(() -> {
+                    controlDispatcher.readPowerLimit();
+                    getGtiData();
+                });
+            }
+        }
+
+        // 汎用のModbusデバイス接続 (GTIと同じバスのデバイスは接続を共有)
+        if (!deviceConfig.getModbusDevices().isEmpty()) {
+            modbusDeviceRegistry.connect(deviceConfig.getModbusDevices(), deviceConfig.getReconnect());
+            for (var connection : modbusDeviceRegistry.getConnections()) {
+                connection.addConnectListener(
+                        () -> deviceConfig.getModbusDevices().forEach(d -> getModbusData(d.getName())));
+            }
         }
+
+        // 外部サービスの準備は起動を待たせない
+        var warmUp = new Thread(LogContext.current().wrap(this::warmUp), "warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
     }
 
     /**
-     * 3秒毎に照度センサーからデータ取得
+     * 外部サービスの準備 (起動後にバックグラウンドで実行)
+     * 
+     * HTTPクライアントの接続(DNS・TLS)を確立し、現在のOCプロファイル・天候・当日の計画を取得しておく。
+     * 最初の制御で現在と同じOCプロファイルに変更し直したり、最初の3分値まで天候による推定が遅れたりしないようにする。
+     */
+    private void warmUp() {
+        var start = System.nanoTime();
+        controlDispatcher.syncOcProfile(null);
+
+        var openWeatherConfig = serviceConfig.getOpenWeatherApi();
+        if (openWeatherConfig != null) {
+            try {
+                var weather = openWeatherService.getCurrentWeather(openWeatherConfig);
+                fusionEstimator.updateWeather(weather.getCloudness(), weather.getTemperature());
+            } catch (Exception e) {
+                log.warn("天候を取得できませんでした。", e);
+            }
+        }
+        controlDispatcher.planToday();
+        log.info("外部サービスの準備が完了しました。({}ms, OCプロファイル={})", (System.nanoTime() - start) / 1_000_000L,
+                controlDispatcher.getOcProfileName());
+    }
+
+    /**
+     * 照度センサー・GTIのサンプリングを登録 (サンプリング間隔が可変の場合は、サンプル毎に次の時刻を決める)
+     * 汎用のModbusデバイスは、デバイス毎の読み込み間隔で登録する。
+     */
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addTriggerTask(this::getLightData, context -> nextSampling(context, Channel.LIGHT_SENSOR));
+        taskRegistrar.addTriggerTask(this::getGtiData, context -> nextSampling(context, Channel.GTI));
+        for (var modbusDevice : deviceConfig.getModbusDevices()) {
+            taskRegistrar.addFixedDelayTask(new IntervalTask(() -> getModbusData(modbusDevice.getName()),
+                    modbusDevice.getInterval() * 1000L, SAMPLING_INITIAL_DELAY));
+        }
+    }
+
+    /**
+     * 次のサンプリング時刻
+     * 
+     * @param context 前回の実行状況
+     * @param channel サンプリング対象
+     * @return 次のサンプリング時刻
+     */
+    private Date nextSampling(TriggerContext context, Channel channel) {
+        var last = context.lastCompletionTime();
+        if (last == null) {
+            return new Date(clock.millis() + SAMPLING_INITIAL_DELAY);
+        }
+
+        long interval;
+        if (adaptiveSampler != null) {
+            interval = adaptiveSampler.interval(channel, clock.millis());
+        } else if (channel == Channel.LIGHT_SENSOR) {
+            interval = controlConfig.getSampling().getLightInterval() * 1000L;
+        } else {
+            interval = controlConfig.getSampling().getGtiInterval() * 1000L;
+        }
+        return new Date(last.getTime() + interval);
+    }
+
+    /**
+     * 照度センサーからデータ取得 (通常3秒毎)
      */
-    @Scheduled(initialDelay = 3, fixedDelay = 3, timeUnit = TimeUnit.SECONDS)
     public void getLightData() {
         var lightSensorConfig = deviceConfig.getLightSensor();
         if (lightSensorConfig == null) {
@@ -112,234 +361,325 @@ public class GridTieInverterTasks {
         try {
             var current = lightSensorDevice.readLux();
             log.debug("current={} lx", current);
-            synchronized (lightDatas) {
-                lightDatas.add(current);
-            }
+            addLightData(current);
+            startupTimer.sampled("照度センサー");
 
+        } catch (DeviceUnavailableException e) {
+            // 再接続中 (接続の監視が状態の変化をログ出力する)
+            log.debug(e.getMessage());
         } catch (Exception e) {
+            if (e.getCause() instanceof NumberFormatException) {
+                // 途中で切れた行などは、1サンプルの欠損として扱う
+                log.warn(e.getMessage());
+                if (sampleFilter.getLightFilter() != null) {
+                    sampleFilter.getLightFilter().invalid();
+                }
+                return;
+            }
             log.error("照度センサーへのアクセスに失敗しました。", e);
         }
     }
 
     /**
-     * 30秒毎にグリッドタイインバーターからデータ取得
+     * グリッドタイインバーターからデータ取得 (通常30秒毎)
      */
-    @Scheduled(initialDelay = 3, fixedDelay = 30, timeUnit = TimeUnit.SECONDS)
     public void getGtiData() {
         var gtiConfig = deviceConfig.getGti();
-        if (gtiConfig == null) {
+        if (gtiConfig == null || controlDispatcher.isLocal()) {
             return;
         }
 
         try {
             var current = gtiDevice.getCurrentPower();
             log.debug("current={} W", current);
-            synchronized (gtiDatas) {
-                gtiDatas.add(current);
-            }
+            addGtiData(current);
+            startupTimer.sampled("GTI");
 
+        } catch (DeviceUnavailableException e) {
+            log.debug(e.getMessage());
         } catch (Exception e) {
             log.error("GTIへのアクセスに失敗しました。", e);
         }
     }
 
     /**
-     * 3分毎にAmbientにデータ送信
+     * 汎用のModbusデバイスからデータ取得 (デバイス毎の読み込み間隔)
+     * 
+     * @param name デバイス名
      */
-    @Scheduled(cron = "0 */3 * * * *")
-    public void sendAmbient1() throws Exception {
-        if (lightDatas.isEmpty() && gtiDatas.isEmpty()) {
-            return;
-        }
-
-        var measureData = new MeasureData();
-
-        // ワーカーのハッシュレート取得
-        var hiveConfig = serviceConfig.getHiveApi();
-        if (hiveConfig != null) {
-            var workerInfo = hiveService.getWorkerInfo(hiveConfig);
-            log.trace("ワーカー情報={}", workerInfo);
-            measureData.setHash(workerInfo.getHash());
-        }
+    public void getModbusData(String name) {
+        try {
+            var values = modbusDeviceRegistry.poll(name);
+            log.debug("{}: {}", name, values);
+            values.forEach(this::addMetricData);
+            startupTimer.sampled(name);
 
-        // 天候取得
-        CurrentWeather weather;
-        var openWeatherConfig = serviceConfig.getOpenWeatherApi();
-        if (openWeatherConfig != null) {
-            weather = openWeatherService.getCurrentWeather(openWeatherConfig);
-            log.trace("天候情報={}", weather);
-            if (weather.getWeather().equals(lastWeather)) {
-                // 前回の天候と同じ場合は、Ambientにコメントを送信しない
-                weather.setWeather(null);
-            } else {
-                lastWeather = weather.getWeather();
-            }
-        } else {
-            weather = new CurrentWeather();
+        } catch (DeviceUnavailableException e) {
+            log.debug(e.getMessage());
+        } catch (Exception e) {
+            log.error("Modbusデバイス[{}]へのアクセスに失敗しました。", name, e);
         }
+    }
 
-        // 平均値算出
-        if (!lightDatas.isEmpty()) {
-            synchronized (lightDatas) {
-                measureData.setLight(lightDatas.stream().mapToDouble(d -> d).average().orElse(0D));
-                lightDatas.clear();
-            }
-        }
-        if (!gtiDatas.isEmpty()) {
-            synchronized (gtiDatas) {
-                measureData.setPower(gtiDatas.stream().mapToDouble(d -> d).average().orElse(0D));
-                gtiDatas.clear();
-            }
-        }
-        synchronized (threeMinDatas) {
-            threeMinDatas.add(measureData);
+    /**
+     * GTI出力制限モードでは、短い間隔でGTIからデータ取得して出力制限を調整
+     */
+    @Scheduled(initialDelay = 3000, fixedDelayString = "${control.power.local-interval:500}")
+    public void getGtiDataFast() {
+        if (!controlDispatcher.isLocal()) {
+            return;
         }
-
-        // 現在のOCプロファイルをAmbientの状態色に変換(HIGH=赤[9],LOW=緑[12])
-        var highProfileName = controlConfig.getPower().getHighProfileName();
-        var ocState = Optional.ofNullable(currentOcProfile).map(p -> p.getName().equals(highProfileName) ? 9D : 12D)
-                .orElse(null);
-
-        // Ambient送信
-        var ambientConfig = serviceConfig.getAmbient().getCurrent();
-        if (ambientConfig == null) {
+        // 夜間は間引く
+        if (adaptiveSampler != null && adaptiveSampler.skipAtNight(Channel.GTI, clock.millis())) {
             return;
         }
 
         try {
-            var sendDatas = new Double[] { measureData.getLight(), measureData.getPower(), weather.getTemperature(),
-                    toDouble(weather.getCloudness()), toDouble(weather.getHumidity()), ocState, measureData.getHash() };
-            log.debug(
-                    "Ambientに3分値を送信します。current={}lx,current={}W,weather={},temp={}℃,cloud={}%,humidity={}%,oc={},hash={}",
-                    sendDatas[0], sendDatas[1], lastWeather, sendDatas[2], sendDatas[3], sendDatas[4], sendDatas[5],
-                    sendDatas[6]);
-
-            ambientService.send(ambientConfig, ZonedDateTime.now(), weather.getWeather(), sendDatas);
+            var current = gtiDevice.getCurrentPower();
+            log.trace("current={} W", current);
+            addGtiData(current);
+            startupTimer.sampled("GTI");
+
+        } catch (DeviceUnavailableException e) {
+            log.trace(e.getMessage());
         } catch (Exception e) {
-            log.error("Ambientへのデータ送信に失敗しました。", e);
+            log.error("GTIへのアクセスに失敗しました。", e);
         }
     }
 
     /**
-     * 15分毎にPower Limit制御
+     * 照度計測データを追加
+     * 
+     * @param lux 照度(Lux)
      */
-    @Scheduled(cron = "10 */15 * * * *")
-    public void controlPower() throws Exception {
-        if (threeMinDatas.isEmpty()) {
+    public void addLightData(Double lux) {
+        filterStage.offer(Sample.of("light", clock.millis(), lux));
+    }
+
+    /**
+     * GTI計測データを追加
+     * 
+     * @param power 発電電力(W)
+     */
+    public void addGtiData(Double power) {
+        filterStage.offer(Sample.of("power", clock.millis(), power));
+    }
+
+    /**
+     * 汎用のModbusデバイスの計測データを追加
+     * 
+     * @param metric 計測値名("デバイス名.レジスタ名")
+     * @param value  計測値
+     */
+    public void addMetricData(String metric, Double value) {
+        if (value == null || value.isNaN()) {
             return;
         }
+        filterStage.offer(Sample.of(metric, clock.millis(), value));
+    }
 
-        // 平均値算出
-        double average;
-        synchronized (threeMinDatas) {
-            switch (controlConfig.getPower().getSource()) {
-                case LIGHT_SENSOR:
-                    average = threeMinDatas.stream().mapToDouble(MeasureData::getLight).average().orElse(0D);
-                    break;
-                case GTI:
-                    average = threeMinDatas.stream().mapToDouble(MeasureData::getPower).average().orElse(0D);
-                    break;
-                default:
-                    average = 0D;
-                    break;
-            }
-            threeMinDatas.clear();
+    /**
+     * 計測データのパイプラインを構築
+     * 
+     * <pre>
+     * サンプル(照度センサー・GTI・汎用のModbusデバイス、3分値の区切り)
+     *   → filter(外れ値除外・照度からの推定) ┬→ window(3分値の集計) ┬→ store(3分値の保存)
+     *                                      │                     ├→ ambient(Ambientへの送信)
+     *                                      │                     └→ sink-window(追加の送信先に3分値を送信)
+     *                                      ├→ control(サンプル毎の制御)
+     *                                      └→ sink-sample(追加の送信先にサンプルを送信)
+     * </pre>
+     * 
+     * HTTP APIを起動している場合は、filter・windowの下流にapi-sample・api-window(スナップショットの更新・ライブ配信)を追加する。
+     * 冗長構成の待機系は、全ての段で計測・集計を続け、制御・Ambient・追加の送信先への出力だけを止める。
+     * 
+     * サンプリングのスレッドを止めないよう、filterは溢れた場合に古いサンプルを捨てる(3分値の区切りは捨てない)。
+     * windowとstoreは上流を待たせ、遅くなり得るcontrolとambientは古い要素を捨てて上流を待たせない。
+     * 
+     * @param async 段毎のスレッドで処理する場合はtrue (falseの場合は呼び出し元のスレッドで同期して処理)
+     */
+    private void buildPipeline(boolean async) {
+        var pipelineConfig = controlConfig.getPipeline();
+        measureWindow = new MeasureWindow();
+        windowStore = new WindowStore();
+        var ambientSender = new AmbientSender(serviceConfig, ambientService, leaderElection, fusionEstimator,
+                controlDispatcher);
+        filterStage = new Stage<>("filter", pipelineConfig.getSampleBuffer(), Overflow.DROP_OLDEST, Sample::isClose,
+                async, sampleFilter);
+        var windowStage = new Stage<>("window", pipelineConfig.getSampleBuffer(), Overflow.BACKPRESSURE, async,
+                measureWindow);
+        var controlStage = new Stage<Sample, Void>("control", pipelineConfig.getControlBuffer(),
+                Overflow.DROP_OLDEST, async, controlDispatcher);
+        var storeStage = new Stage<MeasureData, Void>("store", pipelineConfig.getSinkBuffer(),
+                Overflow.BACKPRESSURE, async, windowStore);
+        var ambientStage = new Stage<MeasureData, Void>("ambient", pipelineConfig.getSinkBuffer(),
+                Overflow.DROP_OLDEST, async, ambientSender);
+
+        filterStage.subscribe(windowStage);
+        filterStage.subscribe(controlStage);
+        windowStage.subscribe(storeStage);
+        windowStage.subscribe(ambientStage);
+        var built = new ArrayList<Stage<?, ?>>(
+                List.of(filterStage, windowStage, controlStage, storeStage, ambientStage));
+
+        // 追加の送信先 (送信先毎のバッファに入れるだけで待たない)
+        if (telemetrySinks.has(Resolution.SAMPLE)) {
+            var sinkStage = new Stage<Sample, Void>("sink-sample", pipelineConfig.getSampleBuffer(),
+                    Overflow.DROP_OLDEST, async, (sample, emit) -> {
+                        if (leaderElection.isLeader()) {
+                            telemetrySinks.onSample(sample);
+                        }
+                    });
+            filterStage.subscribe(sinkStage);
+            built.add(sinkStage);
+        }
+        if (telemetrySinks.has(Resolution.WINDOW)) {
+            var sinkStage = new Stage<MeasureData, Void>("sink-window", pipelineConfig.getSinkBuffer(),
+                    Overflow.DROP_OLDEST, async, (measureData, emit) -> {
+                        if (leaderElection.isLeader()) {
+                            telemetrySinks.onWindow(measureData);
+                        }
+                    });
+            windowStage.subscribe(sinkStage);
+            built.add(sinkStage);
         }
 
-        // OCプロファイル変更
-        var hiveApiConfig = serviceConfig.getHiveApi();
-        if (hiveApiConfig == null) {
+        // HTTP APIのスナップショット・ライブ配信 (配信は接続毎のバッファに入れるだけで待たない)
+        if (apiServer.isRunning()) {
+            var apiSampleStage = new Stage<Sample, Void>("api-sample", pipelineConfig.getSampleBuffer(),
+                    Overflow.DROP_OLDEST, async, (sample, emit) -> liveStore.onSample(sample));
+            filterStage.subscribe(apiSampleStage);
+            built.add(apiSampleStage);
+            var apiWindowStage = new Stage<MeasureData, Void>("api-window", pipelineConfig.getSinkBuffer(),
+                    Overflow.DROP_OLDEST, async, (measureData, emit) -> liveStore.onWindow(measureData));
+            windowStage.subscribe(apiWindowStage);
+            built.add(apiWindowStage);
+        }
+        stages = built;
+    }
+
+    /**
+     * 稼働系が公開する状態のキー (複数拠点モードでは拠点名を付ける)
+     * 
+     * @param name 状態の名前
+     * @return キー
+     */
+    private String stateKey(String name) {
+        return siteName == null ? name : siteName + "." + name;
+    }
+
+    /**
+     * 3分毎にハッシュレート・天候を取得して、3分値の区切りをパイプラインに流す (集計後に保存・Ambientに送信)
+     */
+    @Scheduled(cron = SEND_AMBIENT1_CRON)
+    public void sendAmbient1() throws Exception {
+        if (measureWindow.isEmpty()) {
+            return;
+        }
+        // 夜間は間引いて、間の計測データを次の送信でまとめて平均
+        var now = ZonedDateTime.now(clock);
+        if (adaptiveSampler != null
+                && adaptiveSampler.skipSend(clock.millis(), now.getHour() * 60 + now.getMinute())) {
+            log.trace("夜間のためAmbientへの送信を間引きます。");
             return;
         }
 
-        var currentProfileName = currentOcProfile == null ? null : currentOcProfile.getName();
-        var highProfileName = controlConfig.getPower().getHighProfileName();
-        var lowProfileName = controlConfig.getPower().getLowProfileName();
-        var threshold = controlConfig.getPower().getThreshold();
-        var hysteresis = controlConfig.getPower().getHysteresis();
+        var measureData = new MeasureData();
+
+        // ワーカーのハッシュレート取得 (失敗してもハッシュレート無しで区切りを流す)
+        try {
+            controlDispatcher.updateWorkers(measureData);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("ワーカー情報の取得を中断しました。");
+        } catch (Exception e) {
+            log.error("ワーカー情報の取得に失敗しました。", e);
+        }
 
-        for (int i = 0; i < RETRY_COUNT; i++) {
+        // 天候取得 (失敗しても天候無しで区切りを流す)
+        var weather = new CurrentWeather();
+        var openWeatherConfig = serviceConfig.getOpenWeatherApi();
+        if (openWeatherConfig != null) {
             try {
-                // (発電電力 or 照度) > 閾値 の場合、Power Limitを上げる
-                if (average > (threshold + hysteresis)
-                        && (currentProfileName == null || !currentProfileName.equals(highProfileName))) {
-                    log.debug("OCプロファイルを{}に変更します。", highProfileName);
-                    currentOcProfile = hiveService.changeWorkerOcProfile(hiveApiConfig, highProfileName);
-
-                    // (発電電力 or 照度) < 閾値 の場合、Power Limitを下げる
-                } else if (average < (threshold - hysteresis)
-                        && (currentProfileName == null || !currentProfileName.equals(lowProfileName))) {
-                    log.debug("OCプロファイルを{}に変更します。", lowProfileName);
-                    currentOcProfile = hiveService.changeWorkerOcProfile(hiveApiConfig, lowProfileName);
+                weather = openWeatherService.getCurrentWeather(openWeatherConfig);
+                log.trace("天候情報={}", weather);
+                fusionEstimator.updateWeather(weather.getCloudness(), weather.getTemperature());
+                if (Objects.equals(weather.getWeather(), lastWeather)) {
+                    // 前回の天候と同じ場合は、Ambientにコメントを送信しない
+                    weather.setWeather(null);
                 } else {
-                    log.trace("OCプロファイルの変更はありません。: {}", currentProfileName);
+                    lastWeather = weather.getWeather();
                 }
-                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("天候の取得を中断しました。");
+                weather = new CurrentWeather();
             } catch (Exception e) {
-                log.error("OCプロファイルの変更に失敗しました。", e);
+                log.error("天候の取得に失敗しました。", e);
+                weather = new CurrentWeather();
             }
-
-            // 送信失敗したら、しばらく待ってから再実行
-            Thread.sleep(HIVE_RETRY_INTERVAL);
         }
+
+        // 区切りまでのサンプルを集計して、保存・Ambientに送信
+        measureData.setTime(now);
+        measureData.setWeather(weather);
+        filterStage.offer(Sample.close(clock.millis(), measureData));
     }
 
     /**
-     * 1日毎に集計してAmbientにデータ送信
+     * メトリクス名の検証
+     * 
+     * @param metric メトリクス名
+     * @param names  分位点以外に指定できるメトリクス名
+     * @param gpu    GPU毎の計測値を指定できるかどうか
+     * @throws IllegalArgumentException 不明なメトリクス名の場合
      */
-    @Scheduled(cron = "0 1 0 * * *")
-    public void sendAmbient2() throws Exception {
-        var ambientCurrentConfig = serviceConfig.getAmbient().getCurrent();
-        var ambientSummaryConfig = serviceConfig.getAmbient().getSummary();
-        if (ambientCurrentConfig == null || ambientSummaryConfig == null) {
+    private static void validateMetric(String metric, List<String> names, boolean gpu) {
+        if (names.contains(metric)) {
             return;
         }
-
-        var yesterday = LocalDate.now().minusDays(1);
-
-        // 1日分のデータを取得して集計
-        Double power = null;
-        Double hash = null;
-        for (int i = 0; i < RETRY_COUNT; i++) {
-            try {
-                // 1時間ごとの電力平均値(Wh)を算出して1日分集計
-                var datas = ambientService.read(ambientCurrentConfig, yesterday);
-                var whs = datas.stream()
-                        .filter(d -> d.getD2() != null)
-                        .map(d -> Pair.of(Instant.parse(d.getCreated()).atZone(ZoneId.systemDefault()).getHour(),
-                                d.getD2()))
-                        .collect(Collectors.groupingBy(Pair::getKey, Collectors.averagingDouble(Pair::getValue)))
-                        .values();
-                power = whs.stream().mapToDouble(d -> d).sum();
-                hash = datas.stream().filter(d -> d.getD3() != null)
-                        .collect(Collectors.averagingDouble(AmbientService.ReadData::getD3));
-                break;
-            } catch (Exception e) {
-                log.error("Ambientからのデータ取得に失敗しました。", e);
-            }
-
-            // 取得失敗したら、しばらく待ってから再実行
-            Thread.sleep(AMBIENT_RETRY_INTERVAL);
+        var separator = metric.lastIndexOf(':');
+        if (gpu && metric.startsWith("gpu:") && separator > 4
+                && GPU_METRICS.contains(metric.substring(separator + 1))) {
+            return;
         }
-        if (power == null && hash == null) {
-            throw new IOException("Ambientからのデータ取得に失敗しました。");
+        try {
+            MeasureUtils.parsePercentileField(metric);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("不明なメトリクス名です。: %s (指定可能: %s%s, 計測値:分位)",
+                    metric, names, gpu ? ", gpu:キー:" + GPU_METRICS : ""), e);
         }
+    }
 
-        // Ambient送信
-        var sendDatas = new Double[] { power, power == null ? null : power * costConfig.getKwh() / 1000D, hash };
-        for (int i = 0; i < RETRY_COUNT; i++) {
-            try {
-                log.debug("Ambientに1日値を送信します。power={}Wh, yen={}, hash={}", sendDatas[0], sendDatas[1], sendDatas[2]);
-                ambientService.send(ambientSummaryConfig, yesterday.atStartOfDay(ZoneId.systemDefault()), null,
-                        sendDatas);
-                break;
-            } catch (Exception e) {
-                log.error("Ambientへのデータ送信に失敗しました。", e);
-            }
+    /**
+     * 15分毎にPower Limit制御
+     */
+    @Scheduled(cron = CONTROL_POWER_CRON)
+    public void controlPower() throws Exception {
+        if (windowStore.isEmpty()) {
+            return;
+        }
+        controlDispatcher.controlWindow(windowStore.drain());
+    }
+
+    /**
+     * 毎晩、天気予報から翌日のOCプロファイル計画を作成 (計画制御モードのみ)
+     */
+    @Scheduled(cron = PLAN_CRON)
+    public void planTomorrow() {
+        controlDispatcher.planTomorrow();
+    }
 
-            // 送信失敗したら、しばらく待ってから再実行
-            Thread.sleep(AMBIENT_RETRY_INTERVAL);
+    /**
+     * 1日毎に累計をログ出力して、前日の1日値をAmbientに送信
+     */
+    @Scheduled(cron = SEND_AMBIENT2_CRON)
+    public void sendAmbient2() throws Exception {
+        if (!dailySummary.isEnabled()) {
+            return;
         }
+        statusReporter.logDaily();
+        dailySummary.send(LocalDate.now(clock).minusDays(1));
     }
 
     /**
@@ -347,14 +687,61 @@ public class GridTieInverterTasks {
      */
     @PreDestroy
     public void destroy() throws IOException {
+        // HTTP API・パイプライン停止 (複数拠点モードではHTTP APIは共有のため、拠点の公開のみ終了)
+        leaderElection.unpublish(stateKey("ocProfile"));
+        if (siteName == null) {
+            apiServer.close();
+        } else {
+            apiServer.removeSite(siteName);
+        }
+        stages.forEach(Stage::close);
+
+        // 追加の送信先の未送信データを送信して切断
+        telemetrySinks.close();
+
         // GTI接続解除
         gtiDevice.close();
 
         // 照度センサー接続解除
         lightSensorDevice.close();
+
+        // 汎用のModbusデバイス接続解除
+        modbusDeviceRegistry.close();
+    }
+
+    /**
+     * GPU・OCプロファイル毎の電力効率取得
+     * 
+     * @return 電力効率の集計
+     */
+    public EfficiencyTracker getEfficiencyTracker() {
+        return controlDispatcher.getEfficiencyTracker();
+    }
+
+    /**
+     * 照度の外れ値除外取得
+     * 
+     * @return 照度の外れ値除外 (除外しない場合はnull)
+     */
+    public OutlierFilter getLightFilter() {
+        return sampleFilter.getLightFilter();
     }
 
-    private static Double toDouble(Number value) {
-        return value == null ? null : value.doubleValue();
+    /**
+     * GTIの発電電力の外れ値除外取得
+     * 
+     * @return GTIの発電電力の外れ値除外 (除外しない場合はnull)
+     */
+    public OutlierFilter getGtiFilter() {
+        return sampleFilter.getGtiFilter();
+    }
+
+    /**
+     * 計測データのパイプラインの段取得
+     * 
+     * @return パイプラインの全ての段
+     */
+    public List<Stage<?, ?>> getStages() {
+        return stages;
     }
 }
@@ -0,0 +1,210 @@
+package com.heterodain.gtimonitor.task;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.control.ControlDispatcher;
+import com.heterodain.gtimonitor.control.FusionEstimator;
+import com.heterodain.gtimonitor.control.OutlierFilter;
+import com.heterodain.gtimonitor.device.ConnectionSupervisor;
+import com.heterodain.gtimonitor.device.GridTieInverterDevice;
+import com.heterodain.gtimonitor.device.LightSensorDevice;
+import com.heterodain.gtimonitor.device.ModbusDeviceRegistry;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+import com.heterodain.gtimonitor.pipeline.SampleFilter;
+import com.heterodain.gtimonitor.pipeline.Stage;
+import com.heterodain.gtimonitor.sink.BatchingSink;
+import com.heterodain.gtimonitor.sink.TelemetrySinks;
+import com.heterodain.gtimonitor.util.StartupTimer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 拠点の状態の報告 (HTTP APIの制御状態と、1日毎の累計のログ出力)
+ *
+ * <p>
+ * 制御・デバイス接続・パイプラインの段・追加の送信先・冗長構成の状態をメモリ上から集める。
+ * HTTP APIのリクエスト毎に呼ばれるため、デバイス・外部サービスにはアクセスしない。
+ * </p>
+ */
+@Slf4j
+public class StatusReporter {
+    /** 拠点名 (単一拠点モードの場合はnull) */
+    private final String siteName;
+    private final ControlConfig controlConfig;
+    private final LeaderElection leaderElection;
+    /** 制御モード毎の制御 (現在のOCプロファイル・出力制限・電力効率) */
+    private final ControlDispatcher controlDispatcher;
+    /** 照度とGTIのセンサーフュージョン (推定の信頼度) */
+    private final FusionEstimator fusionEstimator;
+    /** 外れ値除外と発電電力の推定 (外れ値除外の累計) */
+    private final SampleFilter sampleFilter;
+    private final LightSensorDevice lightSensorDevice;
+    private final GridTieInverterDevice gtiDevice;
+    private final ModbusDeviceRegistry modbusDeviceRegistry;
+    private final TelemetrySinks telemetrySinks;
+    /** 起動から最初のサンプルまでの時間 */
+    private final StartupTimer startupTimer;
+    /** パイプラインの全ての段の取得 (パイプラインの構築前は空) */
+    private final Supplier<List<Stage<?, ?>>> stages;
+
+    /**
+     * コンストラクタ
+     *
+     * @param siteName             拠点名 (単一拠点モードの場合はnull)
+     * @param controlConfig        制御の設定
+     * @param leaderElection       冗長構成の稼働系の選出
+     * @param controlDispatcher    制御モード毎の制御
+     * @param fusionEstimator      照度とGTIのセンサーフュージョン
+     * @param sampleFilter         外れ値除外と発電電力の推定
+     * @param lightSensorDevice    照度センサー
+     * @param gtiDevice            グリッドタイインバーター
+     * @param modbusDeviceRegistry 汎用のModbusデバイス
+     * @param telemetrySinks       追加の送信先
+     * @param startupTimer         起動から最初のサンプルまでの時間
+     * @param stages               パイプラインの全ての段の取得
+     */
+    public StatusReporter(String siteName, ControlConfig controlConfig, LeaderElection leaderElection,
+            ControlDispatcher controlDispatcher, FusionEstimator fusionEstimator, SampleFilter sampleFilter,
+            LightSensorDevice lightSensorDevice, GridTieInverterDevice gtiDevice,
+            ModbusDeviceRegistry modbusDeviceRegistry, TelemetrySinks telemetrySinks, StartupTimer startupTimer,
+            Supplier<List<Stage<?, ?>>> stages) {
+        this.siteName = siteName;
+        this.controlConfig = controlConfig;
+        this.leaderElection = leaderElection;
+        this.controlDispatcher = controlDispatcher;
+        this.fusionEstimator = fusionEstimator;
+        this.sampleFilter = sampleFilter;
+        this.lightSensorDevice = lightSensorDevice;
+        this.gtiDevice = gtiDevice;
+        this.modbusDeviceRegistry = modbusDeviceRegistry;
+        this.telemetrySinks = telemetrySinks;
+        this.startupTimer = startupTimer;
+        this.stages = stages;
+    }
+
+    /**
+     * HTTP APIに公開する制御状態 (メモリ上の状態のみ参照)
+     *
+     * @return 項目名→値
+     */
+    public Map<String, Object> snapshot() {
+        var status = new LinkedHashMap<String, Object>();
+        var powerConfig = controlConfig.getPower();
+        if (siteName != null) {
+            status.put("site", siteName);
+        }
+        if (leaderElection.isEnabled()) {
+            status.put("node", leaderElection.getNodeId());
+            status.put("leader", leaderElection.isLeader());
+        }
+        status.put("mode", powerConfig == null ? null : powerConfig.getMode());
+        status.put("source", powerConfig == null ? null : powerConfig.getSource());
+        status.put("ocProfile", controlDispatcher.getOcProfileName());
+        status.put("limit", controlDispatcher.getCurrentLimit());
+        status.put("rigDraw", controlDispatcher.getRigDraw());
+        status.put("forecast", controlDispatcher.getForecast());
+        status.put("confidence", fusionEstimator.getConfidence());
+        var workers = controlDispatcher.getWorkerProfiles();
+        if (workers != null) {
+            status.put("workers", workers);
+        }
+
+        var devices = new LinkedHashMap<String, Object>();
+        for (var connection : connections()) {
+            devices.put(connection.getName(), connection.getState());
+        }
+        status.put("devices", devices);
+
+        var pipeline = new LinkedHashMap<String, Object>();
+        for (var stage : stages.get()) {
+            pipeline.put(stage.getName(), Map.of("queued", stage.getQueued(), "dropped", stage.getDropped()));
+        }
+        status.put("pipeline", pipeline);
+        var sinks = new LinkedHashMap<String, Object>();
+        for (var sink : telemetrySinks.getSinks()) {
+            sinks.put(sink.getName(), Map.of("pending", sink.getPending(), "failures", sink.getFailures()));
+        }
+        status.put("sinks", sinks);
+        status.put("firstSamples", startupTimer.getFirstSamples());
+        return status;
+    }
+
+    /**
+     * 電力効率・外れ値除外・デバイス接続・パイプラインの段・追加の送信先・冗長構成の累計をログ出力 (1日毎)
+     */
+    public void logDaily() {
+        for (var efficiency : controlDispatcher.getEfficiencyTracker().getGpuEfficiencies()) {
+            log.info("電力効率: {} {}({}) {}MH/J ({}回)", efficiency.getProfileName(), efficiency.getKey(),
+                    efficiency.getName(), String.format("%.4f", efficiency.getEfficiency()), efficiency.getSamples());
+        }
+        logFilter("照度", sampleFilter.getLightFilter());
+        logFilter("発電電力", sampleFilter.getGtiFilter());
+        connections().forEach(StatusReporter::logConnection);
+        stages.get().forEach(StatusReporter::logStage);
+        telemetrySinks.getSinks().forEach(StatusReporter::logSink);
+        if (leaderElection.isEnabled()) {
+            log.info("冗長構成: {} 稼働系={}, 稼働系になった回数={}, 待機系に戻った回数={}", leaderElection.getNodeId(),
+                    leaderElection.isLeader(), leaderElection.getPromotions(), leaderElection.getDemotions());
+        }
+    }
+
+    /**
+     * 全てのデバイス接続 (GTIと同じバスの汎用のModbusデバイスは共有する接続を1つだけ)
+     */
+    private List<ConnectionSupervisor> connections() {
+        var connections = new ArrayList<ConnectionSupervisor>();
+        Optional.ofNullable(lightSensorDevice.getConnection()).ifPresent(connections::add);
+        gtiDevice.getConnections().stream().filter(c -> !connections.contains(c)).forEach(connections::add);
+        modbusDeviceRegistry.getConnections().stream().filter(c -> !connections.contains(c))
+                .forEach(connections::add);
+        return connections;
+    }
+
+    /**
+     * 外れ値除外の累計をログ出力
+     */
+    private static void logFilter(String name, OutlierFilter filter) {
+        if (filter != null) {
+            log.info("外れ値除外: {} 受入={}回, 除外={}回, 不正={}回", name, filter.getAccepted(), filter.getRejected(),
+                    filter.getInvalid());
+        }
+    }
+
+    /**
+     * デバイス接続の状態と累計をログ出力
+     */
+    private static void logConnection(ConnectionSupervisor connection) {
+        log.info("デバイス接続: {} 状態={}, 読み書き={}回, 失敗={}回, 期限切れ={}回, 再接続={}回", connection.getName(),
+                connection.getState(), connection.getTransactions(), connection.getFailures(),
+                connection.getTimeouts(), connection.getReconnects());
+    }
+
+    /**
+     * パイプラインの段の統計をログ出力
+     *
+     * @param stage パイプラインの段
+     */
+    private static void logStage(Stage<?, ?> stage) {
+        log.info("パイプライン: {} 受信={}件, 処理={}件, 破棄={}件, 失敗={}件, バッファ={}/{}(最大{}), 処理時間={}ms, 待ち時間={}ms",
+                stage.getName(), stage.getReceived(), stage.getProcessed(), stage.getDropped(), stage.getErrors(),
+                stage.getQueued(), stage.getCapacity(), stage.getMaxQueued(), stage.getBusyMillis(),
+                stage.getWaitMillis());
+    }
+
+    /**
+     * 追加の送信先の統計をログ出力
+     *
+     * @param sink 送信先
+     */
+    private static void logSink(BatchingSink sink) {
+        log.info("送信先: {} 受信={}件, 送信={}件({}回), 破棄={}件, 失敗={}回, 未送信={}件, 送信時間={}ms", sink.getName(),
+                sink.getReceived(), sink.getWritten(), sink.getBatches(), sink.getDropped(), sink.getFailures(),
+                sink.getPending(), sink.getWriteMillis());
+    }
+}
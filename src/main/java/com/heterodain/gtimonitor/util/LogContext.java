@@ -0,0 +1,69 @@
+package com.heterodain.gtimonitor.util;
+
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+/**
+ * ログのコンテキスト (MDC)
+ *
+ * <p>
+ * 複数拠点モードでは拠点名をMDCに入れてログに出力する。MDCはスレッドに引き継がれないため、
+ * 段・送信先・デバイス接続のスレッドは、生成した時点のコンテキストを取り込んで実行する。
+ * </p>
+ */
+public final class LogContext {
+    /** 拠点名のキー */
+    public static final String SITE = "site";
+
+    /** コンテキスト (空の場合はnull) */
+    private final Map<String, String> values;
+
+    private LogContext(Map<String, String> values) {
+        this.values = values == null || values.isEmpty() ? null : values;
+    }
+
+    /**
+     * 現在のスレッドのコンテキスト
+     *
+     * @return コンテキスト
+     */
+    public static LogContext current() {
+        return new LogContext(MDC.getCopyOfContextMap());
+    }
+
+    /**
+     * 拠点名のコンテキスト
+     *
+     * @param site 拠点名
+     * @return コンテキスト
+     */
+    public static LogContext site(String site) {
+        return new LogContext(site == null ? null : Map.of(SITE, site));
+    }
+
+    /**
+     * コンテキストを設定して実行する処理
+     *
+     * @param task 処理
+     * @return コンテキストを設定して実行する処理 (コンテキストが空の場合はそのまま)
+     */
+    public Runnable wrap(Runnable task) {
+        if (values == null) {
+            return task;
+        }
+        return () -> {
+            var previous = MDC.getCopyOfContextMap();
+            MDC.setContextMap(values);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    MDC.clear();
+                } else {
+                    MDC.setContextMap(previous);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,251 @@
+package com.heterodain.gtimonitor.util;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.model.GpuSample;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.service.AmbientService.ReadData;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * 計測データの集計処理
+ */
+public final class MeasureUtils {
+    /** 分位点のスケッチを保持する計測値 (照度、GTIの発電電力、照度から推定した発電電力) */
+    public static final List<String> SKETCH_METRICS = List.of("light", "power", "fused");
+
+    private MeasureUtils() {
+    }
+
+    /**
+     * 平均値算出
+     *
+     * @param datas 計測値
+     * @return 平均値(データが無い場合は0)
+     */
+    public static double average(Collection<Double> datas) {
+        return datas.stream().mapToDouble(d -> d).average().orElse(0D);
+    }
+
+    /**
+     * 電力制御デバイスの計測値の平均値算出
+     *
+     * @param datas  計測データ
+     * @param source 電力制御デバイス
+     * @return 平均値(計測値が無い場合は空)
+     */
+    public static OptionalDouble average(Collection<MeasureData> datas, Source source) {
+        return average(datas, source, null);
+    }
+
+    /**
+     * 電力制御デバイスの計測値の平均値算出
+     *
+     * <p>
+     * センサーの故障などで計測値が1つも無い場合は、0Wとみなさずに空を返す。
+     * </p>
+     *
+     * @param datas  計測データ
+     * @param source 電力制御デバイス
+     * @param metric 汎用のModbusデバイスの計測値名 (METRICの場合)
+     * @return 平均値(計測値が無い場合は空)
+     */
+    public static OptionalDouble average(Collection<MeasureData> datas, Source source, String metric) {
+        switch (source) {
+            case LIGHT_SENSOR:
+                return datas.stream().filter(d -> d.getLight() != null).mapToDouble(MeasureData::getLight).average();
+            case GTI:
+                return datas.stream().filter(d -> d.getPower() != null).mapToDouble(MeasureData::getPower).average();
+            case FUSED:
+                return datas.stream().filter(d -> d.getFusedPower() != null).mapToDouble(MeasureData::getFusedPower)
+                        .average();
+            case METRIC:
+                return datas.stream().filter(d -> d.getMetrics() != null && d.getMetrics().get(metric) != null)
+                        .mapToDouble(d -> d.getMetrics().get(metric)).average();
+            default:
+                return OptionalDouble.empty();
+        }
+    }
+
+    /**
+     * GPU毎の計測値の平均値算出
+     *
+     * @param datas 計測データ
+     * @return GPU・OCプロファイル毎の平均値
+     */
+    public static List<GpuSample> averageGpus(Collection<MeasureData> datas) {
+        var groups = datas.stream().filter(d -> d.getGpus() != null).flatMap(d -> d.getGpus().stream())
+                .collect(Collectors.groupingBy(g -> Pair.of(g.getKey(), Objects.toString(g.getProfileName(), "")),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        return groups.values().stream().map(samples -> {
+            var first = samples.get(0);
+            var average = new GpuSample();
+            average.setKey(first.getKey());
+            average.setWorkerId(first.getWorkerId());
+            average.setBusId(first.getBusId());
+            average.setName(first.getName());
+            average.setProfileName(first.getProfileName());
+            average.setTemp(averageOf(samples, GpuSample::getTemp));
+            average.setFan(averageOf(samples, GpuSample::getFan));
+            average.setPower(averageOf(samples, GpuSample::getPower));
+            average.setHash(averageOf(samples, GpuSample::getHash));
+            return average;
+        }).collect(Collectors.toList());
+    }
+
+    private static Double averageOf(List<GpuSample> samples, Function<GpuSample, Double> getter) {
+        var values = samples.stream().map(getter).filter(Objects::nonNull).mapToDouble(d -> d).summaryStatistics();
+        return values.getCount() == 0 ? null : values.getAverage();
+    }
+
+    /**
+     * 1時間ごとの電力平均値(Wh)を算出して1日分集計
+     *
+     * @param datas 1日分のデータ
+     * @param zone  集計するタイムゾーン
+     * @return 1日の発電量(Wh)
+     */
+    public static double dailyPower(List<ReadData> datas, ZoneId zone) {
+        return dailyPower(datas, ReadData::getD2, zone);
+    }
+
+    /**
+     * 1時間ごとの電力平均値(Wh)を算出して1日分集計
+     *
+     * @param datas  1日分のデータ
+     * @param getter 電力のデータ項目
+     * @param zone   集計するタイムゾーン
+     * @return 1日の発電量(Wh)
+     */
+    public static double dailyPower(List<ReadData> datas, Function<ReadData, Double> getter, ZoneId zone) {
+        var whs = datas.stream()
+                .filter(d -> getter.apply(d) != null)
+                .map(d -> Pair.of(Instant.parse(d.getCreated()).atZone(zone).getHour(), getter.apply(d)))
+                .collect(Collectors.groupingBy(Pair::getKey, Collectors.averagingDouble(Pair::getValue)))
+                .values();
+        return whs.stream().mapToDouble(d -> d).sum();
+    }
+
+    /**
+     * 1日分のハッシュレート平均値算出
+     *
+     * @param datas 1日分のデータ
+     * @return ハッシュレート平均値
+     */
+    public static double averageHash(List<ReadData> datas) {
+        return averageField(datas, ReadData::getD7);
+    }
+
+    /**
+     * 1日分のデータ項目の平均値算出
+     *
+     * @param datas  1日分のデータ
+     * @param getter データ項目
+     * @return 平均値(データが無い場合は0)
+     */
+    public static double averageField(List<ReadData> datas, Function<ReadData, Double> getter) {
+        return datas.stream().map(getter).filter(Objects::nonNull)
+                .collect(Collectors.averagingDouble(d -> d));
+    }
+
+    /**
+     * 分位点のスケッチを併合
+     *
+     * @param into 併合先(計測値名→スケッチ)
+     * @param from 併合元(計測値名→スケッチ)
+     */
+    public static void mergeSketches(Map<String, QuantileSketch> into, Map<String, QuantileSketch> from) {
+        if (from == null) {
+            return;
+        }
+        from.forEach((metric, sketch) -> into.computeIfAbsent(metric, m -> new QuantileSketch()).merge(sketch));
+    }
+
+    /**
+     * 計測データの分位点のスケッチを併合 (15分・1時間などのウィンドウ)
+     *
+     * @param datas 計測データ
+     * @return 併合したスケッチ(計測値名→スケッチ)
+     */
+    public static Map<String, QuantileSketch> mergeSketches(Collection<MeasureData> datas) {
+        var merged = new LinkedHashMap<String, QuantileSketch>();
+        datas.forEach(d -> mergeSketches(merged, d.getSketches()));
+        return merged;
+    }
+
+    /**
+     * 分位点の送信項目を解析
+     *
+     * @param field 送信項目 (計測値名:分位 例: power:p90、light:min、fused:max)
+     * @return 計測値名と分位(0～1)
+     * @throws IllegalArgumentException 解析できない場合
+     */
+    public static Pair<String, Double> parsePercentileField(String field) {
+        var kv = field.trim().split(":", 2);
+        if (kv.length != 2 || !SKETCH_METRICS.contains(kv[0])) {
+            throw new IllegalArgumentException("分位点の送信項目は" + SKETCH_METRICS + ":分位 で指定してください: " + field);
+        }
+        switch (kv[1]) {
+            case "min":
+                return Pair.of(kv[0], 0D);
+            case "max":
+                return Pair.of(kv[0], 1D);
+            default:
+                try {
+                    var percent = kv[1].startsWith("p") ? Double.parseDouble(kv[1].substring(1)) : Double.NaN;
+                    if (percent >= 0D && percent <= 100D) {
+                        return Pair.of(kv[0], percent / 100D);
+                    }
+                } catch (NumberFormatException e) {
+                    // 下でエラー
+                }
+                throw new IllegalArgumentException("分位はmin、max、p0～p100で指定してください: " + field);
+        }
+    }
+
+    /**
+     * 送信項目毎の分位点
+     *
+     * @param sketches 分位点のスケッチ(計測値名→スケッチ)
+     * @param fields   送信項目
+     * @return 分位点(データが無い項目はnull)
+     */
+    public static Double[] percentiles(Map<String, QuantileSketch> sketches, List<String> fields) {
+        var values = new Double[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            var field = parsePercentileField(fields.get(i));
+            var sketch = sketches.get(field.getKey());
+            values[i] = sketch == null ? null : sketch.quantile(field.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * 分位点のメトリクスの値を追加 (GPU毎の計測値は除く)
+     *
+     * @param values   メトリクス名→値
+     * @param metrics  メトリクス名
+     * @param sketches 分位点のスケッチ(計測値名→スケッチ)
+     */
+    public static void putPercentiles(Map<String, Double> values, List<String> metrics,
+            Map<String, QuantileSketch> sketches) {
+        var fields = metrics.stream().filter(m -> m.contains(":") && !m.startsWith("gpu:"))
+                .collect(Collectors.toList());
+        var percentiles = percentiles(sketches == null ? Map.of() : sketches, fields);
+        for (int i = 0; i < percentiles.length; i++) {
+            values.put(fields.get(i), percentiles[i]);
+        }
+    }
+}
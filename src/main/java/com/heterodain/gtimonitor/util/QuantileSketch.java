@@ -0,0 +1,253 @@
+package com.heterodain.gtimonitor.util;
+
+import java.util.Arrays;
+
+/**
+ * 分位点のスケッチ (KLL)
+ *
+ * <p>
+ * 値をレベル毎の配列に保持し、レベルの容量を超えたら整列して1つおきに上のレベルへ昇格させる
+ * (上のレベルの値は2倍の重みを持つ)。容量は上のレベルほど大きく、下のレベルほど2/3倍ずつ小さいため、
+ * サンプル数に関わらず保持する値の数はほぼ一定(kの3倍程度)となる。
+ * 同じkのスケッチ同士は、レベル毎に連結して圧縮し直すだけで併合できる。
+ * 最小値・最大値は正確に保持する。
+ * </p>
+ */
+public class QuantileSketch {
+    /** 既定の精度パラメータ (全ての分位の順位誤差は概ね2.4/k^0.94以内、k=128で2.5%以内) */
+    public static final int DEFAULT_K = 128;
+    /** レベルの容量の下限 */
+    private static final int MIN_CAPACITY = 8;
+
+    /** 精度パラメータ */
+    private final int k;
+    /** レベル毎の値 */
+    private double[][] levels = new double[1][];
+    /** レベル毎の値の数 */
+    private int[] sizes = new int[1];
+    /** 追加した値の数 */
+    private long count;
+    /** 最小値 */
+    private double min = Double.NaN;
+    /** 最大値 */
+    private double max = Double.NaN;
+    /** 昇格させる値を選ぶ乱数の状態 (xorshift) */
+    private long seed = 0x9E3779B97F4A7C15L;
+
+    /**
+     * コンストラクタ
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * コンストラクタ
+     *
+     * @param k 精度パラメータ(大きいほど正確)
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("kは" + MIN_CAPACITY + "以上を指定してください: " + k);
+        }
+        this.k = k;
+        levels[0] = new double[k];
+    }
+
+    /**
+     * 値を追加
+     *
+     * @param value 値
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+
+        append(0, value);
+        if (sizes[0] >= capacity(0)) {
+            compress();
+        }
+    }
+
+    /**
+     * 他のスケッチを併合 (他のスケッチは変更しない)
+     *
+     * @param other 併合するスケッチ
+     */
+    public void merge(QuantileSketch other) {
+        if (other == null || other.count == 0) {
+            return;
+        }
+        if (other.k != k) {
+            throw new IllegalArgumentException("精度パラメータの異なるスケッチは併合できません: " + k + ", " + other.k);
+        }
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        compress();
+    }
+
+    /**
+     * 分位点
+     *
+     * @param q 分位(0～1、0は最小値、1は最大値)
+     * @return 分位点(値が無い場合はnull)
+     */
+    public Double quantile(double q) {
+        if (count == 0) {
+            return null;
+        }
+        if (q <= 0D) {
+            return min;
+        }
+        if (q >= 1D) {
+            return max;
+        }
+
+        // 重み付きの値を整列して、累積の重みが分位に達する値
+        var total = 0;
+        for (var size : sizes) {
+            total += size;
+        }
+        var values = new double[total];
+        var weights = new long[total];
+        var n = 0;
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                weights[n] = 1L << level;
+                n++;
+            }
+        }
+        var order = sortedOrder(values);
+
+        var totalWeight = 0L;
+        for (var weight : weights) {
+            totalWeight += weight;
+        }
+        var target = q * totalWeight;
+        var cumulative = 0L;
+        for (var index : order) {
+            cumulative += weights[index];
+            if (cumulative >= target) {
+                return values[index];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 追加した値の数
+     *
+     * @return 値の数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 保持している値の数
+     *
+     * @return 値の数
+     */
+    public int getRetained() {
+        var retained = 0;
+        for (var size : sizes) {
+            retained += size;
+        }
+        return retained;
+    }
+
+    /**
+     * レベルの容量 (最上位レベルがk、下のレベルほど2/3倍)
+     */
+    private int capacity(int level) {
+        var depth = levels.length - level - 1;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(2D / 3D, depth)));
+    }
+
+    private void append(int level, double value) {
+        if (level >= levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+            levels[level] = new double[k];
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], sizes[level] * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    /**
+     * 容量を超えたレベルが無くなるまで下から順に圧縮 (レベルが増えると下のレベルの容量は小さくなる)
+     */
+    private void compress() {
+        var compacted = true;
+        while (compacted) {
+            compacted = false;
+            for (int level = 0; level < levels.length; level++) {
+                if (sizes[level] >= capacity(level)) {
+                    compact(level);
+                    compacted = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * レベルを整列して、1つおきに上のレベルへ昇格 (奇数個の場合は1つ残す)
+     */
+    private void compact(int level) {
+        var items = levels[level];
+        var size = sizes[level];
+        Arrays.sort(items, 0, size);
+
+        var keep = size % 2 == 1 ? 1 : 0;
+        var offset = nextBit();
+        for (int i = keep + offset; i < size; i += 2) {
+            append(level + 1, items[i]);
+        }
+        // 奇数個の場合は最小値を残す
+        sizes[level] = keep;
+    }
+
+    private int nextBit() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed & 1L);
+    }
+
+    private static int[] sortedOrder(double[] values) {
+        var boxed = new Integer[values.length];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> Double.compare(values[a], values[b]));
+        var order = new int[boxed.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+}
@@ -0,0 +1,53 @@
+package com.heterodain.gtimonitor.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 起動から最初のサンプルまでの時間
+ *
+ * <p>
+ * JVMの起動からの経過時間で計測する(Springのコンテキストの起動・デバイスの接続を含む)。
+ * </p>
+ */
+@Slf4j
+public class StartupTimer {
+    /** デバイス名→最初のサンプルを取得した時点の経過時間(ミリ秒) */
+    private final Map<String, Long> firstSamples = new ConcurrentSkipListMap<>();
+
+    /**
+     * JVMの起動からの経過時間
+     *
+     * @return 経過時間(ミリ秒)
+     */
+    public static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /**
+     * サンプルを取得した (デバイス毎に最初の1回のみ記録)
+     *
+     * @param device デバイス名
+     */
+    public void sampled(String device) {
+        if (firstSamples.containsKey(device)) {
+            return;
+        }
+        var uptime = uptime();
+        if (firstSamples.putIfAbsent(device, uptime) == null) {
+            log.info("{}の最初のサンプルを取得しました。(起動から{}ms)", device, uptime);
+        }
+    }
+
+    /**
+     * デバイス毎の最初のサンプルまでの時間
+     *
+     * @return デバイス名→起動からの経過時間(ミリ秒)
+     */
+    public Map<String, Long> getFirstSamples() {
+        return firstSamples;
+    }
+}
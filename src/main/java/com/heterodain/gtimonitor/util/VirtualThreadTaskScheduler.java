@@ -0,0 +1,214 @@
+package com.heterodain.gtimonitor.util;
+
+import java.util.Date;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.scheduling.support.TaskUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 仮想スレッドでタスクを実行するスケジューラー
+ *
+ * <p>
+ * 実行時刻の管理は少数のスレッドのプールで行い、タスクは実行毎に新しい仮想スレッドで実行する。
+ * デバイスの読み込み・HTTP通信・再試行の待ちでプールのスレッドが塞がらないため、デバイス・ワーカー・拠点が増えても
+ * 他のタスクの実行が遅れない。繰り返しのタスクは前回の実行が終わってから次の実行時刻を決める
+ * (スレッドプールで実行する場合と同じく、同じタスクが重なって実行されることはない)。
+ * 仮想スレッドはJava 21以降のみのため、リフレクションで生成する。
+ * </p>
+ */
+@Slf4j
+public class VirtualThreadTaskScheduler extends ThreadPoolTaskScheduler {
+    /** 仮想スレッドの生成 */
+    private final ThreadFactory virtualThreads;
+
+    /**
+     * コンストラクタ
+     *
+     * @param virtualThreads 仮想スレッドの生成 ({@link #virtualThreadFactory(String)})
+     */
+    public VirtualThreadTaskScheduler(ThreadFactory virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * 仮想スレッドの生成 (Thread.ofVirtual().name(prefix, 0).factory())
+     *
+     * @param prefix スレッド名の接頭辞
+     * @return 仮想スレッドの生成 (仮想スレッドに対応していないJavaの場合はnull)
+     */
+    public static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            var builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("仮想スレッドを生成できません。", e);
+            return null;
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        return new ReschedulingTask(task, trigger).schedule();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+        var decorated = TaskUtils.decorateTaskWithErrorHandler(task, null, true);
+        return super.schedule(() -> virtualThreads.newThread(decorated).start(), startTime);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        return schedule(task, context -> context.lastScheduledExecutionTime() == null ? startTime
+                : new Date(context.lastScheduledExecutionTime().getTime() + period));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        return scheduleAtFixedRate(task, new Date(), period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        return schedule(task, context -> context.lastCompletionTime() == null ? startTime
+                : new Date(context.lastCompletionTime().getTime() + delay));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        return scheduleWithFixedDelay(task, new Date(), delay);
+    }
+
+    /**
+     * 繰り返しのタスク (実行が終わってから、次の実行時刻にプールで仮想スレッドを起動する)
+     */
+    private class ReschedulingTask implements ScheduledFuture<Object> {
+        /** タスク (例外はログに出力して繰り返しを続ける) */
+        private final Runnable task;
+        /** 実行時刻の決定 */
+        private final Trigger trigger;
+        /** 前回の実行時刻 */
+        private final SimpleTriggerContext triggerContext = new SimpleTriggerContext();
+
+        /** 次の実行の予定 */
+        private ScheduledFuture<?> current;
+        /** 次の実行の予定時刻 */
+        private Date scheduledTime;
+        /** 実行中の仮想スレッド */
+        private Thread running;
+        /** 取り消した場合はtrue */
+        private boolean cancelled;
+
+        ReschedulingTask(Runnable task, Trigger trigger) {
+            this.task = TaskUtils.decorateTaskWithErrorHandler(task, null, true);
+            this.trigger = trigger;
+        }
+
+        /**
+         * 次の実行を予定
+         *
+         * @return 予定した場合は自身 (次の実行時刻が無い場合はnull)
+         */
+        synchronized ScheduledFuture<?> schedule() {
+            scheduledTime = trigger.nextExecutionTime(triggerContext);
+            if (scheduledTime == null) {
+                return null;
+            }
+            current = VirtualThreadTaskScheduler.super.schedule(() -> virtualThreads.newThread(this::run).start(),
+                    scheduledTime);
+            return this;
+        }
+
+        /**
+         * 実行 (仮想スレッド)
+         */
+        private void run() {
+            var actualTime = new Date();
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                running = Thread.currentThread();
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    running = null;
+                    triggerContext.update(scheduledTime, actualTime, new Date());
+                    if (!cancelled) {
+                        try {
+                            schedule();
+                        } catch (TaskRejectedException e) {
+                            log.debug("スケジューラーが終了したため、タスクの繰り返しを終了します。");
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            if (mayInterruptIfRunning && running != null) {
+                running.interrupt();
+            }
+            return current.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return current.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            ScheduledFuture<?> future;
+            synchronized (this) {
+                future = current;
+            }
+            return future.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            ScheduledFuture<?> future;
+            synchronized (this) {
+                future = current;
+            }
+            return future.get(timeout, unit);
+        }
+
+        @Override
+        public synchronized long getDelay(TimeUnit unit) {
+            return current.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (this == other) {
+                return 0;
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ControlConfig;
+import com.heterodain.gtimonitor.config.ServiceConfig;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Mode;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.ha.LeaderElection;
+import com.heterodain.gtimonitor.model.GpuSample;
+import com.heterodain.gtimonitor.model.MeasureData;
+import com.heterodain.gtimonitor.service.HiveService;
+import com.heterodain.gtimonitor.service.OpenWeatherService;
+import com.heterodain.gtimonitor.service.HiveService.GpuInfo;
+import com.heterodain.gtimonitor.service.HiveService.OcProfile;
+import com.heterodain.gtimonitor.service.HiveService.WorkerInfo;
+import com.heterodain.gtimonitor.service.OpenWeatherService.Forecast;
+import com.heterodain.gtimonitor.service.OpenWeatherService.ForecastItem;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 制御モード毎の制御の振り分けのテスト (15分毎の制御・ワーカー情報の更新)
+ */
+class ControlDispatcherTest {
+    /** 正午(日本時間)の時計 */
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-06-01T03:00:00Z"), ZoneId.of("Asia/Tokyo"));
+
+    private ControlConfig controlConfig;
+    private ServiceConfig serviceConfig;
+    private HiveService hiveService;
+    private OpenWeatherService openWeatherService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var power = new ControlConfig.Power();
+        power.setHighProfileName("HIGH");
+        power.setLowProfileName("LOW");
+        power.setSource(Source.LIGHT_SENSOR);
+        power.setThreshold(10000);
+        power.setHysteresis(1000);
+        controlConfig = new ControlConfig();
+        controlConfig.setPower(power);
+
+        serviceConfig = new ServiceConfig();
+        serviceConfig.setHiveApi(new ServiceConfig.HiveApi());
+        serviceConfig.setOpenWeatherApi(new ServiceConfig.OpenWeatherApi());
+
+        hiveService = mock(HiveService.class);
+        openWeatherService = mock(OpenWeatherService.class);
+        when(hiveService.changeWorkerOcProfile(any(), anyString()))
+                .thenAnswer(i -> new OcProfile(1, i.getArgument(1), null));
+    }
+
+    /**
+     * 照度センサーが15分間欠測した場合は、低電力設定に切り替えず電力効率も記録しない
+     */
+    @Test
+    void scheduledSkipsWindowWithoutLight() throws Exception {
+        var dispatcher = dispatcher();
+        dispatcher.controlWindow(window(null, null));
+
+        verify(hiveService, never()).changeWorkerOcProfile(any(), anyString());
+        assertTrue(dispatcher.getEfficiencyTracker().getLevelEfficiencies().isEmpty());
+    }
+
+    /**
+     * 照度が0の場合は低電力設定に切り替える
+     */
+    @Test
+    void scheduledSwitchesToLowInDarkness() throws Exception {
+        var dispatcher = dispatcher();
+        dispatcher.controlWindow(window(0D, null));
+
+        verify(hiveService).changeWorkerOcProfile(any(), anyString());
+        assertEquals("LOW", dispatcher.getOcProfileName());
+        assertFalse(dispatcher.getEfficiencyTracker().getLevelEfficiencies().isEmpty());
+    }
+
+    /**
+     * 計画制御モードで推定発電電力が15分間無い場合は、計画・補正とも判定しない
+     */
+    @Test
+    void plannedSkipsWindowWithoutFusedPower() throws Exception {
+        controlConfig.getPower().setMode(Mode.PLANNED);
+        controlConfig.getPlan().setPeakPower(1000D);
+        var dispatcher = dispatcher();
+        dispatcher.controlWindow(window(20000D, null));
+
+        verify(hiveService, never()).changeWorkerOcProfile(any(), anyString());
+    }
+
+    /**
+     * 計画制御モードでは、推定発電電力が想定から許容誤差以内なら計画したOCプロファイルに変更する
+     */
+    @Test
+    void plannedFollowsPlanWithinTolerance() throws Exception {
+        var expected = planned();
+        var dispatcher = dispatcher();
+        dispatcher.controlWindow(window(20000D, expected - 29.9D));
+
+        verify(hiveService).changeWorkerOcProfile(any(), anyString());
+        assertEquals("HIGH", dispatcher.getOcProfileName());
+    }
+
+    /**
+     * 計画制御モードで許容誤差を超えた場合は、実測値で補正する (調整感度の範囲内のため変更しない)
+     */
+    @Test
+    void plannedCorrectsBeyondTolerance() throws Exception {
+        var expected = planned();
+        var dispatcher = dispatcher();
+        dispatcher.controlWindow(window(20000D, expected - 30.1D));
+
+        verify(hiveService, never()).changeWorkerOcProfile(any(), anyString());
+    }
+
+    /**
+     * 消費電力を取得できないGPUを除いてリグの消費電力を合計する (多段階制御モード)
+     */
+    @Test
+    void rigDrawSkipsGpusWithoutPower() throws Exception {
+        var low = new ControlConfig.Power.Step();
+        low.setProfileName("LOW");
+        low.setDraw(300D);
+        controlConfig.getPower().setMode(Mode.LADDER);
+        controlConfig.getPower().setLadder(List.of(low));
+        var gpus = List.of(new GpuInfo("01:00.0", "GPU", 60D, 50, 120, 30D),
+                new GpuInfo("02:00.0", "GPU", null, null, null, null));
+        when(hiveService.getWorkerInfo(any())).thenReturn(new WorkerInfo(1, "rig", true, 1, 30D, null, null, gpus));
+        var dispatcher = dispatcher();
+
+        var measureData = new MeasureData();
+        dispatcher.updateWorkers(measureData);
+
+        assertEquals(2, measureData.getGpus().size());
+        assertEquals(120D, dispatcher.getRigDraw());
+    }
+
+    /**
+     * 計画制御モードにして、正午の想定発電電力を求める
+     *
+     * <p>
+     * 計画は閾値1000Wで高電力設定、補正は閾値 ± 調整感度2000Wのため想定発電電力付近では変更しない。
+     * </p>
+     */
+    private double planned() throws Exception {
+        controlConfig.getPower().setMode(Mode.PLANNED);
+        controlConfig.getPower().setThreshold(1000);
+        controlConfig.getPower().setHysteresis(2000);
+        controlConfig.getPlan().setPeakPower(3000D);
+        controlConfig.getPlan().setTolerance(30D);
+
+        var items = new ArrayList<ForecastItem>();
+        for (int hour = 0; hour <= 48; hour += 3) {
+            var item = new ForecastItem();
+            item.setTime(Instant.parse("2024-05-31T15:00:00Z").plusSeconds(hour * 3600L));
+            item.setCloudness(0);
+            item.setTemperature(25D);
+            items.add(item);
+        }
+        var forecast = new Forecast();
+        forecast.setLatitude(35.68D);
+        forecast.setLongitude(139.77D);
+        forecast.setItems(items);
+        when(openWeatherService.getForecast(any())).thenReturn(forecast);
+
+        var now = ZonedDateTime.now(CLOCK);
+        var entry = new DayAheadPlanner(controlConfig.getPower(), controlConfig.getPlan())
+                .plan(forecast, now.toLocalDate(), CLOCK.getZone()).entryAt(now);
+        assertEquals("HIGH", entry.getProfileName());
+        return entry.getExpectedPower();
+    }
+
+    private ControlDispatcher dispatcher() {
+        return new ControlDispatcher(controlConfig, serviceConfig, hiveService, openWeatherService, null,
+                new LeaderElection(), CLOCK, "oc");
+    }
+
+    /**
+     * 15分間(3分値5つ)の計測データ
+     */
+    private static List<MeasureData> window(Double light, Double fusedPower) {
+        var datas = new ArrayList<MeasureData>();
+        for (int i = 0; i < 5; i++) {
+            var gpu = new GpuSample();
+            gpu.setKey("0");
+            gpu.setName("GPU");
+            gpu.setProfileName("HIGH");
+            gpu.setPower(100D);
+            gpu.setHash(50D);
+
+            var data = new MeasureData();
+            data.setLight(light);
+            data.setFusedPower(fusedPower);
+            data.setGpus(List.of(gpu));
+            datas.add(data);
+        }
+        return datas;
+    }
+}
@@ -0,0 +1,163 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Plan;
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Step;
+import com.heterodain.gtimonitor.service.OpenWeatherService.Forecast;
+import com.heterodain.gtimonitor.service.OpenWeatherService.ForecastItem;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 天気予報による翌日のOCプロファイル計画のテスト
+ */
+class DayAheadPlannerTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 6, 1);
+    private static final ZoneId ZONE = ZoneId.of("Asia/Tokyo");
+
+    private Power power;
+    private Plan plan;
+
+    @BeforeEach
+    void setUp() {
+        power = new Power();
+        power.setHighProfileName("HIGH");
+        power.setLowProfileName("LOW");
+        power.setThreshold(1000);
+        power.setHysteresis(100);
+        plan = new Plan();
+        plan.setPeakPower(3000D);
+    }
+
+    /**
+     * 計画の間隔毎に、先行時間だけ先の想定発電電力でOCプロファイルを選ぶ
+     */
+    @Test
+    void plansAheadByLeadTime() {
+        var planner = new DayAheadPlanner(power, plan);
+        var dayPlan = planner.plan(forecast(0), DAY, ZONE);
+
+        var entries = dayPlan.getEntries();
+        assertEquals(96, entries.size());
+        assertEquals(DAY.atStartOfDay(ZONE), entries.get(0).getStart());
+        // 先行時間 = 計画の間隔のため、次の間隔の想定発電電力で選ぶ
+        for (int i = 0; i < entries.size() - 1; i++) {
+            assertEquals(planner.profileFor(entries.get(i + 1).getExpectedPower()), entries.get(i).getProfileName(),
+                    entries.get(i).getStart().toLocalTime().toString());
+        }
+        // 夜間は発電せず低電力設定、晴天の正午は高電力設定
+        assertEquals(0D, entries.get(0).getExpectedPower());
+        assertEquals("LOW", entries.get(0).getProfileName());
+        assertEquals("HIGH", dayPlan.entryAt(DAY.atTime(12, 0).atZone(ZONE)).getProfileName());
+    }
+
+    /**
+     * 雲量が多いほど想定発電電力が小さい
+     */
+    @Test
+    void cloudsLowerExpectedPower() {
+        var planner = new DayAheadPlanner(power, plan);
+        var noon = DAY.atTime(12, 0).atZone(ZONE);
+        var clear = planner.plan(forecast(0), DAY, ZONE).entryAt(noon).getExpectedPower();
+        var overcast = planner.plan(forecast(100), DAY, ZONE).entryAt(noon).getExpectedPower();
+
+        assertTrue(overcast < clear, String.format("晴天=%.1fW, 曇天=%.1fW", clear, overcast));
+    }
+
+    /**
+     * 間隔の開始時刻を含み、終了時刻を含まない (計画の範囲外はnull)
+     */
+    @Test
+    void entryAtBoundaries() {
+        var dayPlan = new DayAheadPlanner(power, plan).plan(forecast(0), DAY, ZONE);
+        var start = DAY.atTime(12, 0).atZone(ZONE);
+        var entry = dayPlan.entryAt(start);
+
+        assertEquals(start, entry.getStart());
+        assertSame(entry, dayPlan.entryAt(start.plusMinutes(15).minusNanos(1)));
+        assertEquals(start.plusMinutes(15), dayPlan.entryAt(start.plusMinutes(15)).getStart());
+        assertNull(dayPlan.entryAt(DAY.plusDays(1).atStartOfDay(ZONE)));
+    }
+
+    /**
+     * 天気予報が無い場合は計画しない、座標が無い場合はエラー
+     */
+    @Test
+    void requiresForecastAndLocation() {
+        var planner = new DayAheadPlanner(power, plan);
+        assertNull(planner.plan(new Forecast(), DAY, ZONE));
+
+        var forecast = forecast(0);
+        forecast.setLatitude(null);
+        assertThrows(IllegalArgumentException.class, () -> planner.plan(forecast, DAY, ZONE));
+        plan.setLatitude(35.68D);
+        plan.setLongitude(139.77D);
+        assertEquals(96, planner.plan(forecast, DAY, ZONE).getEntries().size());
+    }
+
+    /**
+     * 計画から外れた場合の補正は、閾値 ± 調整感度で切り替える
+     */
+    @Test
+    void correctsWithHysteresis() {
+        var planner = new DayAheadPlanner(power, plan);
+        assertNull(planner.correct(1100D, "LOW"));
+        assertEquals("HIGH", planner.correct(1100.1D, "LOW"));
+        assertNull(planner.correct(900D, "HIGH"));
+        assertEquals("LOW", planner.correct(899.9D, "HIGH"));
+    }
+
+    /**
+     * 多段階制御の段が定義されている場合は、収まる最も高い段に補正する
+     */
+    @Test
+    void correctsToFittingStep() {
+        power.setLadder(List.of(step("HIGH", 900D), step("LOW", 300D), step("MID", 600D)));
+        var planner = new DayAheadPlanner(power, plan);
+
+        assertEquals("LOW", planner.profileFor(0D));
+        assertEquals("MID", planner.profileFor(600D));
+        assertEquals("MID", planner.profileFor(899.9D));
+        assertEquals("HIGH", planner.correct(900D, "MID"));
+        assertNull(planner.correct(700D, "MID"));
+    }
+
+    /**
+     * 前日から翌日まで3時間毎、雲量・気温が一定の天気予報
+     */
+    private static Forecast forecast(int cloudness) {
+        var items = new ArrayList<ForecastItem>();
+        for (var t = DAY.minusDays(1).atStartOfDay(ZONE); t.isBefore(DAY.plusDays(2).atStartOfDay(ZONE)); t = t
+                .plusHours(3)) {
+            var item = new ForecastItem();
+            item.setTime(t.toInstant());
+            item.setCloudness(cloudness);
+            item.setTemperature(25D);
+            items.add(item);
+        }
+        var forecast = new Forecast();
+        forecast.setLatitude(35.68D);
+        forecast.setLongitude(139.77D);
+        forecast.setItems(items);
+        return forecast;
+    }
+
+    private static Step step(String profileName, Double draw) {
+        var step = new Step();
+        step.setProfileName(profileName);
+        step.setDraw(draw);
+        return step;
+    }
+}
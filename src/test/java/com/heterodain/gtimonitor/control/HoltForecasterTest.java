@@ -0,0 +1,55 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Holtの線形トレンド法による短期予測のテスト
+ */
+class HoltForecasterTest {
+
+    /**
+     * サンプルが無い場合はNaN、最初のサンプルはトレンド無しの水準
+     */
+    @Test
+    void firstSampleHasNoTrend() {
+        var forecaster = new HoltForecaster(0.5D, 0.5D);
+        assertTrue(Double.isNaN(forecaster.forecast(60D)));
+
+        forecaster.update(0L, 500D);
+        assertEquals(500D, forecaster.getLevel());
+        assertEquals(500D, forecaster.forecast(300D));
+    }
+
+    /**
+     * 一定の傾きで増える場合は、不等間隔でも1秒当たりのトレンドで先の値を予測する
+     */
+    @Test
+    void followsLinearTrendWithIrregularIntervals() {
+        var forecaster = new HoltForecaster(0.5D, 0.5D);
+        var millis = 0L;
+        for (int i = 0; i < 200; i++) {
+            millis += i % 2 == 0 ? 3000L : 5000L;
+            forecaster.update(millis, 2D * millis / 1000D);
+        }
+
+        var last = 2D * millis / 1000D;
+        assertEquals(last, forecaster.getLevel(), 1D);
+        assertEquals(last + 2D * 300D, forecaster.forecast(300D), 1D);
+    }
+
+    /**
+     * 同時刻のサンプルは水準のみ更新し、トレンドは変えない
+     */
+    @Test
+    void sameTimestampUpdatesLevelOnly() {
+        var forecaster = new HoltForecaster(0.5D, 0.5D);
+        forecaster.update(0L, 100D);
+        forecaster.update(0L, 200D);
+
+        assertEquals(150D, forecaster.getLevel());
+        assertEquals(150D, forecaster.forecast(300D));
+    }
+}
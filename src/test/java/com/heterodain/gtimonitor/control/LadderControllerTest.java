@@ -0,0 +1,118 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Step;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 多段階のPower Limit制御のテスト
+ *
+ * <p>
+ * 段はLOW(300W)・MID(600W、調整感度50W)・HIGH(900W、調整感度50W)。
+ * </p>
+ */
+class LadderControllerTest {
+    private Power config;
+    private LadderController controller;
+
+    @BeforeEach
+    void setUp() {
+        config = new Power();
+        // 定義順によらず消費電力の低い順に並べる
+        config.setLadder(List.of(step("HIGH", 900D, 50D), step("LOW", 300D, null), step("MID", 600D, 50D)));
+        config.setMinSwitchInterval(300);
+        controller = new LadderController(config);
+    }
+
+    /**
+     * 現在の段が不明な場合は、段の消費電力 + 調整感度に収まる最も高い段
+     */
+    @Test
+    void selectsHighestFittingStepWhenUnknown() {
+        assertEquals("HIGH", controller.onSample(0L, 950D, null));
+        assertEquals("MID", controller.onSample(0L, 949.9D, null));
+        assertEquals("MID", controller.onSample(0L, 650D, null));
+        assertEquals("LOW", controller.onSample(0L, 649.9D, null));
+    }
+
+    /**
+     * 余剰電力が上の段までの増分 + その段の調整感度に達したら上げる (複数段を一度に上げる)
+     */
+    @Test
+    void stepsUpAtIncrementPlusHysteresis() {
+        controller.updateRigDraw(300D);
+        assertNull(controller.onSample(0L, 649.9D, "LOW"));
+        assertEquals("MID", controller.onSample(0L, 650D, "LOW"));
+        assertEquals("HIGH", controller.onSample(0L, 950D, "LOW"));
+    }
+
+    /**
+     * 余剰電力の不足が現在の段の調整感度を越えたら、収まる段まで下げる
+     */
+    @Test
+    void stepsDownBeyondHysteresis() {
+        assertNull(controller.onSample(0L, 850D, "HIGH"));
+        assertEquals("MID", controller.onSample(0L, 849.9D, "HIGH"));
+        assertEquals("MID", controller.onSample(0L, 600D, "HIGH"));
+        assertEquals("LOW", controller.onSample(0L, 599.9D, "HIGH"));
+    }
+
+    /**
+     * 実測の消費電力が想定より大きい場合は、実測値で余剰電力を求める
+     */
+    @Test
+    void usesMeasuredRigDraw() {
+        controller.updateRigDraw(700D);
+        assertNull(controller.onSample(0L, 650D, "MID"));
+        assertEquals("LOW", controller.onSample(0L, 649.9D, "MID"));
+
+        // 切り替え後は切り替え前の実測値を使わない
+        controller.switched(0L);
+        assertNull(controller.onSample(300_000L, 600D, "MID"));
+    }
+
+    /**
+     * 切り替え後は最小切り替え間隔が経過するまで、失敗後は再試行までの時間は切り替えない
+     */
+    @Test
+    void respectsSwitchIntervalAndRetryHold() {
+        controller.switched(0L);
+        assertNull(controller.onSample(299_999L, 2000D, "MID"));
+        assertEquals("HIGH", controller.onSample(300_000L, 2000D, "MID"));
+
+        controller.failed(300_000L, 60_000L);
+        assertNull(controller.onSample(359_999L, 2000D, "MID"));
+        assertEquals("HIGH", controller.onSample(360_000L, 2000D, "MID"));
+    }
+
+    /**
+     * 最も高い段の判定と、段の定義が無い場合のエラー
+     */
+    @Test
+    void topStepAndMissingLadder() {
+        assertTrue(controller.isTop("HIGH"));
+        assertFalse(controller.isTop("MID"));
+        assertFalse(controller.isTop("UNKNOWN"));
+
+        config.setLadder(List.of());
+        assertThrows(IllegalArgumentException.class, () -> new LadderController(config));
+    }
+
+    private static Step step(String profileName, Double draw, Double hysteresis) {
+        var step = new Step();
+        step.setProfileName(profileName);
+        step.setDraw(draw);
+        step.setHysteresis(hysteresis);
+        return step;
+    }
+}
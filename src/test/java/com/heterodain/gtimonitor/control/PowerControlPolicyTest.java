@@ -0,0 +1,61 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Power Limit切り替えの判定のテスト (閾値 ± 調整感度)
+ */
+class PowerControlPolicyTest {
+    private static final String HIGH = "HIGH";
+    private static final String LOW = "LOW";
+    private static final double THRESHOLD = 1000D;
+    private static final double HYSTERESIS = 100D;
+
+    /**
+     * 閾値 + 調整感度を超えた場合のみ上げる (ちょうどの場合は上げない)
+     */
+    @Test
+    void switchesUpAboveUpperBound() {
+        assertNull(decide(1100D, LOW));
+        assertEquals(HIGH, decide(1100.1D, LOW));
+        assertEquals(HIGH, decide(1100.1D, null));
+    }
+
+    /**
+     * 閾値 - 調整感度を下回った場合のみ下げる (ちょうどの場合は下げない)
+     */
+    @Test
+    void switchesDownBelowLowerBound() {
+        assertNull(decide(900D, HIGH));
+        assertEquals(LOW, decide(899.9D, HIGH));
+        assertEquals(LOW, decide(899.9D, null));
+    }
+
+    /**
+     * 閾値 ± 調整感度の範囲内では、現在のOCプロファイルによらず変更しない
+     */
+    @Test
+    void keepsProfileWithinHysteresis() {
+        for (var average : new double[] { 900D, 950D, 1000D, 1050D, 1100D }) {
+            assertNull(decide(average, HIGH));
+            assertNull(decide(average, LOW));
+            assertNull(decide(average, null));
+        }
+    }
+
+    /**
+     * 既に切り替え先のOCプロファイルの場合は変更しない
+     */
+    @Test
+    void keepsCurrentProfile() {
+        assertNull(decide(5000D, HIGH));
+        assertNull(decide(0D, LOW));
+    }
+
+    private static String decide(double average, String currentProfile) {
+        return PowerControlPolicy.decide(average, currentProfile, HIGH, LOW, THRESHOLD, HYSTERESIS);
+    }
+}
@@ -0,0 +1,87 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 予測型のPower Limit制御のテスト
+ */
+class PredictiveControllerTest {
+    private Power config;
+
+    @BeforeEach
+    void setUp() {
+        config = new Power();
+        config.setHighProfileName("HIGH");
+        config.setLowProfileName("LOW");
+        config.setThreshold(1000);
+        config.setHysteresis(100);
+        config.setForecastHorizon(300);
+        config.setMinDwell(600);
+        config.setSmoothing(0.5D);
+        config.setTrendSmoothing(0.5D);
+    }
+
+    /**
+     * 上昇中は、実測値が閾値に届く前に予測値で高電力設定に切り替える
+     */
+    @Test
+    void switchesUpOnForecastBeforeValueCrosses() {
+        var controller = new PredictiveController(config);
+        String next = null;
+        double value = 0D;
+        for (long seconds = 0; next == null && seconds < 3600; seconds += 3) {
+            value = 500D + 2D * seconds;
+            next = controller.onSample(seconds * 1000L, value, "LOW");
+        }
+
+        assertEquals("HIGH", next);
+        assertTrue(value < 1000D, "実測値" + value + "Wで切り替えました");
+        assertTrue(controller.forecast() > 1100D);
+    }
+
+    /**
+     * 緩やかな上昇で予測値が閾値 ± 調整感度の範囲内の場合は切り替えない
+     */
+    @Test
+    void keepsProfileWhileForecastWithinHysteresis() {
+        var controller = new PredictiveController(config);
+        for (long seconds = 0; seconds < 200; seconds += 3) {
+            assertNull(controller.onSample(seconds * 1000L, 1000D + 0.1D * seconds, "LOW"));
+        }
+        assertTrue(controller.forecast() < 1100D);
+    }
+
+    /**
+     * 切り替え後は、予測値が下がっても最小保持時間が経過するまで切り替えない
+     */
+    @Test
+    void holdsProfileForMinDwell() {
+        var controller = new PredictiveController(config);
+        controller.switched(0L);
+
+        for (long seconds = 3; seconds < 600; seconds += 3) {
+            assertNull(controller.onSample(seconds * 1000L, 0D, "HIGH"), seconds + "秒後に切り替えました");
+        }
+        assertEquals("LOW", controller.onSample(600_000L, 0D, "HIGH"));
+    }
+
+    /**
+     * 切り替えに失敗した場合は、再試行までの時間は切り替えない
+     */
+    @Test
+    void waitsForRetryAfterFailure() {
+        var controller = new PredictiveController(config);
+        assertEquals("LOW", controller.onSample(0L, 0D, "HIGH"));
+        controller.failed(0L, 60_000L);
+
+        assertNull(controller.onSample(59_999L, 0D, "HIGH"));
+        assertEquals("LOW", controller.onSample(60_000L, 0D, "HIGH"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.heterodain.gtimonitor.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * スライディングウィンドウの中央値のテスト
+ *
+ * <p>
+ * ウィンドウの大きさ1～16のそれぞれで、乱数・重複の多い値・単調増加・単調減少の列を追加し、
+ * 追加毎の中央値と値の数をウィンドウ内の値を整列して求めた結果(総当たり)と比較する。
+ * </p>
+ */
+class SlidingMedianTest {
+    /** 1つの列の値の数 */
+    private static final int SAMPLES = 2000;
+    /** 確認するウィンドウの大きさの上限 */
+    private static final int MAX_WINDOW = 16;
+
+    /**
+     * 追加毎の中央値が総当たりと一致する
+     */
+    @Test
+    void medianMatchesBruteForce() {
+        var random = new Random(1);
+        for (int window = 1; window <= MAX_WINDOW; window++) {
+            var sequences = new double[][] { new double[SAMPLES], new double[SAMPLES], new double[SAMPLES],
+                    new double[SAMPLES] };
+            for (int i = 0; i < SAMPLES; i++) {
+                sequences[0][i] = random.nextGaussian() * 1000D;
+                sequences[1][i] = random.nextInt(4);
+                sequences[2][i] = i;
+                sequences[3][i] = SAMPLES - i;
+            }
+            for (var sequence : sequences) {
+                compare(window, sequence);
+            }
+        }
+    }
+
+    /**
+     * ウィンドウの大きさ0は受け付けない
+     */
+    @Test
+    void rejectsEmptyWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingMedian(0));
+    }
+
+    /**
+     * 値が無い場合の中央値はNaN
+     */
+    @Test
+    void medianIsNaNWithoutValues() {
+        assertTrue(Double.isNaN(new SlidingMedian(3).median()));
+    }
+
+    /**
+     * 1つの列を追加しながら、追加毎に総当たりの中央値と比較
+     *
+     * @param window   ウィンドウの大きさ
+     * @param sequence 値の列
+     */
+    private static void compare(int window, double[] sequence) {
+        var median = new SlidingMedian(window);
+        for (int i = 0; i < sequence.length; i++) {
+            median.add(sequence[i]);
+
+            var from = Math.max(0, i + 1 - window);
+            var values = Arrays.copyOfRange(sequence, from, i + 1);
+            var position = i + 1;
+            assertEquals(i + 1 - from, median.size(), () -> String.format("ウィンドウ%d、%d件目の値の数", window, position));
+            assertEquals(bruteForce(values.clone()), median.median(),
+                    () -> String.format("ウィンドウ%d、%d件目の中央値 ウィンドウ内=%s", window, position, Arrays.toString(values)));
+        }
+    }
+
+    /**
+     * 整列して求めた中央値 (偶数個の場合は中央の2つの平均)
+     */
+    private static double bruteForce(double[] values) {
+        Arrays.sort(values);
+        var middle = values.length / 2;
+        if (values.length % 2 == 1) {
+            return values[middle];
+        }
+        return (values[middle - 1] + values[middle]) / 2D;
+    }
+}
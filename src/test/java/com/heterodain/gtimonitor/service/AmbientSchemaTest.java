@@ -0,0 +1,137 @@
+package com.heterodain.gtimonitor.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientApi;
+import com.heterodain.gtimonitor.config.ServiceConfig.AmbientChannel;
+import com.heterodain.gtimonitor.service.AmbientService.ReadData;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Ambientのメトリクスの割り当てのテスト
+ */
+class AmbientSchemaTest {
+    private static final AmbientApi FIRST = channel(1);
+    private static final AmbientApi SECOND = channel(2);
+    private static final AmbientApi THIRD = channel(3);
+
+    /**
+     * 並び順にd1～d8、9項目目以降は次のチャネルのd1から割り当てる
+     */
+    @Test
+    void mapsMetricsToFieldsInOrder() {
+        var schema = new AmbientSchema(metrics(10), List.of(FIRST, SECOND));
+
+        assertEquals(1, schema.fieldOf("m1"));
+        assertEquals(FIRST, schema.channelOf("m1"));
+        assertEquals(8, schema.fieldOf("m8"));
+        assertEquals(FIRST, schema.channelOf("m8"));
+        assertEquals(1, schema.fieldOf("m9"));
+        assertEquals(SECOND, schema.channelOf("m9"));
+        assertEquals(2, schema.fieldOf("m10"));
+        assertEquals(SECOND, schema.channelOf("m10"));
+
+        assertFalse(schema.contains("unknown"));
+        assertEquals(0, schema.fieldOf("unknown"));
+        assertNull(schema.channelOf("unknown"));
+        assertEquals(List.of("m1=1:d1", "m2=1:d2", "m3=1:d3", "m4=1:d4", "m5=1:d5", "m6=1:d6", "m7=1:d7", "m8=1:d8",
+                "m9=2:d1", "m10=2:d2"), schema.describe());
+    }
+
+    /**
+     * 送信データをチャネル毎のd1～d8に振り分ける (割り当てられていないメトリクスは無視)
+     */
+    @Test
+    void shardsValuesByChannel() {
+        var schema = new AmbientSchema(metrics(9), List.of(FIRST, SECOND));
+        var values = new HashMap<String, Double>();
+        for (int i = 1; i <= 9; i++) {
+            values.put("m" + i, (double) i);
+        }
+        values.put("unknown", 100D);
+
+        var shards = schema.shard(values);
+        assertEquals(List.of(FIRST, SECOND), new ArrayList<>(shards.keySet()));
+        assertArrayEquals(new Double[] { 1D, 2D, 3D, 4D, 5D, 6D, 7D, 8D }, shards.get(FIRST));
+        assertArrayEquals(new Double[] { 9D, null, null, null, null, null, null, null }, shards.get(SECOND));
+    }
+
+    /**
+     * 読み込みデータから、割り当てたdNの値を取得する
+     */
+    @Test
+    void readsValueFromAssignedField() {
+        var schema = new AmbientSchema(List.of("power", "hash", "yen"), List.of(FIRST));
+        var data = new ReadData();
+        data.setD1(500D);
+        data.setD2(60D);
+
+        assertEquals(500D, schema.valueOf(data, "power"));
+        assertEquals(60D, schema.valueOf(data, "hash"));
+        assertNull(schema.valueOf(data, "yen"));
+        assertNull(schema.valueOf(data, "unknown"));
+    }
+
+    /**
+     * 使わない追加チャネルは含めず、チャネルが足りない・メトリクス名が重複している場合はエラー
+     */
+    @Test
+    void validatesChannelsAndMetrics() {
+        assertEquals(List.of(FIRST), new AmbientSchema(metrics(8), List.of(FIRST, SECOND, THIRD)).getChannels());
+        assertEquals(List.of(FIRST, SECOND, THIRD),
+                new AmbientSchema(metrics(17), List.of(FIRST, SECOND, THIRD)).getChannels());
+
+        assertThrows(IllegalArgumentException.class, () -> new AmbientSchema(metrics(9), List.of(FIRST)));
+        var withNull = new ArrayList<AmbientApi>();
+        withNull.add(FIRST);
+        withNull.add(null);
+        assertThrows(IllegalArgumentException.class, () -> new AmbientSchema(metrics(9), withNull));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AmbientSchema(List.of("power", "hash", "power"), List.of(FIRST)));
+    }
+
+    /**
+     * 先頭のチャネルが無い場合は送信しない (null)
+     */
+    @Test
+    void requiresFirstChannel() {
+        var config = new AmbientChannel();
+        assertNull(AmbientSchema.current(config));
+
+        config.setCurrent(FIRST);
+        config.setCurrentShards(List.of(SECOND));
+        config.setCurrentMetrics(metrics(12));
+        var schema = AmbientSchema.current(config);
+        assertTrue(schema.contains("m12"));
+        assertEquals(SECOND, schema.channelOf("m12"));
+        assertEquals(4, schema.fieldOf("m12"));
+    }
+
+    /**
+     * m1～mNのメトリクス名
+     */
+    private static List<String> metrics(int count) {
+        var metrics = new ArrayList<String>();
+        for (int i = 1; i <= count; i++) {
+            metrics.add("m" + i);
+        }
+        return metrics;
+    }
+
+    private static AmbientApi channel(int channelId) {
+        var channel = new AmbientApi();
+        channel.setChannelId(channelId);
+        channel.setWriteKey("key" + channelId);
+        return channel;
+    }
+}
@@ -0,0 +1,186 @@
+package com.heterodain.gtimonitor.sink;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * MQTTクライアントのパケットの組み立てのテスト
+ *
+ * <p>
+ * ソケットで受けたバイト列をMQTT 3.1.1の仕様どおりに解読し、CONNECTの内容、残りの長さの境界
+ * (空のペイロード・127/128・16383/16384・2097151/2097152バイト)でのPUBLISHの長さの符号化とペイロード、
+ * DISCONNECTを確認する。受信側は、2バイト以上の長さを持つ他のパケットを挟んでPINGRESPを読み飛ばせること、
+ * CONNACKの拒否をエラーにすることを確認する。
+ * </p>
+ */
+class MqttClientTest {
+    /** 確認する残りの長さ */
+    private static final int[] REMAINING_LENGTHS = { 3, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152 };
+    /** トピック */
+    private static final String TOPIC = "t";
+    /** 応答の待ち時間(ミリ秒) */
+    private static final int TIMEOUT = 5000;
+
+    /** ブローカーの代わりに接続を受けるソケット */
+    private ServerSocket server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    /**
+     * 接続・送信・PING・切断のバイト列
+     */
+    @Test
+    void framesSessionPerSpec() throws Exception {
+        var connecting = CompletableFuture.supplyAsync(() -> connect(server.getLocalPort()));
+        try (var socket = server.accept()) {
+            socket.setSoTimeout(TIMEOUT);
+            var in = new DataInputStream(socket.getInputStream());
+            var out = socket.getOutputStream();
+
+            // CONNECT (プロトコル名・レベル4・ユーザー名・パスワード・クリーンセッション・キープアライブ60秒)
+            var expected = new ByteArrayOutputStream();
+            expected.write(new byte[] { 0, 4, 'M', 'Q', 'T', 'T', 4, (byte) 0xC2, 0, 60 });
+            expected.write(new byte[] { 0, 5, 'c', 'h', 'e', 'c', 'k', 0, 1, 'u', 0, 1, 'p' });
+            var connect = readPacket(in);
+            assertEquals(0x10, connect.type, "CONNECTの種別");
+            assertArrayEquals(expected.toByteArray(), connect.body, "CONNECTの内容");
+            out.write(new byte[] { 0x20, 2, 0, 0 });
+            out.flush();
+            var client = connecting.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            // 残りの長さの境界で送信 (大きなパケットは受信しながらでないと書き込めないため、別スレッドで送信)
+            var publishing = CompletableFuture.runAsync(() -> {
+                try {
+                    for (var remaining : REMAINING_LENGTHS) {
+                        client.publish(TOPIC, payload(remaining - 2 - TOPIC.length()));
+                    }
+                    client.ping();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+            for (var remaining : REMAINING_LENGTHS) {
+                var publish = readPacket(in);
+                assertEquals(0x30, publish.type, "PUBLISHの種別");
+                assertEquals(remaining, publish.body.length, "残りの長さ");
+                var lengthBytes = remaining < 128 ? 1 : remaining < 16_384 ? 2 : remaining < 2_097_152 ? 3 : 4;
+                assertEquals(lengthBytes, publish.lengthBytes, "残りの長さ" + remaining + "の符号化のバイト数");
+                var topicLength = ((publish.body[0] & 0xFF) << 8) | (publish.body[1] & 0xFF);
+                assertEquals(TOPIC, new String(publish.body, 2, topicLength, StandardCharsets.UTF_8), "トピック");
+                var body = Arrays.copyOfRange(publish.body, 2 + topicLength, publish.body.length);
+                assertArrayEquals(payload(remaining - 2 - TOPIC.length()), body, "残りの長さ" + remaining + "のペイロード");
+            }
+
+            // PINGREQの応答の前に、2バイトの長さを持つパケットを挟む
+            var ping = readPacket(in);
+            assertEquals(0xC0, ping.type, "PINGREQの種別");
+            assertEquals(0, ping.body.length, "PINGREQの残りの長さ");
+            var other = new ByteArrayOutputStream();
+            other.write(new byte[] { (byte) 0x90, (byte) (200 % 128 | 0x80), 200 / 128 });
+            other.write(new byte[200]);
+            other.write(new byte[] { (byte) 0xD0, 0 });
+            out.write(other.toByteArray());
+            out.flush();
+            publishing.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            client.close();
+            var disconnect = readPacket(in);
+            assertEquals(0xE0, disconnect.type, "DISCONNECTの種別");
+            assertEquals(0, disconnect.body.length, "DISCONNECTの残りの長さ");
+            assertTrue(in.read() < 0, "DISCONNECTの後に切断されていません");
+        }
+    }
+
+    /**
+     * CONNACKの拒否で接続が失敗する
+     */
+    @Test
+    void failsOnRejectedConnack() throws Exception {
+        var connecting = CompletableFuture.supplyAsync(() -> connect(server.getLocalPort()));
+        try (var socket = server.accept()) {
+            socket.setSoTimeout(TIMEOUT);
+            readPacket(new DataInputStream(socket.getInputStream()));
+            socket.getOutputStream().write(new byte[] { 0x20, 2, 0, 5 });
+            socket.getOutputStream().flush();
+
+            var e = assertThrows(ExecutionException.class, () -> connecting.get(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+        }
+    }
+
+    private static MqttClient connect(int port) {
+        try {
+            return new MqttClient("127.0.0.1", port, "check", "u", "p", 60, TIMEOUT);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * 受信したパケット
+     */
+    private static class Packet {
+        /** 固定ヘッダーの1バイト目 */
+        int type;
+        /** 残りの長さの符号化のバイト数 */
+        int lengthBytes;
+        /** 残りのバイト */
+        byte[] body;
+    }
+
+    /**
+     * パケットを受信 (残りの長さは仕様の復号手順で解読)
+     */
+    private static Packet readPacket(DataInputStream in) throws IOException {
+        var packet = new Packet();
+        packet.type = in.readUnsignedByte();
+        var multiplier = 1;
+        var length = 0;
+        int encoded;
+        do {
+            encoded = in.readUnsignedByte();
+            packet.lengthBytes++;
+            assertTrue(packet.lengthBytes <= 4, "残りの長さが4バイトを超えています");
+            length += (encoded & 127) * multiplier;
+            multiplier *= 128;
+        } while ((encoded & 128) != 0);
+        packet.body = new byte[length];
+        in.readFully(packet.body);
+        return packet;
+    }
+
+    private static byte[] payload(int length) {
+        var payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (i % 251);
+        }
+        return payload;
+    }
+}
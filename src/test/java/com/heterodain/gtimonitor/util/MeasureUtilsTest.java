@@ -0,0 +1,56 @@
+package com.heterodain.gtimonitor.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.heterodain.gtimonitor.config.ControlConfig.Power.Source;
+import com.heterodain.gtimonitor.model.MeasureData;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 計測データの集計処理のテスト
+ */
+class MeasureUtilsTest {
+
+    /**
+     * 照度が全て欠測の場合は0ではなく空
+     */
+    @Test
+    void averageIsEmptyWhenAllLightIsMissing() {
+        var datas = window(null, 500D);
+
+        assertTrue(MeasureUtils.average(datas, Source.LIGHT_SENSOR).isEmpty());
+        assertEquals(500D, MeasureUtils.average(datas, Source.GTI).getAsDouble());
+    }
+
+    /**
+     * 欠測を除いた計測値の平均
+     */
+    @Test
+    void averageSkipsMissingValues() {
+        var datas = window(1000D, null);
+        datas.get(0).setLight(null);
+
+        assertEquals(1000D, MeasureUtils.average(datas, Source.LIGHT_SENSOR).getAsDouble());
+        assertTrue(MeasureUtils.average(datas, Source.GTI).isEmpty());
+        assertTrue(MeasureUtils.average(List.of(), Source.FUSED).isEmpty());
+    }
+
+    /**
+     * 15分間(3分値5つ)の計測データ
+     */
+    private static List<MeasureData> window(Double light, Double power) {
+        var datas = new ArrayList<MeasureData>();
+        for (int i = 0; i < 5; i++) {
+            var data = new MeasureData();
+            data.setLight(light);
+            data.setPower(power);
+            datas.add(data);
+        }
+        return datas;
+    }
+}
@@ -0,0 +1,142 @@
+package com.heterodain.gtimonitor.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 分位点のスケッチ(KLL)のテスト
+ *
+ * <p>
+ * 乱数・重複の多い値・単調増加・単調減少の列をスケッチに追加し、分位1%～99%の分位点の順位を
+ * 全ての値を整列した結果と比較して、順位誤差が上限以内であることを確認する。
+ * 列を分けて追加したスケッチを併合した場合(3分値を1日分併合する場合)も同じ上限で確認する。
+ * </p>
+ */
+class QuantileSketchTest {
+    /** 1つの列の値の数 */
+    private static final int SAMPLES = 200_000;
+    /** 精度パラメータ */
+    private static final int K = QuantileSketch.DEFAULT_K;
+    /** 順位誤差の上限 (KLLの全ての分位の順位誤差の99%信頼の上限) */
+    private static final double BOUND = 2.446D / Math.pow(K, 0.9433D);
+    /** 併合する場合の分割数 (1日分の3分値) */
+    private static final int PARTS = 480;
+
+    /**
+     * 1つのスケッチに追加した場合と、分けて追加して併合した場合の順位誤差
+     */
+    @Test
+    void rankErrorWithinBound() {
+        var random = new Random(1);
+        var names = new String[] { "乱数", "重複", "増加", "減少" };
+        var sequences = new double[names.length][SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            sequences[0][i] = random.nextGaussian() * 1000D;
+            sequences[1][i] = random.nextInt(10);
+            sequences[2][i] = i;
+            sequences[3][i] = SAMPLES - i;
+        }
+
+        for (int s = 0; s < sequences.length; s++) {
+            var sequence = sequences[s];
+            var sorted = sequence.clone();
+            Arrays.sort(sorted);
+
+            var sketch = new QuantileSketch(K);
+            for (var value : sequence) {
+                sketch.add(value);
+            }
+            verify(names[s], sketch, sorted);
+
+            // 3分値のスケッチを1日分併合する場合と同じく、分けて追加してから併合
+            var merged = new QuantileSketch(K);
+            var size = (sequence.length + PARTS - 1) / PARTS;
+            for (int from = 0; from < sequence.length; from += size) {
+                var part = new QuantileSketch(K);
+                for (int i = from; i < Math.min(sequence.length, from + size); i++) {
+                    part.add(sequence[i]);
+                }
+                merged.merge(part);
+            }
+            verify(names[s] + "(併合)", merged, sorted);
+        }
+    }
+
+    /**
+     * 値が無い場合の分位点はnull
+     */
+    @Test
+    void quantileIsNullWithoutValues() {
+        assertNull(new QuantileSketch(K).quantile(0.5D));
+    }
+
+    /**
+     * スケッチの分位点の順位誤差・最小値・最大値・保持する値の数を確認
+     *
+     * @param name   列の名前
+     * @param sketch スケッチ
+     * @param sorted 整列した全ての値
+     */
+    private static void verify(String name, QuantileSketch sketch, double[] sorted) {
+        var n = sorted.length;
+        assertEquals(n, sketch.getCount(), name + ": 値の数");
+        assertEquals(sorted[0], sketch.quantile(0D), name + ": 最小値");
+        assertEquals(sorted[n - 1], sketch.quantile(1D), name + ": 最大値");
+
+        for (int percent = 1; percent <= 99; percent++) {
+            var q = percent / 100D;
+            var value = sketch.quantile(q);
+            // 同じ値が複数ある場合は、その値の順位の範囲内なら誤差なし
+            var below = (double) lowerBound(sorted, value) / n;
+            var atOrBelow = (double) upperBound(sorted, value) / n;
+            var error = q < below ? below - q : q > atOrBelow ? q - atOrBelow : 0D;
+            var p = percent;
+            assertTrue(error <= BOUND,
+                    () -> String.format("%s: p%d=%s の順位誤差%.5fが上限%.5fを超えています", name, p, value, error, BOUND));
+        }
+
+        // 保持する値の数はkの3倍程度 (サンプル数によらない)
+        assertTrue(sketch.getRetained() <= 4 * K,
+                () -> String.format("%s: 保持する値の数%dがkの4倍を超えています", name, sketch.getRetained()));
+    }
+
+    /**
+     * 値より小さい値の数
+     */
+    private static int lowerBound(double[] sorted, double value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 値以下の値の数
+     */
+    private static int upperBound(double[] sorted, double value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (sorted[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}